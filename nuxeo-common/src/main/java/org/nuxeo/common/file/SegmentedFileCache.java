@@ -0,0 +1,679 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.common.file;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A concurrent LRU cache of {@link File}s with maximum filesystem size.
+ * <p>
+ * Unlike {@link LRUFileCache}, the cache index is kept in memory, split into segments each protected by its own lock
+ * and chosen from the key prefix (usually the first characters of a digest), so that lookups never list the
+ * directory. Entries are evicted in the background by a single thread when the cache grows bigger than its maximum
+ * size or number of files; entries younger than the minimum age are never evicted.
+ * <p>
+ * Concurrent calls to {@link #getFile(String, Fetcher)} for the same absent key only do one fetch, the other callers
+ * wait for its result.
+ * <p>
+ * When the cache is {@linkplain #close closed}, its index is written to a file in the cache directory, and used when
+ * a new cache is later constructed on the same directory, instead of listing all the files. Without an index file, the
+ * directory is listed once to rebuild the index.
+ * <p>
+ * The cache keys are restricted to a subset of ASCII: letters, digits and dashes. Usually a MD5 or SHA1 hash is used.
+ *
+ * @since 9.3
+ */
+public class SegmentedFileCache implements FileCache, Closeable {
+
+    private static final Log log = LogFactory.getLog(SegmentedFileCache.class);
+
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    private static final String TMP_PREFIX = "nxbin_";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Index file name, cannot clash with a key as keys don't contain dots. */
+    protected static final String INDEX_FILE = ".index";
+
+    protected static final int INDEX_MAGIC = 0x4e584643; // NXFC
+
+    /**
+     * Fetches the content of a key absent from the cache.
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+
+        /**
+         * Fetches a file.
+         *
+         * @param key the cache key
+         * @param file the file to use to store the fetched data
+         * @return {@code true} if the file was fetched, {@code false} if it was not found
+         */
+        boolean fetch(String key, File file) throws IOException;
+    }
+
+    protected static class Entry {
+
+        protected final long size;
+
+        protected volatile long lastAccess;
+
+        protected Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    protected static class Segment {
+
+        protected final ReentrantLock lock = new ReentrantLock();
+
+        /** Entries in access order, least recently used first. */
+        protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    protected final Path dir;
+
+    protected final long maxSize;
+
+    protected final long maxCount;
+
+    protected final long minAgeMillis;
+
+    protected final Segment[] segments;
+
+    protected final AtomicLong size = new AtomicLong();
+
+    protected final AtomicLong count = new AtomicLong();
+
+    protected final ConcurrentMap<String, CompletableFuture<File>> inFlight = new ConcurrentHashMap<>();
+
+    protected final ExecutorService evictor;
+
+    protected final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
+    protected final ReentrantLock evictionLock = new ReentrantLock();
+
+    protected final LongAdder hits = new LongAdder();
+
+    protected final LongAdder misses = new LongAdder();
+
+    protected final LongAdder evictions = new LongAdder();
+
+    protected final LongAdder evictionRuns = new LongAdder();
+
+    protected final LongAdder evictionNanos = new LongAdder();
+
+    /**
+     * Constructs a cache in the given directory with the given maximum size (in bytes).
+     *
+     * @param dir the directory to use to store cached files
+     * @param maxSize the maximum size of the cache (in bytes)
+     * @param maxCount the maximum number of files in the cache
+     * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
+     */
+    public SegmentedFileCache(File dir, long maxSize, long maxCount, long minAge) {
+        this(dir, maxSize, maxCount, minAge, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Constructs a cache in the given directory with the given maximum size (in bytes) and number of segments.
+     *
+     * @param dir the directory to use to store cached files
+     * @param maxSize the maximum size of the cache (in bytes)
+     * @param maxCount the maximum number of files in the cache
+     * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
+     * @param nsegments the number of segments, rounded up to a power of two
+     */
+    public SegmentedFileCache(File dir, long maxSize, long maxCount, long minAge, int nsegments) {
+        this.dir = dir.toPath();
+        this.maxSize = maxSize;
+        this.maxCount = maxCount;
+        this.minAgeMillis = minAge * 1000;
+        int n = Integer.highestOneBit(Math.max(1, nsegments - 1) << 1);
+        segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment();
+        }
+        evictor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Nuxeo-FileCache-Evictor-" + dir.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!loadIndex()) {
+            scanDirectory();
+        }
+        scheduleEviction();
+    }
+
+    protected Segment getSegment(String key) {
+        // keys are usually digests, use their prefix
+        int h = key.length() >= 2 ? (key.charAt(0) << 8) ^ key.charAt(1) : key.hashCode();
+        h ^= h >>> 7;
+        return segments[h & (segments.length - 1)];
+    }
+
+    protected void checkKey(String key) throws IllegalArgumentException {
+        if (!LRUFileCache.SIMPLE_ASCII.matcher(key).matches() || ".".equals(key) || "..".equals(key)) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+    }
+
+    /**
+     * Reads the index file written when the cache was last closed, if any.
+     *
+     * @return {@code true} if the index was read
+     */
+    protected boolean loadIndex() {
+        Path indexPath = dir.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+        List<String> keys = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("Invalid magic");
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                keys.add(in.readUTF());
+                long fileSize = in.readLong();
+                long lastAccess = in.readLong();
+                entries.add(new Entry(fileSize, lastAccess));
+            }
+        } catch (IOException e) {
+            log.warn("Cannot read file cache index: " + indexPath + ", rebuilding it", e);
+            return false;
+        } finally {
+            // the index is only valid until the cache is modified
+            try {
+                Files.deleteIfExists(indexPath);
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+        }
+        // least recently used first
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (!Files.isRegularFile(dir.resolve(key))) {
+                // deleted while the cache was not running
+                continue;
+            }
+            addEntry(key, entries.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Rebuilds the index by listing the cache directory.
+     */
+    protected void scanDirectory() {
+        List<LRUFileCache.PathInfo> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path path : ds) {
+                String filename = path.getFileName().toString();
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+                if (filename.startsWith(TMP_PREFIX) && filename.endsWith(TMP_SUFFIX)) {
+                    // leftover from a crash
+                    deleteFile(path);
+                    continue;
+                }
+                if (!LRUFileCache.SIMPLE_ASCII.matcher(filename).matches()) {
+                    continue;
+                }
+                try {
+                    files.add(new LRUFileCache.PathInfo(path));
+                } catch (NoSuchFileException e) {
+                    // concurrently deleted
+                }
+            }
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+        Collections.sort(files); // most recent first
+        Collections.reverse(files);
+        for (LRUFileCache.PathInfo pi : files) {
+            addEntry(pi.path.getFileName().toString(), new Entry(pi.size, pi.time));
+        }
+    }
+
+    protected void addEntry(String key, Entry entry) {
+        Segment segment = getSegment(key);
+        segment.lock.lock();
+        try {
+            Entry old = segment.entries.put(key, entry);
+            if (old == null) {
+                count.incrementAndGet();
+                size.addAndGet(entry.size);
+            } else {
+                size.addAndGet(entry.size - old.size);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the index to the cache directory and stops the eviction thread.
+     */
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        try {
+            evictor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            saveIndex();
+        } catch (IOException e) {
+            log.error("Cannot write file cache index in: " + dir, e);
+        }
+    }
+
+    protected void saveIndex() throws IOException {
+        List<String> keys = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                for (Map.Entry<String, Entry> es : segment.entries.entrySet()) {
+                    keys.add(es.getKey());
+                    entries.add(es.getValue());
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        // order by access time across segments, least recently used first
+        List<Integer> order = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            order.add(Integer.valueOf(i));
+        }
+        order.sort((a, b) -> Long.compare(entries.get(a.intValue()).lastAccess, entries.get(b.intValue()).lastAccess));
+        Path tmp = Files.createTempFile(dir, TMP_PREFIX, TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(order.size());
+            for (Integer i : order) {
+                Entry entry = entries.get(i.intValue());
+                out.writeUTF(keys.get(i.intValue()));
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastAccess);
+            }
+        }
+        moveFile(tmp, dir.resolve(INDEX_FILE));
+    }
+
+    /**
+     * Moves a file, atomically if the filesystem allows it (the source may be on another filesystem).
+     */
+    protected static void moveFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size.get();
+    }
+
+    @Override
+    public int getNumberOfItems() {
+        return (int) count.get();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the number of fetches currently in progress.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Gets the average duration of an eviction run, in nanoseconds.
+     */
+    public long getEvictionMeanNanos() {
+        long runs = evictionRuns.sum();
+        return runs == 0 ? 0 : evictionNanos.sum() / runs;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                for (Iterator<Map.Entry<String, Entry>> it = segment.entries.entrySet().iterator(); it.hasNext();) {
+                    Map.Entry<String, Entry> es = it.next();
+                    it.remove();
+                    count.decrementAndGet();
+                    size.addAndGet(-es.getValue().size);
+                    deleteFile(dir.resolve(es.getKey()));
+                }
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    protected void deleteFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+    }
+
+    @Override
+    public File getTempFile() throws IOException {
+        return Files.createTempFile(dir, TMP_PREFIX, TMP_SUFFIX).toFile();
+    }
+
+    /**
+     * Looks up a key, recording the access if it is present.
+     */
+    protected File lookup(String key) {
+        Segment segment = getSegment(key);
+        segment.lock.lock();
+        try {
+            Entry entry = segment.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastAccess = System.currentTimeMillis();
+        } finally {
+            segment.lock.unlock();
+        }
+        return dir.resolve(key).toFile();
+    }
+
+    @Override
+    public File getFile(String key) {
+        checkKey(key);
+        File file = lookup(key);
+        if (file == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return file;
+    }
+
+    /**
+     * Gets a file from the cache, or fetches it and puts it in the cache if absent.
+     * <p>
+     * If several threads ask for the same absent key at the same time, only one of them calls the fetcher.
+     *
+     * @param key the cache key
+     * @param fetcher the fetcher to call if the key is absent
+     * @return the cached file, or {@code null} if the fetcher did not find it
+     * @throws IllegalArgumentException if the key is illegal
+     */
+    public File getFile(String key, Fetcher fetcher) throws IOException {
+        File file = getFile(key);
+        if (file != null) {
+            return file;
+        }
+        CompletableFuture<File> future = new CompletableFuture<>();
+        CompletableFuture<File> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            // another thread is fetching the same key
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while fetching: " + key);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+        try {
+            // the previous fetch may have finished just before we registered
+            file = lookup(key);
+            if (file == null) {
+                File tmp = getTempFile();
+                if (fetcher.fetch(key, tmp)) {
+                    file = putFile(key, tmp);
+                } else {
+                    tmp.delete();
+                }
+            }
+            future.complete(file);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is used as a file name in the directory cache.
+     */
+    @Override
+    public File putFile(String key, InputStream in) throws IOException {
+        File tmp;
+        try {
+            checkKey(key);
+            File file = lookup(key);
+            if (file != null) {
+                return file;
+            }
+            // store the stream in a temporary file
+            tmp = getTempFile();
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                IOUtils.copy(in, out);
+            }
+        } finally {
+            in.close();
+        }
+        return putFile(key, tmp);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is used as a file name in the directory cache.
+     */
+    @Override
+    public File putFile(String key, File file) throws IllegalArgumentException, IOException {
+        checkKey(key);
+        Path source = file.toPath();
+        Path path = dir.resolve(key);
+        long fileSize = Files.size(source);
+        Segment segment = getSegment(key);
+        boolean added = false;
+        segment.lock.lock();
+        try {
+            Entry entry = segment.entries.get(key);
+            if (entry != null) {
+                // already there, remove unused tmp file
+                entry.lastAccess = System.currentTimeMillis();
+                deleteFile(source);
+            } else {
+                // replaces any stale file unknown to the index
+                moveFile(source, path);
+                segment.entries.put(key, new Entry(fileSize, System.currentTimeMillis()));
+                count.incrementAndGet();
+                size.addAndGet(fileSize);
+                added = true;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        if (added) {
+            scheduleEviction();
+        }
+        return path.toFile();
+    }
+
+    protected boolean isOverLimits() {
+        return size.get() > maxSize || count.get() > maxCount;
+    }
+
+    /**
+     * Schedules an asynchronous eviction if the cache is bigger than its limits and no eviction is already scheduled.
+     */
+    protected void scheduleEviction() {
+        if (isOverLimits() && evictionScheduled.compareAndSet(false, true)) {
+            try {
+                evictor.execute(() -> {
+                    evictionScheduled.set(false);
+                    evict();
+                });
+            } catch (RuntimeException e) { // RejectedExecutionException after close
+                evictionScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries old enough until the cache fits in its limits.
+     * <p>
+     * Normally called asynchronously.
+     */
+    public void evict() {
+        evictionLock.lock();
+        try {
+            long t0 = System.nanoTime();
+            doEvict();
+            evictionNanos.add(System.nanoTime() - t0);
+            evictionRuns.increment();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    protected void doEvict() {
+        long threshold = System.currentTimeMillis() - minAgeMillis;
+        while (isOverLimits()) {
+            // find the least recently used entry among the segments' eldest ones
+            Segment victimSegment = null;
+            String victimKey = null;
+            long victimAccess = Long.MAX_VALUE;
+            for (Segment segment : segments) {
+                segment.lock.lock();
+                try {
+                    Iterator<Map.Entry<String, Entry>> it = segment.entries.entrySet().iterator();
+                    if (it.hasNext()) {
+                        Map.Entry<String, Entry> eldest = it.next();
+                        long access = eldest.getValue().lastAccess;
+                        if (access < victimAccess) {
+                            victimSegment = segment;
+                            victimKey = eldest.getKey();
+                            victimAccess = access;
+                        }
+                    }
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+            if (victimSegment == null || victimAccess >= threshold) {
+                // nothing old enough
+                return;
+            }
+            victimSegment.lock.lock();
+            try {
+                // peek at the eldest entry again without get(), which would move it in access order; an access or
+                // removal may have happened in-between, in which case the next round picks a new victim
+                Iterator<Map.Entry<String, Entry>> it = victimSegment.entries.entrySet().iterator();
+                Map.Entry<String, Entry> eldest = it.hasNext() ? it.next() : null;
+                if (eldest != null && eldest.getKey().equals(victimKey)
+                        && eldest.getValue().lastAccess == victimAccess) {
+                    Entry entry = eldest.getValue();
+                    it.remove();
+                    count.decrementAndGet();
+                    size.addAndGet(-entry.size);
+                    deleteFile(dir.resolve(victimKey));
+                    evictions.increment();
+                }
+            } finally {
+                victimSegment.lock.unlock();
+            }
+        }
+    }
+
+}
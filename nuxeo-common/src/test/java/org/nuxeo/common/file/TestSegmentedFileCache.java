@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.common.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSegmentedFileCache {
+
+    public File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("nxtestsegmentedfilecache.", "", new File(System.getProperty("java.io.tmpdir")));
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        SegmentedFileCache cache = new SegmentedFileCache(dir, 100, 9999, 0); // 100 bytes max
+        try {
+            byte[] buf = new byte[30];
+            cache.putFile("1", new ByteArrayInputStream(buf));
+            Thread.sleep(10);
+            cache.putFile("2", new ByteArrayInputStream(buf));
+            Thread.sleep(10);
+            cache.putFile("3", new ByteArrayInputStream(buf));
+            Thread.sleep(10);
+            assertEquals(3, cache.getNumberOfItems());
+            assertEquals(90, cache.getSize());
+            // access 1 so that 2 is the least recently used
+            assertNotNull(cache.getFile("1"));
+            Thread.sleep(10);
+            cache.putFile("4", new ByteArrayInputStream(buf));
+            cache.evict();
+            assertEquals(3, cache.getNumberOfItems());
+            assertEquals(90, cache.getSize());
+            assertTrue(new File(dir, "1").exists());
+            assertFalse(new File(dir, "2").exists());
+            assertNull(cache.getFile("2"));
+            assertTrue(cache.getEvictions() >= 1);
+
+            cache.clear();
+            assertEquals(0, cache.getNumberOfItems());
+            assertEquals(0, cache.getSize());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testMinAge() throws Exception {
+        SegmentedFileCache cache = new SegmentedFileCache(dir, 100, 9999, 3600);
+        try {
+            byte[] buf = new byte[60];
+            cache.putFile("1", new ByteArrayInputStream(buf));
+            cache.putFile("2", new ByteArrayInputStream(buf));
+            cache.evict();
+            // too young to be evicted
+            assertEquals(2, cache.getNumberOfItems());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentFetchDeduplicated() throws Exception {
+        SegmentedFileCache cache = new SegmentedFileCache(dir, 10000, 9999, 0);
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<File>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.getFile("abc", (key, file) -> {
+                        fetches.incrementAndGet();
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                        Files.write(file.toPath(), new byte[5]);
+                        return true;
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<File> future : futures) {
+                assertEquals(new File(dir, "abc"), future.get());
+            }
+            assertEquals(1, fetches.get());
+            assertEquals(0, cache.getInFlight());
+            // not found
+            assertNull(cache.getFile("def", (key, file) -> false));
+            assertEquals(1, cache.getNumberOfItems());
+        } finally {
+            executor.shutdown();
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testWarmRestart() throws Exception {
+        SegmentedFileCache cache = new SegmentedFileCache(dir, 10000, 9999, 0);
+        cache.putFile("1", new ByteArrayInputStream(new byte[10]));
+        cache.putFile("2", new ByteArrayInputStream(new byte[20]));
+        cache.close();
+        assertTrue(new File(dir, SegmentedFileCache.INDEX_FILE).exists());
+
+        // restart from the index
+        cache = new SegmentedFileCache(dir, 10000, 9999, 0);
+        assertFalse(new File(dir, SegmentedFileCache.INDEX_FILE).exists());
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(30, cache.getSize());
+        assertNotNull(cache.getFile("2"));
+        cache.close();
+
+        // restart without index, from the files
+        new File(dir, SegmentedFileCache.INDEX_FILE).delete();
+        cache = new SegmentedFileCache(dir, 10000, 9999, 0);
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(30, cache.getSize());
+        cache.close();
+    }
+
+    @Test
+    public void testWarmRestartDropsMissingFiles() throws Exception {
+        SegmentedFileCache cache = new SegmentedFileCache(dir, 10000, 9999, 0);
+        cache.putFile("1", new ByteArrayInputStream(new byte[10]));
+        cache.putFile("2", new ByteArrayInputStream(new byte[20]));
+        cache.close();
+        // removed while the cache is stopped
+        assertTrue(new File(dir, "2").delete());
+
+        cache = new SegmentedFileCache(dir, 10000, 9999, 0);
+        assertEquals(1, cache.getNumberOfItems());
+        assertEquals(10, cache.getSize());
+        assertNull(cache.getFile("2"));
+        cache.close();
+    }
+
+    @Test
+    public void testPutFileFromOtherDirectory() throws Exception {
+        SegmentedFileCache cache = new SegmentedFileCache(dir, 10000, 9999, 0);
+        File source = File.createTempFile("nxtestsegmentedfilecache-src.", ".tmp");
+        try {
+            Files.write(source.toPath(), new byte[15]);
+            File file = cache.putFile("1", source);
+            assertEquals(dir, file.getParentFile());
+            assertEquals(15, file.length());
+            assertFalse(source.exists());
+            assertEquals(15, cache.getSize());
+        } finally {
+            source.delete();
+            cache.close();
+        }
+    }
+
+}
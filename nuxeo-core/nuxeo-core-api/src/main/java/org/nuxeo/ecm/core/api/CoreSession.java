@@ -243,6 +243,25 @@ public interface CoreSession extends AutoCloseable {
      */
     DocumentModelList getDocuments(DocumentRef[] docRefs) throws DocumentNotFoundException;
 
+    /**
+     * Gets a list of documents given their references, loading in bulk what is needed to render them.
+     * <p>
+     * Documents that are not accessible are skipped. The documents, their ancestors (for the permission checks) and
+     * their locks are read in a constant number of round-trips to the repository, instead of one or more per
+     * document.
+     * <p>
+     * To load the schemas of a facet, pass the schemas of that facet.
+     *
+     * @param docRefs the document references
+     * @param schemas the schemas to load in the document models, or {@code null} to use the document types' prefetch
+     * @param fetchACP whether to load the ACP of the documents (if the user can read it)
+     * @param fetchLock whether to load the lock info of the documents
+     * @throws DocumentNotFoundException if a document cannot be found
+     * @since 9.3
+     */
+    DocumentModelList getDocuments(DocumentRef[] docRefs, String[] schemas, boolean fetchACP, boolean fetchLock)
+            throws DocumentNotFoundException;
+
     /**
      * Gets a child document given its name and the parent reference.
      * <p>
@@ -586,6 +586,27 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
         this.pos = pos;
     }
 
+    /**
+     * Sets the ACP as if it had been loaded from the session. Used internally when documents are loaded in bulk.
+     *
+     * @param acp the merged ACP
+     * @since 9.3
+     */
+    public void prefetchACP(ACP acp) {
+        this.acp = acp;
+        isACPLoaded = true;
+    }
+
+    /**
+     * Sets the lock info as if it had been loaded from the session. Used internally when documents are loaded in bulk.
+     *
+     * @param lock the lock, or {@code null} if the document is not locked
+     * @since 9.3
+     */
+    public void prefetchLockInfo(Lock lock) {
+        this.lock = lock;
+    }
+
     @Override
     public String getPathAsString() {
         if (path != null) {
@@ -19,12 +19,20 @@
 
 package org.nuxeo.ecm.core.blob.binary;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 
+import org.apache.commons.io.IOUtils;
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.blob.BlobProvider;
 import org.nuxeo.runtime.api.Framework;
@@ -101,6 +109,105 @@ public class Binary implements Serializable {
         return new FileInputStream(file);
     }
 
+    /**
+     * Writes the binary to an output stream.
+     * <p>
+     * If the binary is backed by a file and the target is a {@link FileOutputStream}, the bytes are transferred
+     * between the two file channels, which lets the operating system copy them without going through the Java heap.
+     * Other targets get a plain buffered copy.
+     *
+     * @param out the output stream, which is not closed
+     * @return the number of bytes written
+     * @since 9.3
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        File file = getFile();
+        if (file == null) {
+            // not file-based
+            try (InputStream in = getStream()) {
+                return IOUtils.copyLarge(in, out);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return transferTo(channel, 0, channel.size(), out);
+        }
+    }
+
+    /**
+     * Writes a range of the binary to an output stream.
+     * <p>
+     * If the binary is backed by a file, the range is read directly at its position, otherwise the stream is skipped
+     * up to it.
+     *
+     * @param position the position of the first byte to write
+     * @param count the maximum number of bytes to write
+     * @param out the output stream, which is not closed
+     * @return the number of bytes written
+     * @since 9.3
+     */
+    public long transferTo(long position, long count, OutputStream out) throws IOException {
+        File file = getFile();
+        if (file == null) {
+            // not file-based
+            try (InputStream in = getStream()) {
+                skip(in, position);
+                return IOUtils.copyLarge(in, out, 0, count);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return transferTo(channel, position, count, out);
+        }
+    }
+
+    /**
+     * Skips bytes from an input stream.
+     * <p>
+     * Unlike {@link IOUtils#skipFully}, this uses {@link InputStream#skip} so that streams able to seek, like file
+     * streams, don't read the skipped bytes.
+     *
+     * @throws EOFException if the end of the stream is reached
+     * @since 9.3
+     */
+    public static void skip(InputStream in, long n) throws IOException {
+        long remaining = n;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                // skip may not be able to tell the end of stream, read a byte to find out
+                if (in.read() < 0) {
+                    throw new EOFException("Cannot skip " + n + " bytes, end of stream reached");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Writes a range of a file channel to an output stream.
+     * <p>
+     * Only a {@link FileOutputStream} target gets a channel-to-channel transfer, other streams are wrapped in a channel
+     * copying through a buffer.
+     *
+     * @since 9.3
+     */
+    public static long transferTo(FileChannel channel, long position, long count, OutputStream out)
+            throws IOException {
+        @SuppressWarnings("resource") // not ours to close
+        WritableByteChannel target = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel()
+                : Channels.newChannel(out);
+        long done = 0;
+        while (done < count) {
+            long n = channel.transferTo(position + done, count - done, target);
+            if (n <= 0) {
+                // end of file
+                break;
+            }
+            done += n;
+        }
+        return done;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + '(' + digest + ')';
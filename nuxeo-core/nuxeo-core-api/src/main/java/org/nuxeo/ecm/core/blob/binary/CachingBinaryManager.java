@@ -27,19 +27,29 @@ import java.io.OutputStream;
 import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.file.FileCache;
-import org.nuxeo.common.file.LRUFileCache;
+import org.nuxeo.common.file.SegmentedFileCache;
 import org.nuxeo.common.utils.SizeUtils;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.trackers.files.FileEventTracker;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.SharedMetricRegistries;
+
 /**
  * Abstract class for a {@link BinaryManager} that uses a cache for its files because fetching them is expensive.
  * <p>
  * Initialization of the {@link BinaryManager} must call {@link #initializeCache} from the {@link #initialize} method.
+ * <p>
+ * The cache is a {@link SegmentedFileCache}. It is kept in a temporary directory deleted on shutdown, unless the
+ * {@value #CACHE_DIR_PROPERTY} property is set, in which case its content and index are kept across restarts.
  *
  * @since 5.7
  */
@@ -47,8 +57,23 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
 
     private static final Log log = LogFactory.getLog(CachingBinaryManager.class);
 
+    /**
+     * Property for a persistent cache directory, reused across restarts.
+     *
+     * @since 9.3
+     */
+    public static final String CACHE_DIR_PROPERTY = "cachedir";
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
     protected File cachedir;
 
+    /** @since 9.3 */
+    protected boolean persistentCache;
+
+    /** @since 9.3 */
+    protected String configuredCacheDir;
+
     public FileCache fileCache;
 
     protected FileStorage fileStorage;
@@ -58,6 +83,7 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
         super.initialize(blobProviderId, properties);
         descriptor = new BinaryManagerRootDescriptor();
         descriptor.digest = getDefaultDigestAlgorithm();
+        configuredCacheDir = properties.get(CACHE_DIR_PROPERTY);
         log.info("Registering binary manager '" + blobProviderId + "' using " + getClass().getSimpleName());
     }
 
@@ -72,8 +98,34 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      * @since 5.9.2
      */
     protected void initializeCache(File dir, long maxSize, long maxCount, long minAge, FileStorage fileStorage) {
-        fileCache = new LRUFileCache(dir, maxSize, maxCount, minAge);
+        SegmentedFileCache cache = new SegmentedFileCache(dir, maxSize, maxCount, minAge);
+        fileCache = cache;
         this.fileStorage = fileStorage;
+        registerMetrics(cache);
+    }
+
+    protected String getMetricName(String name) {
+        return MetricRegistry.name("nuxeo", "binaries", blobProviderId, "cache", name);
+    }
+
+    protected void registerMetrics(SegmentedFileCache cache) {
+        unregisterMetrics();
+        registry.register(getMetricName("hit-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long hits = cache.getHits();
+                return Ratio.of(hits, hits + cache.getMisses());
+            }
+        });
+        registry.register(getMetricName("in-flight"), (Gauge<Integer>) cache::getInFlight);
+        registry.register(getMetricName("size"), (Gauge<Long>) cache::getSize);
+        registry.register(getMetricName("count"), (Gauge<Integer>) cache::getNumberOfItems);
+        registry.register(getMetricName("evictions"), (Gauge<Long>) cache::getEvictions);
+        registry.register(getMetricName("eviction-mean-time"), (Gauge<Long>) cache::getEvictionMeanNanos);
+    }
+
+    protected void unregisterMetrics() {
+        registry.removeMatching((name, metric) -> name.startsWith(getMetricName("")));
     }
 
     /**
@@ -102,9 +154,16 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      */
     public void initializeCache(String maxSizeStr, String maxCountStr, String minAgeStr, FileStorage fileStorage)
             throws IOException {
-        cachedir = Framework.createTempFile("nxbincache.", "");
-        cachedir.delete();
-        cachedir.mkdir();
+        if (StringUtils.isBlank(configuredCacheDir)) {
+            cachedir = Framework.createTempFile("nxbincache.", "");
+            cachedir.delete();
+            cachedir.mkdir();
+            persistentCache = false;
+        } else {
+            cachedir = new File(Framework.expandVars(configuredCacheDir.trim()));
+            cachedir.mkdirs();
+            persistentCache = true;
+        }
         long maxSize = SizeUtils.parseSizeInBytes(maxSizeStr);
         long maxCount = Long.parseLong(maxCountStr);
         long minAge = Long.parseLong(minAgeStr);
@@ -118,7 +177,17 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
 
     @Override
     public void close() {
-        fileCache.clear();
+        unregisterMetrics();
+        if (!persistentCache) {
+            fileCache.clear();
+        }
+        if (fileCache instanceof SegmentedFileCache) {
+            ((SegmentedFileCache) fileCache).close();
+        }
+        if (persistentCache) {
+            // keep the files for the next startup, the index was saved on close
+            return;
+        }
         if (cachedir != null) {
             try {
                 FileUtils.deleteDirectory(cachedir);
@@ -171,6 +240,10 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      * Used by {@link LazyBinary}.
      */
     public File getFile(String digest) throws IOException {
+        if (fileCache instanceof SegmentedFileCache) {
+            // concurrent fetches of the same digest are done only once
+            return ((SegmentedFileCache) fileCache).getFile(digest, fileStorage::fetchFile);
+        }
         // get file from cache
         File file = fileCache.getFile(digest);
         if (file != null) {
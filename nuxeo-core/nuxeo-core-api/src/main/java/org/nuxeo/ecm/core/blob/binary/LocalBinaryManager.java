@@ -26,7 +26,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
@@ -51,6 +56,9 @@ import org.nuxeo.runtime.trackers.files.FileEventTracker;
  * <li><em>tmp/</em> temporary storage during creation,</li>
  * <li><em>config.xml</em> a file containing the configuration used.</li>
  * </ul>
+ * <p>
+ * If the {@value #PROP_PARALLEL_GC} property is {@code true}, the garbage collector records marked digests in compact
+ * on-disk digest sets instead of touching files, and sweeps each top-level directory in parallel.
  *
  * @author Florent Guillaume
  * @since 5.6
@@ -69,10 +77,19 @@ public class LocalBinaryManager extends AbstractBinaryManager {
 
     public static final String CONFIG_FILE = "config.xml";
 
+    /**
+     * Property to use the parallel garbage collector.
+     *
+     * @since 9.3
+     */
+    public static final String PROP_PARALLEL_GC = "parallelGC";
+
     protected File storageDir;
 
     protected File tmpDir;
 
+    protected boolean parallelGC;
+
     @Override
     public void initialize(String blobProviderId, Map<String, String> properties) throws IOException {
         super.initialize(blobProviderId, properties);
@@ -108,6 +125,7 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         storageDir.mkdirs();
         tmpDir.mkdirs();
         descriptor = getDescriptor(new File(base, CONFIG_FILE));
+        parallelGC = Boolean.parseBoolean(properties.get(PROP_PARALLEL_GC));
         createGarbageCollector();
 
         // be sure FileTracker won't steal our files !
@@ -247,7 +265,11 @@ public class LocalBinaryManager extends AbstractBinaryManager {
     }
 
     protected void createGarbageCollector() {
-        garbageCollector = new DefaultBinaryGarbageCollector(this);
+        if (parallelGC) {
+            garbageCollector = new ParallelBinaryGarbageCollector(this);
+        } else {
+            garbageCollector = new DefaultBinaryGarbageCollector(this);
+        }
     }
 
     public static class DefaultBinaryGarbageCollector implements BinaryGarbageCollector {
@@ -314,10 +336,16 @@ public class LocalBinaryManager extends AbstractBinaryManager {
 
         protected void deleteOld(File file, long minTime, int depth, boolean delete) {
             if (file.isDirectory()) {
-                for (File f : file.listFiles()) {
+                File[] files = file.listFiles();
+                if (files == null) {
+                    // removed concurrently or unreadable
+                    return;
+                }
+                for (File f : files) {
                     deleteOld(f, minTime, depth + 1, delete);
                 }
-                if (depth > 0 && file.list().length == 0) {
+                String[] remaining = file.list();
+                if (depth > 0 && remaining != null && remaining.length == 0) {
                     // empty directory
                     file.delete();
                 }
@@ -340,6 +368,177 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         }
     }
 
+    /**
+     * Garbage collector that records marked digests in {@link MappedDigestSet}s, one per top-level directory (digest
+     * prefix), and sweeps these directories in parallel on a fork-join pool.
+     * <p>
+     * Marking doesn't touch the files, and the sweep only has to read each file's metadata once.
+     *
+     * @since 9.3
+     */
+    public static class ParallelBinaryGarbageCollector extends DefaultBinaryGarbageCollector {
+
+        /** Marked digests, by top-level directory name then digest length. */
+        protected Map<String, Map<Integer, MappedDigestSet>> marked;
+
+        public ParallelBinaryGarbageCollector(LocalBinaryManager binaryManager) {
+            super(binaryManager);
+        }
+
+        @Override
+        public void start() {
+            super.start();
+            marked = new HashMap<>();
+        }
+
+        protected String getShard(String digest) {
+            return binaryManager.descriptor.depth == 0 ? "" : digest.substring(0, 2);
+        }
+
+        @Override
+        public void mark(String digest) {
+            byte[] key = MappedDigestSet.toBytes(digest);
+            if (key == null) {
+                log.error("Invalid digest: " + digest);
+                return;
+            }
+            String shard = getShard(digest);
+            synchronized (this) {
+                MappedDigestSet set = marked.computeIfAbsent(shard, k -> new HashMap<>()).get(key.length);
+                try {
+                    if (set == null) {
+                        set = new MappedDigestSet(binaryManager.tmpDir.toPath(), key.length);
+                        marked.get(shard).put(key.length, set);
+                    }
+                    set.add(key);
+                } catch (IOException e) {
+                    throw new NuxeoException("Cannot mark digest: " + digest, e);
+                }
+            }
+        }
+
+        protected boolean isMarked(String shard, String digest) {
+            byte[] key = MappedDigestSet.toBytes(digest);
+            if (key == null) {
+                return false;
+            }
+            Map<Integer, MappedDigestSet> sets = marked.get(shard);
+            if (sets == null) {
+                return false;
+            }
+            MappedDigestSet set = sets.get(key.length);
+            return set != null && set.contains(key);
+        }
+
+        @Override
+        public void stop(boolean delete) {
+            if (startTime == 0) {
+                throw new RuntimeException("Not started");
+            }
+            try {
+                File storageDir = binaryManager.getStorageDir();
+                long minTime = startTime - TIME_RESOLUTION;
+                List<SweepTask> tasks = new ArrayList<>();
+                File[] files = storageDir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        String shard = binaryManager.descriptor.depth == 0 ? "" : file.getName();
+                        tasks.add(new SweepTask(file, shard, minTime, delete));
+                    }
+                }
+                ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+                for (SweepTask task : tasks) {
+                    status.numBinaries += task.status.numBinaries;
+                    status.sizeBinaries += task.status.sizeBinaries;
+                    status.numBinariesGC += task.status.numBinariesGC;
+                    status.sizeBinariesGC += task.status.sizeBinariesGC;
+                }
+            } finally {
+                for (Map<Integer, MappedDigestSet> sets : marked.values()) {
+                    sets.values().forEach(MappedDigestSet::close);
+                }
+                marked = null;
+            }
+            status.gcDuration = System.currentTimeMillis() - startTime;
+            startTime = 0;
+        }
+
+        /**
+         * Sweeps one top-level directory, with its own status to avoid contention.
+         */
+        protected class SweepTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            protected final File root;
+
+            protected final String shard;
+
+            protected final long minTime;
+
+            protected final boolean delete;
+
+            protected final BinaryManagerStatus status = new BinaryManagerStatus();
+
+            protected SweepTask(File root, String shard, long minTime, boolean delete) {
+                this.root = root;
+                this.shard = shard;
+                this.minTime = minTime;
+                this.delete = delete;
+            }
+
+            @Override
+            protected void compute() {
+                sweep(root, 0);
+            }
+
+            protected void sweep(File file, int depth) {
+                if (file.isDirectory()) {
+                    File[] files = file.listFiles();
+                    if (files == null) {
+                        return;
+                    }
+                    for (File f : files) {
+                        sweep(f, depth + 1);
+                    }
+                    String[] remaining = file.list();
+                    if (remaining != null && remaining.length == 0) {
+                        // empty directory
+                        file.delete();
+                    }
+                } else if (file.isFile()) {
+                    long length = file.length();
+                    if (isMarked(shard, file.getName())) {
+                        status.sizeBinaries += length;
+                        status.numBinaries++;
+                        return;
+                    }
+                    // not marked, but keep files created since the GC started
+                    long lastModified = file.lastModified();
+                    if (lastModified == 0) {
+                        log.error("Cannot read last modified for file: " + file);
+                    } else if (lastModified < minTime && file.canWrite()) {
+                        status.sizeBinariesGC += length;
+                        status.numBinariesGC++;
+                        if (delete && !file.delete()) {
+                            log.warn("Cannot gc file: " + file);
+                        }
+                    } else {
+                        status.sizeBinaries += length;
+                        status.numBinaries++;
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Sets the last modification date to now on a file
      *
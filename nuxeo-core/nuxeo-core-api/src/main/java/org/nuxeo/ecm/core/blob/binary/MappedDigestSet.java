@@ -0,0 +1,253 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A set of fixed-length binary digests, stored in an open-addressing hash table in a memory-mapped file.
+ * <p>
+ * This allows keeping a compact index of millions of digests without using Java objects for each of them. The table
+ * grows (in a new file) when it becomes half full. An all-zero slot means empty, the all-zero digest is tracked
+ * separately.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @since 9.3
+ */
+public class MappedDigestSet implements Closeable {
+
+    protected static final int MIN_CAPACITY = 1024;
+
+    protected final Path dir;
+
+    protected final int keyLength;
+
+    protected Path file;
+
+    protected MappedByteBuffer table;
+
+    /** Number of slots, a power of 2. */
+    protected int capacity;
+
+    protected int size;
+
+    protected boolean containsZero;
+
+    /**
+     * Creates a new set whose file is stored in the given directory.
+     *
+     * @param dir the directory for the file
+     * @param keyLength the length of the digests in bytes
+     */
+    public MappedDigestSet(Path dir, int keyLength) throws IOException {
+        this.dir = dir;
+        this.keyLength = keyLength;
+        allocate(MIN_CAPACITY);
+    }
+
+    protected void allocate(int newCapacity) throws IOException {
+        long bytes = (long) newCapacity * keyLength;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Digest set too big: " + newCapacity);
+        }
+        Path newFile = Files.createTempFile(dir, "digests-", ".tmp");
+        Files.delete(newFile);
+        MappedByteBuffer newTable;
+        try (FileChannel channel = FileChannel.open(newFile, CREATE_NEW, READ, WRITE)) {
+            // the mapping extends the file, which is sparse and reads as zeros
+            newTable = channel.map(MapMode.READ_WRITE, 0, bytes);
+        }
+        MappedByteBuffer oldTable = table;
+        int oldCapacity = capacity;
+        Path oldFile = file;
+        table = newTable;
+        capacity = newCapacity;
+        file = newFile;
+        if (oldTable != null) {
+            // rehash
+            byte[] key = new byte[keyLength];
+            for (int i = 0; i < oldCapacity; i++) {
+                oldTable.position(i * keyLength);
+                oldTable.get(key);
+                if (!isZero(key)) {
+                    insert(key);
+                }
+            }
+            deleteFile(oldFile);
+        }
+    }
+
+    protected static void deleteFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // may happen on Windows while the file is still mapped
+            path.toFile().deleteOnExit();
+        }
+    }
+
+    protected static boolean isZero(byte[] key) {
+        for (byte b : key) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected int hash(byte[] key) {
+        int h = 0;
+        for (byte b : key) {
+            h = 31 * h + b;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /**
+     * Finds the slot of the key, or the empty slot where it should be inserted.
+     */
+    protected int find(byte[] key) {
+        int mask = capacity - 1;
+        int slot = hash(key) & mask;
+        for (;;) {
+            int offset = slot * keyLength;
+            boolean empty = true;
+            boolean equal = true;
+            for (int i = 0; i < keyLength; i++) {
+                byte b = table.get(offset + i);
+                if (b != 0) {
+                    empty = false;
+                }
+                if (b != key[i]) {
+                    equal = false;
+                }
+            }
+            if (equal || empty) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    protected boolean insert(byte[] key) {
+        int offset = find(key) * keyLength;
+        for (int i = 0; i < keyLength; i++) {
+            if (table.get(offset + i) != 0) {
+                // slot not empty so key already present
+                return false;
+            }
+        }
+        for (int i = 0; i < keyLength; i++) {
+            table.put(offset + i, key[i]);
+        }
+        return true;
+    }
+
+    protected void checkLength(byte[] key) {
+        if (key.length != keyLength) {
+            throw new IllegalArgumentException("Invalid key length: " + key.length + ", expected: " + keyLength);
+        }
+    }
+
+    /**
+     * Adds a digest to the set.
+     *
+     * @return {@code true} if the digest was not already present
+     */
+    public boolean add(byte[] key) throws IOException {
+        checkLength(key);
+        if (isZero(key)) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        if (!insert(key)) {
+            return false;
+        }
+        size++;
+        if (size * 2 >= capacity) {
+            allocate(capacity * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the set contains the digest.
+     */
+    public boolean contains(byte[] key) {
+        checkLength(key);
+        if (isZero(key)) {
+            return containsZero;
+        }
+        int offset = find(key) * keyLength;
+        for (int i = 0; i < keyLength; i++) {
+            if (table.get(offset + i) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size + (containsZero ? 1 : 0);
+    }
+
+    @Override
+    public void close() {
+        table = null;
+        deleteFile(file);
+    }
+
+    /**
+     * Converts a hex digest to bytes.
+     *
+     * @return the bytes, or {@code null} if the string is not a valid hex digest
+     */
+    public static byte[] toBytes(String hex) {
+        int len = hex.length();
+        if (len == 0 || len % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            int hi = Character.digit(hex.charAt(i), 16);
+            int lo = Character.digit(hex.charAt(i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            bytes[i / 2] = (byte) ((hi << 4) | lo);
+        }
+        return bytes;
+    }
+
+}
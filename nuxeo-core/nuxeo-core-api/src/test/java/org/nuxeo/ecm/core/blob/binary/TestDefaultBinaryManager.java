@@ -27,7 +27,10 @@ import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
@@ -45,11 +48,20 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
 
     @Test
     public void testDefaultBinaryManager() throws Exception {
+        doTestBinaryManager(Collections.emptyMap());
+    }
+
+    @Test
+    public void testDefaultBinaryManagerParallelGC() throws Exception {
+        doTestBinaryManager(Collections.singletonMap(LocalBinaryManager.PROP_PARALLEL_GC, "true"));
+    }
+
+    protected void doTestBinaryManager(Map<String, String> properties) throws Exception {
         deployBundle("org.nuxeo.ecm.core.api");
         deployContrib("org.nuxeo.ecm.core.api.tests", "OSGI-INF/test-default-blob-provider.xml");
 
         DefaultBinaryManager binaryManager = new DefaultBinaryManager();
-        binaryManager.initialize("repo", Collections.emptyMap());
+        binaryManager.initialize("repo", properties);
         assertEquals(0, countFiles(binaryManager.getStorageDir()));
 
         Binary binary = binaryManager.getBinary(CONTENT_MD5);
@@ -138,6 +150,30 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    @Test
+    public void testMappedDigestSet() throws IOException {
+        Path dir = Files.createTempDirectory("nxtest");
+        try (MappedDigestSet set = new MappedDigestSet(dir, 16)) {
+            byte[] digest = MappedDigestSet.toBytes(CONTENT_MD5);
+            assertFalse(set.contains(digest));
+            assertTrue(set.add(digest));
+            assertFalse(set.add(digest));
+            assertTrue(set.contains(digest));
+            // zero key and growth
+            assertTrue(set.add(new byte[16]));
+            for (int i = 0; i < 5000; i++) {
+                set.add(MappedDigestSet.toBytes(String.format("%032x", i + 1)));
+            }
+            assertEquals(5002, set.size());
+            assertTrue(set.contains(digest));
+            assertTrue(set.contains(MappedDigestSet.toBytes(String.format("%032x", 4000))));
+        }
+        assertNull(MappedDigestSet.toBytes("not-a-digest"));
+        // file removed on close
+        assertEquals(0, dir.toFile().list().length);
+        Files.delete(dir);
+    }
+
     protected static int countFiles(File dir) {
         int n = 0;
         for (File f : dir.listFiles()) {
@@ -21,6 +21,8 @@ package org.nuxeo.ecm.core.convert.cache;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 
@@ -35,15 +37,21 @@ public class CacheKeyGenerator {
     private CacheKeyGenerator() {
     }
 
+    /**
+     * Computes the cache key for a conversion.
+     * <p>
+     * The key is canonical: the same conversion parameters always give the same key, whatever their order in the map.
+     */
     public static String computeKey(String converterName, BlobHolder blobHolder, Map<String, Serializable> parameters) {
         StringBuilder sb = new StringBuilder();
         sb.append(converterName);
         sb.append(":");
         sb.append(blobHolder.getHash());
         if (parameters != null) {
-            for (String key : parameters.keySet()) {
-                sb.append(":").append(key);
-                sb.append(":").append(String.valueOf(parameters.get(key)));
+            // sort the parameters so that the key doesn't depend on the map iteration order
+            for (Entry<String, Serializable> es : new TreeMap<>(parameters).entrySet()) {
+                sb.append(":").append(es.getKey());
+                sb.append(":").append(String.valueOf(es.getValue()));
             }
         }
         return sb.toString();
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Date;
 
+import org.apache.commons.io.FileUtils;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 
@@ -35,7 +36,7 @@ import org.nuxeo.ecm.core.convert.api.ConversionService;
  */
 public class ConversionCacheEntry {
 
-    protected Date lastAccessTime;
+    protected volatile Date lastAccessTime;
 
     protected BlobHolder bh;
 
@@ -50,6 +51,18 @@ public class ConversionCacheEntry {
         updateAccessTime();
     }
 
+    /**
+     * Creates an entry for a conversion result already persisted on disk.
+     *
+     * @since 9.3
+     */
+    public ConversionCacheEntry(String persistPath, long sizeInKB, Date lastAccessTime) {
+        this.persistPath = persistPath;
+        this.sizeInKB = sizeInKB;
+        this.lastAccessTime = lastAccessTime;
+        persisted = true;
+    }
+
     protected void updateAccessTime() {
         lastAccessTime = new Date();
     }
@@ -59,7 +72,7 @@ public class ConversionCacheEntry {
             CachableBlobHolder cbh = (CachableBlobHolder) bh;
             persistPath = cbh.persist(basePath);
             if (persistPath != null) {
-                sizeInKB = new File(persistPath).length() / 1024;
+                sizeInKB = FileUtils.sizeOf(new File(persistPath)) / 1024;
                 persisted = true;
             }
         }
@@ -69,7 +82,8 @@ public class ConversionCacheEntry {
 
     public void remove() {
         if (persisted && persistPath != null) {
-            new File(persistPath).delete();
+            // may be a directory for multi-blob results
+            FileUtils.deleteQuietly(new File(persistPath));
         }
     }
 
@@ -96,4 +110,11 @@ public class ConversionCacheEntry {
         return lastAccessTime;
     }
 
+    /**
+     * @since 9.3
+     */
+    public String getPersistPath() {
+        return persistPath;
+    }
+
 }
@@ -21,21 +21,15 @@
  */
 package org.nuxeo.ecm.core.convert.cache;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
 
 /**
  * Manages GC processing to clean up disk cache.
+ * <p>
+ * The cache size is already bounded when entries are added, see {@link ConversionCacheHolder#addToCache}, the GC is
+ * mostly a safety net that also saves the cache index when the cache is persistent.
  *
  * @author tiry
  */
@@ -68,16 +62,7 @@ public class ConversionCacheGCManager {
     }
 
     public static long getCacheSizeInKB() {
-        long totalSize = 0;
-        Set<String> cacheKeys = ConversionCacheHolder.getCacheKeys();
-
-        for (String key : cacheKeys) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(key);
-            if (cacheEntry != null) {
-                totalSize += cacheEntry.getDiskSpaceUsageInKB();
-            }
-        }
-        return totalSize;
+        return ConversionCacheHolder.getCacheSizeInKB();
     }
 
     public static boolean gcIfNeeded() {
@@ -86,6 +71,10 @@ public class ConversionCacheGCManager {
         long totalSize = getCacheSizeInKB();
         long limit = getMaxDiskSpaceUsageKB();
 
+        if (ConversionServiceImpl.isCachePersistent()) {
+            ConversionCacheHolder.saveIndex();
+        }
+
         if (totalSize < limit) {
             gcCalls += 1;
             log.debug("No GC needed, go back to sleep for now");
@@ -106,34 +95,7 @@ public class ConversionCacheGCManager {
     }
 
     public static void doGC(long deltaInKB) {
-
-        Set<String> cacheKeys = ConversionCacheHolder.getCacheKeys();
-
-        Map<Date, String> sortingMap = new HashMap<Date, String>();
-
-        for (String key : cacheKeys) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(key);
-            Objects.requireNonNull(cacheEntry, key);
-            sortingMap.put(cacheEntry.getLastAccessedTime(), key);
-        }
-
-        List<Date> accessTimeList = new ArrayList<Date>();
-        accessTimeList.addAll(sortingMap.keySet());
-        Collections.sort(accessTimeList);
-
-        long deletedVolume = 0;
-        for (Date accessDate : accessTimeList) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(sortingMap.get(accessDate));
-
-            long deletePotential = cacheEntry.getDiskSpaceUsageInKB();
-
-            deletedVolume += deletePotential;
-            ConversionCacheHolder.removeFromCache(sortingMap.get(accessDate));
-
-            if (deletedVolume > deltaInKB) {
-                break;
-            }
-        }
+        ConversionCacheHolder.evict(deltaInKB, null);
         gcRuns += 1;
     }
 
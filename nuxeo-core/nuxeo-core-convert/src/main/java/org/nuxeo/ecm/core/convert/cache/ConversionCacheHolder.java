@@ -20,34 +20,82 @@
 package org.nuxeo.ecm.core.convert.cache;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.utils.Path;
+import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
+import org.nuxeo.ecm.core.transientstore.api.TransientStore;
+import org.nuxeo.ecm.core.transientstore.api.TransientStoreService;
+import org.nuxeo.runtime.api.Framework;
 
 /**
  * Manager for the cache system of the {@link ConversionService}.
+ * <p>
+ * Concurrent conversions for the same key are deduplicated: only one thread runs the converter, the others wait for
+ * it and read the result from the cache, or fail with its error. The cache size is bounded on each addition by
+ * evicting the least recently accessed entries, and the cache index can be saved to disk to survive restarts.
  *
  * @author tiry
  */
 public class ConversionCacheHolder {
 
-    protected static final Map<String, ConversionCacheEntry> cache = new HashMap<>();
+    protected static final Map<String, ConversionCacheEntry> cache = new ConcurrentHashMap<>();
 
-    protected static final ReentrantReadWriteLock cacheLock = new ReentrantReadWriteLock();
+    /**
+     * Conversions in progress, completed with {@code true} if the result was added to the cache.
+     *
+     * @since 9.3
+     */
+    protected static final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    /** @since 9.3 */
+    protected static final AtomicLong cacheSizeInKB = new AtomicLong();
+
+    /** @since 9.3 */
+    protected static final ReentrantLock evictionLock = new ReentrantLock();
+
+    /** @since 9.3 */
+    public static final String INDEX_FILE_NAME = "index.properties";
+
+    /**
+     * Percentage of the maximum size down to which the cache is evicted, so that the next additions don't each
+     * trigger an eviction.
+     *
+     * @since 9.3
+     */
+    public static final int EVICTION_LOW_WATER_PERCENT = 90;
 
     private static final Log log = LogFactory.getLog(ConversionCacheHolder.class);
 
@@ -55,18 +103,27 @@ public class ConversionCacheHolder {
 
     public static int subPathPartSize = 2;
 
-    public static long cacheHits = 0;
+    protected static final AtomicLong cacheHits = new AtomicLong();
 
     // Utility class.
     private ConversionCacheHolder() {
     }
 
     public static long getCacheHits() {
-        return cacheHits;
+        return cacheHits.get();
     }
 
     public static int getNbCacheEntries() {
-        return cache.keySet().size();
+        return cache.size();
+    }
+
+    /**
+     * Gets the disk space used by the cache entries.
+     *
+     * @since 9.3
+     */
+    public static long getCacheSizeInKB() {
+        return cacheSizeInKB.get();
     }
 
     protected static List<String> getSubPathFromKey(String key) {
@@ -107,15 +164,6 @@ public class ConversionCacheHolder {
 
     public static void addToCache(String key, BlobHolder result) {
         Objects.requireNonNull(key);
-        cacheLock.writeLock().lock();
-        try {
-            doAddToCache(key, result);
-        } finally {
-            cacheLock.writeLock().unlock();
-        }
-    }
-
-    protected static void doAddToCache(String key, BlobHolder result) {
         ConversionCacheEntry cce = new ConversionCacheEntry(result);
         boolean persisted = false;
 
@@ -126,82 +174,305 @@ public class ConversionCacheHolder {
         }
 
         if (persisted) {
-            cache.put(key, cce);
+            putEntry(key, cce);
+            evictIfNeeded(key);
         }
     }
 
-    public static void removeFromCache(String key) {
-        cacheLock.writeLock().lock();
-        try {
-            doRemoveFromCache(key);
-        } finally {
-            cacheLock.writeLock().unlock();
+    protected static void putEntry(String key, ConversionCacheEntry cce) {
+        ConversionCacheEntry old = cache.put(key, cce);
+        cacheSizeInKB.addAndGet(cce.getDiskSpaceUsageInKB());
+        if (old != null) {
+            cacheSizeInKB.addAndGet(-old.getDiskSpaceUsageInKB());
+            // the same result is persisted to the same path, don't delete the new one
+            if (!Objects.equals(old.getPersistPath(), cce.getPersistPath())) {
+                old.remove();
+            }
         }
-
     }
 
-    protected static void doRemoveFromCache(String key) {
-        if (cache.containsKey(key)) {
-            ConversionCacheEntry cce = cache.get(key);
+    public static void removeFromCache(String key) {
+        ConversionCacheEntry cce = cache.remove(key);
+        if (cce != null) {
+            cacheSizeInKB.addAndGet(-cce.getDiskSpaceUsageInKB());
             cce.remove();
-            cache.remove(key);
         }
     }
 
     public static ConversionCacheEntry getCacheEntry(String key) {
-        cacheLock.readLock().lock();
+        return cache.get(key);
+    }
+
+    public static BlobHolder getFromCache(String key) {
+        ConversionCacheEntry cacheEntry = cache.get(key);
+        if (cacheEntry != null) {
+            cacheHits.incrementAndGet();
+            return cacheEntry.restore();
+        }
+        return null;
+    }
+
+    /**
+     * Gets a conversion result from the cache, or computes it and adds it to the cache.
+     * <p>
+     * Only one thread at a time runs the conversion for a given key, the other threads asking for the same key wait
+     * for it to finish and then read the result from the cache. If that conversion fails, the waiting threads fail
+     * with a {@link ConversionException} caused by its error. If it takes longer than the configured wait timeout,
+     * the waiting threads run the conversion themselves. If a shared {@link TransientStore} is configured, it is
+     * checked before running the conversion, and is then filled with its result so that other cluster nodes can reuse
+     * it.
+     *
+     * @param key the cache key, as computed by {@link CacheKeyGenerator}
+     * @param conversion the conversion to run on cache miss
+     * @return the conversion result
+     * @throws ConversionException if the same conversion failed in another thread
+     * @since 9.3
+     */
+    public static BlobHolder getOrConvert(String key, Supplier<BlobHolder> conversion) {
+        Objects.requireNonNull(key);
+        BlobHolder result = getFromCache(key);
+        if (result != null) {
+            return result;
+        }
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            // another thread is doing the same conversion, reuse its result
+            result = awaitConversion(key, running);
+            return result == null ? conversion.get() : result;
+        }
         try {
-            return doGetCacheEntry(key);
+            // the conversion may have finished between our cache lookup and our registration
+            result = getFromCache(key);
+            if (result == null) {
+                result = getFromSharedStore(key);
+            }
+            if (result == null) {
+                result = conversion.get();
+                addToCache(key, result);
+                putInSharedStore(key);
+            }
+            future.complete(Boolean.valueOf(cache.containsKey(key)));
+            return result;
+        } catch (RuntimeException | Error e) { // NOSONAR (rethrown)
+            future.completeExceptionally(e);
+            throw e;
         } finally {
-            cacheLock.readLock().unlock();
+            inFlight.remove(key, future);
         }
     }
 
-    protected static ConversionCacheEntry doGetCacheEntry(String key) {
-        return cache.get(key);
+    /**
+     * Waits for a conversion running in another thread, and gets its result from the cache.
+     *
+     * @return the conversion result, or {@code null} if it could not be cached or the wait timed out
+     * @throws ConversionException if the conversion failed
+     * @since 9.3
+     */
+    protected static BlobHolder awaitConversion(String key, CompletableFuture<Boolean> running) {
+        long timeout = ConversionServiceImpl.getConversionWaitTimeout();
+        boolean cached;
+        try {
+            cached = running.get(timeout, TimeUnit.SECONDS).booleanValue();
+        } catch (ExecutionException e) {
+            throw new ConversionException("Conversion failed in another thread for key: " + key, e.getCause());
+        } catch (TimeoutException e) {
+            log.warn("Conversion still running in another thread after " + timeout + "s, converting again key: " + key);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted while waiting for conversion of key: " + key, e);
+        }
+        return cached ? getFromCache(key) : null;
     }
 
-    public static BlobHolder getFromCache(String key) {
-        cacheLock.readLock().lock();
+    protected static TransientStore getSharedStore() {
+        String storeName = ConversionServiceImpl.getSharedCacheStoreName();
+        if (storeName == null) {
+            return null;
+        }
+        TransientStoreService tss = Framework.getService(TransientStoreService.class);
+        return tss == null ? null : tss.getStore(storeName);
+    }
+
+    protected static String getSharedStoreKey(String key) {
+        // cache keys can be long and contain any character
+        return "convert-" + DigestUtils.md5Hex(key);
+    }
+
+    protected static BlobHolder getFromSharedStore(String key) {
+        TransientStore store = getSharedStore();
+        if (store == null) {
+            return null;
+        }
+        String storeKey = getSharedStoreKey(key);
+        if (!store.exists(storeKey) || !store.isCompleted(storeKey)) {
+            return null;
+        }
+        List<Blob> blobs = store.getBlobs(storeKey);
+        if (blobs == null || blobs.isEmpty()) {
+            return null;
+        }
+        // copy it in the local cache and restore it from there
+        addToCache(key, new SimpleCachableBlobHolder(blobs));
+        return getFromCache(key);
+    }
+
+    protected static void putInSharedStore(String key) {
+        TransientStore store = getSharedStore();
+        ConversionCacheEntry cce = cache.get(key);
+        if (store == null || cce == null) {
+            return;
+        }
+        // use the persisted copy, the store may move temporary blobs returned to the caller
+        BlobHolder persisted = cce.restore();
+        if (persisted == null) {
+            return;
+        }
+        String storeKey = getSharedStoreKey(key);
+        try {
+            store.putBlobs(storeKey, persisted.getBlobs());
+            store.setCompleted(storeKey, true);
+        } catch (RuntimeException e) {
+            // the shared store is an optimization, the local cache is still valid
+            log.warn("Cannot share conversion result for key: " + key, e);
+        }
+    }
+
+    /**
+     * Evicts the least recently accessed entries if the cache is larger than the configured maximum size, down to
+     * {@value #EVICTION_LOW_WATER_PERCENT}% of it.
+     * <p>
+     * The entry that was just added is never evicted. If another thread is already evicting, nothing is done.
+     */
+    protected static void evictIfNeeded(String addedKey) {
+        long limit = ConversionServiceImpl.getMaxCacheSizeInKB();
+        if (limit < 0) {
+            // negative limit means cleanup everything, done by the GC thread
+            return;
+        }
+        if (cacheSizeInKB.get() <= limit || !evictionLock.tryLock()) {
+            return;
+        }
         try {
-            return doGetFromCache(key);
+            evict(cacheSizeInKB.get() - limit * EVICTION_LOW_WATER_PERCENT / 100, addedKey);
         } finally {
-            cacheLock.readLock().unlock();
+            evictionLock.unlock();
         }
     }
 
-    protected static BlobHolder doGetFromCache(String key) {
-        ConversionCacheEntry cacheEntry = cache.get(key);
-        if (cacheEntry != null) {
-            if (cacheHits == Long.MAX_VALUE) {
-                cacheHits = 0;
-            } else {
-                cacheHits += 1;
+    /**
+     * Evicts the least recently accessed entries until at least the given size is freed. At least one entry is
+     * evicted.
+     *
+     * @param deltaInKB the size to free
+     * @param keepKey a key not to evict, or {@code null}
+     * @since 9.3
+     */
+    public static void evict(long deltaInKB, String keepKey) {
+        List<Entry<String, ConversionCacheEntry>> entries = new ArrayList<>(cache.entrySet());
+        entries.sort(Comparator.comparing(es -> es.getValue().getLastAccessedTime()));
+        long deletedVolume = 0;
+        for (Entry<String, ConversionCacheEntry> es : entries) {
+            if (es.getKey().equals(keepKey)) {
+                continue;
+            }
+            deletedVolume += es.getValue().getDiskSpaceUsageInKB();
+            removeFromCache(es.getKey());
+            if (deletedVolume >= deltaInKB) {
+                break;
             }
-            return cacheEntry.restore();
         }
-        return null;
     }
 
     public static Set<String> getCacheKeys() {
-        cacheLock.readLock().lock();
+        return new HashSet<>(cache.keySet());
+    }
+
+    protected static File getIndexFile() {
+        return new File(ConversionServiceImpl.getCacheBasePath(), INDEX_FILE_NAME);
+    }
+
+    /**
+     * Saves the cache index to disk, so that the persisted entries can be reloaded after a restart.
+     *
+     * @since 9.3
+     */
+    public static void saveIndex() {
+        File base = new File(ConversionServiceImpl.getCacheBasePath());
+        java.nio.file.Path basePath = base.toPath();
+        Properties index = new Properties();
+        for (Entry<String, ConversionCacheEntry> es : cache.entrySet()) {
+            ConversionCacheEntry cce = es.getValue();
+            String relative = basePath.relativize(new File(cce.getPersistPath()).toPath()).toString();
+            index.setProperty(es.getKey(), cce.getDiskSpaceUsageInKB() + ":" + cce.getLastAccessedTime().getTime() + ":"
+                    + relative);
+        }
+        File file = getIndexFile();
+        File tmp = new File(base, INDEX_FILE_NAME + ".tmp");
         try {
-            return new HashSet<>(cache.keySet());
-        } finally {
-            cacheLock.readLock().unlock();
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                index.store(out, null);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Cannot save conversion cache index: " + file, e);
         }
     }
 
+    /**
+     * Loads the cache index saved by {@link #saveIndex}, skipping the entries whose files have disappeared.
+     *
+     * @since 9.3
+     */
+    public static void loadIndex() {
+        File file = getIndexFile();
+        if (!file.exists()) {
+            return;
+        }
+        Properties index = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            index.load(in);
+        } catch (IOException e) {
+            log.error("Cannot load conversion cache index: " + file, e);
+            return;
+        }
+        File base = new File(ConversionServiceImpl.getCacheBasePath());
+        for (String key : index.stringPropertyNames()) {
+            String[] parts = index.getProperty(key).split(":", 3);
+            if (parts.length != 3) {
+                continue;
+            }
+            File persisted = new File(base, parts[2]);
+            if (!persisted.exists()) {
+                continue;
+            }
+            try {
+                putEntry(key, new ConversionCacheEntry(persisted.getAbsolutePath(), Long.parseLong(parts[0]),
+                        new Date(Long.parseLong(parts[1]))));
+            } catch (NumberFormatException e) {
+                log.debug("Invalid conversion cache index entry for key: " + key);
+            }
+        }
+        log.debug("Loaded " + cache.size() + " conversion cache entries");
+    }
+
+    /**
+     * Forgets the cache entries, without deleting their files.
+     *
+     * @since 9.3
+     */
+    public static void clearIndex() {
+        cache.clear();
+        cacheSizeInKB.set(0);
+    }
+
     /**
      * @since 6.0
      */
     public static void deleteCache() {
-        cacheLock.writeLock().lock();
-        try {
-            cache.clear();
-            new File(ConversionServiceImpl.getCacheBasePath()).delete();
-        } finally {
-            cacheLock.writeLock().unlock();
-        }
+        clearIndex();
+        new File(ConversionServiceImpl.getCacheBasePath()).delete();
     }
 }
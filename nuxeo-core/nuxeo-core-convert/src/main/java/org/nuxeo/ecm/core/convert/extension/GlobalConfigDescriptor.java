@@ -46,6 +46,12 @@ public class GlobalConfigDescriptor implements Serializable {
 
     public static final String DEFAULT_CACHING_DIRECTORY = "convertcache";
 
+    /** @since 9.3 */
+    public static final boolean DEFAULT_CACHE_PERSISTENT = false;
+
+    /** @since 9.3 */
+    public static final long DEFAULT_CONVERSION_WAIT_TIMEOUT_IN_S = 300;
+
     @XNode("enableCache")
     protected Boolean enableCache;
 
@@ -100,6 +106,51 @@ public class GlobalConfigDescriptor implements Serializable {
         return diskCacheSize == null ? DEFAULT_DISK_CACHE_IN_KB : diskCacheSize.intValue();
     }
 
+    /**
+     * Whether the cache is kept on disk across restarts, instead of being cleared at startup.
+     *
+     * @since 9.3
+     */
+    @XNode("persistentCache")
+    protected Boolean persistentCache;
+
+    /** @since 9.3 */
+    public boolean isCachePersistent() {
+        return persistentCache == null ? DEFAULT_CACHE_PERSISTENT : persistentCache.booleanValue();
+    }
+
+    /**
+     * The name of a transient store used to share conversion results between cluster nodes, or {@code null}.
+     *
+     * @since 9.3
+     */
+    @XNode("sharedCacheStore")
+    protected String sharedCacheStore;
+
+    /** @since 9.3 */
+    public String getSharedCacheStore() {
+        return sharedCacheStore;
+    }
+
+    /**
+     * The maximum time to wait for the same conversion running in another thread, before running it again.
+     *
+     * @since 9.3
+     */
+    protected Long conversionWaitTimeout;
+
+    /** @since 9.3 */
+    @XNode("conversionWaitTimeout")
+    public void setConversionWaitTimeout(long value) {
+        conversionWaitTimeout = value == 0 ? null : Long.valueOf(value);
+    }
+
+    /** @since 9.3 */
+    public long getConversionWaitTimeout() {
+        return conversionWaitTimeout == null ? DEFAULT_CONVERSION_WAIT_TIMEOUT_IN_S
+                : conversionWaitTimeout.longValue();
+    }
+
     public void update(GlobalConfigDescriptor other) {
         if (other.enableCache != null) {
             enableCache = other.enableCache;
@@ -113,6 +164,15 @@ public class GlobalConfigDescriptor implements Serializable {
         if (other.cachingDirectory != null) {
             cachingDirectory = other.cachingDirectory;
         }
+        if (other.persistentCache != null) {
+            persistentCache = other.persistentCache;
+        }
+        if (other.sharedCacheStore != null) {
+            sharedCacheStore = other.sharedCacheStore;
+        }
+        if (other.conversionWaitTimeout != null) {
+            conversionWaitTimeout = other.conversionWaitTimeout;
+        }
     }
 
 }
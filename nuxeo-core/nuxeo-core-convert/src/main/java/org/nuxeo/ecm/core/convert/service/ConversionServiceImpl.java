@@ -97,12 +97,14 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
         converterDescriptors.clear();
         translationHelper.clear();
         self = this;
-        config.clearCachingDirectory();
     }
 
     @Override
     public void deactivate(ComponentContext context) {
-        if (config.isCacheEnabled()) {
+        if (config.isCachePersistent()) {
+            ConversionCacheHolder.saveIndex();
+            ConversionCacheHolder.clearIndex();
+        } else if (config.isCacheEnabled()) {
             ConversionCacheHolder.deleteCache();
         }
         self = null;
@@ -122,7 +124,6 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
         } else if (CONFIG_EP.equals(extensionPoint)) {
             GlobalConfigDescriptor desc = (GlobalConfigDescriptor) contribution;
             config.update(desc);
-            config.clearCachingDirectory();
         } else {
             log.error("Unable to handle unknown extensionPoint " + extensionPoint);
         }
@@ -182,6 +183,26 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
         return self.config.getCachingDirectory();
     }
 
+    /** @since 9.3 */
+    public static boolean isCachePersistent() {
+        return self.config.isCachePersistent();
+    }
+
+    /** @since 9.3 */
+    public static String getSharedCacheStoreName() {
+        return self.config.getSharedCacheStore();
+    }
+
+    /** @since 9.3 */
+    public static long getConversionWaitTimeout() {
+        return self.config.getConversionWaitTimeout();
+    }
+
+    /** @since 9.3 */
+    public static void setConversionWaitTimeout(long timeout) {
+        self.config.setConversionWaitTimeout(timeout);
+    }
+
     /* Service API */
 
     @Override
@@ -315,16 +336,21 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
 
         String cacheKey = CacheKeyGenerator.computeKey(converterName, blobHolder, parameters);
 
-        BlobHolder result = ConversionCacheHolder.getFromCache(cacheKey);
-
-        if (result == null) {
-            Converter converter = desc.getConverterInstance();
-            result = converter.convert(blobHolder, parameters);
-
-            if (config.isCacheEnabled()) {
-                ConversionCacheHolder.addToCache(cacheKey, result);
-            }
+        Converter converter = desc.getConverterInstance();
+        Map<String, Serializable> params = parameters;
+        BlobHolder[] converted = new BlobHolder[1];
+        BlobHolder result;
+        if (config.isCacheEnabled()) {
+            // concurrent conversions of the same blob run only once
+            result = ConversionCacheHolder.getOrConvert(cacheKey,
+                    () -> converted[0] = converter.convert(blobHolder, params));
         } else {
+            result = ConversionCacheHolder.getFromCache(cacheKey);
+            if (result == null) {
+                result = converted[0] = converter.convert(blobHolder, parameters);
+            }
+        }
+        if (result != null && result != converted[0]) {
             // we need to reset the filename if result came from cache because it's just a hash
             result.getBlob().setFilename(null);
         }
@@ -513,6 +539,12 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
 
     @Override
     public void start(ComponentContext context) {
+        if (config.isCachePersistent()) {
+            new File(config.getCachingDirectory()).mkdirs();
+            ConversionCacheHolder.loadIndex();
+        } else {
+            config.clearCachingDirectory();
+        }
         startGC();
     }
 
@@ -0,0 +1,252 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.cache.CacheKeyGenerator;
+import org.nuxeo.ecm.core.convert.cache.ConversionCacheHolder;
+import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
+import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+@RunWith(FeaturesRunner.class)
+@Features(ConvertFeature.class)
+public class TestConversionCacheHolder {
+
+    protected int maxCacheSize;
+
+    protected long waitTimeout;
+
+    @Before
+    public void setUp() {
+        // prevent the test GC thread from evicting everything
+        maxCacheSize = ConversionServiceImpl.getMaxCacheSizeInKB();
+        ConversionServiceImpl.setMaxCacheSizeInKB(1024);
+        waitTimeout = ConversionServiceImpl.getConversionWaitTimeout();
+    }
+
+    @After
+    public void tearDown() {
+        ConversionServiceImpl.setMaxCacheSizeInKB(maxCacheSize);
+        ConversionServiceImpl.setConversionWaitTimeout(waitTimeout);
+        ConversionCacheHolder.getCacheKeys().forEach(ConversionCacheHolder::removeFromCache);
+    }
+
+    @Test
+    public void testKeyIsCanonical() {
+        BlobHolder bh = new SimpleBlobHolder(Blobs.createBlob("foo"));
+        Map<String, Serializable> params1 = new LinkedHashMap<>();
+        params1.put("width", "100");
+        params1.put("height", "200");
+        params1.put("format", "png");
+        Map<String, Serializable> params2 = new LinkedHashMap<>();
+        params2.put("format", "png");
+        params2.put("height", "200");
+        params2.put("width", "100");
+        assertEquals(CacheKeyGenerator.computeKey("conv", bh, params1),
+                CacheKeyGenerator.computeKey("conv", bh, params2));
+    }
+
+    @Test
+    public void testConcurrentConversionsRunOnce() throws Exception {
+        int nthreads = 8;
+        AtomicInteger conversions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        Callable<BlobHolder> task = () -> ConversionCacheHolder.getOrConvert("single-flight-key", () -> {
+            conversions.incrementAndGet();
+            started.countDown();
+            try {
+                // let the other threads pile up on the same key
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new SimpleCachableBlobHolder(Blobs.createBlob("converted"));
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+        try {
+            List<Future<BlobHolder>> futures = new ArrayList<>();
+            futures.add(executor.submit(task));
+            started.await(10, TimeUnit.SECONDS);
+            for (int i = 1; i < nthreads; i++) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<BlobHolder> future : futures) {
+                BlobHolder result = future.get(10, TimeUnit.SECONDS);
+                assertNotNull(result);
+                assertEquals("converted", result.getBlob().getString());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, conversions.get());
+        assertEquals(1, ConversionCacheHolder.getNbCacheEntries());
+    }
+
+    @Test
+    public void testConcurrentConversionFailureIsPropagated() throws Exception {
+        AtomicInteger conversions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch waiting = new CountDownLatch(1);
+        Callable<BlobHolder> owner = () -> ConversionCacheHolder.getOrConvert("failing-key", () -> {
+            conversions.incrementAndGet();
+            started.countDown();
+            try {
+                waiting.await(10, TimeUnit.SECONDS);
+                // let the waiter block on our conversion
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new ConversionException("boom");
+        });
+        Callable<BlobHolder> waiter = () -> {
+            waiting.countDown();
+            return ConversionCacheHolder.getOrConvert("failing-key", () -> {
+                conversions.incrementAndGet();
+                return new SimpleCachableBlobHolder(Blobs.createBlob("converted"));
+            });
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<BlobHolder> ownerFuture = executor.submit(owner);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<BlobHolder> waiterFuture = executor.submit(waiter);
+            for (Future<BlobHolder> future : Arrays.asList(ownerFuture, waiterFuture)) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    fail("should have failed");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof ConversionException);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // the failed conversion is not run again by the waiter
+        assertEquals(1, conversions.get());
+        assertEquals(0, ConversionCacheHolder.getNbCacheEntries());
+    }
+
+    @Test
+    public void testWaitForConcurrentConversionIsBounded() throws Exception {
+        ConversionServiceImpl.setConversionWaitTimeout(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<BlobHolder> owner = () -> ConversionCacheHolder.getOrConvert("slow-key", () -> {
+            started.countDown();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new SimpleCachableBlobHolder(Blobs.createBlob("slow"));
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<BlobHolder> ownerFuture = executor.submit(owner);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            long start = System.currentTimeMillis();
+            BlobHolder result = ConversionCacheHolder.getOrConvert("slow-key",
+                    () -> new SimpleCachableBlobHolder(Blobs.createBlob("fast")));
+            // the waiter gave up after the timeout and converted by itself
+            assertTrue(System.currentTimeMillis() - start < 10_000);
+            assertEquals("fast", result.getBlob().getString());
+            release.countDown();
+            assertEquals("slow", ownerFuture.get(10, TimeUnit.SECONDS).getBlob().getString());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEvictionToLowWaterMark() throws Exception {
+        ConversionServiceImpl.setMaxCacheSizeInKB(100);
+        char[] content = new char[10 * 1024];
+        Arrays.fill(content, 'x');
+        for (int i = 0; i < 10; i++) {
+            ConversionCacheHolder.addToCache("key-" + i,
+                    new SimpleCachableBlobHolder(Blobs.createBlob(new String(content))));
+        }
+        assertEquals(10, ConversionCacheHolder.getNbCacheEntries());
+        assertEquals(100, ConversionCacheHolder.getCacheSizeInKB());
+
+        // over the limit, evicted down to 90%
+        ConversionCacheHolder.addToCache("key-10", new SimpleCachableBlobHolder(Blobs.createBlob(new String(content))));
+        assertEquals(9, ConversionCacheHolder.getNbCacheEntries());
+        assertTrue(ConversionCacheHolder.getCacheKeys().contains("key-10"));
+
+        // room left for the next one without evicting
+        ConversionCacheHolder.addToCache("key-11", new SimpleCachableBlobHolder(Blobs.createBlob(new String(content))));
+        assertEquals(10, ConversionCacheHolder.getNbCacheEntries());
+    }
+
+    @Test
+    public void testIndexSurvivesRestart() throws Exception {
+        Map<String, Serializable> params = new HashMap<>();
+        params.put("p", "v");
+        String key = CacheKeyGenerator.computeKey("conv", new SimpleBlobHolder(Blobs.createBlob("foo")), params);
+        ConversionCacheHolder.addToCache(key, new SimpleCachableBlobHolder(Blobs.createBlob("persisted")));
+        assertEquals(1, ConversionCacheHolder.getNbCacheEntries());
+        long size = ConversionCacheHolder.getCacheSizeInKB();
+
+        // simulate a restart
+        ConversionCacheHolder.saveIndex();
+        ConversionCacheHolder.clearIndex();
+        assertEquals(0, ConversionCacheHolder.getNbCacheEntries());
+        ConversionCacheHolder.loadIndex();
+
+        assertEquals(1, ConversionCacheHolder.getNbCacheEntries());
+        assertEquals(size, ConversionCacheHolder.getCacheSizeInKB());
+        BlobHolder result = ConversionCacheHolder.getFromCache(key);
+        assertNotNull(result);
+        assertEquals("persisted", result.getBlob().getString());
+    }
+
+}
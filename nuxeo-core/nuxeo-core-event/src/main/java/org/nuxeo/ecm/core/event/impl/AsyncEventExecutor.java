@@ -111,6 +111,23 @@ public class AsyncEventExecutor {
         }
     }
 
+    /**
+     * Runs the listeners in the current thread instead of scheduling them in the WorkManager, each one in its own
+     * transaction and with the same retries as when scheduled.
+     *
+     * @throws RuntimeException if a listener failed after its retries
+     * @since 9.3
+     */
+    public void runInCurrentThread(List<EventListenerDescriptor> listeners, EventBundle bundle) {
+        for (EventListenerDescriptor listener : listeners) {
+            EventBundle filtered = listener.filterBundle(bundle);
+            if (filtered.isEmpty()) {
+                continue;
+            }
+            new ListenerWork(listener, filtered).run();
+        }
+    }
+
     private void scheduleListeners(final List<EventListenerDescriptor> listeners, EventBundle bundle) {
         for (EventListenerDescriptor listener : listeners) {
             EventBundle filtered = listener.filterBundle(bundle);
@@ -215,7 +232,12 @@ public class AsyncEventExecutor {
             if (listener == null) {
                 throw new RuntimeException("Cannot find listener: " + listenerName);
             }
-            listener.asPostCommitListener().handleEvent(bundle);
+            long start = EventListenerMetrics.start();
+            try {
+                listener.asPostCommitListener().handleEvent(bundle);
+            } finally {
+                EventListenerMetrics.stop(start, EventListenerMetrics.ASYNC, listenerName, bundle);
+            }
         }
 
         @Override
@@ -0,0 +1,255 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.event.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventBundle;
+import org.nuxeo.ecm.core.event.EventContext;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * Times the invocations of the event listeners.
+ * <p>
+ * When enabled, each sync, post-commit and async listener invocation is recorded in a timer named
+ * {@code nuxeo.events.listeners.<kind>.<listener>.<event>}, and the slowest invocations are kept along with the ids of
+ * the documents they were about. When disabled, the cost of the instrumentation is a volatile read.
+ *
+ * @since 9.3
+ */
+public class EventListenerMetrics {
+
+    public static final String ENABLED_PROPERTY = "nuxeo.event.listener.metrics.enabled";
+
+    public static final String SLOWEST_SIZE_PROPERTY = "nuxeo.event.listener.metrics.slowest.size";
+
+    public static final int DEFAULT_SLOWEST_SIZE = 20;
+
+    /** Synchronous listener called during the transaction. */
+    public static final String SYNC = "sync";
+
+    /** Synchronous listener called after commit. */
+    public static final String POSTCOMMIT = "postcommit";
+
+    /** Asynchronous listener. */
+    public static final String ASYNC = "async";
+
+    /** Event name used for bundles holding several event names. */
+    public static final String MIXED_EVENTS = "mixed";
+
+    /** Maximum number of document ids kept per sample. */
+    protected static final int MAX_DOC_IDS = 10;
+
+    /**
+     * A listener invocation.
+     */
+    public static class Sample {
+
+        public final String kind;
+
+        public final String listener;
+
+        public final String event;
+
+        public final long durationNanos;
+
+        public final long timestamp;
+
+        public final String thread;
+
+        public final List<String> docIds;
+
+        public Sample(String kind, String listener, String event, long durationNanos, List<String> docIds) {
+            this.kind = kind;
+            this.listener = listener;
+            this.event = event;
+            this.durationNanos = durationNanos;
+            this.docIds = docIds;
+            timestamp = System.currentTimeMillis();
+            thread = Thread.currentThread().getName();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f ms %s %s %s %s %s", durationNanos / 1e6, kind, listener, event, docIds,
+                    thread);
+        }
+    }
+
+    protected static final MetricRegistry registry = SharedMetricRegistries.getOrCreate(
+            MetricsService.class.getName());
+
+    protected static volatile boolean enabled;
+
+    // slowest samples, unordered
+    protected static Sample[] slowest = new Sample[DEFAULT_SLOWEST_SIZE];
+
+    protected static int count;
+
+    // duration under which an invocation cannot enter the slowest samples
+    protected static volatile long threshold;
+
+    private EventListenerMetrics() {
+        // utility class
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        EventListenerMetrics.enabled = enabled;
+    }
+
+    /**
+     * Changes the number of slowest invocations kept, and forgets the current ones.
+     */
+    public static synchronized void setSlowestSize(int size) {
+        slowest = new Sample[Math.max(1, size)];
+        count = 0;
+        threshold = 0;
+    }
+
+    /**
+     * Returns a timestamp to pass to the {@code stop} methods, or 0 if the timing is disabled.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the invocation of a listener for an event.
+     */
+    public static void stop(long t0, String kind, String listener, Event event) {
+        if (t0 == 0) {
+            return;
+        }
+        long duration = System.nanoTime() - t0;
+        String eventName = Objects.toString(event.getName(), MIXED_EVENTS);
+        record(kind, listener, eventName, duration);
+        if (duration > threshold) {
+            sample(new Sample(kind, listener, eventName, duration, getDocIds(Collections.singletonList(event))));
+        }
+    }
+
+    /**
+     * Records the invocation of a listener for a bundle of events.
+     */
+    public static void stop(long t0, String kind, String listener, EventBundle bundle) {
+        if (t0 == 0) {
+            return;
+        }
+        long duration = System.nanoTime() - t0;
+        String eventName = getEventName(bundle);
+        record(kind, listener, eventName, duration);
+        if (duration > threshold) {
+            sample(new Sample(kind, listener, eventName, duration, getDocIds(bundle)));
+        }
+    }
+
+    protected static void record(String kind, String listener, String eventName, long duration) {
+        registry.timer(MetricRegistry.name("nuxeo", "events", "listeners", kind, listener, eventName))
+                .update(duration, TimeUnit.NANOSECONDS);
+    }
+
+    protected static String getEventName(EventBundle bundle) {
+        String name = null;
+        for (Event event : bundle) {
+            if (name == null) {
+                name = event.getName();
+            } else if (!name.equals(event.getName())) {
+                return MIXED_EVENTS;
+            }
+        }
+        return name == null ? MIXED_EVENTS : name;
+    }
+
+    protected static List<String> getDocIds(Iterable<Event> events) {
+        List<String> docIds = new ArrayList<>();
+        for (Event event : events) {
+            EventContext context = event.getContext();
+            if (context instanceof DocumentEventContext) {
+                DocumentModel doc = ((DocumentEventContext) context).getSourceDocument();
+                if (doc != null && doc.getId() != null) {
+                    docIds.add(doc.getId());
+                    if (docIds.size() >= MAX_DOC_IDS) {
+                        break;
+                    }
+                }
+            }
+        }
+        return docIds;
+    }
+
+    protected static synchronized void sample(Sample sample) {
+        if (count < slowest.length) {
+            slowest[count++] = sample;
+            if (count < slowest.length) {
+                return;
+            }
+        } else {
+            // replace the fastest sample
+            int min = 0;
+            for (int i = 1; i < slowest.length; i++) {
+                if (slowest[i].durationNanos < slowest[min].durationNanos) {
+                    min = i;
+                }
+            }
+            if (sample.durationNanos <= slowest[min].durationNanos) {
+                return;
+            }
+            slowest[min] = sample;
+        }
+        long min = Long.MAX_VALUE;
+        for (Sample s : slowest) {
+            min = Math.min(min, s.durationNanos);
+        }
+        threshold = min;
+    }
+
+    /**
+     * Gets the slowest recorded invocations, slowest first.
+     */
+    public static synchronized List<Sample> getSlowest() {
+        List<Sample> samples = new ArrayList<>(Arrays.asList(slowest).subList(0, count));
+        samples.sort(Comparator.comparingLong((Sample s) -> s.durationNanos).reversed());
+        return samples;
+    }
+
+    /**
+     * Forgets the slowest recorded invocations.
+     */
+    public static synchronized void resetSlowest() {
+        Arrays.fill(slowest, null);
+        count = 0;
+        threshold = 0;
+    }
+
+}
@@ -119,6 +119,9 @@ public class EventServiceImpl implements EventService, EventServiceAdmin, Synchr
 
     public void init() {
         asyncExec.init();
+        EventListenerMetrics.setEnabled(Framework.isBooleanPropertyTrue(EventListenerMetrics.ENABLED_PROPERTY));
+        EventListenerMetrics.setSlowestSize(Integer.parseInt(Framework.getProperty(
+                EventListenerMetrics.SLOWEST_SIZE_PROPERTY, String.valueOf(EventListenerMetrics.DEFAULT_SLOWEST_SIZE))));
 
         EventDispatcherDescriptor dispatcherDescriptor = dispatchers.getDispatcherDescriptor();
         if (dispatcherDescriptor != null) {
@@ -239,7 +242,12 @@ public class EventServiceImpl implements EventService, EventServiceAdmin, Synchr
             try {
                 long t0 = System.currentTimeMillis();
                 SequenceTracer.start("Fire sync event " + event.getName());
-                desc.asEventListener().handleEvent(event);
+                long start = EventListenerMetrics.start();
+                try {
+                    desc.asEventListener().handleEvent(event);
+                } finally {
+                    EventListenerMetrics.stop(start, EventListenerMetrics.SYNC, desc.getName(), event);
+                }
                 long elapsed = System.currentTimeMillis() - t0;
                 SequenceTracer.stop("done in " + elapsed + " ms");
                 if (stats != null) {
@@ -365,10 +373,19 @@ public class EventServiceImpl implements EventService, EventServiceAdmin, Synchr
     @Override
     public void fireEventBundleSync(EventBundle event) {
         for (EventListenerDescriptor desc : listenerDescriptors.getEnabledSyncPostCommitListenersDescriptors()) {
-            desc.asPostCommitListener().handleEvent(event);
+            handleEventBundle(desc, EventListenerMetrics.POSTCOMMIT, event);
         }
         for (EventListenerDescriptor desc : listenerDescriptors.getEnabledAsyncPostCommitListenersDescriptors()) {
+            handleEventBundle(desc, EventListenerMetrics.ASYNC, event);
+        }
+    }
+
+    protected void handleEventBundle(EventListenerDescriptor desc, String kind, EventBundle event) {
+        long start = EventListenerMetrics.start();
+        try {
             desc.asPostCommitListener().handleEvent(event);
+        } finally {
+            EventListenerMetrics.stop(start, kind, desc.getName(), event);
         }
     }
 
@@ -249,7 +249,13 @@ public class PostCommitEventExecutor {
                 try {
                     reconnected = new ReconnectedEventBundleImpl(filtered, listeners.toString());
 
-                    listener.asPostCommitListener().handleEvent(reconnected);
+                    long start = EventListenerMetrics.start();
+                    try {
+                        listener.asPostCommitListener().handleEvent(reconnected);
+                    } finally {
+                        EventListenerMetrics.stop(start, EventListenerMetrics.POSTCOMMIT, listener.getName(),
+                                reconnected);
+                    }
 
                     if (Thread.currentThread().isInterrupted()) {
                         log.error("Events postcommit execution interrupted for listener: " + listener.getName());
@@ -346,7 +352,13 @@ public class PostCommitEventExecutor {
                     long t1 = System.currentTimeMillis();
                     try {
 
-                        listener.asPostCommitListener().handleEvent(filtered);
+                        long start = EventListenerMetrics.start();
+                        try {
+                            listener.asPostCommitListener().handleEvent(filtered);
+                        } finally {
+                            EventListenerMetrics.stop(start, EventListenerMetrics.POSTCOMMIT, listener.getName(),
+                                    filtered);
+                        }
 
                         if (Thread.currentThread().isInterrupted()) {
                             log.error("Events postcommit bulk execution interrupted for listener: "
@@ -0,0 +1,402 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.event.pipe.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.annotation.Experimental;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventBundle;
+import org.nuxeo.ecm.core.event.EventServiceAdmin;
+import org.nuxeo.ecm.core.event.impl.AsyncEventExecutor;
+import org.nuxeo.ecm.core.event.impl.EventBundleImpl;
+import org.nuxeo.ecm.core.event.impl.EventListenerDescriptor;
+import org.nuxeo.ecm.core.event.pipe.AbstractEventBundlePipe;
+import org.nuxeo.ecm.core.event.pipe.EventBundlePipe;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * In memory implementation that batches bundles before relaying them to the async listeners.
+ * <p>
+ * Bundles with more than {@code chunkSize} events are split, and bundles sent within {@code batchWindowMillis} of each
+ * other, possibly from different transactions, are merged up to {@code chunkSize} events. Each batch is run by the
+ * async listeners in parallel, directly in {@code consumerThreads} threads rather than through the WorkManager, so
+ * that the next batch is only taken once all the listeners are done with the current one.
+ * <p>
+ * The bundles wait in a queue of {@code capacity} elements: when it is full, the committing threads wait up to
+ * {@code offerTimeoutMillis} for the listeners to catch up, after which the bundle bypasses the queue and is scheduled
+ * in the WorkManager like with the default pipe (the order with the queued bundles is then lost).
+ * <p>
+ * For each listener, the number of events handled and the lag between the send of a bundle and the end of its
+ * handling by the listener are available as metrics under {@code nuxeo.events.pipe.<name>.listeners.<listener>}; the
+ * bundles that overflowed the queue are counted by {@code nuxeo.events.pipe.<name>.queue.overflow}.
+ *
+ * @since 9.3
+ */
+@Experimental
+public class BatchingEventBundlePipe extends AbstractEventBundlePipe<EventBundle> implements EventBundlePipe {
+
+    private static final Log log = LogFactory.getLog(BatchingEventBundlePipe.class);
+
+    public static final String CHUNK_SIZE_PARAM = "chunkSize";
+
+    public static final String BATCH_WINDOW_PARAM = "batchWindowMillis";
+
+    public static final String CAPACITY_PARAM = "capacity";
+
+    public static final String CONSUMER_THREADS_PARAM = "consumerThreads";
+
+    public static final String OFFER_TIMEOUT_PARAM = "offerTimeoutMillis";
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    public static final int DEFAULT_BATCH_WINDOW_MILLIS = 50;
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    public static final int DEFAULT_CONSUMER_THREADS = 4;
+
+    public static final int DEFAULT_OFFER_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * A bundle waiting in the queue.
+     */
+    protected static class Chunk {
+
+        protected final EventBundle bundle;
+
+        protected final long sent;
+
+        protected Chunk(EventBundle bundle) {
+            this.bundle = bundle;
+            sent = System.currentTimeMillis();
+        }
+    }
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected int chunkSize;
+
+    protected long batchWindowMillis;
+
+    protected long offerTimeoutMillis;
+
+    protected BlockingQueue<Chunk> queue;
+
+    protected ExecutorService consumers;
+
+    protected Thread dispatcher;
+
+    protected AsyncEventExecutor asyncExec;
+
+    protected volatile boolean stopping;
+
+    // chunks sent and not yet dispatched to all listeners
+    protected final AtomicInteger pending = new AtomicInteger();
+
+    protected final Object pendingMonitor = new Object();
+
+    @Override
+    public void initPipe(String name, Map<String, String> params) {
+        super.initPipe(name, params);
+        chunkSize = getIntParameter(CHUNK_SIZE_PARAM, DEFAULT_CHUNK_SIZE);
+        batchWindowMillis = getIntParameter(BATCH_WINDOW_PARAM, DEFAULT_BATCH_WINDOW_MILLIS);
+        offerTimeoutMillis = getIntParameter(OFFER_TIMEOUT_PARAM, DEFAULT_OFFER_TIMEOUT_MILLIS);
+        int capacity = getIntParameter(CAPACITY_PARAM, DEFAULT_CAPACITY);
+        int threads = getIntParameter(CONSUMER_THREADS_PARAM, DEFAULT_CONSUMER_THREADS);
+        if (Framework.getRuntime() == null) {
+            throw new RuntimeException("Nuxeo Runtime not initialized");
+        }
+        asyncExec = new AsyncEventExecutor();
+        queue = new ArrayBlockingQueue<>(capacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "Nuxeo-Event-Pipe-" + name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.prestartAllCoreThreads();
+        consumers = executor;
+        stopping = false;
+        dispatcher = new Thread(this::dispatchLoop, "Nuxeo-Event-Pipe-" + name + "-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        String queueSizeName = getMetricName("queue", "size");
+        registry.remove(queueSizeName);
+        registry.register(queueSizeName, (Gauge<Integer>) () -> queue.size());
+    }
+
+    protected int getIntParameter(String param, int defaultValue) {
+        String value = params == null ? null : params.get(param);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.error("Invalid " + param + " parameter for pipe " + name + ": " + value, e);
+            return defaultValue;
+        }
+    }
+
+    protected String getMetricName(String... names) {
+        return MetricRegistry.name(MetricRegistry.name("nuxeo", "events", "pipe", name), names);
+    }
+
+    @Override
+    protected EventBundle marshall(EventBundle events) {
+        return events;
+    }
+
+    @Override
+    protected void send(EventBundle message) {
+        for (EventBundle chunk : split(message)) {
+            pending.incrementAndGet();
+            boolean queued;
+            try {
+                // waits a bit when the listeners don't keep up
+                queued = queue.offer(new Chunk(chunk), offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+            if (!queued) {
+                overflow(chunk);
+            }
+        }
+    }
+
+    /**
+     * Schedules a bundle that could not be queued in the WorkManager, from the sending thread.
+     */
+    protected void overflow(EventBundle bundle) {
+        registry.counter(getMetricName("queue", "overflow")).inc();
+        log.warn("Event queue of pipe " + name + " is full, scheduling " + bundle.size()
+                + " events in the WorkManager");
+        try {
+            EventServiceAdmin eventService = Framework.getService(EventServiceAdmin.class);
+            asyncExec.run(eventService.getListenerList().getEnabledAsyncPostCommitListenersDescriptors(), bundle);
+        } finally {
+            completed(1);
+        }
+    }
+
+    /**
+     * Splits a bundle into bundles of at most {@link #chunkSize} events.
+     */
+    protected List<EventBundle> split(EventBundle bundle) {
+        if (bundle.size() <= chunkSize || !isMergeable(bundle)) {
+            return Collections.singletonList(bundle);
+        }
+        List<EventBundle> chunks = new ArrayList<>();
+        EventBundle chunk = null;
+        for (Event event : bundle) {
+            if (chunk == null || chunk.size() >= chunkSize) {
+                chunk = new EventBundleImpl(bundle.getSourceVMID());
+                chunks.add(chunk);
+            }
+            chunk.push(event);
+        }
+        return chunks;
+    }
+
+    /**
+     * Only plain bundles can be split and merged, other bundles are dispatched as is.
+     */
+    protected boolean isMergeable(EventBundle bundle) {
+        return bundle.getClass() == EventBundleImpl.class;
+    }
+
+    protected void dispatchLoop() {
+        Chunk carry = null;
+        while (carry != null || !stopping || !queue.isEmpty()) {
+            List<Chunk> batch = new ArrayList<>();
+            try {
+                Chunk first = carry != null ? carry : queue.poll(100, TimeUnit.MILLISECONDS);
+                carry = null;
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                EventBundle merged = first.bundle;
+                if (isMergeable(merged)) {
+                    int size = merged.size();
+                    long deadline = System.currentTimeMillis() + batchWindowMillis;
+                    // gather the bundles sent during the batch window
+                    while (size < chunkSize) {
+                        long wait = deadline - System.currentTimeMillis();
+                        Chunk next = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        if (!canMerge(merged, size, next.bundle)) {
+                            // dispatched in the next batch
+                            carry = next;
+                            break;
+                        }
+                        if (merged == first.bundle) {
+                            // don't modify the bundle that was sent
+                            EventBundle copy = new EventBundleImpl(merged.getSourceVMID());
+                            merged.forEach(copy::push);
+                            merged = copy;
+                        }
+                        next.bundle.forEach(merged::push);
+                        size += next.bundle.size();
+                        batch.add(next);
+                    }
+                }
+                dispatch(batch, merged);
+            } catch (InterruptedException e) {
+                // don't lose the chunks already taken from the queue
+                List<Chunk> remaining = new ArrayList<>(batch);
+                if (carry != null) {
+                    remaining.add(carry);
+                    carry = null;
+                }
+                if (stopping) {
+                    queue.drainTo(remaining);
+                }
+                flush(remaining);
+                if (stopping) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } catch (RuntimeException e) {
+                log.error("Cannot dispatch events in pipe " + name, e);
+            }
+        }
+    }
+
+    protected boolean canMerge(EventBundle merged, int size, EventBundle bundle) {
+        return isMergeable(bundle) && size + bundle.size() <= chunkSize
+                && bundle.getSourceVMID().equals(merged.getSourceVMID());
+    }
+
+    /**
+     * Dispatches chunks one by one from the current thread, when the dispatcher is interrupted.
+     */
+    protected void flush(List<Chunk> chunks) {
+        for (Chunk chunk : chunks) {
+            try {
+                dispatch(Collections.singletonList(chunk), chunk.bundle, Runnable::run);
+            } catch (RuntimeException e) {
+                log.error("Cannot dispatch events in pipe " + name, e);
+            }
+        }
+    }
+
+    /**
+     * Runs a merged bundle through all the async listeners in parallel, and waits until they are done.
+     */
+    protected void dispatch(List<Chunk> batch, EventBundle bundle) {
+        dispatch(batch, bundle, consumers);
+    }
+
+    /**
+     * Runs a merged bundle through all the async listeners using the given executor, and waits until they are done.
+     * The chunks of the batch are always accounted as completed.
+     */
+    protected void dispatch(List<Chunk> batch, EventBundle bundle, Executor executor) {
+        try {
+            EventServiceAdmin eventService = Framework.getService(EventServiceAdmin.class);
+            List<EventListenerDescriptor> listeners = eventService.getListenerList()
+                                                                  .getEnabledAsyncPostCommitListenersDescriptors();
+            long oldest = batch.stream().mapToLong(chunk -> chunk.sent).min().orElse(System.currentTimeMillis());
+            List<CompletableFuture<Void>> futures = new ArrayList<>(listeners.size());
+            for (EventListenerDescriptor listener : listeners) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    asyncExec.runInCurrentThread(Collections.singletonList(listener), bundle);
+                    String listenerName = listener.getName();
+                    registry.meter(getMetricName("listeners", listenerName, "events")).mark(bundle.size());
+                    registry.timer(getMetricName("listeners", listenerName, "lag"))
+                            .update(System.currentTimeMillis() - oldest, TimeUnit.MILLISECONDS);
+                }, executor).exceptionally(e -> {
+                    log.error("Cannot dispatch events to listener " + listener.getName() + " in pipe " + name, e);
+                    return null;
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+        } finally {
+            completed(batch.size());
+        }
+    }
+
+    protected void completed(int n) {
+        if (pending.addAndGet(-n) <= 0) {
+            synchronized (pendingMonitor) {
+                pendingMonitor.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public boolean waitForCompletion(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (pendingMonitor) {
+            while (pending.get() > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                pendingMonitor.wait(wait);
+            }
+        }
+        return asyncExec.waitForCompletion(Math.max(1, deadline - System.currentTimeMillis()));
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        if (dispatcher != null) {
+            // let the queued bundles be dispatched
+            dispatcher.join(5000L);
+            if (dispatcher.isAlive()) {
+                dispatcher.interrupt();
+            }
+            dispatcher = null;
+        }
+        if (consumers != null) {
+            consumers.shutdown();
+            consumers.awaitTermination(1000L, TimeUnit.MILLISECONDS);
+            consumers = null;
+        }
+        registry.removeMatching((metricName, metric) -> metricName.startsWith(getMetricName()));
+    }
+
+}
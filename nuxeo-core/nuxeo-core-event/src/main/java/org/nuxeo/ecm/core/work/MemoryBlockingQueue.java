@@ -20,19 +20,20 @@
 package org.nuxeo.ecm.core.work;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.State;
 import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
 
 /**
@@ -40,6 +41,9 @@ import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
  * <p>
  * In addition, this implementation also keeps a set of {@link Work} ids in the queue when the queue elements are
  * {@link WorkHolder}s.
+ * <p>
+ * The work ids and the metrics counters are kept in concurrent structures, so that scheduling from many threads does
+ * not contend on a lock.
  */
 public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
@@ -111,16 +115,19 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     protected final BlockingQueue<Runnable> queue;
 
-    protected final Map<String, Work> works = new HashMap<>();
+    protected final Map<String, Work> works = new ConcurrentHashMap<>();
+
+    protected final Set<String> scheduledWorks = ConcurrentHashMap.newKeySet();
+
+    protected final Set<String> runningWorks = ConcurrentHashMap.newKeySet();
+
+    protected final AtomicLong scheduledCount = new AtomicLong();
 
-    protected final Set<String> scheduledWorks = new HashSet<>();
+    protected final AtomicLong runningCount = new AtomicLong();
 
-    protected final Set<String> runningWorks = new HashSet<>();
+    protected final AtomicLong completedCount = new AtomicLong();
 
-    long scheduledCount;
-    long runningCount;
-    long completedCount;
-    long cancelledCount;
+    protected final AtomicLong cancelledCount = new AtomicLong();
 
     /**
      * Creates a {@link BlockingQueue} with a maximum capacity.
@@ -135,8 +142,9 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
     }
 
     @Override
-    synchronized protected WorkQueueMetrics metrics() {
-        return new WorkQueueMetrics(queueId, scheduledCount, runningCount, completedCount, cancelledCount);
+    protected WorkQueueMetrics metrics() {
+        return new WorkQueueMetrics(queueId, scheduledCount.get(), runningCount.get(), completedCount.get(),
+                cancelledCount.get());
     }
 
     @Override
@@ -187,95 +195,124 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
         return queue.poll(nanos, TimeUnit.NANOSECONDS);
     }
 
-    synchronized WorkQueueMetrics workSchedule(Work work) {
+    WorkQueueMetrics workSchedule(Work work) {
         String id = work.getId();
-        if (scheduledWorks.contains(id)) {
-            return metrics();
-        }
-        if (!offer(new WorkHolder(work))) {
+        // atomically coalesces with an already scheduled work with the same id
+        if (!scheduledWorks.add(id)) {
             return metrics();
         }
         works.put(id, work);
-        scheduledWorks.add(id);
-        scheduledCount += 1;
+        scheduledCount.incrementAndGet();
+        boolean offered = false;
+        try {
+            offered = offer(new WorkHolder(work));
+        } finally {
+            if (!offered) {
+                scheduledWorks.remove(id);
+                works.remove(id, work);
+                scheduledCount.decrementAndGet();
+            }
+        }
         return metrics();
     }
 
-    synchronized WorkQueueMetrics workRunning(Work work) {
+    WorkQueueMetrics workRunning(Work work) {
         String id = work.getId();
         scheduledWorks.remove(id);
         works.put(id, work); // update state
         runningWorks.add(id);
-        scheduledCount -= 1;
-        runningCount += 1;
+        scheduledCount.decrementAndGet();
+        runningCount.incrementAndGet();
         return metrics();
     }
 
-    synchronized WorkQueueMetrics workCanceled(Work work) {
+    WorkQueueMetrics workCanceled(Work work) {
         String id = work.getId();
-        for (Iterator<Runnable> it = queue.iterator(); it.hasNext();) {
-            if (id.equals(WorkHolder.getWork(it.next())
-                    .getId())) {
-                it.remove();
+        for (Runnable r : queue) {
+            // remove is atomic, so a concurrent take and cancel don't both account for it
+            Work scheduled = WorkHolder.getWork(r);
+            if (id.equals(scheduled.getId()) && queue.remove(r)) {
                 scheduledWorks.remove(id);
-                works.remove(id);
-                scheduledCount -= 1;
-                cancelledCount +=1 ;
+                works.remove(id, scheduled);
+                scheduledCount.decrementAndGet();
+                cancelledCount.incrementAndGet();
                 break;
             }
         }
         return metrics();
     }
 
-    synchronized WorkQueueMetrics workCompleted(Work work) {
+    WorkQueueMetrics workCompleted(Work work) {
         String id = work.getId();
-        if (runningWorks.remove(id) && !scheduledWorks.contains(id)) {
-            works.remove(id);
+        if (runningWorks.remove(id)) {
+            // conditional remove, a work with the same id may have been scheduled meanwhile
+            works.remove(id, work);
         }
-        runningCount -= 1;
-        completedCount += 1;
+        runningCount.decrementAndGet();
+        completedCount.incrementAndGet();
         return metrics();
     }
 
-    synchronized WorkQueueMetrics workRescheduleRunning(Work work) {
+    WorkQueueMetrics workRescheduleRunning(Work work) {
         String id = work.getId();
         if (!runningWorks.remove(id)) {
             return metrics();
         }
-        works.remove(id);
-        runningCount -= 1;
+        works.remove(id, work);
+        runningCount.decrementAndGet();
         return workSchedule(work);
     }
 
-    synchronized Work lookup(String workId) {
+    /**
+     * Checks if a work with the given id is scheduled, or if the state is {@code null} scheduled or running.
+     *
+     * @since 9.3
+     */
+    boolean isWorkInState(String workId, State state) {
+        if (state == null) {
+            return scheduledWorks.contains(workId) || runningWorks.contains(workId);
+        }
+        switch (state) {
+        case SCHEDULED:
+            return scheduledWorks.contains(workId);
+        case RUNNING:
+            return runningWorks.contains(workId);
+        default:
+            return false;
+        }
+    }
+
+    Work lookup(String workId) {
         return works.get(workId);
     }
 
-    synchronized List<Work> list() {
+    List<Work> list() {
         return new ArrayList<>(works.values());
     }
 
-    synchronized List<String> keys() {
+    List<String> keys() {
         return new ArrayList<>(works.keySet());
     }
 
-    synchronized List<Work> listScheduled() {
+    List<Work> listScheduled() {
         return scheduledWorks.stream()
                 .map(works::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
-    synchronized List<String> scheduledKeys() {
+    List<String> scheduledKeys() {
         return new ArrayList<>(scheduledWorks);
     }
 
-    synchronized List<Work> listRunning() {
+    List<Work> listRunning() {
         return runningWorks.stream()
                 .map(works::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
-    synchronized List<String> runningKeys() {
+    List<String> runningKeys() {
         return new ArrayList<>(runningWorks);
     }
 
@@ -114,6 +114,12 @@ public class MemoryWorkQueuing implements WorkQueuing {
                 .equals(state);
     }
 
+    @Override
+    public boolean isWorkInState(String queueId, String workId, State state) {
+        MemoryBlockingQueue queue = getQueue(queueId);
+        return queue != null && queue.isWorkInState(workId, state);
+    }
+
     @Override
     public State getWorkState(String workId) {
         return lookup(workId).map(Work::getWorkInstanceState)
@@ -103,6 +103,13 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     protected WorkQueuing queuing;
 
+    /**
+     * The executor shared by all queues, or {@code null} if each queue has its own threads.
+     *
+     * @since 9.3
+     */
+    protected SharedWorkExecutor sharedExecutor;
+
     /**
      * Simple synchronizer to wake up when an in-JVM work is completed. Does not wake up on work completion from another
      * node in cluster mode.
@@ -206,11 +213,17 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         NuxeoBlockingQueue queue = queuing.init(config);
         ThreadFactory threadFactory = new NamedThreadFactory(THREAD_PREFIX + config.id + "-");
         int maxPoolSize = config.getMaxThreads();
-        WorkThreadPoolExecutor executor = new WorkThreadPoolExecutor(maxPoolSize, maxPoolSize, 0, TimeUnit.SECONDS,
-                queue, threadFactory);
-        // prestart all core threads so that direct additions to the queue
-        // (from another Nuxeo instance) can be seen
-        executor.prestartAllCoreThreads();
+        WorkThreadPoolExecutor executor;
+        if (workQueuingConfig.sharedExecutor) {
+            // no threads of its own, the shared executor runs the work
+            executor = new WorkThreadPoolExecutor(queue, threadFactory, maxPoolSize, config.getWeight());
+        } else {
+            executor = new WorkThreadPoolExecutor(maxPoolSize, maxPoolSize, 0, TimeUnit.SECONDS, queue,
+                    threadFactory);
+            // prestart all core threads so that direct additions to the queue
+            // (from another Nuxeo instance) can be seen
+            executor.prestartAllCoreThreads();
+        }
         executors.put(config.id, executor);
         log.info("Initialized work queue " + config.id + " " + config.toEffectiveString());
     }
@@ -221,6 +234,10 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         }
         queuing.setActive(config.id, config.isProcessingEnabled());
         log.info("Activated work queue " + config.id + " " + config.toEffectiveString());
+        if (sharedExecutor != null) {
+            // works may already be waiting in the queue
+            sharedExecutor.signalAll();
+        }
         // Enable metrics
         if (config.isProcessingEnabled()) {
             activateQueueMetrics(config.id);
@@ -375,6 +392,9 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             for (String id : workQueueConfig.getQueueIds()) {
                 initializeQueue(workQueueConfig.get(id));
             }
+            if (workQueuingConfig.sharedExecutor) {
+                initializeSharedExecutor();
+            }
 
             Framework.getRuntime().getComponentManager().addListener(new ComponentManager.LifeCycleHandler() {
                 @Override
@@ -407,6 +427,21 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         }
     }
 
+    protected void initializeSharedExecutor() {
+        List<WorkThreadPoolExecutor> list = new ArrayList<>();
+        int maxThreads = 0;
+        for (String id : workQueueConfig.getQueueIds()) {
+            WorkThreadPoolExecutor executor = executors.get(id);
+            list.add(executor);
+            maxThreads += executor.maxRunning;
+        }
+        if (workQueuingConfig.sharedMaxThreads > 0) {
+            maxThreads = workQueuingConfig.sharedMaxThreads;
+        }
+        sharedExecutor = new SharedWorkExecutor(list, maxThreads);
+        log.info("Initialized shared work executor with " + maxThreads + " threads");
+    }
+
     protected WorkThreadPoolExecutor getExecutor(String queueId) {
         if (!started) {
             if (Framework.isTestModeSet() && !Framework.getRuntime().isShuttingDown()) {
@@ -467,7 +502,14 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
     public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
         shutdownInProgress = true;
         try {
-            return shutdownExecutors(new ArrayList<>(executors.values()), timeout, unit);
+            long t0 = System.currentTimeMillis();
+            boolean terminated = shutdownExecutors(new ArrayList<>(executors.values()), timeout, unit);
+            if (sharedExecutor != null) {
+                long remaining = remainingMillis(t0, TimeUnit.MILLISECONDS.convert(timeout, unit));
+                terminated = sharedExecutor.shutdown(remaining) && terminated;
+                sharedExecutor = null;
+            }
+            return terminated;
         } finally {
             shutdownInProgress = false;
             started = false;
@@ -566,16 +608,50 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
         protected final Timer workTimer;
 
+        // time spent in the queue before running
+        protected final Timer waitTimer;
+
+        /** Whether the work is run by the shared executor, see {@link #runShared}. */
+        protected final boolean shared;
+
+        /** Max number of work running at the same time from the shared executor. */
+        protected final int maxRunning;
+
+        /** Relative share of the shared executor. */
+        protected final int weight;
+
+        // number of work from this queue running on the shared executor
+        protected final AtomicInteger sharedRunning = new AtomicInteger();
+
         protected WorkThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
                 NuxeoBlockingQueue queue, ThreadFactory threadFactory) {
+            this(corePoolSize, maximumPoolSize, keepAliveTime, unit, queue, threadFactory, false, maximumPoolSize, 1);
+        }
+
+        /**
+         * Creates an executor without threads whose work is run by the {@link SharedWorkExecutor}.
+         *
+         * @since 9.3
+         */
+        protected WorkThreadPoolExecutor(NuxeoBlockingQueue queue, ThreadFactory threadFactory, int maxRunning,
+                int weight) {
+            this(0, 1, 0, TimeUnit.SECONDS, queue, threadFactory, true, maxRunning, weight);
+        }
+
+        private WorkThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                NuxeoBlockingQueue queue, ThreadFactory threadFactory, boolean shared, int maxRunning, int weight) {
             super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queue, threadFactory);
             queueId = queue.queueId;
             running = new ConcurrentLinkedQueue<>();
+            this.shared = shared;
+            this.maxRunning = Math.max(1, maxRunning);
+            this.weight = Math.max(1, weight);
             // init metrics
             scheduledCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "scheduled", "count"));
             runningCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "running"));
             completedCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "completed"));
             workTimer = registry.timer(MetricRegistry.name("nuxeo", "works", queueId, "total"));
+            waitTimer = registry.timer(MetricRegistry.name("nuxeo", "works", queueId, "wait"));
         }
 
         public int getScheduledOrRunningSize() {
@@ -622,6 +698,80 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             queuing.workRunning(queueId, work);
             running.add(work);
             runningCount.inc();
+            long schedulingTime = work.getSchedulingTime();
+            if (schedulingTime > 0) {
+                waitTimer.update(System.currentTimeMillis() - schedulingTime, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Reserves a slot to run a work from this queue on the shared executor.
+         *
+         * @return {@code false} if the queue already runs its max number of work
+         * @since 9.3
+         */
+        protected boolean tryAcquireShared() {
+            for (;;) {
+                int n = sharedRunning.get();
+                if (n >= maxRunning) {
+                    return false;
+                }
+                if (sharedRunning.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /** @since 9.3 */
+        protected void releaseShared() {
+            sharedRunning.decrementAndGet();
+        }
+
+        /**
+         * Runs a work taken from this queue in the calling shared executor thread, with the same callbacks as when run
+         * by a thread of this executor.
+         *
+         * @since 9.3
+         */
+        protected void runShared(Runnable r) {
+            try {
+                beforeExecute(Thread.currentThread(), r);
+            } catch (RejectedExecutionException e) {
+                log.debug(e.getMessage());
+                return;
+            }
+            Throwable thrown = null;
+            try {
+                r.run();
+            } catch (RuntimeException | Error e) { // NOSONAR
+                thrown = e;
+            } finally {
+                afterExecute(r, thrown);
+            }
+            if (thrown != null) {
+                log.error("Uncaught error on thread " + Thread.currentThread().getName(), thrown);
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long t0 = System.currentTimeMillis();
+            long delay = TimeUnit.MILLISECONDS.convert(timeout, unit);
+            if (!super.awaitTermination(timeout, unit)) {
+                return false;
+            }
+            if (!shared) {
+                return true;
+            }
+            // the work is run by the shared threads, wait until it is done
+            while (!running.isEmpty()) {
+                long remaining = remainingMillis(t0, delay);
+                if (remaining == 0) {
+                    return false;
+                }
+                completionSynchronizer.waitForCompletedWork(Math.min(remaining, 100));
+            }
+            return true;
         }
 
         @Override
@@ -678,6 +828,164 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     }
 
+    /**
+     * A pool of threads shared by all the queues.
+     * <p>
+     * Each thread takes work from the queues in weighted round-robin order, each queue appearing as many times as its
+     * weight in the round. A queue that is inactive, empty, or already running its max number of work is skipped, so
+     * that the threads not needed by idle queues are used by the busy ones. When no queue has work, the threads wait to
+     * be signaled of new work, or recheck periodically for work added directly to the queues by other nodes.
+     *
+     * @since 9.3
+     */
+    protected class SharedWorkExecutor {
+
+        protected static final long IDLE_WAIT_MILLIS = 500;
+
+        protected final WorkThreadPoolExecutor[] round;
+
+        protected final AtomicInteger cursor = new AtomicInteger();
+
+        protected final List<Thread> threads = new ArrayList<>();
+
+        protected final ReentrantLock lock = new ReentrantLock();
+
+        protected final Condition workAvailable = lock.newCondition();
+
+        // @GuardedBy("lock")
+        protected long signals;
+
+        protected volatile boolean stopped;
+
+        protected SharedWorkExecutor(List<WorkThreadPoolExecutor> executors, int maxThreads) {
+            // interleave the queues according to their weight
+            List<WorkThreadPoolExecutor> list = new ArrayList<>();
+            int maxWeight = executors.stream().mapToInt(executor -> executor.weight).max().orElse(0);
+            for (int i = 0; i < maxWeight; i++) {
+                for (WorkThreadPoolExecutor executor : executors) {
+                    if (executor.weight > i) {
+                        list.add(executor);
+                    }
+                }
+            }
+            round = list.toArray(new WorkThreadPoolExecutor[list.size()]);
+            ThreadFactory threadFactory = new NamedThreadFactory(THREAD_PREFIX + "shared-");
+            for (int i = 0; i < maxThreads; i++) {
+                Thread thread = threadFactory.newThread(this::runLoop);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        /**
+         * Wakes up one waiting thread because one new work is available.
+         */
+        protected void signal() {
+            lock.lock();
+            try {
+                signals++;
+                workAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wakes up all the waiting threads, when many works may be available or when stopping.
+         */
+        protected void signalAll() {
+            lock.lock();
+            try {
+                signals++;
+                workAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected long getSignals() {
+            lock.lock();
+            try {
+                return signals;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected void awaitSignal(long seen) throws InterruptedException {
+            lock.lock();
+            try {
+                if (signals == seen && !stopped) {
+                    workAvailable.await(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected void runLoop() {
+            while (!stopped) {
+                long seen = getSignals();
+                if (!runOne()) {
+                    try {
+                        awaitSignal(seen);
+                    } catch (InterruptedException e) {
+                        if (stopped) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes one work from the next queue having some and runs it.
+         *
+         * @return {@code true} if a work was run
+         */
+        protected boolean runOne() {
+            int n = round.length;
+            if (n == 0) {
+                return false;
+            }
+            int start = Math.floorMod(cursor.getAndIncrement(), n);
+            for (int i = 0; i < n; i++) {
+                WorkThreadPoolExecutor executor = round[(start + i) % n];
+                if (executor.isShutdown() || !executor.tryAcquireShared()) {
+                    continue;
+                }
+                try {
+                    Runnable r = executor.getQueue().poll();
+                    if (r == null) {
+                        continue;
+                    }
+                    executor.runShared(r);
+                    return true;
+                } catch (RuntimeException e) {
+                    log.error("Cannot run work from queue " + executor.queueId, e);
+                } finally {
+                    executor.releaseShared();
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Stops the threads, after the queues have been shut down.
+         *
+         * @return {@code true} if all threads terminated before the timeout
+         */
+        protected boolean shutdown(long timeoutMillis) throws InterruptedException {
+            stopped = true;
+            signalAll();
+            long t0 = System.currentTimeMillis();
+            for (Thread thread : threads) {
+                thread.join(Math.max(1, remainingMillis(t0, timeoutMillis)));
+            }
+            return threads.stream().noneMatch(Thread::isAlive);
+        }
+    }
+
     @Override
     public void schedule(Work work) {
         schedule(work, Scheduling.ENQUEUE, false);
@@ -713,20 +1021,21 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             break;
         case IF_NOT_SCHEDULED:
         case IF_NOT_RUNNING_OR_SCHEDULED:
-            // TODO disabled for now because hasWorkInState uses isScheduled
-            // which is buggy
-            boolean disabled = Boolean.TRUE.booleanValue();
-            if (!disabled && hasWorkInState(workId, scheduling.state)) {
+            // only checked in the target queue, when the queuing supports it
+            if (queuing.isWorkInState(queueId, workId, scheduling.state)) {
                 if (log.isDebugEnabled()) {
                     log.debug("Canceling schedule because found: " + scheduling);
                 }
+                work.setWorkInstanceState(State.UNKNOWN);
                 return;
-
             }
             break;
 
         }
         queuing.workSchedule(queueId, work);
+        if (sharedExecutor != null) {
+            sharedExecutor.signal();
+        }
     }
 
     /**
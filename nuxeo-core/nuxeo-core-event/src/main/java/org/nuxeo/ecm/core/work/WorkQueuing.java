@@ -136,6 +136,23 @@ public interface WorkQueuing {
      */
     boolean isWorkInState(String workId, State state);
 
+    /**
+     * Checks if a work instance with the given id is scheduled, or scheduled or running, in the given queue.
+     * <p>
+     * Used to coalesce work scheduled with {@link WorkManager.Scheduling#IF_NOT_SCHEDULED IF_NOT_SCHEDULED} or
+     * {@link WorkManager.Scheduling#IF_NOT_RUNNING_OR_SCHEDULED IF_NOT_RUNNING_OR_SCHEDULED}, so it must be cheap. The
+     * default implementation returns {@code false}, which disables coalescing.
+     *
+     * @param queueId the queue id
+     * @param workId the work id
+     * @param state {@link State#SCHEDULED SCHEDULED}, or {@code null} for scheduled or running
+     * @return {@code true} if a work instance with the given id is in the given state
+     * @since 9.3
+     */
+    default boolean isWorkInState(String queueId, String workId, State state) {
+        return false;
+    }
+
     /**
      * Gets the state in which a work instance is.
      * <p>
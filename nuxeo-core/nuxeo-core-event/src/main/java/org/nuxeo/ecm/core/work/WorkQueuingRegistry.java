@@ -30,6 +30,10 @@ public class WorkQueuingRegistry extends ContributionFragmentRegistry<WorkQueuin
 
     Class<? extends WorkQueuing> klass = MemoryWorkQueuing.class;
 
+    boolean sharedExecutor;
+
+    int sharedMaxThreads;
+
     @Override
     public String getContributionId(WorkQueuingDescriptor contrib) {
         return "singleton";
@@ -38,23 +42,35 @@ public class WorkQueuingRegistry extends ContributionFragmentRegistry<WorkQueuin
     @Override
     public void contributionUpdated(String id, WorkQueuingDescriptor contrib, WorkQueuingDescriptor newOrigContrib) {
         klass = contrib.klass;
+        sharedExecutor = Boolean.TRUE.equals(contrib.sharedExecutor);
+        sharedMaxThreads = contrib.sharedMaxThreads == null ? 0 : contrib.sharedMaxThreads.intValue();
     }
 
     @Override
     public void contributionRemoved(String id, WorkQueuingDescriptor origContrib) {
         klass = origContrib.klass;
+        sharedExecutor = Boolean.TRUE.equals(origContrib.sharedExecutor);
+        sharedMaxThreads = origContrib.sharedMaxThreads == null ? 0 : origContrib.sharedMaxThreads.intValue();
     }
 
     @Override
     public WorkQueuingDescriptor clone(WorkQueuingDescriptor orig) {
         WorkQueuingDescriptor other = new WorkQueuingDescriptor();
         other.klass = orig.klass;
+        other.sharedExecutor = orig.sharedExecutor;
+        other.sharedMaxThreads = orig.sharedMaxThreads;
         return other;
     }
 
     @Override
     public void merge(WorkQueuingDescriptor src, WorkQueuingDescriptor dst) {
         dst.klass = src.klass;
+        if (src.sharedExecutor != null) {
+            dst.sharedExecutor = src.sharedExecutor;
+        }
+        if (src.sharedMaxThreads != null) {
+            dst.sharedMaxThreads = src.sharedMaxThreads;
+        }
     }
 
 
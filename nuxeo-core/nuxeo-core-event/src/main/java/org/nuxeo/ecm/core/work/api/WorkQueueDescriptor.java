@@ -75,6 +75,19 @@ public class WorkQueueDescriptor {
         return maxThreads == null ? DEFAULT_MAX_THREADS : maxThreads.intValue();
     }
 
+    /**
+     * The relative share of the shared executor threads this queue gets when all queues are busy. Only used when the
+     * work manager uses a shared executor. Defaults to the max threads.
+     *
+     * @since 9.3
+     */
+    @XNode("weight")
+    public Integer weight;
+
+    public int getWeight() {
+        return weight == null ? getMaxThreads() : weight.intValue();
+    }
+
     @XNodeList(value = "category", type = HashSet.class, componentType = String.class)
     public Set<String> categories = Collections.emptySet();
 
@@ -100,6 +113,7 @@ public class WorkQueueDescriptor {
         o.name = name;
         o.maxThreads = maxThreads;
         o.capacity = capacity;
+        o.weight = weight;
         o.categories = new HashSet<String>(categories);
         return o;
     }
@@ -120,6 +134,9 @@ public class WorkQueueDescriptor {
         if (other.capacity != null) {
             capacity = other.capacity;
         }
+        if (other.weight != null) {
+            weight = other.weight;
+        }
         categories.addAll(other.categories);
     }
 
@@ -146,6 +163,10 @@ public class WorkQueueDescriptor {
             buf.append(" capacity=");
             buf.append(capacity);
         }
+        if (weight != null) {
+            buf.append(" weight=");
+            buf.append(weight);
+        }
         buf.append("]");
         return buf.toString();
     }
@@ -164,6 +185,8 @@ public class WorkQueueDescriptor {
         buf.append(getMaxThreads());
         buf.append(" capacity=");
         buf.append(getCapacity());
+        buf.append(" weight=");
+        buf.append(getWeight());
         buf.append(" clearCompletedAfterSeconds=");
         buf.append(")");
         return buf.toString();
@@ -34,4 +34,20 @@ public class WorkQueuingDescriptor {
     @XNode("@class")
     public Class<? extends WorkQueuing> klass = MemoryWorkQueuing.class;
 
+    /**
+     * Whether all the queues are processed by a single shared pool of threads instead of one pool per queue.
+     *
+     * @since 9.3
+     */
+    @XNode("@sharedExecutor")
+    public Boolean sharedExecutor;
+
+    /**
+     * The number of threads of the shared pool. Defaults to the sum of the queues max threads.
+     *
+     * @since 9.3
+     */
+    @XNode("@sharedMaxThreads")
+    public Integer sharedMaxThreads;
+
 }
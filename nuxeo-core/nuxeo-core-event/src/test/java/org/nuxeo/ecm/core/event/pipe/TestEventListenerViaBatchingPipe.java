@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.event.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.event.EventBundle;
+import org.nuxeo.ecm.core.event.impl.EventBundleImpl;
+import org.nuxeo.ecm.core.event.impl.EventContextImpl;
+import org.nuxeo.ecm.core.event.impl.EventImpl;
+import org.nuxeo.ecm.core.event.impl.PostCommitEventExecutor;
+import org.nuxeo.ecm.core.event.pipe.local.BatchingEventBundlePipe;
+import org.nuxeo.ecm.core.event.test.DummyPostCommitEventListener;
+import org.nuxeo.ecm.core.event.test.EventListenerTest;
+import org.nuxeo.ecm.core.event.test.TestEventServiceComponent;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Run the existing EventListeners tests using the BatchingPipe implementation.
+ *
+ * @since 9.3
+ */
+public class TestEventListenerViaBatchingPipe extends TestEventServiceComponent {
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("org.nuxeo.runtime.testing", "true");
+        wipeRuntime();
+        initUrls();
+        if (urls == null) {
+            throw new UnsupportedOperationException("no bundles available");
+        }
+        initOsgiRuntime();
+
+        Framework.getProperties().setProperty(PostCommitEventExecutor.TIMEOUT_MS_PROP, "300"); // 0.3s
+        deployBundle("org.nuxeo.runtime.jtajca");
+        deployBundle("org.nuxeo.ecm.core.event");
+        URL url = EventListenerTest.class.getClassLoader().getResource("test-BatchingPipes.xml");
+        deployTestContrib("org.nuxeo.ecm.core.event.test", url);
+
+        fireFrameworkStarted();
+        // 2 quartz threads launched by the event contribs above
+        Thread.sleep(100);
+        initialThreadCount = Thread.activeCount();
+        DummyPostCommitEventListener.handledCountReset();
+        DummyPostCommitEventListener.eventCountReset();
+    }
+
+    @Test
+    public void testSplitBundle() throws Exception {
+        BatchingEventBundlePipe pipe = new BatchingEventBundlePipe() {
+            @Override
+            public List<EventBundle> split(EventBundle bundle) {
+                return super.split(bundle);
+            }
+        };
+        pipe.initPipe("testSplit", Collections.singletonMap(BatchingEventBundlePipe.CHUNK_SIZE_PARAM, "3"));
+        try {
+            EventBundle bundle = new EventBundleImpl();
+            for (int i = 0; i < 7; i++) {
+                bundle.push(new EventImpl("test" + i, new EventContextImpl()));
+            }
+            List<EventBundle> chunks = pipe.split(bundle);
+            assertEquals(3, chunks.size());
+            assertEquals(3, chunks.get(0).size());
+            assertEquals(3, chunks.get(1).size());
+            assertEquals(1, chunks.get(2).size());
+            assertEquals("test6", chunks.get(2).peek().getName());
+        } finally {
+            pipe.shutdown();
+        }
+    }
+
+    /**
+     * Records the dispatched bundles instead of running the listeners.
+     */
+    protected static class RecordingPipe extends BatchingEventBundlePipe {
+
+        protected final List<EventBundle> dispatched = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected void dispatch(List<Chunk> batch, EventBundle bundle, Executor executor) {
+            dispatched.add(bundle);
+            completed(batch.size());
+        }
+
+        protected void awaitQueueEmpty() throws InterruptedException {
+            while (!queue.isEmpty()) {
+                Thread.sleep(10);
+            }
+        }
+
+        protected void interruptDispatcher() {
+            dispatcher.interrupt();
+        }
+
+        protected int getPending() {
+            return pending.get();
+        }
+
+        protected long getOverflows() {
+            return registry.counter(getMetricName("queue", "overflow")).getCount();
+        }
+    }
+
+    /**
+     * Blocks in the dispatch until released.
+     */
+    protected static class BlockingPipe extends RecordingPipe {
+
+        protected final CountDownLatch entered = new CountDownLatch(1);
+
+        protected final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void dispatch(List<Chunk> batch, EventBundle bundle, Executor executor) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.dispatch(batch, bundle, executor);
+        }
+    }
+
+    @Test
+    public void testQueueOverflow() throws Exception {
+        BlockingPipe pipe = new BlockingPipe();
+        Map<String, String> params = new HashMap<>();
+        params.put(BatchingEventBundlePipe.CAPACITY_PARAM, "1");
+        params.put(BatchingEventBundlePipe.BATCH_WINDOW_PARAM, "0");
+        params.put(BatchingEventBundlePipe.OFFER_TIMEOUT_PARAM, "10");
+        pipe.initPipe("testOverflow", params);
+        try {
+            EventBundle bundle = new EventBundleImpl();
+            bundle.push(new EventImpl("test0", new EventContextImpl()));
+            pipe.sendEventBundle(bundle);
+            // the dispatcher is now stuck on the first bundle
+            assertTrue(pipe.entered.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < 3; i++) {
+                bundle = new EventBundleImpl();
+                bundle.push(new EventImpl("test" + i, new EventContextImpl()));
+                // doesn't block past the offer timeout
+                pipe.sendEventBundle(bundle);
+            }
+            // the second one is queued, the third one overflowed
+            assertEquals(1, pipe.getOverflows());
+            assertEquals(2, pipe.getPending());
+
+            pipe.release.countDown();
+            assertEquals(true, pipe.waitForCompletion(5000));
+            assertEquals(0, pipe.getPending());
+            assertEquals(2, pipe.dispatched.stream().mapToInt(EventBundle::size).sum());
+        } finally {
+            pipe.release.countDown();
+            pipe.shutdown();
+        }
+    }
+
+    @Test
+    public void testInterruptFlushesBatch() throws Exception {
+        RecordingPipe pipe = new RecordingPipe();
+        Map<String, String> params = new HashMap<>();
+        // long window, so that the dispatcher is still gathering the batch when interrupted
+        params.put(BatchingEventBundlePipe.BATCH_WINDOW_PARAM, "60000");
+        pipe.initPipe("testInterrupt", params);
+        try {
+            for (int i = 0; i < 3; i++) {
+                EventBundle bundle = new EventBundleImpl();
+                bundle.push(new EventImpl("test" + i, new EventContextImpl()));
+                pipe.sendEventBundle(bundle);
+                pipe.awaitQueueEmpty();
+            }
+            assertEquals(0, pipe.dispatched.size());
+            assertEquals(3, pipe.getPending());
+
+            pipe.interruptDispatcher();
+            assertEquals(true, pipe.waitForCompletion(5000));
+            assertEquals(0, pipe.getPending());
+            assertEquals(3, pipe.dispatched.stream().mapToInt(EventBundle::size).sum());
+        } finally {
+            pipe.shutdown();
+        }
+    }
+
+}
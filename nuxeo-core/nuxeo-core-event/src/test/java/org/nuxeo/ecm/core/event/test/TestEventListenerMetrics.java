@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.event.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.event.EventBundle;
+import org.nuxeo.ecm.core.event.impl.EventBundleImpl;
+import org.nuxeo.ecm.core.event.impl.EventContextImpl;
+import org.nuxeo.ecm.core.event.impl.EventImpl;
+import org.nuxeo.ecm.core.event.impl.EventListenerMetrics;
+import org.nuxeo.ecm.core.event.impl.EventListenerMetrics.Sample;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.SharedMetricRegistries;
+
+public class TestEventListenerMetrics {
+
+    @Before
+    public void setUp() {
+        EventListenerMetrics.setSlowestSize(3);
+    }
+
+    @After
+    public void tearDown() {
+        EventListenerMetrics.setEnabled(false);
+        EventListenerMetrics.setSlowestSize(EventListenerMetrics.DEFAULT_SLOWEST_SIZE);
+    }
+
+    @Test
+    public void testDisabled() {
+        EventListenerMetrics.setEnabled(false);
+        long start = EventListenerMetrics.start();
+        assertEquals(0, start);
+        EventListenerMetrics.stop(start, EventListenerMetrics.SYNC, "disabled", new EventImpl("test", null));
+        assertTrue(EventListenerMetrics.getSlowest().isEmpty());
+    }
+
+    @Test
+    public void testTimersAndSlowest() {
+        EventListenerMetrics.setEnabled(true);
+        for (int i = 1; i <= 5; i++) {
+            // fake start times so that durations grow with i
+            long start = System.nanoTime() - i * 1_000_000L;
+            EventListenerMetrics.stop(start, EventListenerMetrics.SYNC, "listener" + i,
+                    new EventImpl("test", new EventContextImpl()));
+        }
+        List<Sample> slowest = EventListenerMetrics.getSlowest();
+        assertEquals(3, slowest.size());
+        assertEquals("listener5", slowest.get(0).listener);
+        assertEquals("listener4", slowest.get(1).listener);
+        assertEquals("listener3", slowest.get(2).listener);
+        assertEquals(1, SharedMetricRegistries.getOrCreate(MetricsService.class.getName())
+                                              .timer("nuxeo.events.listeners.sync.listener5.test")
+                                              .getCount());
+
+        EventListenerMetrics.resetSlowest();
+        assertTrue(EventListenerMetrics.getSlowest().isEmpty());
+    }
+
+    @Test
+    public void testBundleEventName() {
+        EventListenerMetrics.setEnabled(true);
+        EventBundle bundle = new EventBundleImpl();
+        bundle.push(new EventImpl("foo", new EventContextImpl()));
+        bundle.push(new EventImpl("bar", new EventContextImpl()));
+        EventListenerMetrics.stop(System.nanoTime() - 1, EventListenerMetrics.ASYNC, "bundleListener", bundle);
+        List<Sample> slowest = EventListenerMetrics.getSlowest();
+        assertEquals(1, slowest.size());
+        assertEquals(EventListenerMetrics.MIXED_EVENTS, slowest.get(0).event);
+    }
+
+}
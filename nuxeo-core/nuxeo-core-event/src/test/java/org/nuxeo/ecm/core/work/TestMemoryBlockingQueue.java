@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.State;
+import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
+
+public class TestMemoryBlockingQueue {
+
+    protected static final int THREADS = 8;
+
+    protected static final int WORKS_PER_THREAD = 1000;
+
+    @Test
+    public void testConcurrentScheduleCoalescing() throws Exception {
+        MemoryBlockingQueue queue = new MemoryBlockingQueue("test", new MemoryWorkQueuing(null), -1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // all threads schedule the same ids
+                    for (int i = 0; i < WORKS_PER_THREAD; i++) {
+                        queue.workSchedule(new SleepWork(0, false, "work" + i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        WorkQueueMetrics metrics = queue.metrics();
+        assertEquals(WORKS_PER_THREAD, metrics.getScheduled().intValue());
+        assertEquals(WORKS_PER_THREAD, queue.getQueueSize());
+        assertEquals(WORKS_PER_THREAD, queue.scheduledKeys().size());
+        assertTrue(queue.isWorkInState("work0", State.SCHEDULED));
+        assertTrue(queue.isWorkInState("work0", null));
+
+        // run one
+        Work work = WorkHolder.getWork(queue.pollElement());
+        queue.workRunning(work);
+        assertFalse(queue.isWorkInState(work.getId(), State.SCHEDULED));
+        assertTrue(queue.isWorkInState(work.getId(), null));
+        queue.workCompleted(work);
+        assertFalse(queue.isWorkInState(work.getId(), null));
+
+        // cancel one
+        queue.workCanceled(new SleepWork(0, false, "work1"));
+        metrics = queue.metrics();
+        assertEquals(WORKS_PER_THREAD - 2, metrics.getScheduled().intValue());
+        assertEquals(0, metrics.getRunning().intValue());
+        assertEquals(1, metrics.getCompleted().intValue());
+        assertEquals(1, metrics.getCanceled().intValue());
+    }
+
+    @Test
+    public void testCompletionKeepsRescheduledWork() throws Exception {
+        MemoryBlockingQueue queue = new MemoryBlockingQueue("test", new MemoryWorkQueuing(null), -1);
+        Work first = new SleepWork(0, false, "work");
+        queue.workSchedule(first);
+        queue.workRunning(WorkHolder.getWork(queue.pollElement()));
+
+        // a work with the same id is scheduled while the first one runs
+        Work second = new SleepWork(0, false, "work");
+        queue.workSchedule(second);
+        queue.workCompleted(first);
+
+        assertSame(second, queue.lookup("work"));
+        assertTrue(queue.isWorkInState("work", State.SCHEDULED));
+        assertEquals(1, queue.metrics().getScheduled().intValue());
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * Runs the work manager tests with all the queues processed by a shared executor.
+ */
+@Deploy("org.nuxeo.ecm.core.event.test:test-workmanager-shared-executor.xml")
+public class WorkManagerSharedExecutorTest extends WorkManagerTest {
+
+    @Test
+    public void testSharedExecutor() throws Exception {
+        assertNotNull(service.sharedExecutor);
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        Timer waitTimer = registry.timer(MetricRegistry.name("nuxeo", "works", QUEUE, "wait"));
+        long count = waitTimer.getCount();
+
+        // more work than the queue max threads, they run on the shared threads
+        for (int i = 0; i < 4; i++) {
+            service.schedule(new SleepWork(100, false));
+        }
+        assertTrue(service.awaitCompletion(10, TimeUnit.SECONDS));
+        assertTrue(waitTimer.getCount() >= count + 4);
+    }
+
+}
@@ -215,8 +215,8 @@ public class WorkManagerTest {
         assertSetEquals(Arrays.asList("1", "2"), service.listWorkIds(QUEUE, RUNNING));
         assertSetEquals(Arrays.asList("1", "2", "3"), service.listWorkIds(QUEUE, null));
 
-        // disabled IF_NOT_* features
-        if (Boolean.FALSE.booleanValue()) {
+        // IF_NOT_* coalescing, only implemented by the in-memory queuing
+        if (!persistent()) {
             SleepWork work4 = new SleepWork(duration, false, "3"); // id=3
             service.schedule(work4, Scheduling.IF_NOT_SCHEDULED);
             assertEquals(UNKNOWN, work4.getWorkInstanceState());
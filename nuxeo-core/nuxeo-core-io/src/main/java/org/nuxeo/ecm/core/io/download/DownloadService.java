@@ -216,7 +216,8 @@ public interface DownloadService {
      * @param reason the download reason
      * @param extendedInfos an optional map of extended informations to log
      * @param inline if not null, force the inline flag for content-disposition
-     * @param blobTransferer the transferer of the actual blob
+     * @param blobTransferer the transferer of the actual blob, not used for multiple byte ranges whose parts are written
+     *            directly to the response (since 9.3)
      * @since 7.10
      */
     void downloadBlob(HttpServletRequest request, HttpServletResponse response, DocumentModel doc, String xpath,
@@ -19,6 +19,7 @@
  */
 package org.nuxeo.ecm.core.io.download;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -26,6 +27,9 @@ import java.io.Serializable;
 import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -45,7 +49,6 @@ import javax.script.ScriptException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -67,6 +70,8 @@ import org.nuxeo.ecm.core.api.event.CoreEventConstants;
 import org.nuxeo.ecm.core.api.local.ClientLoginModule;
 import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
 import org.nuxeo.ecm.core.blob.BlobManager.UsageHint;
+import org.nuxeo.ecm.core.blob.binary.Binary;
+import org.nuxeo.ecm.core.blob.binary.BinaryBlob;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventContext;
 import org.nuxeo.ecm.core.event.EventService;
@@ -91,6 +96,9 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
 
     protected static final int DOWNLOAD_BUFFER_SIZE = 1024 * 512;
 
+    /** Maximum number of ranges accepted in a multi-range request, beyond which the whole blob is sent. */
+    protected static final int MAX_RANGES = 16;
+
     private static final String NUXEO_VIRTUAL_HOST = "nuxeo-virtual-host";
 
     private static final String VH_PARAM = "nuxeo.virtual.host";
@@ -457,22 +465,22 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
 
         try {
-            String digest = blob.getDigest();
-            if (digest == null) {
-                digest = DigestUtils.md5Hex(blob.getStream());
+            String etag = getETag(blob);
+            if (etag != null) {
+                response.setHeader("ETag", etag); // re-send even on SC_NOT_MODIFIED
             }
-            String etag = '"' + digest + '"'; // with quotes per RFC7232 2.3
-            response.setHeader("ETag", etag); // re-send even on SC_NOT_MODIFIED
             addCacheControlHeaders(request, response);
 
             String ifNoneMatch = request.getHeader("If-None-Match");
-            if (ifNoneMatch != null) {
+            if (ifNoneMatch != null && etag != null) {
                 boolean match = false;
                 if (ifNoneMatch.equals("*")) {
                     match = true;
                 } else {
+                    // weak comparison per RFC7232 3.2
+                    String opaqueEtag = getOpaqueTag(etag);
                     for (String previousEtag : StringUtils.split(ifNoneMatch, ", ")) {
-                        if (previousEtag.equals(etag)) {
+                        if (getOpaqueTag(previousEtag).equals(opaqueEtag)) {
                             match = true;
                             break;
                         }
@@ -508,6 +516,16 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
             ByteRange byteRange;
             if (StringUtils.isBlank(range)) {
                 byteRange = null;
+            } else if (range.indexOf(',') >= 0) {
+                List<ByteRange> byteRanges = DownloadHelper.parseRanges(range, length);
+                if (byteRanges == null || byteRanges.size() > MAX_RANGES) {
+                    log.error("Invalid or too many byte ranges received: " + range);
+                    byteRange = null;
+                } else {
+                    logDownload(doc, xpath, filename, reason, extendedInfos);
+                    transferMultipleRanges(blob, length, byteRanges, response);
+                    return;
+                }
             } else {
                 byteRange = DownloadHelper.parseRange(range, length);
                 if (byteRange == null) {
@@ -521,6 +539,8 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
             long contentLength = byteRange == null ? length : byteRange.getLength();
             if (contentLength < Integer.MAX_VALUE) {
                 response.setContentLength((int) contentLength);
+            } else {
+                response.setHeader("Content-Length", String.valueOf(contentLength));
             }
 
             logDownload(doc, xpath, filename, reason, extendedInfos);
@@ -534,6 +554,87 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
     }
 
+    /**
+     * Gets the ETag of a blob, with quotes per RFC7232 2.3.
+     * <p>
+     * The blob digest is used when available. Otherwise, a weak ETag is computed from the length and modification time
+     * of the file backing the blob, because hashing the content would delay the response. If the blob has no digest
+     * and no file, {@code null} is returned.
+     *
+     * @since 9.3
+     */
+    protected String getETag(Blob blob) {
+        String digest = blob.getDigest();
+        if (digest != null) {
+            return '"' + digest + '"';
+        }
+        File file = blob.getFile();
+        if (file != null && file.isFile()) {
+            return "W/\"" + Long.toHexString(file.length()) + '-' + Long.toHexString(file.lastModified()) + '"';
+        }
+        return null;
+    }
+
+    /**
+     * Gets the opaque part of an entity tag, without weakness indicator.
+     */
+    protected static String getOpaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Sends several byte ranges as a {@code multipart/byteranges} response (RFC7233 4.1).
+     * <p>
+     * The parts are read from the blob and written directly to the response output stream: the blob transferer given to
+     * {@link #downloadBlob} writes a single body, possibly later or elsewhere, so it cannot be used between the part
+     * headers.
+     *
+     * @since 9.3
+     */
+    protected void transferMultipleRanges(Blob blob, long length, List<ByteRange> byteRanges,
+            HttpServletResponse response) throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        String mimeType = blob.getMimeType();
+        List<byte[]> partHeaders = new ArrayList<>(byteRanges.size());
+        long contentLength = 0;
+        for (ByteRange byteRange : byteRanges) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("\r\n--").append(boundary).append("\r\n");
+            if (mimeType != null) {
+                sb.append("Content-Type: ").append(mimeType).append("\r\n");
+            }
+            sb.append("Content-Range: bytes ")
+              .append(byteRange.getStart())
+              .append('-')
+              .append(byteRange.getEnd())
+              .append('/')
+              .append(length)
+              .append("\r\n\r\n");
+            byte[] bytes = sb.toString().getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(bytes);
+            contentLength += bytes.length + byteRange.getLength();
+        }
+        byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += end.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        if (contentLength < Integer.MAX_VALUE) {
+            response.setContentLength((int) contentLength);
+        } else {
+            response.setHeader("Content-Length", String.valueOf(contentLength));
+        }
+        OutputStream out = response.getOutputStream();
+        BufferingServletOutputStream.stopBuffering(out);
+        for (int i = 0; i < byteRanges.size(); i++) {
+            ByteRange byteRange = byteRanges.get(i);
+            out.write(partHeaders.get(i));
+            transferBlob(blob, byteRange.getStart(), byteRange.getLength(), out);
+        }
+        out.write(end);
+        response.flushBuffer();
+    }
+
     protected void transferBlobWithByteRange(Blob blob, ByteRange byteRange, HttpServletResponse response)
             throws UncheckedIOException {
         transferBlobWithByteRange(blob, byteRange, () -> {
@@ -553,14 +654,14 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
     @Override
     public void transferBlobWithByteRange(Blob blob, ByteRange byteRange, Supplier<OutputStream> outputStreamSupplier)
             throws UncheckedIOException {
-        try (InputStream in = blob.getStream()) {
+        try {
             @SuppressWarnings("resource")
             OutputStream out = outputStreamSupplier.get(); // not ours to close
             BufferingServletOutputStream.stopBuffering(out);
             if (byteRange == null) {
-                IOUtils.copy(in, out);
+                transferBlob(blob, out);
             } else {
-                IOUtils.copyLarge(in, out, byteRange.getStart(), byteRange.getLength());
+                transferBlob(blob, byteRange.getStart(), byteRange.getLength(), out);
             }
             out.flush();
         } catch (IOException e) {
@@ -568,6 +669,54 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
     }
 
+    /**
+     * Writes a whole blob, through its file channel if it has a file.
+     *
+     * @since 9.3
+     */
+    protected void transferBlob(Blob blob, OutputStream out) throws IOException {
+        if (blob instanceof BinaryBlob) {
+            // binary manager blob, let it transfer the file directly
+            ((BinaryBlob) blob).getBinary().transferTo(out);
+            return;
+        }
+        File file = blob.getFile();
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                Binary.transferTo(channel, 0, channel.size(), out);
+            }
+            return;
+        }
+        try (InputStream in = blob.getStream()) {
+            IOUtils.copy(in, out);
+        }
+    }
+
+    /**
+     * Writes a range of a blob without reading the bytes before it: files are read at the range position, other
+     * streams are skipped up to it.
+     *
+     * @since 9.3
+     */
+    protected void transferBlob(Blob blob, long start, long length, OutputStream out) throws IOException {
+        if (blob instanceof BinaryBlob) {
+            // the binary manager provides a local or cached file when it can
+            ((BinaryBlob) blob).getBinary().transferTo(start, length, out);
+            return;
+        }
+        File file = blob.getFile();
+        if (file != null) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                Binary.transferTo(channel, start, length, out);
+            }
+            return;
+        }
+        try (InputStream in = blob.getStream()) {
+            Binary.skip(in, start);
+            IOUtils.copyLarge(in, out, 0, length);
+        }
+    }
+
     protected String fixXPath(String xpath) {
         // Hack for Flash Url wich doesn't support ':' char
         return xpath == null ? null : xpath.replace(';', ':');
@@ -53,6 +53,13 @@ public class DocumentPipeImpl implements DocumentPipe {
         this(0);
     }
 
+    /**
+     * @since 9.3
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
     @Override
     public void addTransformer(DocumentTransformer transformer) {
         transformers.add(transformer);
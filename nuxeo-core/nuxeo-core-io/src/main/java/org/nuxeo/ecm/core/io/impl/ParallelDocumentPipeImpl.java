@@ -0,0 +1,356 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.io.impl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.io.DocumentPipe;
+import org.nuxeo.ecm.core.io.DocumentReader;
+import org.nuxeo.ecm.core.io.DocumentTranslationMap;
+import org.nuxeo.ecm.core.io.ExportedDocument;
+
+/**
+ * A {@link DocumentPipe} running the transformers of several pages of documents in parallel.
+ * <p>
+ * The reader and the writer are called on the thread running the pipe, so that they can use a session and its
+ * transaction. While transformer threads work on the pages already read, the pipe keeps reading, up to a bounded number
+ * of pages in progress. Pages are written in the order they were read, so parents are always written before their
+ * children.
+ * <p>
+ * If the reader does not depend on the calling thread (archive and XML readers for instance), it can run on its own
+ * thread with {@link #setReadAhead}, so that reading overlaps with writing.
+ * <p>
+ * Transformers are called concurrently on different pages and must be thread-safe. Blobs are not read by the pipe,
+ * they stay references in the {@link ExportedDocument}s until written, so the memory used is bounded by the number of
+ * pages in progress.
+ *
+ * @since 9.3
+ */
+public class ParallelDocumentPipeImpl extends DocumentPipeImpl {
+
+    private static final Log log = LogFactory.getLog(ParallelDocumentPipeImpl.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+
+    protected static final AtomicInteger PIPE_COUNT = new AtomicInteger();
+
+    /** Marks the end of the pages read ahead. */
+    protected static final ExportedDocument[] END = new ExportedDocument[0];
+
+    protected final int transformThreads;
+
+    protected final int queueSize;
+
+    protected boolean readAhead;
+
+    protected final AtomicLong readCount = new AtomicLong();
+
+    protected final AtomicLong transformCount = new AtomicLong();
+
+    protected final AtomicLong writeCount = new AtomicLong();
+
+    protected final AtomicLong readTime = new AtomicLong();
+
+    protected final AtomicLong transformTime = new AtomicLong();
+
+    protected final AtomicLong writeTime = new AtomicLong();
+
+    /**
+     * Creates a parallel pipe.
+     *
+     * @param pageSize the number of documents read and written at once, 0 to read and write them one by one
+     * @param transformThreads the number of threads running the transformers
+     * @param queueSize the maximum number of pages read but not yet written
+     */
+    public ParallelDocumentPipeImpl(int pageSize, int transformThreads, int queueSize) {
+        super(pageSize);
+        if (transformThreads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("transformThreads and queueSize must be positive");
+        }
+        this.transformThreads = transformThreads;
+        this.queueSize = queueSize;
+    }
+
+    public ParallelDocumentPipeImpl(int pageSize) {
+        this(pageSize, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Reads the documents on a dedicated thread. Only use this if the reader does not depend on the calling thread.
+     */
+    public void setReadAhead(boolean readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    @Override
+    protected void readAndWriteDocs(List<DocumentTranslationMap> maps) throws IOException {
+        int n = PIPE_COUNT.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "Nuxeo-DocumentPipe-" + n + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ExecutorService transformers = Executors.newFixedThreadPool(transformThreads, threadFactory);
+        PageSource source = readAhead ? new ReadAheadPageSource(threadFactory) : new PageSource();
+        Deque<Future<ExportedDocument[]>> pending = new ArrayDeque<>(queueSize);
+        try {
+            ExportedDocument[] docs;
+            while ((docs = source.next()) != null) {
+                ExportedDocument[] page = docs;
+                pending.add(transformers.submit(() -> transform(page)));
+                while (pending.size() >= queueSize) {
+                    write(getResult(pending.poll()), maps);
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(getResult(pending.poll()), maps);
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+            source.close();
+            transformers.shutdownNow();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(getStatistics());
+        }
+    }
+
+    /** Reads the pages of documents on the calling thread. */
+    protected class PageSource {
+
+        /**
+         * Gets the next page of documents, or {@code null} at the end.
+         */
+        public ExportedDocument[] next() throws IOException {
+            DocumentReader reader = getReader();
+            while (true) {
+                long t0 = System.nanoTime();
+                ExportedDocument[] docs;
+                if (getPageSize() == 0) {
+                    ExportedDocument doc = reader.read();
+                    docs = doc == null ? null : new ExportedDocument[] { doc };
+                } else {
+                    docs = reader.read(getPageSize());
+                }
+                readTime.addAndGet(System.nanoTime() - t0);
+                if (docs == null) {
+                    return null;
+                }
+                if (docs.length != 0) {
+                    readCount.addAndGet(docs.length);
+                    return docs;
+                }
+            }
+        }
+
+        public void close() {
+            // nothing to do
+        }
+    }
+
+    /** Reads the pages of documents on a dedicated thread, at most queueSize pages ahead. */
+    protected class ReadAheadPageSource extends PageSource implements Runnable {
+
+        protected final BlockingQueue<ExportedDocument[]> queue = new ArrayBlockingQueue<>(queueSize);
+
+        protected final Thread thread;
+
+        protected volatile Throwable error;
+
+        protected boolean done;
+
+        public ReadAheadPageSource(ThreadFactory threadFactory) {
+            thread = threadFactory.newThread(this);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                ExportedDocument[] docs;
+                while ((docs = super.next()) != null) {
+                    queue.put(docs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // don't let a reader take an interrupted read for a complete one
+                error = new IOException("Interrupted while reading documents", e);
+            } catch (Throwable t) { // NOSONAR (rethrown by the pipe thread)
+                error = t;
+            } finally {
+                // always wake up the reader
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    // closed, don't block but still signal the end if there is room
+                    queue.offer(END);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public ExportedDocument[] next() throws IOException {
+            if (done) {
+                return null;
+            }
+            ExportedDocument[] docs;
+            try {
+                docs = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading documents", e);
+            }
+            if (docs == END) {
+                done = true;
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                } else if (error instanceof RuntimeException) {
+                    throw (RuntimeException) error;
+                } else if (error instanceof Error) {
+                    throw (Error) error;
+                } else if (error != null) {
+                    throw new IOException(error);
+                }
+                return null;
+            }
+            return docs;
+        }
+
+        @Override
+        public void close() {
+            thread.interrupt();
+        }
+    }
+
+    protected ExportedDocument[] transform(ExportedDocument[] docs) throws IOException {
+        long t0 = System.nanoTime();
+        if (docs.length == 1) {
+            applyTransforms(docs[0]);
+        } else {
+            applyTransforms(docs);
+        }
+        transformTime.addAndGet(System.nanoTime() - t0);
+        transformCount.addAndGet(docs.length);
+        return docs;
+    }
+
+    protected ExportedDocument[] getResult(Future<ExportedDocument[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transforming documents", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    protected void write(ExportedDocument[] docs, List<DocumentTranslationMap> maps) throws IOException {
+        long t0 = System.nanoTime();
+        DocumentTranslationMap map;
+        if (getPageSize() == 0) {
+            map = getWriter().write(docs[0]);
+        } else {
+            map = getWriter().write(docs);
+        }
+        if (map != null) {
+            maps.add(map);
+        }
+        handleBatchEnd();
+        writeTime.addAndGet(System.nanoTime() - t0);
+        writeCount.addAndGet(docs.length);
+    }
+
+    /** Gets the number of documents read. */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /** Gets the number of documents transformed. */
+    public long getTransformCount() {
+        return transformCount.get();
+    }
+
+    /** Gets the number of documents written. */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    /** Gets the time spent reading, in milliseconds. */
+    public long getReadTimeMillis() {
+        return readTime.get() / 1_000_000;
+    }
+
+    /** Gets the time spent transforming, in milliseconds, summed over all the transformer threads. */
+    public long getTransformTimeMillis() {
+        return transformTime.get() / 1_000_000;
+    }
+
+    /** Gets the time spent writing, in milliseconds. */
+    public long getWriteTimeMillis() {
+        return writeTime.get() / 1_000_000;
+    }
+
+    /**
+     * Gets a summary of the per-stage counters and throughputs.
+     */
+    public String getStatistics() {
+        return String.format(
+                "read %d docs in %d ms (%s), transformed %d docs in %d ms (%s), written %d docs in %d ms (%s)",
+                Long.valueOf(getReadCount()), Long.valueOf(getReadTimeMillis()),
+                throughput(getReadCount(), readTime.get()), Long.valueOf(getTransformCount()),
+                Long.valueOf(getTransformTimeMillis()), throughput(getTransformCount(), transformTime.get()),
+                Long.valueOf(getWriteCount()), Long.valueOf(getWriteTimeMillis()),
+                throughput(getWriteCount(), writeTime.get()));
+    }
+
+    protected static String throughput(long count, long nanos) {
+        return String.format("%.0f docs/s", nanos == 0 ? 0 : count * 1e9 / nanos);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + getStatistics() + ')';
+    }
+
+}
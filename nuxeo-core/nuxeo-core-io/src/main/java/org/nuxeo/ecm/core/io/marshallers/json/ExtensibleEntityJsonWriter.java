@@ -83,6 +83,7 @@ public abstract class ExtensibleEntityJsonWriter<EntityType> extends AbstractJso
             if (enrichers.size() > 0) {
                 boolean hasEnrichers = false;
                 Enriched<EntityType> enriched = null;
+                OutputStreamWithJsonWriter out = null;
                 for (String enricherName : enrichers) {
                     try (Closeable resource = wrappedCtx.with(ENTITY_ENRICHER_NAME, enricherName).open()) {
                         @SuppressWarnings("rawtypes")
@@ -94,8 +95,8 @@ public abstract class ExtensibleEntityJsonWriter<EntityType> extends AbstractJso
                                 hasEnrichers = true;
                                 jg.writeObjectFieldStart("contextParameters");
                                 enriched = new Enriched<EntityType>(entity);
+                                out = new OutputStreamWithJsonWriter(jg);
                             }
-                            OutputStreamWithJsonWriter out = new OutputStreamWithJsonWriter(jg);
                             writer.write(enriched, Enriched.class, this.genericType, APPLICATION_JSON_TYPE, out);
                         }
                     }
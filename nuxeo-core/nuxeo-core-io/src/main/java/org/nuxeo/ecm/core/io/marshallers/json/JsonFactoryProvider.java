@@ -34,17 +34,17 @@ public final class JsonFactoryProvider {
 
     /**
      * A factory with simple {@link ObjectMapper} integrated.
+     * <p>
+     * Since 9.3, it is created eagerly so that all threads share the same instance: the buffers of the generators it
+     * creates are recycled per thread by Jackson.
      */
-    private static JsonFactory jsonFactory = null;
+    private static final JsonFactory jsonFactory = new JsonFactory(new ObjectMapper());
 
     /**
      * @return A {@link JsonFactory} with a simple {@link ObjectMapper}.
      * @since 7.2
      */
     public static JsonFactory get() {
-        if (jsonFactory == null) {
-            jsonFactory = new JsonFactory(new ObjectMapper());
-        }
         return jsonFactory;
     }
 
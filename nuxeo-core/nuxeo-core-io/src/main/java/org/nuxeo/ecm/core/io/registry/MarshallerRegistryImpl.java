@@ -20,12 +20,17 @@
 package org.nuxeo.ecm.core.io.registry;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.ws.rs.core.MediaType;
 
@@ -44,6 +49,12 @@ import org.nuxeo.runtime.model.DefaultComponent;
  * This implementation is based on {@link MarshallerInspector} class which is able to create marshaller instance and
  * inject properties. This class also manage marshaller's priorities.
  * </p>
+ * <p>
+ * Since 9.3, the marshallers whose managed class and generic type match a given marshalled class, generic type and
+ * media type are resolved once and cached in priority order. Only {@link Marshaller#accept(Class, Type, MediaType)},
+ * which may depend on the {@link RenderingContext}, is still called for each lookup. The cache is invalidated each time
+ * a marshaller is registered or deregistered.
+ * </p>
  *
  * @since 7.2
  */
@@ -76,6 +87,27 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
      */
     private static final Map<Class<?>, MarshallerInspector> marshallersByType = new ConcurrentHashMap<Class<?>, MarshallerInspector>();
 
+    /**
+     * Maximum number of cached resolutions, the cache is reset when reached.
+     *
+     * @since 9.3
+     */
+    private static final int MAX_RESOLUTIONS = 1000;
+
+    /**
+     * Type-compatible {@link MarshallerInspector}s ordered by priority, organized by resolution key.
+     *
+     * @since 9.3
+     */
+    private static final Map<ResolutionKey, List<MarshallerInspector>> resolutions = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each registry change, to avoid caching resolutions computed against a stale registry.
+     *
+     * @since 9.3
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
     @Override
     public void activate(ComponentContext context) {
         super.activate(context);
@@ -151,6 +183,7 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
                 inspectors.add(inspector);
             }
         }
+        invalidateResolutions();
     }
 
     @Override
@@ -184,28 +217,29 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
                 }
             }
         }
+        invalidateResolutions();
     }
 
     @Override
     public <T> Writer<T> getWriter(RenderingContext ctx, Class<T> marshalledClazz, Type genericType, MediaType mediatype) {
-        Set<MarshallerInspector> candidates = writersByMediaType.get(mediatype);
-        return (Writer<T>) getMarshaller(ctx, marshalledClazz, genericType, mediatype, candidates, writers, false);
+        List<MarshallerInspector> candidates = resolve(true, marshalledClazz, genericType, mediatype);
+        return (Writer<T>) searchCandidate(ctx, marshalledClazz, genericType, mediatype, candidates, false);
     }
 
     @Override
     public <T> Writer<T> getUniqueWriter(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype) {
-        Set<MarshallerInspector> candidates = writersByMediaType.get(mediatype);
-        return (Writer<T>) getMarshaller(ctx, marshalledClazz, genericType, mediatype, candidates, writers, true);
+        List<MarshallerInspector> candidates = resolve(true, marshalledClazz, genericType, mediatype);
+        return (Writer<T>) searchCandidate(ctx, marshalledClazz, genericType, mediatype, candidates, true);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> Collection<Writer<T>> getAllWriters(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype) {
-        Set<MarshallerInspector> candidates = writersByMediaType.get(mediatype);
-        Collection<Marshaller<T>> founds = getAllMarshallers(ctx, marshalledClazz, genericType, mediatype, candidates,
-                writers);
+        List<MarshallerInspector> candidates = resolve(true, marshalledClazz, genericType, mediatype);
+        Collection<Marshaller<T>> founds = searchAllCandidates(ctx, marshalledClazz, genericType, mediatype,
+                candidates);
         return (Collection<Writer<T>>) (Collection<?>) founds;
     }
 
@@ -216,24 +250,24 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
 
     @Override
     public <T> Reader<T> getReader(RenderingContext ctx, Class<T> marshalledClazz, Type genericType, MediaType mediatype) {
-        Set<MarshallerInspector> candidates = readersByMediaType.get(mediatype);
-        return (Reader<T>) getMarshaller(ctx, marshalledClazz, genericType, mediatype, candidates, readers, false);
+        List<MarshallerInspector> candidates = resolve(false, marshalledClazz, genericType, mediatype);
+        return (Reader<T>) searchCandidate(ctx, marshalledClazz, genericType, mediatype, candidates, false);
     }
 
     @Override
     public <T> Reader<T> getUniqueReader(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype) {
-        Set<MarshallerInspector> candidates = readersByMediaType.get(mediatype);
-        return (Reader<T>) getMarshaller(ctx, marshalledClazz, genericType, mediatype, candidates, readers, true);
+        List<MarshallerInspector> candidates = resolve(false, marshalledClazz, genericType, mediatype);
+        return (Reader<T>) searchCandidate(ctx, marshalledClazz, genericType, mediatype, candidates, true);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> Collection<Reader<T>> getAllReaders(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype) {
-        Set<MarshallerInspector> candidates = readersByMediaType.get(mediatype);
-        Collection<Marshaller<T>> founds = getAllMarshallers(ctx, marshalledClazz, genericType, mediatype, candidates,
-                readers);
+        List<MarshallerInspector> candidates = resolve(false, marshalledClazz, genericType, mediatype);
+        Collection<Marshaller<T>> founds = searchAllCandidates(ctx, marshalledClazz, genericType, mediatype,
+                candidates);
         return (Collection<Reader<T>>) (Collection<?>) founds;
     }
 
@@ -245,71 +279,107 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
     public <T> Marshaller<T> getMarshaller(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype, Set<MarshallerInspector> customs, Set<MarshallerInspector> wildcards,
             boolean forceInstantiation) {
-        if (customs != null) {
-            Marshaller<T> found = searchCandidate(ctx, marshalledClazz, genericType, mediatype, customs,
-                    forceInstantiation);
-            if (found != null) {
-                return found;
-            }
-        }
-        return searchCandidate(ctx, marshalledClazz, genericType, mediatype, wildcards, forceInstantiation);
+        List<MarshallerInspector> candidates = filterCandidates(marshalledClazz, genericType, customs, wildcards);
+        return searchCandidate(ctx, marshalledClazz, genericType, mediatype, candidates, forceInstantiation);
     }
 
     public <T> Collection<Marshaller<T>> getAllMarshallers(RenderingContext ctx, Class<T> marshalledClazz,
             Type genericType, MediaType mediatype, Set<MarshallerInspector> customs, Set<MarshallerInspector> wildcards) {
-        Map<MarshallerInspector, Marshaller<T>> result = new HashMap<MarshallerInspector, Marshaller<T>>();
+        List<MarshallerInspector> candidates = filterCandidates(marshalledClazz, genericType, customs, wildcards);
+        return searchAllCandidates(ctx, marshalledClazz, genericType, mediatype, candidates);
+    }
+
+    /**
+     * Gets the marshallers whose managed class and generic type are compatible with the given ones, the ones
+     * registered for the given media type first, each group ordered by priority. The result is cached.
+     *
+     * @since 9.3
+     */
+    protected List<MarshallerInspector> resolve(boolean writer, Class<?> marshalledClazz, Type genericType,
+            MediaType mediatype) {
+        ResolutionKey key = new ResolutionKey(writer, marshalledClazz, genericType, mediatype);
+        List<MarshallerInspector> candidates = resolutions.get(key);
+        if (candidates == null) {
+            long gen = generation.get();
+            Set<MarshallerInspector> customs = (writer ? writersByMediaType : readersByMediaType).get(mediatype);
+            candidates = filterCandidates(marshalledClazz, genericType, customs, writer ? writers : readers);
+            if (resolutions.size() >= MAX_RESOLUTIONS) {
+                resolutions.clear();
+            }
+            resolutions.put(key, candidates);
+            if (generation.get() != gen) {
+                // the registry changed meanwhile, don't keep a possibly stale resolution
+                resolutions.remove(key);
+            }
+        }
+        return candidates;
+    }
+
+    private List<MarshallerInspector> filterCandidates(Class<?> marshalledClazz, Type genericType,
+            Set<MarshallerInspector> customs, Set<MarshallerInspector> wildcards) {
+        Set<MarshallerInspector> result = new LinkedHashSet<>();
         if (customs != null) {
-            result.putAll(searchAllCandidates(ctx, marshalledClazz, genericType, mediatype, customs));
+            filterCandidates(marshalledClazz, genericType, customs, result);
         }
-        result.putAll(searchAllCandidates(ctx, marshalledClazz, genericType, mediatype, wildcards));
-        return result.values();
+        filterCandidates(marshalledClazz, genericType, wildcards, result);
+        return Collections.unmodifiableList(new ArrayList<>(result));
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> Marshaller<T> searchCandidate(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
-            MediaType mediatype, Set<MarshallerInspector> candidates, boolean forceInstantiation) {
+    private void filterCandidates(Class<?> marshalledClazz, Type genericType, Set<MarshallerInspector> candidates,
+            Set<MarshallerInspector> result) {
         for (MarshallerInspector inspector : candidates) {
             // checks the managed class is compatible
             if (inspector.getMarshalledType().isAssignableFrom(marshalledClazz)) {
                 // checks the generic type is compatible
                 if (genericType == null || marshalledClazz.equals(inspector.getGenericType())
                         || TypeUtils.isAssignable(genericType, inspector.getGenericType())) {
-                    Marshaller<T> marshaller = null;
-                    if (forceInstantiation) {
-                        marshaller = (Marshaller<T>) inspector.getNewInstance(ctx, false);
-                    } else {
-                        marshaller = inspector.getInstance(ctx);
-                    }
-                    // checks the marshaller accepts the request
-                    if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
-                        return marshaller;
-                    }
+                    result.add(inspector);
                 }
             }
         }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Marshaller<T> searchCandidate(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
+            MediaType mediatype, List<MarshallerInspector> candidates, boolean forceInstantiation) {
+        for (MarshallerInspector inspector : candidates) {
+            Marshaller<T> marshaller = null;
+            if (forceInstantiation) {
+                marshaller = (Marshaller<T>) inspector.getNewInstance(ctx, false);
+            } else {
+                marshaller = inspector.getInstance(ctx);
+            }
+            // checks the marshaller accepts the request
+            if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
+                return marshaller;
+            }
+        }
         return null;
     }
 
-    private <T> Map<MarshallerInspector, Marshaller<T>> searchAllCandidates(RenderingContext ctx,
-            Class<T> marshalledClazz, Type genericType, MediaType mediatype, Set<MarshallerInspector> candidates) {
-        Map<MarshallerInspector, Marshaller<T>> result = new HashMap<MarshallerInspector, Marshaller<T>>();
+    private <T> Collection<Marshaller<T>> searchAllCandidates(RenderingContext ctx, Class<T> marshalledClazz,
+            Type genericType, MediaType mediatype, List<MarshallerInspector> candidates) {
+        List<Marshaller<T>> result = new ArrayList<>();
         for (MarshallerInspector inspector : candidates) {
-            // checks the managed class is compatible
-            if (inspector.getMarshalledType().isAssignableFrom(marshalledClazz)) {
-                // checks the generic type is compatible
-                if (genericType == null || marshalledClazz.equals(inspector.getGenericType())
-                        || TypeUtils.isAssignable(genericType, inspector.getGenericType())) {
-                    // checks the marshaller accepts the request
-                    Marshaller<T> marshaller = inspector.getInstance(ctx);
-                    if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
-                        result.put(inspector, marshaller);
-                    }
-                }
+            // checks the marshaller accepts the request
+            Marshaller<T> marshaller = inspector.getInstance(ctx);
+            if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
+                result.add(marshaller);
             }
         }
         return result;
     }
 
+    /**
+     * Invalidates the cached resolutions after a registry change.
+     *
+     * @since 9.3
+     */
+    protected void invalidateResolutions() {
+        generation.incrementAndGet();
+        resolutions.clear();
+    }
+
     @Override
     public <T> T getInstance(RenderingContext ctx, Class<T> marshallerClass) {
         MarshallerInspector inspector = marshallersByType.get(marshallerClass);
@@ -337,6 +407,51 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
         writers.clear();
         readersByMediaType.clear();
         readers.clear();
+        invalidateResolutions();
+    }
+
+    /**
+     * Key of a cached resolution.
+     *
+     * @since 9.3
+     */
+    private static final class ResolutionKey {
+
+        private final boolean writer;
+
+        private final Class<?> marshalledClazz;
+
+        private final Type genericType;
+
+        private final MediaType mediatype;
+
+        private final int hashCode;
+
+        private ResolutionKey(boolean writer, Class<?> marshalledClazz, Type genericType, MediaType mediatype) {
+            this.writer = writer;
+            this.marshalledClazz = marshalledClazz;
+            this.genericType = genericType;
+            this.mediatype = mediatype;
+            hashCode = Objects.hash(Boolean.valueOf(writer), marshalledClazz, genericType, mediatype);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ResolutionKey)) {
+                return false;
+            }
+            ResolutionKey other = (ResolutionKey) obj;
+            return writer == other.writer && marshalledClazz.equals(other.marshalledClazz)
+                    && Objects.equals(genericType, other.genericType) && Objects.equals(mediatype, other.mediatype);
+        }
     }
 
 }
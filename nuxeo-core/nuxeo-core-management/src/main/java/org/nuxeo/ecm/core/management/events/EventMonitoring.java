@@ -22,6 +22,8 @@ package org.nuxeo.ecm.core.management.events;
 
 import org.nuxeo.ecm.core.event.EventServiceAdmin;
 import org.nuxeo.ecm.core.event.impl.EventListenerDescriptor;
+import org.nuxeo.ecm.core.event.impl.EventListenerMetrics;
+import org.nuxeo.ecm.core.event.impl.EventListenerMetrics.Sample;
 import org.nuxeo.ecm.core.event.impl.EventListenerList;
 import org.nuxeo.runtime.api.Framework;
 
@@ -142,4 +144,29 @@ public class EventMonitoring implements EventMonitoringMBean {
         getAdminService().setBulkModeEnabled(bulkModeEnabled);
     }
 
+    @Override
+    public boolean isListenerMetricsEnabled() {
+        return EventListenerMetrics.isEnabled();
+    }
+
+    @Override
+    public void setListenerMetricsEnabled(boolean enabled) {
+        EventListenerMetrics.setEnabled(enabled);
+    }
+
+    @Override
+    public String getSlowestListenerInvocations() {
+        StringBuilder sb = new StringBuilder();
+        for (Sample sample : EventListenerMetrics.getSlowest()) {
+            sb.append(sample);
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void resetSlowestListenerInvocations() {
+        EventListenerMetrics.resetSlowest();
+    }
+
 }
@@ -112,4 +112,32 @@ public interface EventMonitoringMBean {
      */
     void setBulkModeEnabled(boolean bulkModeEnabled);
 
+    /**
+     * Tells if the listener invocations are timed.
+     *
+     * @since 9.3
+     */
+    boolean isListenerMetricsEnabled();
+
+    /**
+     * Enables or disables the timing of listener invocations.
+     *
+     * @since 9.3
+     */
+    void setListenerMetricsEnabled(boolean enabled);
+
+    /**
+     * Returns the slowest listener invocations, one per line, slowest first.
+     *
+     * @since 9.3
+     */
+    String getSlowestListenerInvocations();
+
+    /**
+     * Forgets the slowest listener invocations.
+     *
+     * @since 9.3
+     */
+    void resetSlowestListenerInvocations();
+
 }
@@ -21,8 +21,11 @@ package org.nuxeo.ecm.core.redis.contribs;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +37,9 @@ import org.nuxeo.ecm.core.redis.RedisExecutor;
 import org.nuxeo.ecm.core.storage.kv.KeyValueStoreProvider;
 import org.nuxeo.runtime.api.Framework;
 
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
+
 /**
  * Redis implementation of a Key/Value Store Provider.
  * <p>
@@ -105,6 +111,91 @@ public class RedisKeyValueStore implements KeyValueStoreProvider {
         });
     }
 
+    @Override
+    public void put(String key, byte[] value, long ttl) {
+        RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
+        redisExecutor.execute(jedis -> {
+            byte[] keyb = getBytes(namespace + key);
+            if (value == null) {
+                jedis.del(keyb);
+            } else if (ttl <= 0) {
+                jedis.set(keyb, value);
+            } else {
+                jedis.setex(keyb, (int) ttl, value);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void put(Map<String, byte[]> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
+        redisExecutor.execute(jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            values.forEach((key, value) -> {
+                byte[] keyb = getBytes(namespace + key);
+                if (value == null) {
+                    pipeline.del(keyb);
+                } else {
+                    pipeline.set(keyb, value);
+                }
+            });
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    @Override
+    public boolean setTTL(String key, long ttl) {
+        RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
+        return redisExecutor.execute(jedis -> {
+            byte[] keyb = getBytes(namespace + key);
+            if (ttl <= 0) {
+                // PERSIST returns 0 if the key has no expiration, check existence instead
+                jedis.persist(keyb);
+                return jedis.exists(keyb);
+            } else {
+                return Boolean.valueOf(ONE.equals(jedis.expire(keyb, (int) ttl)));
+            }
+        }).booleanValue();
+    }
+
+    @Override
+    public long addAndGet(String key, long delta) throws NumberFormatException {
+        RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
+        try {
+            return redisExecutor.execute(jedis -> jedis.incrBy(getBytes(namespace + key), delta)).longValue();
+        } catch (JedisDataException e) {
+            // value is not an integer or out of range
+            throw (NumberFormatException) new NumberFormatException(e.getMessage()).initCause(e);
+        }
+    }
+
+    @Override
+    public Map<String, byte[]> get(Collection<String> keys) {
+        Map<String, byte[]> map = new HashMap<>();
+        if (keys.isEmpty()) {
+            return map;
+        }
+        List<String> keyList = new ArrayList<>(keys);
+        byte[][] keysb = new byte[keyList.size()][];
+        for (int i = 0; i < keysb.length; i++) {
+            keysb[i] = getBytes(namespace + keyList.get(i));
+        }
+        RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
+        List<byte[]> values = redisExecutor.execute(jedis -> jedis.mget(keysb));
+        for (int i = 0; i < keysb.length; i++) {
+            byte[] value = values.get(i);
+            if (value != null) {
+                map.put(keyList.get(i), value);
+            }
+        }
+        return map;
+    }
+
     @Override
     public byte[] get(String key) {
         RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
@@ -19,6 +19,9 @@
  */
 package org.nuxeo.ecm.core.redis.contribs;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.NuxeoException;
@@ -72,4 +75,25 @@ public class RedisUIDSequencer extends AbstractUIDSequencer {
         }
     }
 
+    @Override
+    public List<Long> getNextBlock(String key, int size) {
+        RedisExecutor executor = Framework.getService(RedisExecutor.class);
+        long last;
+        try {
+            last = executor.execute(new RedisCallable<Long>() {
+                @Override
+                public Long call(Jedis jedis) {
+                    return jedis.incrBy(namespace + key, size);
+                }
+            }).longValue();
+        } catch (JedisException e) {
+            throw new NuxeoException(e);
+        }
+        List<Long> ids = new ArrayList<>(size);
+        for (long id = last - size + 1; id <= last; id++) {
+            ids.add(Long.valueOf(id));
+        }
+        return ids;
+    }
+
 }
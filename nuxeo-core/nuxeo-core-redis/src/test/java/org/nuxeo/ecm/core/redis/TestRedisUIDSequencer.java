@@ -23,6 +23,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+
 import javax.inject.Inject;
 
 import org.junit.Test;
@@ -57,4 +59,14 @@ public class TestRedisUIDSequencer {
         assertEquals(2, sequencer.getNext("B"));
     }
 
+    @Test
+    public void testRedisUIDSequencerBlock() throws Exception {
+        UIDSequencer sequencer = service.getSequencer("redisSequencer");
+        sequencer.init(); // not correctly done in tests TODO fix this
+
+        assertEquals(1, sequencer.getNext("C"));
+        assertEquals(Arrays.asList(2L, 3L, 4L), sequencer.getNextBlock("C", 3));
+        assertEquals(5, sequencer.getNext("C"));
+    }
+
 }
@@ -27,11 +27,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -47,7 +49,9 @@ import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
 import org.nuxeo.ecm.core.storage.FulltextConfiguration;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSChildrenCache.Children;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 import org.nuxeo.runtime.metrics.MetricsService;
 
 import com.codahale.metrics.MetricRegistry;
@@ -59,6 +63,9 @@ import com.google.common.collect.Ordering;
 
 /**
  * The DBS Cache layer used to cache some method call of real repository
+ * <p>
+ * Besides the states, it caches the children of parents by name (including absent names) and full children lists,
+ * see {@link DBSChildrenCache}. Both caches are invalidated across the cluster through {@link DBSInvalidations}.
  *
  * @since 8.10
  */
@@ -72,7 +79,7 @@ public class DBSCachingRepository implements DBSRepository {
 
     private final Cache<String, State> cache;
 
-    private final Cache<String, String> childCache;
+    private final DBSChildrenCache childrenCache;
 
     private DBSClusterInvalidator clusterInvalidator;
 
@@ -85,9 +92,11 @@ public class DBSCachingRepository implements DBSRepository {
         // Init caches
         cache = newCache(descriptor);
         registry.registerAll(GuavaCacheMetric.of(cache, "nuxeo", "repositories", repository.getName(), "cache"));
-        childCache = newCache(descriptor);
-        registry.registerAll(
-                GuavaCacheMetric.of(childCache, "nuxeo", "repositories", repository.getName(), "childCache"));
+        int maxChildren = descriptor.cacheMaxChildren == null ? DBSChildrenCache.DEFAULT_MAX_CHILDREN
+                : descriptor.cacheMaxChildren.intValue();
+        childrenCache = new DBSChildrenCache(newCacheBuilder(descriptor), maxChildren);
+        registry.registerAll(GuavaCacheMetric.of(childrenCache.getCache(), "nuxeo", "repositories",
+                repository.getName(), "childCache"));
         if (log.isInfoEnabled()) {
             log.info(String.format("DBS cache activated on '%s' repository", repository.getName()));
         }
@@ -98,6 +107,11 @@ public class DBSCachingRepository implements DBSRepository {
     }
 
     protected <T> Cache<String, T> newCache(DBSRepositoryDescriptor descriptor) {
+        return newCacheBuilder(descriptor).build();
+    }
+
+    /** @since 9.3 */
+    protected CacheBuilder<Object, Object> newCacheBuilder(DBSRepositoryDescriptor descriptor) {
         CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
         builder = builder.expireAfterWrite(descriptor.cacheTTL.longValue(), TimeUnit.MINUTES).recordStats();
         if (descriptor.cacheConcurrencyLevel != null) {
@@ -106,7 +120,7 @@ public class DBSCachingRepository implements DBSRepository {
         if (descriptor.cacheMaxSize != null) {
             builder = builder.maximumSize(descriptor.cacheMaxSize.longValue());
         }
-        return builder.build();
+        return builder;
     }
 
     protected void initClusterInvalidator(DBSRepositoryDescriptor descriptor) {
@@ -158,7 +172,7 @@ public class DBSCachingRepository implements DBSRepository {
         repository.shutdown();
         // Clear caches
         cache.invalidateAll();
-        childCache.invalidateAll();
+        childrenCache.invalidateAll();
         // Remove metrics
         String cacheName = MetricRegistry.name("nuxeo", "repositories", repository.getName(), "cache");
         String childCacheName = MetricRegistry.name("nuxeo", "repositories", repository.getName(), "childCache");
@@ -205,18 +219,62 @@ public class DBSCachingRepository implements DBSRepository {
     public void createState(State state) {
         repository.createState(state);
         // don't cache new state, it is inefficient on mass import
+        Object parentId = state.get(KEY_PARENT_ID);
+        if (parentId != null) {
+            invalidateParents(Collections.singleton(parentId.toString()));
+        }
     }
 
     @Override
     public void createStates(List<State> states) {
         repository.createStates(states);
         // don't cache new states, it is inefficient on mass import
+        Set<String> parentIds = new HashSet<>();
+        for (State state : states) {
+            Object parentId = state.get(KEY_PARENT_ID);
+            if (parentId != null) {
+                parentIds.add(parentId.toString());
+            }
+        }
+        invalidateParents(parentIds);
     }
 
     @Override
     public void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+        Set<String> parentIds = new HashSet<>();
+        collectNewParentId(id, diff, parentIds);
         repository.updateState(id, diff, changeTokenUpdater);
         invalidate(id);
+        invalidateParents(parentIds);
+    }
+
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        Set<String> parentIds = new HashSet<>();
+        for (StateUpdate update : updates) {
+            collectNewParentId(update.id, update.diff, parentIds);
+        }
+        repository.updateStates(updates);
+        invalidateAll(updates.stream().map(update -> update.id).collect(Collectors.toList()));
+        invalidateParents(parentIds);
+    }
+
+    /**
+     * Collects the parent under which a document gets a new name, if the diff moves or renames it.
+     * <p>
+     * Entries referencing the document under its old name are invalidated through the document id, but negative
+     * entries for its new name must be invalidated through the parent.
+     */
+    protected void collectNewParentId(String id, StateDiff diff, Set<String> parentIds) {
+        Object parentId = diff.get(KEY_PARENT_ID);
+        if (parentId == null && diff.containsKey(KEY_NAME)) {
+            // rename, read the current parent before the update
+            State state = readState(id);
+            parentId = state == null ? null : state.get(KEY_PARENT_ID);
+        }
+        if (parentId instanceof String) {
+            parentIds.add((String) parentId);
+        }
     }
 
     @Override
@@ -229,47 +287,53 @@ public class DBSCachingRepository implements DBSRepository {
     public State readChildState(String parentId, String name, Set<String> ignored) {
         processReceivedInvalidations();
 
-        String childCacheKey = computeChildCacheKey(parentId, name);
-        String stateId = childCache.getIfPresent(childCacheKey);
-        if (stateId != null) {
-            State state = cache.getIfPresent(stateId);
-            if (state != null) {
-                // As we don't have invalidation for childCache we need to check if retrieved state is the right one
-                // and not a previous document which was moved or renamed
-                if (parentId.equals(state.get(KEY_PARENT_ID)) && name.equals(state.get(KEY_NAME))) {
-                    return state;
-                } else {
-                    // We can invalidate the entry in cache as the document seemed to be moved or renamed
-                    childCache.invalidate(childCacheKey);
-                }
+        long version = childrenCache.getVersion();
+        Children children = childrenCache.get(parentId);
+        String childId = children.getId(name);
+        if (childId != null && !ignored.contains(childId)) {
+            State state = readState(childId);
+            if (isChild(state, parentId, name)) {
+                return state;
             }
+            childrenCache.invalidateParents(Collections.singleton(parentId));
+            children = childrenCache.get(parentId);
+        } else if (childId == null && children.isAbsent(name)) {
+            return null;
         }
         State state = repository.readChildState(parentId, name, ignored);
         putInCache(state);
+        if (ignored.isEmpty()) {
+            if (state == null) {
+                childrenCache.putAbsent(children, name);
+            } else {
+                childrenCache.putChild(children, name, state.get(KEY_ID).toString(), version);
+            }
+        }
         return state;
     }
 
+    /**
+     * Checks that a cached child is still under the given parent with the given name, in case of a move, rename or
+     * delete whose invalidation was not received yet.
+     */
+    protected boolean isChild(State state, String parentId, String name) {
+        return state != null && parentId.equals(state.get(KEY_PARENT_ID)) && name.equals(state.get(KEY_NAME));
+    }
+
     private void putInCache(State state) {
         if (state != null) {
             String stateId = state.get(KEY_ID).toString();
             cache.put(stateId, state);
-            Object stateParentId = state.get(KEY_PARENT_ID);
-            if (stateParentId != null) {
-                childCache.put(computeChildCacheKey(stateParentId.toString(), state.get(KEY_NAME).toString()), stateId);
-            }
         }
     }
 
-    private String computeChildCacheKey(String parentId, String name) {
-        return parentId + '_' + name;
-    }
-
     private void invalidate(String id) {
         invalidateAll(Collections.singleton(id));
     }
 
     private void invalidateAll(Collection<String> ids) {
         cache.invalidateAll(ids);
+        childrenCache.invalidateChildren(ids);
         if (clusterInvalidator != null) {
             synchronized (invalidations) {
                 invalidations.addAll(ids);
@@ -277,6 +341,18 @@ public class DBSCachingRepository implements DBSRepository {
         }
     }
 
+    private void invalidateParents(Collection<String> parentIds) {
+        if (parentIds.isEmpty()) {
+            return;
+        }
+        childrenCache.invalidateParents(parentIds);
+        if (clusterInvalidator != null) {
+            synchronized (invalidations) {
+                invalidations.addParents(parentIds);
+            }
+        }
+    }
+
     protected void sendInvalidationsToOther() {
         synchronized (invalidations) {
             if (!invalidations.isEmpty()) {
@@ -293,9 +369,15 @@ public class DBSCachingRepository implements DBSRepository {
             DBSInvalidations invalidations = clusterInvalidator.receiveInvalidations();
             if (invalidations.all) {
                 cache.invalidateAll();
-                childCache.invalidateAll();
-            } else if (invalidations.ids != null) {
-                cache.invalidateAll(invalidations.ids);
+                childrenCache.invalidateAll();
+            } else {
+                if (invalidations.ids != null) {
+                    cache.invalidateAll(invalidations.ids);
+                    childrenCache.invalidateChildren(invalidations.ids);
+                }
+                if (invalidations.parentIds != null) {
+                    childrenCache.invalidateParents(invalidations.parentIds);
+                }
             }
         }
     }
@@ -332,14 +414,64 @@ public class DBSCachingRepository implements DBSRepository {
 
     @Override
     public boolean hasChild(String parentId, String name, Set<String> ignored) {
-        return repository.hasChild(parentId, name, ignored);
+        processReceivedInvalidations();
+
+        Children children = childrenCache.get(parentId);
+        String childId = children.getId(name);
+        if (childId != null && !ignored.contains(childId)) {
+            if (isChild(readState(childId), parentId, name)) {
+                return true;
+            }
+            childrenCache.invalidateParents(Collections.singleton(parentId));
+            children = childrenCache.get(parentId);
+        } else if (childId == null && children.isAbsent(name)) {
+            return false;
+        }
+        boolean hasChild = repository.hasChild(parentId, name, ignored);
+        if (!hasChild && ignored.isEmpty()) {
+            childrenCache.putAbsent(children, name);
+        }
+        return hasChild;
     }
 
     @Override
     public List<State> queryKeyValue(String key, Object value, Set<String> ignored) {
+        if (KEY_PARENT_ID.equals(key) && value instanceof String) {
+            return getChildren((String) value, ignored);
+        }
         return repository.queryKeyValue(key, value, ignored);
     }
 
+    /**
+     * Gets the children of a parent, fetching and caching the whole list in one query if it is not cached yet.
+     *
+     * @since 9.3
+     */
+    protected List<State> getChildren(String parentId, Set<String> ignored) {
+        processReceivedInvalidations();
+
+        long version = childrenCache.getVersion();
+        Children children = childrenCache.get(parentId);
+        List<String> ids = children.getAll();
+        if (ids == null) {
+            List<State> states = repository.queryKeyValue(KEY_PARENT_ID, parentId, Collections.emptySet());
+            if (childrenCache.putChildren(children, states, version)) {
+                states.forEach(this::putInCache);
+            }
+            if (!ignored.isEmpty()) {
+                states = states.stream()
+                               .filter(state -> !ignored.contains(state.get(KEY_ID)))
+                               .collect(Collectors.toList());
+            }
+            return states;
+        }
+        List<String> idsToRead = ids;
+        if (!ignored.isEmpty()) {
+            idsToRead = ids.stream().filter(id -> !ignored.contains(id)).collect(Collectors.toList());
+        }
+        return idsToRead.isEmpty() ? new ArrayList<>() : readStates(idsToRead);
+    }
+
     @Override
     public List<State> queryKeyValue(String key1, Object value1, String key2, Object value2, Set<String> ignored) {
         return repository.queryKeyValue(key1, value1, key2, value2, ignored);
@@ -353,6 +485,21 @@ public class DBSCachingRepository implements DBSRepository {
 
     @Override
     public boolean queryKeyValuePresence(String key, String value, Set<String> ignored) {
+        if (KEY_PARENT_ID.equals(key)) {
+            processReceivedInvalidations();
+            Children children = childrenCache.getIfPresent(value);
+            if (children != null) {
+                for (String id : children.getKnownIds()) {
+                    if (!ignored.contains(id)) {
+                        return true;
+                    }
+                }
+                if (children.getAll() != null) {
+                    // fully listed, and all children ignored
+                    return false;
+                }
+            }
+        }
         return repository.queryKeyValuePresence(key, value, ignored);
     }
 
@@ -382,6 +529,11 @@ public class DBSCachingRepository implements DBSRepository {
         return repository.getLock(id);
     }
 
+    @Override
+    public Map<String, Lock> getLocks(Collection<String> ids) {
+        return repository.getLocks(ids);
+    }
+
     @Override
     public Lock setLock(String id, Lock lock) {
         return repository.setLock(id, lock);
@@ -0,0 +1,281 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.ecm.core.storage.State;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Cache of the children of a parent, by name, used by {@link DBSCachingRepository}.
+ * <p>
+ * For each parent it records the ids of children looked up by name, the names known to be absent, and when the parent
+ * has been fully listed all its children ids. The number of names cached for a parent is bounded.
+ * <p>
+ * Entries are invalidated explicitly, either when a parent's set of children changed or when a child that the entry
+ * references is modified or deleted. To avoid caching the result of a backend read that raced with an invalidation,
+ * callers get the entry <em>before</em> reading from the backend and record the result in that entry; if it has been
+ * invalidated in the meantime the result is dropped. A child invalidated before the entry references it cannot be
+ * found through the entry, so callers also get the {@linkplain #getVersion version} of the cache before reading, and
+ * children are only recorded if no child was invalidated since.
+ *
+ * @since 9.3
+ */
+public class DBSChildrenCache {
+
+    public static final int DEFAULT_MAX_CHILDREN = 1000;
+
+    /**
+     * The cached children of a parent.
+     */
+    public static class Children {
+
+        protected final String parentId;
+
+        /** Child name to child id. */
+        protected final Map<String, String> ids = new ConcurrentHashMap<>();
+
+        /** Names known to be absent. */
+        protected final Set<String> absent = ConcurrentHashMap.newKeySet();
+
+        /** All the children ids in backend order, or {@code null} if not fully listed. */
+        protected volatile List<String> all;
+
+        protected volatile boolean invalidated;
+
+        protected Children(String parentId) {
+            this.parentId = parentId;
+        }
+
+        /**
+         * Gets the id of the child with the given name, or {@code null} if unknown or absent.
+         */
+        public String getId(String name) {
+            return ids.get(name);
+        }
+
+        /**
+         * Checks if the given name is known to be absent.
+         */
+        public boolean isAbsent(String name) {
+            return absent.contains(name) || all != null && !ids.containsKey(name);
+        }
+
+        /**
+         * Gets all the children ids, or {@code null} if the parent has not been fully listed.
+         */
+        public List<String> getAll() {
+            return all;
+        }
+
+        /**
+         * Gets the ids of the children known by name.
+         */
+        public Collection<String> getKnownIds() {
+            return ids.values();
+        }
+    }
+
+    protected final int maxChildren;
+
+    protected final Cache<String, Children> cache;
+
+    /** Child id to the ids of the parents whose entry references it. */
+    protected final Map<String, Set<String>> parentsOfChild = new ConcurrentHashMap<>();
+
+    /** Incremented before each invalidation of children. */
+    protected final AtomicLong version = new AtomicLong();
+
+    public DBSChildrenCache(CacheBuilder<Object, Object> builder, int maxChildren) {
+        this.maxChildren = maxChildren;
+        CacheBuilder<String, Children> childrenBuilder = builder.removalListener(this::onRemoval);
+        cache = childrenBuilder.build();
+    }
+
+    public Cache<String, Children> getCache() {
+        return cache;
+    }
+
+    /**
+     * Gets the cached children of a parent, creating an empty entry if needed.
+     * <p>
+     * This must be called before reading from the backend the information to record in the entry.
+     */
+    public Children get(String parentId) {
+        Children children = cache.getIfPresent(parentId);
+        if (children == null) {
+            Children newChildren = new Children(parentId);
+            children = cache.asMap().putIfAbsent(parentId, newChildren);
+            if (children == null) {
+                children = newChildren;
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Gets the version of the cache, to be passed when recording children read from the backend.
+     * <p>
+     * This must be called before reading from the backend.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Gets the cached children of a parent, or {@code null} if there is no entry for it.
+     */
+    public Children getIfPresent(String parentId) {
+        return cache.getIfPresent(parentId);
+    }
+
+    /**
+     * Records a child found by name.
+     *
+     * @param version the version of the cache before the child was read
+     */
+    public void putChild(Children children, String name, String id, long version) {
+        if (children.ids.size() + children.absent.size() >= maxChildren) {
+            return;
+        }
+        if (addParentOfChild(children, id, version)) {
+            children.ids.put(name, id);
+        }
+    }
+
+    /**
+     * Records a name known to be absent.
+     */
+    public void putAbsent(Children children, String name) {
+        if (children.invalidated || children.ids.size() + children.absent.size() >= maxChildren) {
+            return;
+        }
+        children.absent.add(name);
+    }
+
+    /**
+     * Records the full list of children of a parent.
+     *
+     * @param version the version of the cache before the children were read
+     * @return {@code true} if the list was recorded, {@code false} if there are too many children or if they were
+     *         concurrently invalidated
+     */
+    public boolean putChildren(Children children, List<State> states, long version) {
+        if (states.size() > maxChildren) {
+            return false;
+        }
+        List<String> all = new ArrayList<>(states.size());
+        for (State state : states) {
+            String id = (String) state.get(KEY_ID);
+            if (!addParentOfChild(children, id, version)) {
+                return false;
+            }
+            String name = (String) state.get(KEY_NAME);
+            if (name != null) {
+                children.ids.put(name, id);
+            }
+            all.add(id);
+        }
+        children.absent.clear();
+        children.all = all;
+        return true;
+    }
+
+    protected boolean addParentOfChild(Children children, String id, long version) {
+        if (children.invalidated || this.version.get() != version) {
+            return false;
+        }
+        parentsOfChild.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(children.parentId);
+        // a child invalidated from now on finds the reference, one invalidated before changed the version
+        if (children.invalidated || this.version.get() != version) {
+            // invalidated concurrently, don't leave a dangling reference
+            removeParentOfChild(id, children.parentId);
+            return false;
+        }
+        return true;
+    }
+
+    protected void removeParentOfChild(String id, String parentId) {
+        parentsOfChild.computeIfPresent(id, (k, parentIds) -> {
+            parentIds.remove(parentId);
+            return parentIds.isEmpty() ? null : parentIds;
+        });
+    }
+
+    protected void onRemoval(RemovalNotification<String, Children> notification) {
+        Children children = notification.getValue();
+        if (children == null) {
+            return;
+        }
+        children.invalidated = true;
+        for (String id : children.ids.values()) {
+            removeParentOfChild(id, children.parentId);
+        }
+    }
+
+    /**
+     * Invalidates the children of the given parents.
+     */
+    public void invalidateParents(Collection<String> parentIds) {
+        for (String parentId : parentIds) {
+            Children children = cache.asMap().remove(parentId);
+            if (children != null) {
+                // also done by the removal listener, but do it now to catch concurrent backend reads
+                children.invalidated = true;
+            }
+        }
+    }
+
+    /**
+     * Invalidates the entries referencing the given children, because they were modified or deleted.
+     */
+    public void invalidateChildren(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        version.incrementAndGet();
+        for (String id : ids) {
+            Set<String> parentIds = parentsOfChild.remove(id);
+            if (parentIds != null) {
+                invalidateParents(parentIds);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+        cache.asMap().values().forEach(children -> children.invalidated = true);
+        cache.invalidateAll();
+        parentsOfChild.clear();
+    }
+
+}
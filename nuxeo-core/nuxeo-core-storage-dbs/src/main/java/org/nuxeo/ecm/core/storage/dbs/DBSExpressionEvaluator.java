@@ -284,6 +284,22 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
         this.orderByClause = orderByClause;
     }
 
+    /**
+     * Creates an evaluator for the same query as another one, but resolving paths through the given resolver.
+     * <p>
+     * An evaluator keeps the state of the document being matched, so concurrent evaluations of a query each need their
+     * own evaluator. The new evaluator must be {@linkplain #parse parsed} before use.
+     *
+     * @since 9.3
+     */
+    public DBSExpressionEvaluator(DBSExpressionEvaluator other, PathResolver pathResolver) {
+        super(pathResolver, other.principals == null ? null : other.principals.toArray(new String[0]),
+                other.fulltextSearchDisabled);
+        selectClause = other.selectClause;
+        expression = other.expression;
+        orderByClause = other.orderByClause;
+    }
+
     public SelectClause getSelectClause() {
         return selectClause;
     }
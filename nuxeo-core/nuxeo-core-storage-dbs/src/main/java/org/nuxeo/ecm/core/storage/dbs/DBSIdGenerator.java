@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+/**
+ * Generator of the ids of new documents of a DBS repository.
+ * <p>
+ * A custom implementation can be configured with {@code <idGenerator class="..."/>} in the repository descriptor, it
+ * must have a public no-arg constructor and be thread-safe.
+ *
+ * @since 9.3
+ */
+@FunctionalInterface
+public interface DBSIdGenerator {
+
+    /**
+     * Generates a new document id.
+     */
+    String generateNewId();
+
+    /**
+     * Releases the resources held by this generator, called at repository shutdown.
+     */
+    default void close() {
+    }
+
+}
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -32,6 +33,9 @@ import org.nuxeo.ecm.core.pubsub.SerializableInvalidations;
  * A set of invalidations for a given repository.
  * <p>
  * Records both modified and deleted fragments, as well as "parents modified" fragments.
+ * <p>
+ * Also records the parents whose set of children changed (child created, moved in or renamed), so that caches of
+ * children by name can be invalidated.
  *
  * @since 8.10
  */
@@ -53,6 +57,13 @@ public class DBSInvalidations implements SerializableInvalidations {
     /** null when empty */
     public Set<String> ids;
 
+    /**
+     * Ids of the parents whose children changed, null when empty.
+     *
+     * @since 9.3
+     */
+    public Set<String> parentIds;
+
     public DBSInvalidations() {
     }
 
@@ -62,21 +73,24 @@ public class DBSInvalidations implements SerializableInvalidations {
 
     @Override
     public boolean isEmpty() {
-        return ids == null && !all;
+        return ids == null && parentIds == null && !all;
     }
 
     public void clear() {
         all = false;
         ids = null;
+        parentIds = null;
     }
 
     protected void setAll() {
         all = true;
         ids = null;
+        parentIds = null;
     }
 
     protected void checkMaxSize() {
-        if (ids != null && ids.size() > MAX_SIZE) {
+        int size = (ids == null ? 0 : ids.size()) + (parentIds == null ? 0 : parentIds.size());
+        if (size > MAX_SIZE) {
             setAll();
         }
     }
@@ -100,6 +114,12 @@ public class DBSInvalidations implements SerializableInvalidations {
             }
             ids.addAll(other.ids);
         }
+        if (other.parentIds != null) {
+            if (parentIds == null) {
+                parentIds = new HashSet<>();
+            }
+            parentIds.addAll(other.parentIds);
+        }
         checkMaxSize();
     }
 
@@ -126,12 +146,31 @@ public class DBSInvalidations implements SerializableInvalidations {
         checkMaxSize();
     }
 
+    /**
+     * Records that the children of the given parents changed.
+     *
+     * @since 9.3
+     */
+    public void addParents(Collection<String> parentIdsToAdd) {
+        if (all) {
+            return;
+        }
+        if (parentIds == null) {
+            parentIds = new HashSet<>(parentIdsToAdd);
+        } else {
+            parentIds.addAll(parentIdsToAdd);
+        }
+        checkMaxSize();
+    }
+
     private static final String UTF_8 = "UTF-8";
 
     private static final int ALL_IDS = (byte) 'A';
 
     private static final int ID_SEP = (byte) ',';
 
+    private static final int PARENT_ID_SEP = (byte) '/';
+
     @Override
     public void serialize(OutputStream out) throws IOException {
         if (all) {
@@ -142,6 +181,12 @@ public class DBSInvalidations implements SerializableInvalidations {
                 out.write(id.getBytes(UTF_8));
             }
         }
+        if (!all && parentIds != null) {
+            for (String id : parentIds) {
+                out.write(PARENT_ID_SEP);
+                out.write(id.getBytes(UTF_8));
+            }
+        }
     }
 
     public static DBSInvalidations deserialize(InputStream in) throws IOException {
@@ -153,18 +198,25 @@ public class DBSInvalidations implements SerializableInvalidations {
         DBSInvalidations invalidations = new DBSInvalidations();
         if (first == ALL_IDS) {
             invalidations.setAll();
-        } else if (first != ID_SEP) {
+        } else if (first != ID_SEP && first != PARENT_ID_SEP) {
             // invalid message
             return null;
         } else {
             ByteArrayOutputStream baout = new ByteArrayOutputStream(36); // typical uuid size
+            int sep = first;
             for (;;) {
                 int b = in.read(); // we read from a ByteArrayInputStream so one at a time is ok
-                if (b == ID_SEP || b == -1) {
-                    invalidations.add(baout.toString(UTF_8));
+                if (b == ID_SEP || b == PARENT_ID_SEP || b == -1) {
+                    String id = baout.toString(UTF_8);
+                    if (sep == ID_SEP) {
+                        invalidations.add(id);
+                    } else {
+                        invalidations.addParents(Collections.singleton(id));
+                    }
                     if (b == -1) {
                         break;
                     }
+                    sep = b;
                     baout.reset();
                 } else {
                     baout.write(b);
@@ -184,6 +236,13 @@ public class DBSInvalidations implements SerializableInvalidations {
             sb.append("ids=");
             sb.append(ids);
         }
+        if (parentIds != null) {
+            if (ids != null) {
+                sb.append(',');
+            }
+            sb.append("parentIds=");
+            sb.append(parentIds);
+        }
         sb.append(')');
         return sb.toString();
     }
@@ -33,6 +33,7 @@ import org.nuxeo.ecm.core.storage.FulltextConfiguration;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 
 /**
  * Interface for a {@link Repository} for Document-Based Storage.
@@ -129,6 +130,22 @@ public interface DBSRepository extends Repository, LockManager {
      */
     void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater);
 
+    /**
+     * Updates several documents.
+     * <p>
+     * Implementations should write all the updates in a few round-trips to the database. If the change token
+     * condition of some documents doesn't match, a {@link org.nuxeo.ecm.core.api.ConcurrentUpdateException
+     * ConcurrentUpdateException} is thrown, listing these documents.
+     *
+     * @param updates the updates to make
+     * @since 9.3
+     */
+    default void updateStates(List<StateUpdate> updates) {
+        for (StateUpdate update : updates) {
+            updateState(update.id, update.diff, update.changeTokenUpdater);
+        }
+    }
+
     /**
      * Deletes a set of document.
      *
@@ -32,6 +32,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.naming.NamingException;
@@ -102,11 +103,24 @@ public abstract class DBSRepositoryBase implements DBSRepository {
         uuid,
         /** Integer sequence maintained by the database. */
         sequence,
+        /**
+         * Time-ordered UUID stored in a string.
+         *
+         * @since 9.3
+         */
+        timeuuid,
     }
 
     /** @since 8.3 */
     protected IdType idType;
 
+    /**
+     * The generator of new document ids, if the repository uses one.
+     *
+     * @since 9.3
+     */
+    protected DBSIdGenerator idGenerator;
+
     protected final String repositoryName;
 
     protected final FulltextConfiguration fulltextConfiguration;
@@ -156,8 +170,47 @@ public abstract class DBSRepositoryBase implements DBSRepository {
     /** Gets the allowed id types for this DBS repository. The first one is the default. */
     public abstract List<IdType> getAllowedIdTypes();
 
+    /**
+     * Creates the generator of new document ids: the one configured in the descriptor, or else the one matching the
+     * id type.
+     *
+     * @since 9.3
+     */
+    protected DBSIdGenerator newIdGenerator(DBSRepositoryDescriptor descriptor) {
+        if (descriptor.idGeneratorClass != null) {
+            try {
+                return descriptor.idGeneratorClass.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new NuxeoException("Cannot instantiate id generator: " + descriptor.idGeneratorClass, e);
+            }
+        }
+        switch (idType) {
+        case varchar:
+        case uuid:
+            return () -> UUID.randomUUID().toString();
+        case timeuuid:
+            return new DBSTimeOrderedIdGenerator();
+        case sequence:
+            return newSequenceIdGenerator(descriptor);
+        default:
+            throw new NuxeoException("No id generator for id type: " + idType + " in repository: " + repositoryName);
+        }
+    }
+
+    /**
+     * Creates the generator of sequence ids, must be overridden by the repositories allowing {@link IdType#sequence}.
+     *
+     * @since 9.3
+     */
+    protected DBSIdGenerator newSequenceIdGenerator(DBSRepositoryDescriptor descriptor) {
+        throw new NuxeoException("Sequence ids are not supported by repository: " + repositoryName);
+    }
+
     @Override
     public void shutdown() {
+        if (idGenerator != null) {
+            idGenerator.close();
+        }
         try {
             NuxeoContainer.disposeConnectionManager(cm);
         } catch (RuntimeException e) {
@@ -306,6 +359,7 @@ public abstract class DBSRepositoryBase implements DBSRepository {
         switch (idType) {
         case varchar:
         case uuid:
+        case timeuuid:
             return UUID_ZERO;
         case sequence:
             return "0";
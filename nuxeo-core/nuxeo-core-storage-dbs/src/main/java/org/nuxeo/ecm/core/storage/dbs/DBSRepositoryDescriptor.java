@@ -52,7 +52,11 @@ public class DBSRepositoryDescriptor implements Cloneable {
     }
 
     @XNode("idType")
-    public String idType; // "varchar", "uuid", "sequence"
+    public String idType; // "varchar", "uuid", "sequence", "timeuuid"
+
+    /** @since 9.3 */
+    @XNode("idGenerator@class")
+    public Class<? extends DBSIdGenerator> idGeneratorClass;
 
     protected FulltextDescriptor fulltextDescriptor = new FulltextDescriptor();
 
@@ -121,6 +125,14 @@ public class DBSRepositoryDescriptor implements Cloneable {
     @XNode("cache@concurrencyLevel")
     public Integer cacheConcurrencyLevel;
 
+    /**
+     * Maximum number of children names (present or absent) cached for a given parent.
+     *
+     * @since 9.3
+     */
+    @XNode("cache@maxChildren")
+    public Long cacheMaxChildren;
+
     /** @since 8.10 */
     @XNode("clustering@id")
     public String clusterNodeId;
@@ -181,6 +193,9 @@ public class DBSRepositoryDescriptor implements Cloneable {
         if (other.idType != null) {
             idType = other.idType;
         }
+        if (other.idGeneratorClass != null) {
+            idGeneratorClass = other.idGeneratorClass;
+        }
         fulltextDescriptor.merge(other.fulltextDescriptor);
         if (other.cacheEnabled != null) {
             cacheEnabled = other.cacheEnabled;
@@ -194,6 +209,9 @@ public class DBSRepositoryDescriptor implements Cloneable {
         if (other.cacheConcurrencyLevel != null) {
             cacheConcurrencyLevel = other.cacheConcurrencyLevel;
         }
+        if (other.cacheMaxChildren != null) {
+            cacheMaxChildren = other.cacheMaxChildren;
+        }
         if (other.clusterNodeId != null) {
             clusterNodeId = other.clusterNodeId;
         }
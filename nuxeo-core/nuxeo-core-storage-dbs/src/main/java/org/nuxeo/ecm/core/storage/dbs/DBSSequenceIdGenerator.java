@@ -0,0 +1,192 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Generator of sequence ids allocated by blocks from the database.
+ * <p>
+ * Ids are taken without locking: each thread claims a small range of the current block with an atomic increment and
+ * then uses it privately. When half of the current block has been claimed, the next block is allocated in the
+ * background so that threads rarely wait for the database.
+ * <p>
+ * Ids are unique but, because of the per-thread ranges, not allocated in strict creation order across threads.
+ *
+ * @since 9.3
+ */
+public class DBSSequenceIdGenerator implements DBSIdGenerator {
+
+    private static final Log log = LogFactory.getLog(DBSSequenceIdGenerator.class);
+
+    /** Default number of ids claimed at once by a thread. */
+    public static final int DEFAULT_RANGE_SIZE = 16;
+
+    /**
+     * Allocates a block of sequence values in the database.
+     */
+    @FunctionalInterface
+    public interface BlockAllocator {
+
+        /**
+         * Allocates a block of the given size and returns its last value.
+         */
+        long allocate(long size);
+    }
+
+    protected static class Block {
+
+        protected final long end;
+
+        /** Claiming the range containing this value triggers the prefetch of the next block. */
+        protected final long refillAt;
+
+        protected final AtomicLong next;
+
+        protected Block(long first, long size) {
+            end = first + size;
+            refillAt = first + size / 2;
+            next = new AtomicLong(first);
+        }
+    }
+
+    protected final String name;
+
+    protected final long blockSize;
+
+    protected final int rangeSize;
+
+    protected final BlockAllocator allocator;
+
+    protected final AtomicReference<Block> current = new AtomicReference<>(new Block(0, 0));
+
+    protected final AtomicReference<CompletableFuture<Block>> prefetch = new AtomicReference<>();
+
+    protected final ExecutorService executor;
+
+    /** The per-thread range: next value and end (exclusive). */
+    protected final ThreadLocal<long[]> ranges = ThreadLocal.withInitial(() -> new long[2]);
+
+    public DBSSequenceIdGenerator(String name, long blockSize, BlockAllocator allocator) {
+        this(name, blockSize, DEFAULT_RANGE_SIZE, allocator);
+    }
+
+    public DBSSequenceIdGenerator(String name, long blockSize, int rangeSize, BlockAllocator allocator) {
+        this.name = name;
+        this.blockSize = Math.max(blockSize, 1);
+        this.rangeSize = (int) Math.max(Math.min(rangeSize, this.blockSize), 1);
+        this.allocator = allocator;
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Nuxeo-DBS-IdPrefetch-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String generateNewId() {
+        return Long.toString(nextLong());
+    }
+
+    public long nextLong() {
+        long[] range = ranges.get();
+        if (range[0] >= range[1]) {
+            claimRange(range);
+        }
+        return range[0]++;
+    }
+
+    protected void claimRange(long[] range) {
+        for (;;) {
+            Block block = current.get();
+            long start = block.next.getAndAdd(rangeSize);
+            if (start < block.end) {
+                long end = Math.min(start + rangeSize, block.end);
+                if (start <= block.refillAt && block.refillAt < end) {
+                    prefetch();
+                }
+                range[0] = start;
+                range[1] = end;
+                return;
+            }
+            // block exhausted, install the next one unless another thread already did
+            CompletableFuture<Block> future = prefetch();
+            Block next;
+            try {
+                next = future.join();
+            } catch (CompletionException e) {
+                prefetch.compareAndSet(future, null);
+                Throwable cause = e.getCause();
+                if (cause instanceof NuxeoException) {
+                    throw (NuxeoException) cause;
+                }
+                throw new NuxeoException("Cannot allocate id block for " + name, cause);
+            }
+            if (current.compareAndSet(block, next)) {
+                prefetch.compareAndSet(future, null);
+            }
+        }
+    }
+
+    /**
+     * Starts the allocation of the next block if not already started, and returns it.
+     */
+    protected CompletableFuture<Block> prefetch() {
+        for (;;) {
+            CompletableFuture<Block> future = prefetch.get();
+            if (future != null) {
+                return future;
+            }
+            CompletableFuture<Block> newFuture = new CompletableFuture<>();
+            if (prefetch.compareAndSet(null, newFuture)) {
+                try {
+                    executor.execute(() -> allocate(newFuture));
+                } catch (RuntimeException e) { // rejected after close
+                    allocate(newFuture);
+                }
+                return newFuture;
+            }
+        }
+    }
+
+    protected void allocate(CompletableFuture<Block> future) {
+        try {
+            long last = allocator.allocate(blockSize);
+            future.complete(new Block(last - blockSize + 1, blockSize));
+        } catch (RuntimeException e) {
+            log.error("Cannot allocate id block for " + name, e);
+            future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
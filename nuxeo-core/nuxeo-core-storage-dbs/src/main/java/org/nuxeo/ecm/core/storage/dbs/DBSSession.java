@@ -398,6 +398,44 @@ public class DBSSession implements Session {
         return getDocument(docState);
     }
 
+    @Override
+    public List<Document> getDocumentsByUUIDs(List<String> uuids) {
+        return getDocuments(uuids);
+    }
+
+    @Override
+    public void prefetchAncestors(List<Document> docs) {
+        Set<String> ids = new HashSet<>();
+        for (Document doc : docs) {
+            DBSDocumentState docState = ((DBSDocument) doc).docState;
+            if (TRUE.equals(docState.get(KEY_IS_VERSION))) {
+                // the ACP of a version is the one of its live document
+                ids.add((String) docState.get(KEY_VERSION_SERIES_ID));
+            }
+            addAncestorIds(docState, ids);
+        }
+        List<String> toFetch = new ArrayList<>(ids);
+        // a second pass finds the ancestors of the live documents of versions
+        for (int i = 0; i < 2 && !toFetch.isEmpty(); i++) {
+            Set<String> next = new HashSet<>();
+            for (DBSDocumentState docState : transaction.getStatesForUpdate(toFetch)) {
+                addAncestorIds(docState, next);
+            }
+            next.removeAll(ids);
+            ids.addAll(next);
+            toFetch = new ArrayList<>(next);
+        }
+    }
+
+    protected void addAncestorIds(DBSDocumentState docState, Set<String> ids) {
+        Object[] ancestorIds = (Object[]) docState.get(KEY_ANCESTOR_IDS);
+        if (ancestorIds != null) {
+            for (Object id : ancestorIds) {
+                ids.add((String) id);
+            }
+        }
+    }
+
     protected List<Document> getDocuments(List<String> ids) {
         List<DBSDocumentState> docStates = transaction.getStatesForUpdate(ids);
         List<Document> docs = new ArrayList<>(ids.size());
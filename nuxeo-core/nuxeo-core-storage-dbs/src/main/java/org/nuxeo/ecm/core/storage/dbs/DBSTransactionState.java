@@ -602,6 +602,8 @@ public class DBSTransactionState {
         if (!statesToCreate.isEmpty()) {
             repository.createStates(statesToCreate);
         }
+        List<StateUpdate> updates = new ArrayList<>();
+        List<DBSDocumentState> updatedStates = new ArrayList<>();
         for (DBSDocumentState docState : transientStates.values()) {
             String id = docState.getId();
             if (transientCreated.contains(id)) {
@@ -630,15 +632,43 @@ public class DBSTransactionState {
                 } else {
                     changeTokenUpdater = null;
                 }
-                repository.updateState(id, diff, changeTokenUpdater);
+                updates.add(new StateUpdate(id, diff, changeTokenUpdater));
+                // marked not dirty after the update, which writes the new change token in the state
+                updatedStates.add(docState);
+            } else {
+                docState.setNotDirty();
             }
-            docState.setNotDirty();
+        }
+        if (!updates.isEmpty()) {
+            repository.updateStates(updates);
+            updatedStates.forEach(DBSDocumentState::setNotDirty);
         }
         transientCreated.clear();
         userChangeIds.clear();
         scheduleWork(works);
     }
 
+    /**
+     * An update to write to the repository for a document.
+     *
+     * @since 9.3
+     */
+    public static class StateUpdate {
+
+        public final String id;
+
+        public final StateDiff diff;
+
+        /** How to get and update the change token, may be {@code null}. */
+        public final ChangeTokenUpdater changeTokenUpdater;
+
+        public StateUpdate(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+            this.id = id;
+            this.diff = diff;
+            this.changeTokenUpdater = changeTokenUpdater;
+        }
+    }
+
     /**
      * Logic to get the conditions to use to match and update a change token.
      * <p>
@@ -19,6 +19,9 @@
 package org.nuxeo.ecm.core.storage.dbs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
@@ -170,6 +173,121 @@ public class TestDBSCachingRepository {
         assertEquals(dbState, cachedState);
     }
 
+    @Test
+    public void testHasChildNegativeCache() {
+        String parentId = "PARENT-ID";
+        String name = "NAME";
+
+        // First check - call sub repository
+        assertFalse(repository.hasChild(parentId, name, Collections.emptySet()));
+        verify(subRepository, times(1)).hasChild(eq(parentId), eq(name), any());
+
+        // Second check and child read - absent from cache
+        assertFalse(repository.hasChild(parentId, name, Collections.emptySet()));
+        verify(subRepository, times(1)).hasChild(eq(parentId), eq(name), any());
+        assertNull(repository.readChildState(parentId, name, Collections.emptySet()));
+        verify(subRepository, never()).readChildState(eq(parentId), eq(name), any());
+
+        // Create a child in this parent - invalidates the absent name
+        State state = newState(parentId + "_" + name);
+        state.setSingle(KEY_PARENT_ID, parentId);
+        state.setSingle(KEY_NAME, name);
+        repository.createState(state);
+        repository.hasChild(parentId, name, Collections.emptySet());
+        verify(subRepository, times(2)).hasChild(eq(parentId), eq(name), any());
+    }
+
+    @Test
+    public void testRenameInvalidatesChild() {
+        String parentId = "PARENT-ID";
+        String name = "NAME";
+        String id = parentId + "_" + name;
+
+        repository.readChildState(parentId, name, Collections.emptySet());
+        repository.readChildState(parentId, name, Collections.emptySet());
+        verify(subRepository, times(1)).readChildState(eq(parentId), eq(name), any());
+
+        // Rename the child - invalidates the parent entry referencing it
+        StateDiff diff = new StateDiff();
+        diff.put(KEY_NAME, "OTHER");
+        repository.updateState(id, diff, null);
+        repository.readChildState(parentId, name, Collections.emptySet());
+        verify(subRepository, times(2)).readChildState(eq(parentId), eq(name), any());
+    }
+
+    @Test
+    public void testConcurrentMoveDuringChildRead() {
+        String parentId = "PARENT-ID";
+        String name = "NAME";
+        String id = parentId + "_" + name;
+        StateDiff diff = new StateDiff();
+        diff.put(KEY_PARENT_ID, "OTHER-PARENT-ID");
+        checkConcurrentChange(parentId, name, () -> repository.updateState(id, diff, null));
+    }
+
+    @Test
+    public void testConcurrentDeleteDuringChildRead() {
+        String parentId = "PARENT-ID";
+        String name = "NAME";
+        String id = parentId + "_" + name;
+        checkConcurrentChange(parentId, name, () -> repository.deleteStates(Collections.singleton(id)));
+    }
+
+    /**
+     * Reads a child while another thread moves or deletes it, after the backend read but before the result is cached.
+     */
+    private void checkConcurrentChange(String parentId, String name, Runnable change) {
+        when(subRepository.readChildState(eq(parentId), eq(name), any())).then(invocation -> {
+            State state = newState(parentId + "_" + name);
+            state.setSingle(KEY_PARENT_ID, parentId);
+            state.setSingle(KEY_NAME, name);
+            change.run();
+            return state;
+        });
+        // the read itself returns what the backend saw
+        assertEquals(parentId, repository.readChildState(parentId, name, Collections.emptySet()).get(KEY_PARENT_ID));
+
+        // but the child is not cached under the parent, the backend is asked again
+        assertFalse(repository.hasChild(parentId, name, Collections.emptySet()));
+        verify(subRepository, times(1)).hasChild(eq(parentId), eq(name), any());
+    }
+
+    @Test
+    public void testGetChildren() {
+        String parentId = "PARENT-ID";
+        when(subRepository.queryKeyValue(eq(KEY_PARENT_ID), eq(parentId), any())).then(invocation -> {
+            List<State> states = new ArrayList<>();
+            for (String name : Arrays.asList("A", "B")) {
+                State state = newState(parentId + "_" + name);
+                state.setSingle(KEY_PARENT_ID, parentId);
+                state.setSingle(KEY_NAME, name);
+                states.add(state);
+            }
+            return states;
+        });
+
+        // First listing - call sub repository once for all children
+        List<State> children = repository.queryKeyValue(KEY_PARENT_ID, parentId, Collections.emptySet());
+        assertEquals(2, children.size());
+        verify(subRepository, times(1)).queryKeyValue(eq(KEY_PARENT_ID), eq(parentId), any());
+
+        // Second listing, child lookups and presence - call cache
+        List<State> cachedChildren = repository.queryKeyValue(KEY_PARENT_ID, parentId,
+                Collections.singleton(parentId + "_A"));
+        assertEquals(1, cachedChildren.size());
+        assertEquals(parentId + "_B", cachedChildren.get(0).get(KEY_ID));
+        assertTrue(repository.hasChild(parentId, "A", Collections.emptySet()));
+        assertFalse(repository.hasChild(parentId, "C", Collections.emptySet()));
+        assertTrue(repository.queryKeyValuePresence(KEY_PARENT_ID, parentId, Collections.emptySet()));
+        verify(subRepository, times(1)).queryKeyValue(eq(KEY_PARENT_ID), eq(parentId), any());
+        verify(subRepository, never()).hasChild(any(), any(), any());
+
+        // Delete a child - invalidates the listing
+        repository.deleteStates(Collections.singleton(parentId + "_A"));
+        repository.queryKeyValue(KEY_PARENT_ID, parentId, Collections.emptySet());
+        verify(subRepository, times(2)).queryKeyValue(eq(KEY_PARENT_ID), eq(parentId), any());
+    }
+
     private State newState(String id) {
         State state = new State();
         state.setSingle(KEY_ID, id);
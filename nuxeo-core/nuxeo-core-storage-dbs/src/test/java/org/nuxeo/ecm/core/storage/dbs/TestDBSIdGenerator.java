@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TestDBSIdGenerator {
+
+    @Test
+    public void testSequenceSingleThread() {
+        AtomicLong counter = new AtomicLong();
+        DBSSequenceIdGenerator generator = new DBSSequenceIdGenerator("test", 10, 4, counter::addAndGet);
+        try {
+            for (long i = 1; i <= 100; i++) {
+                assertEquals(i, generator.nextLong());
+            }
+            // no more than the consumed blocks plus the prefetched one
+            assertTrue(counter.get() <= 110);
+        } finally {
+            generator.close();
+        }
+    }
+
+    @Test
+    public void testSequenceConcurrentUniqueness() throws Exception {
+        AtomicLong counter = new AtomicLong();
+        AtomicInteger allocations = new AtomicInteger();
+        DBSSequenceIdGenerator generator = new DBSSequenceIdGenerator("test", 100, size -> {
+            allocations.incrementAndGet();
+            return counter.addAndGet(size);
+        });
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int nthreads = 8;
+        int nids = 10000;
+        try {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < nthreads; t++) {
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < nids; i++) {
+                        ids.add(Long.valueOf(generator.nextLong()));
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            generator.close();
+        }
+        assertEquals(nthreads * nids, ids.size());
+        // ranges left unused by each thread are at most one block
+        assertTrue(String.valueOf(allocations.get()), allocations.get() <= nthreads * nids / 100 + nthreads + 1);
+    }
+
+    @Test
+    public void testTimeOrdered() {
+        DBSTimeOrderedIdGenerator generator = new DBSTimeOrderedIdGenerator();
+        String previous = generator.generateNewId();
+        for (int i = 0; i < 10000; i++) {
+            String id = generator.generateNewId();
+            // string order is creation order
+            assertTrue(previous + " " + id, id.compareTo(previous) > 0);
+            UUID uuid = UUID.fromString(id);
+            assertEquals(7, uuid.version());
+            assertEquals(2, uuid.variant());
+            previous = id;
+        }
+        long time = UUID.fromString(previous).getMostSignificantBits() >>> 16;
+        assertTrue(Math.abs(System.currentTimeMillis() - time) < 60000);
+    }
+
+}
@@ -58,6 +58,14 @@ public class TestDBSInvalidations {
         ser = new String(baout.toByteArray());
         assertTrue(ser, Arrays.asList(",foo,bar", ",bar,foo").contains(ser)); // non-deterministic order
 
+        invals = new DBSInvalidations();
+        invals.add("foo");
+        invals.addParents(Collections.singleton("bar"));
+        baout.reset();
+        invals.serialize(baout);
+        ser = new String(baout.toByteArray());
+        assertEquals(",foo/bar", ser);
+
         invals = new DBSInvalidations();
         invals.setAll();
         baout.reset();
@@ -90,6 +98,16 @@ public class TestDBSInvalidations {
         bain = new ByteArrayInputStream(",foo,bar".getBytes());
         invals = DBSInvalidations.deserialize(bain);
         assertEquals(new HashSet<>(Arrays.asList("foo", "bar")), invals.ids);
+
+        bain = new ByteArrayInputStream(",foo/bar,baz".getBytes());
+        invals = DBSInvalidations.deserialize(bain);
+        assertEquals(new HashSet<>(Arrays.asList("foo", "baz")), invals.ids);
+        assertEquals(Collections.singleton("bar"), invals.parentIds);
+
+        bain = new ByteArrayInputStream("/bar".getBytes());
+        invals = DBSInvalidations.deserialize(bain);
+        assertNull(invals.ids);
+        assertEquals(Collections.singleton("bar"), invals.parentIds);
     }
 
 }
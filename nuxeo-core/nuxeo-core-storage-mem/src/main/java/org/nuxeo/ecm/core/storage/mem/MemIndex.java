@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.nuxeo.ecm.core.storage.State;
+
+/**
+ * Secondary index of a {@link MemRepository} on a top-level key of the document states.
+ * <p>
+ * The index maps each value of the key to the ids of the documents having it. For an array value, each element is
+ * indexed separately. Complex values are not indexed.
+ * <p>
+ * The index is thread-safe. It may be briefly out of date with respect to a concurrently updated document, so callers
+ * must re-check the states they get from it.
+ *
+ * @since 9.3
+ */
+public class MemIndex {
+
+    protected final String key;
+
+    protected final Map<Object, Set<String>> map = new ConcurrentHashMap<>();
+
+    public MemIndex(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the ids of the documents having the given value for the key.
+     *
+     * @return the ids, never {@code null}
+     */
+    public Set<String> get(Object value) {
+        Set<String> ids = map.get(value);
+        return ids == null ? Collections.emptySet() : ids;
+    }
+
+    /**
+     * Indexes a document's value for the key.
+     */
+    public void add(String id, Serializable value) {
+        for (Object v : getIndexableValues(value)) {
+            add(id, v);
+        }
+    }
+
+    /**
+     * Unindexes a document's value for the key.
+     */
+    public void remove(String id, Serializable value) {
+        for (Object v : getIndexableValues(value)) {
+            remove(id, v);
+        }
+    }
+
+    /**
+     * Reindexes a document whose value for the key changed.
+     */
+    public void update(String id, Serializable oldValue, Serializable newValue) {
+        if (oldValue == newValue) {
+            return;
+        }
+        Set<Object> oldValues = getIndexableValues(oldValue);
+        Set<Object> newValues = getIndexableValues(newValue);
+        for (Object v : oldValues) {
+            if (!newValues.contains(v)) {
+                remove(id, v);
+            }
+        }
+        for (Object v : newValues) {
+            if (!oldValues.contains(v)) {
+                add(id, v);
+            }
+        }
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    protected void add(String id, Object value) {
+        map.compute(value, (k, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    protected void remove(String id, Object value) {
+        map.computeIfPresent(value, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    protected static Set<Object> getIndexableValues(Serializable value) {
+        if (value == null || value instanceof State || value instanceof Iterable) {
+            return Collections.emptySet();
+        }
+        if (value instanceof Object[]) {
+            Set<Object> values = new HashSet<>();
+            for (Object v : (Object[]) value) {
+                if (v != null) {
+                    values.add(v);
+                }
+            }
+            return values;
+        }
+        return Collections.singleton(value);
+    }
+
+}
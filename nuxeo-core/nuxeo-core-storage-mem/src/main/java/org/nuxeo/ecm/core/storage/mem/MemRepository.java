@@ -21,6 +21,7 @@ package org.nuxeo.ecm.core.storage.mem;
 import static java.lang.Boolean.TRUE;
 import static org.nuxeo.ecm.core.query.sql.NXQL.ECM_UUID;
 import static org.nuxeo.ecm.core.storage.State.NOP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_DATA;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_PROXY;
@@ -28,6 +29,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LOCK_CREATED;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LOCK_OWNER;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
 
@@ -36,16 +38,21 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.resource.spi.ConnectionManager;
 
@@ -62,7 +69,19 @@ import org.nuxeo.ecm.core.api.model.Delta;
 import org.nuxeo.ecm.core.blob.DocumentBlobManager;
 import org.nuxeo.ecm.core.model.LockManager;
 import org.nuxeo.ecm.core.model.Repository;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.BooleanLiteral;
+import org.nuxeo.ecm.core.query.sql.model.DefaultQueryVisitor;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.IntegerLiteral;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
 import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.storage.ExpressionEvaluator.PathResolver;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.ListDiff;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
@@ -81,6 +100,10 @@ import org.nuxeo.runtime.api.Framework;
  * <p>
  * A document object is a JSON-like document stored as a Map recursively containing the data, see {@link DBSDocument}
  * for the description of the document.
+ * <p>
+ * Secondary {@link MemIndex indexes} are maintained on the parent id, ancestor ids, primary type and proxy keys, and on
+ * the additional properties configured in the descriptor. Queries use the most selective index applicable to one of
+ * their top-level conjuncts to restrict the documents to evaluate, and evaluate large candidate sets in parallel.
  *
  * @since 5.9.4
  */
@@ -90,6 +113,24 @@ public class MemRepository extends DBSRepositoryBase {
 
     protected static final String NOSCROLL_ID = "noscroll";
 
+    /**
+     * The keys that are always indexed.
+     *
+     * @since 9.3
+     */
+    protected static final List<String> SYSTEM_INDEXED_KEYS = Arrays.asList(KEY_PARENT_ID, KEY_ANCESTOR_IDS,
+            KEY_PRIMARY_TYPE, KEY_IS_PROXY, KEY_PROXY_TARGET_ID);
+
+    /**
+     * System property for the minimum number of candidate documents for which a query is evaluated in parallel.
+     *
+     * @since 9.3
+     */
+    public static final String PARALLEL_THRESHOLD_PROPERTY = "nuxeo.mem.query.parallel.threshold";
+
+    /** @since 9.3 */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1000;
+
     // for debug
     private final AtomicLong temporaryIdCounter = new AtomicLong(0);
 
@@ -98,8 +139,27 @@ public class MemRepository extends DBSRepositoryBase {
      */
     protected Map<String, State> states;
 
+    /**
+     * The secondary indexes, keyed by top-level state key.
+     *
+     * @since 9.3
+     */
+    protected Map<String, MemIndex> indexes;
+
+    /** @since 9.3 */
+    protected int parallelThreshold;
+
     public MemRepository(ConnectionManager cm, MemRepositoryDescriptor descriptor) {
         super(cm, descriptor.name, descriptor);
+        indexes = new LinkedHashMap<>();
+        for (String key : SYSTEM_INDEXED_KEYS) {
+            indexes.put(key, new MemIndex(key));
+        }
+        for (String key : descriptor.indexes) {
+            indexes.putIfAbsent(key, new MemIndex(key));
+        }
+        parallelThreshold = Integer.getInteger(PARALLEL_THRESHOLD_PROPERTY, DEFAULT_PARALLEL_THRESHOLD).intValue();
+        idGenerator = newIdGenerator(descriptor);
         initRepository();
     }
 
@@ -116,6 +176,7 @@ public class MemRepository extends DBSRepositoryBase {
 
     protected void initRepository() {
         states = new ConcurrentHashMap<>();
+        indexes.values().forEach(MemIndex::clear);
         initRoot();
     }
 
@@ -124,7 +185,7 @@ public class MemRepository extends DBSRepositoryBase {
         if (DEBUG_UUIDS) {
             return "UUID_" + temporaryIdCounter.incrementAndGet();
         } else {
-            return UUID.randomUUID().toString();
+            return idGenerator.generateNewId();
         }
     }
 
@@ -160,6 +221,9 @@ public class MemRepository extends DBSRepositoryBase {
         state = StateHelper.deepCopy(state, true); // thread-safe
         StateHelper.resetDeltas(state);
         states.put(id, state);
+        for (MemIndex index : indexes.values()) {
+            index.add(id, state.get(index.getKey()));
+        }
     }
 
     @Override
@@ -179,11 +243,26 @@ public class MemRepository extends DBSRepositoryBase {
                         throw new ConcurrentUpdateException((String) state.get(KEY_ID));
                     }
                 }
-                for (Entry<String, Serializable> en : changeTokenUpdater.getUpdates().entrySet()) {
-                    applyDiff(state, en.getKey(), en.getValue());
+            }
+            // old indexed values, the diff replaces them so we can keep references
+            Serializable[] oldValues = new Serializable[indexes.size()];
+            int i = 0;
+            for (MemIndex index : indexes.values()) {
+                oldValues[i++] = state.get(index.getKey());
+            }
+            try {
+                if (changeTokenUpdater != null) {
+                    for (Entry<String, Serializable> en : changeTokenUpdater.getUpdates().entrySet()) {
+                        applyDiff(state, en.getKey(), en.getValue());
+                    }
+                }
+                applyDiff(state, diff);
+            } finally {
+                i = 0;
+                for (MemIndex index : indexes.values()) {
+                    index.update(id, oldValues[i++], state.get(index.getKey()));
                 }
             }
-            applyDiff(state, diff);
         }
     }
 
@@ -193,16 +272,51 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: REMOVE " + ids);
         }
         for (String id : ids) {
-            if (states.remove(id) == null) {
+            State state = states.remove(id);
+            if (state == null) {
                 log.debug("Missing on remove: " + id);
+                continue;
+            }
+            for (MemIndex index : indexes.values()) {
+                index.remove(id, state.get(index.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Gets the states having the given value for a key, using an index if there is one for this key.
+     * <p>
+     * The returned states may not all have the value, callers must check it.
+     *
+     * @since 9.3
+     */
+    protected Collection<State> getStates(String key, Object value) {
+        MemIndex index = indexes.get(key);
+        if (index == null) {
+            return states.values();
+        }
+        return getStates(index.get(value));
+    }
+
+    /**
+     * Gets the states for the given ids, skipping the ones that don't exist anymore.
+     *
+     * @since 9.3
+     */
+    protected List<State> getStates(Collection<String> ids) {
+        List<State> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            State state = states.get(id);
+            if (state != null) {
+                list.add(state);
             }
         }
+        return list;
     }
 
     @Override
     public State readChildState(String parentId, String name, Set<String> ignored) {
-        // TODO optimize by maintaining a parent/child index
-        for (State state : states.values()) {
+        for (State state : getStates(KEY_PARENT_ID, parentId)) {
             if (ignored.contains(state.get(KEY_ID))) {
                 continue;
             }
@@ -228,7 +342,7 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -249,8 +363,10 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key1 + " = " + value1 + " AND " + key2 + " = " + value2);
         }
+        Collection<State> candidates = indexes.containsKey(key1) || !indexes.containsKey(key2)
+                ? getStates(key1, value1) : getStates(key2, value2);
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : candidates) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -272,7 +388,7 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
-        STATE: for (State state : states.values()) {
+        STATE: for (State state : getStates(key, value)) {
             Object[] array = (Object[]) state.get(key);
             String id = (String) state.get(KEY_ID);
             if (array != null) {
@@ -304,7 +420,7 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
-        for (State state : states.values()) {
+        for (State state : getStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -329,17 +445,7 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + evaluator + " OFFSET " + offset + " LIMIT " + limit);
         }
         evaluator.parse();
-        List<Map<String, Serializable>> projections = new ArrayList<>();
-        for (State state : states.values()) {
-            List<Map<String, Serializable>> matches = evaluator.matches(state);
-            if (!matches.isEmpty()) {
-                if (distinctDocuments) {
-                    projections.add(matches.get(0));
-                } else {
-                    projections.addAll(matches);
-                }
-            }
-        }
+        List<Map<String, Serializable>> projections = evaluate(evaluator, distinctDocuments);
         // ORDER BY
         // orderByClause may be null and different from evaluator.getOrderByClause() in case we want to post-filter
         if (orderByClause != null) {
@@ -381,16 +487,217 @@ public class MemRepository extends DBSRepositoryBase {
         }
         evaluator.parse();
         List<String> ids = new ArrayList<>();
-        for (State state : states.values()) {
-            List<Map<String, Serializable>> matches = evaluator.matches(state);
-            if (!matches.isEmpty()) {
-                String id = matches.get(0).get(ECM_UUID).toString();
-                ids.add(id);
-            }
+        for (Map<String, Serializable> projection : evaluate(evaluator, true)) {
+            ids.add(projection.get(ECM_UUID).toString());
         }
         return new ScrollResultImpl(NOSCROLL_ID, ids);
     }
 
+    /**
+     * Evaluates a parsed query on the candidate documents found through the indexes, in parallel if there are enough
+     * of them.
+     *
+     * @since 9.3
+     */
+    protected List<Map<String, Serializable>> evaluate(DBSExpressionEvaluator evaluator, boolean distinctDocuments) {
+        Map<String, String> paths = resolvePaths(evaluator);
+        Collection<State> candidates = getCandidates(evaluator.getExpression(), paths);
+        if (candidates.size() < parallelThreshold) {
+            List<Map<String, Serializable>> projections = new ArrayList<>();
+            for (State state : candidates) {
+                List<Map<String, Serializable>> matches = evaluator.matches(state);
+                if (!matches.isEmpty()) {
+                    if (distinctDocuments) {
+                        projections.add(matches.get(0));
+                    } else {
+                        projections.addAll(matches);
+                    }
+                }
+            }
+            return projections;
+        }
+        // an evaluator is stateful, use one per thread; paths were resolved in the session thread
+        PathResolver pathResolver = paths::get;
+        ThreadLocal<DBSExpressionEvaluator> evaluators = ThreadLocal.withInitial(() -> {
+            DBSExpressionEvaluator ev = new DBSExpressionEvaluator(evaluator, pathResolver);
+            ev.parse();
+            return ev;
+        });
+        return candidates.parallelStream().flatMap(state -> {
+            List<Map<String, Serializable>> matches = evaluators.get().matches(state);
+            if (matches.isEmpty()) {
+                return Stream.empty();
+            }
+            return distinctDocuments ? Stream.of(matches.get(0)) : matches.stream();
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Resolves the literal paths of the query, which can only be done from the session thread.
+     *
+     * @return a map of path to id, the id being {@code null} for a missing path
+     * @since 9.3
+     */
+    protected Map<String, String> resolvePaths(DBSExpressionEvaluator evaluator) {
+        Map<String, String> paths = new HashMap<>();
+        Expression expression = evaluator.getExpression();
+        if (expression == null) {
+            return paths;
+        }
+        expression.accept(new DefaultQueryVisitor() {
+            @Override
+            public void visitExpression(Expression node) {
+                String path = getLiteralPath(node);
+                if (path != null && !paths.containsKey(path)) {
+                    paths.put(path, evaluator.pathResolver.getIdForPath(path));
+                }
+                super.visitExpression(node);
+            }
+        });
+        return paths;
+    }
+
+    /**
+     * Gets the normalized path of an {@code ecm:path} equality or {@code STARTSWITH} expression.
+     */
+    protected static String getLiteralPath(Expression expr) {
+        if (!(expr.lvalue instanceof Reference) || !NXQL.ECM_PATH.equals(((Reference) expr.lvalue).name)) {
+            return null;
+        }
+        if (expr.operator != Operator.STARTSWITH && expr.operator != Operator.EQ
+                && expr.operator != Operator.NOTEQ) {
+            return null;
+        }
+        if (!(expr.rvalue instanceof StringLiteral)) {
+            return null;
+        }
+        String path = ((StringLiteral) expr.rvalue).value;
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * Gets the documents that may match a query, using the most selective index applicable to a top-level conjunct of
+     * the expression, or all documents if there is none.
+     *
+     * @since 9.3
+     */
+    protected Collection<State> getCandidates(Expression expression, Map<String, String> paths) {
+        List<Set<String>> lookups = new ArrayList<>();
+        if (expression != null) {
+            collectIndexLookups(expression, paths, lookups);
+        }
+        Set<String> best = null;
+        for (Set<String> ids : lookups) {
+            if (best == null || ids.size() < best.size()) {
+                best = ids;
+            }
+        }
+        return best == null ? states.values() : getStates(best);
+    }
+
+    protected void collectIndexLookups(Operand operand, Map<String, String> paths, List<Set<String>> lookups) {
+        if (operand instanceof MultiExpression) {
+            MultiExpression multi = (MultiExpression) operand;
+            if (multi.operator == Operator.AND) {
+                for (Operand value : multi.values) {
+                    collectIndexLookups(value, paths, lookups);
+                }
+            }
+        } else if (operand instanceof Expression) {
+            Expression expr = (Expression) operand;
+            if (expr.operator == Operator.AND) {
+                collectIndexLookups(expr.lvalue, paths, lookups);
+                collectIndexLookups(expr.rvalue, paths, lookups);
+            } else {
+                Set<String> ids = lookupIndex(expr, paths);
+                if (ids != null) {
+                    lookups.add(ids);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds through an index the ids of the documents that may match an expression.
+     *
+     * @return the ids, or {@code null} if no index applies
+     */
+    protected Set<String> lookupIndex(Expression expr, Map<String, String> paths) {
+        if (!(expr.lvalue instanceof Reference) || ((Reference) expr.lvalue).cast != null) {
+            return null;
+        }
+        String name = ((Reference) expr.lvalue).name;
+        Operator op = expr.operator;
+        String key;
+        if (NXQL.ECM_PATH.equals(name)) {
+            if (op != Operator.STARTSWITH) {
+                return null;
+            }
+            String ancestorId = paths.get(getLiteralPath(expr));
+            return ancestorId == null ? Collections.emptySet() : indexes.get(KEY_ANCESTOR_IDS).get(ancestorId);
+        } else if (NXQL.ECM_ANCESTORID.equals(name)) {
+            key = KEY_ANCESTOR_IDS;
+        } else if (NXQL.ECM_PARENTID.equals(name)) {
+            key = KEY_PARENT_ID;
+        } else if (NXQL.ECM_PRIMARYTYPE.equals(name)) {
+            key = KEY_PRIMARY_TYPE;
+        } else if (NXQL.ECM_ISPROXY.equals(name)) {
+            key = KEY_IS_PROXY;
+        } else if (NXQL.ECM_PROXY_TARGETID.equals(name)) {
+            key = KEY_PROXY_TARGET_ID;
+        } else if (name.startsWith(NXQL.ECM_PREFIX) || name.contains("/")) {
+            return null;
+        } else {
+            key = name;
+        }
+        MemIndex index = indexes.get(key);
+        if (index == null) {
+            return null;
+        }
+        List<Operand> operands;
+        if (op == Operator.EQ) {
+            operands = Collections.singletonList(expr.rvalue);
+        } else if (op == Operator.IN && expr.rvalue instanceof LiteralList) {
+            operands = new ArrayList<>((LiteralList) expr.rvalue);
+        } else {
+            return null;
+        }
+        Set<String> ids = null;
+        for (Operand operand : operands) {
+            Object value = getIndexValue(key, operand);
+            if (value == null) {
+                return null;
+            }
+            Set<String> found = index.get(value);
+            if (ids == null) {
+                ids = found;
+            } else {
+                ids = new HashSet<>(ids);
+                ids.addAll(found);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Converts a literal into the value stored in the index, or {@code null} if the index cannot be used for it.
+     */
+    protected Object getIndexValue(String key, Operand operand) {
+        if (KEY_IS_PROXY.equals(key)) {
+            // only true is stored, false is absent
+            if (operand instanceof IntegerLiteral && ((IntegerLiteral) operand).value == 1
+                    || operand instanceof BooleanLiteral && ((BooleanLiteral) operand).value) {
+                return TRUE;
+            }
+            return null;
+        }
+        // other literals may need a type conversion done by the evaluator
+        return operand instanceof StringLiteral ? ((StringLiteral) operand).value : null;
+    }
+
     @Override
     public ScrollResult scroll(String scrollId) {
         if (NOSCROLL_ID.equals(scrollId)) {
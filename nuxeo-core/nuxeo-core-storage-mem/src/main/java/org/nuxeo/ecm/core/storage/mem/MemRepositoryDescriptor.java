@@ -18,6 +18,10 @@
  */
 package org.nuxeo.ecm.core.storage.mem;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.common.xmap.annotation.XNodeList;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryDescriptor;
 
@@ -32,13 +36,36 @@ public class MemRepositoryDescriptor extends DBSRepositoryDescriptor {
     public MemRepositoryDescriptor() {
     }
 
+    /**
+     * Additional top-level properties (prefixed names like {@code dc:title}) for which a secondary index is maintained,
+     * in addition to the hierarchy, type and proxy indexes that always exist.
+     *
+     * @since 9.3
+     */
+    @XNodeList(value = "indexes/index", type = ArrayList.class, componentType = String.class)
+    public List<String> indexes = new ArrayList<>();
+
     @Override
     public MemRepositoryDescriptor clone() {
-        return (MemRepositoryDescriptor) super.clone();
+        MemRepositoryDescriptor clone = (MemRepositoryDescriptor) super.clone();
+        clone.indexes = new ArrayList<>(indexes);
+        return clone;
     }
 
     public void merge(MemRepositoryDescriptor other) {
+        merge((DBSRepositoryDescriptor) other);
+    }
+
+    @Override
+    public void merge(DBSRepositoryDescriptor other) {
         super.merge(other);
+        if (other instanceof MemRepositoryDescriptor) {
+            for (String index : ((MemRepositoryDescriptor) other).indexes) {
+                if (!indexes.contains(index)) {
+                    indexes.add(index);
+                }
+            }
+        }
     }
 
 }
@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+
+public class TestMemIndex {
+
+    @Test
+    public void testScalar() {
+        MemIndex index = new MemIndex("ecm:parentId");
+        index.add("id1", "p1");
+        index.add("id2", "p1");
+        index.add("id3", "p2");
+        index.add("id4", null);
+        assertEquals(new HashSet<>(Arrays.asList("id1", "id2")), index.get("p1"));
+        assertEquals(Collections.singleton("id3"), index.get("p2"));
+        assertTrue(index.get("p3").isEmpty());
+
+        index.update("id1", "p1", "p2");
+        assertEquals(Collections.singleton("id2"), index.get("p1"));
+        assertEquals(new HashSet<>(Arrays.asList("id1", "id3")), index.get("p2"));
+
+        index.remove("id2", "p1");
+        assertTrue(index.get("p1").isEmpty());
+        assertTrue(index.map.get("p1") == null);
+    }
+
+    @Test
+    public void testArray() {
+        MemIndex index = new MemIndex("ecm:ancestorIds");
+        index.add("id1", new Object[] { "root", "a" });
+        index.add("id2", new Object[] { "root", "b" });
+        assertEquals(new HashSet<>(Arrays.asList("id1", "id2")), index.get("root"));
+        assertEquals(Collections.singleton("id1"), index.get("a"));
+
+        // move id1 from a to b
+        index.update("id1", new Object[] { "root", "a" }, new Object[] { "root", "b" });
+        assertTrue(index.get("a").isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("id1", "id2")), index.get("b"));
+        assertEquals(new HashSet<>(Arrays.asList("id1", "id2")), index.get("root"));
+    }
+
+    @Test
+    public void testComplexNotIndexed() {
+        MemIndex index = new MemIndex("foo");
+        State state = new State();
+        state.put("bar", "baz");
+        index.add("id1", state);
+        assertTrue(index.map.isEmpty());
+    }
+
+}
@@ -25,6 +25,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACL;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACP;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_DATA;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_CHANGE_TOKEN;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_BINARY;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_JOBID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_SIMPLE;
@@ -47,11 +48,12 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 import javax.resource.spi.ConnectionManager;
@@ -75,12 +77,18 @@ import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.dbs.DBSDocument;
 import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
+import org.nuxeo.ecm.core.storage.dbs.DBSIdGenerator;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
+import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryDescriptor;
+import org.nuxeo.ecm.core.storage.dbs.DBSSequenceIdGenerator;
 import org.nuxeo.ecm.core.storage.dbs.DBSStateFlattener;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 import org.nuxeo.runtime.api.Framework;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -155,12 +163,6 @@ public class MongoDBRepository extends DBSRepositoryBase {
     /** True if we don't use MongoDB's native "_id" key to store the id. */
     protected boolean useCustomId;
 
-    /** Number of values still available in the in-memory sequence. */
-    protected long sequenceLeft;
-
-    /** Last value used from the in-memory sequence. */
-    protected long sequenceLastValue;
-
     /** Sequence allocation block size. */
     protected long sequenceBlockSize;
 
@@ -186,15 +188,15 @@ public class MongoDBRepository extends DBSRepositoryBase {
         if (idType == IdType.sequence || DEBUG_UUIDS) {
             Integer sbs = descriptor.sequenceBlockSize;
             sequenceBlockSize = sbs == null ? 1 : sbs.longValue();
-            sequenceLeft = 0;
         }
+        idGenerator = DEBUG_UUIDS ? newSequenceIdGenerator(descriptor) : newIdGenerator(descriptor);
         converter = new MongoDBConverter(idKey);
         initRepository();
     }
 
     @Override
     public List<IdType> getAllowedIdTypes() {
-        return Arrays.asList(IdType.varchar, IdType.sequence);
+        return Arrays.asList(IdType.varchar, IdType.sequence, IdType.timeuuid);
     }
 
     @Override
@@ -300,36 +302,31 @@ public class MongoDBRepository extends DBSRepositoryBase {
         initRoot();
     }
 
-    protected synchronized Long getNextSequenceId() {
-        if (sequenceLeft == 0) {
-            // allocate a new sequence block
-            // the database contains the last value from the last block
-            DBObject query = new BasicDBObject(MONGODB_ID, COUNTER_NAME_UUID);
-            DBObject update = new BasicDBObject(MONGODB_INC,
-                    new BasicDBObject(COUNTER_FIELD, Long.valueOf(sequenceBlockSize)));
-            DBObject idCounter = countersColl.findAndModify(query, null, null, false, update, true, false);
-            if (idCounter == null) {
-                throw new NuxeoException("Repository id counter not initialized");
-            }
-            sequenceLeft = sequenceBlockSize;
-            sequenceLastValue = ((Long) idCounter.get(COUNTER_FIELD)).longValue() - sequenceBlockSize;
+    @Override
+    protected DBSIdGenerator newSequenceIdGenerator(DBSRepositoryDescriptor descriptor) {
+        return new DBSSequenceIdGenerator(repositoryName, sequenceBlockSize, this::allocateSequenceBlock);
+    }
+
+    /**
+     * Allocates a block of the id sequence and returns its last value.
+     *
+     * @since 9.3
+     */
+    protected long allocateSequenceBlock(long size) {
+        // the database contains the last value from the last block
+        DBObject query = new BasicDBObject(MONGODB_ID, COUNTER_NAME_UUID);
+        DBObject update = new BasicDBObject(MONGODB_INC, new BasicDBObject(COUNTER_FIELD, Long.valueOf(size)));
+        DBObject idCounter = countersColl.findAndModify(query, null, null, false, update, true, false);
+        if (idCounter == null) {
+            throw new NuxeoException("Repository id counter not initialized");
         }
-        sequenceLeft--;
-        sequenceLastValue++;
-        return Long.valueOf(sequenceLastValue);
+        return ((Long) idCounter.get(COUNTER_FIELD)).longValue();
     }
 
     @Override
     public String generateNewId() {
-        if (idType == IdType.sequence || DEBUG_UUIDS) {
-            Long id = getNextSequenceId();
-            if (DEBUG_UUIDS) {
-                return "UUID_" + id;
-            }
-            return id.toString();
-        } else {
-            return UUID.randomUUID().toString();
-        }
+        String id = idGenerator.generateNewId();
+        return DEBUG_UUIDS ? "UUID_" + id : id;
     }
 
     @Override
@@ -371,27 +368,7 @@ public class MongoDBRepository extends DBSRepositoryBase {
         List<DBObject> updates = converter.diffToBson(diff);
         for (DBObject update : updates) {
             DBObject query = new BasicDBObject(idKey, id);
-            if (changeTokenUpdater == null) {
-                if (log.isTraceEnabled()) {
-                    log.trace("MongoDB: UPDATE " + id + ": " + update);
-                }
-            } else {
-                // assume bson is identical to dbs internals
-                // condition works even if value is null
-                Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
-                Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
-                if (update.containsField(MONGODB_SET)) {
-                    ((DBObject) update.get(MONGODB_SET)).putAll(tokenUpdates);
-                } else {
-                    DBObject set = new BasicDBObject();
-                    set.putAll(tokenUpdates);
-                    update.put(MONGODB_SET, set);
-                }
-                if (log.isTraceEnabled()) {
-                    log.trace("MongoDB: UPDATE " + id + ": IF " + conditions + " THEN " + update);
-                }
-                query.putAll(conditions);
-            }
+            addChangeTokenCondition(id, query, update, changeTokenUpdater);
             WriteResult w = coll.update(query, update);
             if (w.getN() != 1) {
                 log.trace("MongoDB:    -> CONCURRENT UPDATE: " + id);
@@ -402,6 +379,112 @@ public class MongoDBRepository extends DBSRepositoryBase {
         }
     }
 
+    /**
+     * Adds the change token condition and update, if any, to a query and update.
+     *
+     * @return the new change token, or {@code null} if there is no change token condition
+     */
+    protected Serializable addChangeTokenCondition(String id, DBObject query, DBObject update,
+            ChangeTokenUpdater changeTokenUpdater) {
+        if (changeTokenUpdater == null) {
+            if (log.isTraceEnabled()) {
+                log.trace("MongoDB: UPDATE " + id + ": " + update);
+            }
+            return null;
+        }
+        // assume bson is identical to dbs internals
+        // condition works even if value is null
+        Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
+        Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
+        if (update.containsField(MONGODB_SET)) {
+            ((DBObject) update.get(MONGODB_SET)).putAll(tokenUpdates);
+        } else {
+            DBObject set = new BasicDBObject();
+            set.putAll(tokenUpdates);
+            update.put(MONGODB_SET, set);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("MongoDB: UPDATE " + id + ": IF " + conditions + " THEN " + update);
+        }
+        query.putAll(conditions);
+        return tokenUpdates.get(KEY_CHANGE_TOKEN);
+    }
+
+    /**
+     * Writes the updates using bulk operations.
+     * <p>
+     * A document diff may need several MongoDB updates which must be applied in order, so the updates are written in
+     * rounds: the first update of each document in a first unordered bulk operation, then the second update of the
+     * documents that need one, and so on. Usually only one round is needed.
+     */
+    @Override
+    public void updateStates(List<StateUpdate> stateUpdates) {
+        if (stateUpdates.size() == 1) {
+            StateUpdate stateUpdate = stateUpdates.get(0);
+            updateState(stateUpdate.id, stateUpdate.diff, stateUpdate.changeTokenUpdater);
+            return;
+        }
+        // compute the updates of each document
+        List<List<DBObject[]>> docUpdates = new ArrayList<>(stateUpdates.size());
+        int rounds = 0;
+        for (StateUpdate stateUpdate : stateUpdates) {
+            List<DBObject> updates = converter.diffToBson(stateUpdate.diff);
+            List<DBObject[]> queryAndUpdates = new ArrayList<>(updates.size());
+            for (DBObject update : updates) {
+                DBObject query = new BasicDBObject(idKey, stateUpdate.id);
+                Serializable token = addChangeTokenCondition(stateUpdate.id, query, update,
+                        stateUpdate.changeTokenUpdater);
+                DBObject expected = token == null ? null : new BasicDBObject(KEY_CHANGE_TOKEN, token);
+                queryAndUpdates.add(new DBObject[] { query, update, expected });
+            }
+            docUpdates.add(queryAndUpdates);
+            rounds = Math.max(rounds, updates.size());
+        }
+        for (int round = 0; round < rounds; round++) {
+            BulkWriteOperation bulk = coll.initializeUnorderedBulkOperation();
+            Map<String, DBObject> expectedById = new HashMap<>();
+            for (int i = 0; i < stateUpdates.size(); i++) {
+                List<DBObject[]> queryAndUpdates = docUpdates.get(i);
+                if (round < queryAndUpdates.size()) {
+                    DBObject[] queryAndUpdate = queryAndUpdates.get(round);
+                    bulk.find(queryAndUpdate[0]).updateOne(queryAndUpdate[1]);
+                    expectedById.put(stateUpdates.get(i).id, queryAndUpdate[2]);
+                }
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("MongoDB: BULK UPDATE " + expectedById.keySet());
+            }
+            BulkWriteResult result = bulk.execute();
+            if (result.getMatchedCount() != expectedById.size()) {
+                List<String> conflicts = findConflicts(expectedById);
+                log.trace("MongoDB:    -> CONCURRENT UPDATE: " + conflicts);
+                throw new ConcurrentUpdateException(String.join(", ", conflicts));
+            }
+        }
+    }
+
+    /**
+     * Finds the documents whose update didn't match: missing documents or documents without the expected change
+     * token.
+     */
+    protected List<String> findConflicts(Map<String, DBObject> expectedById) {
+        DBObject query = new BasicDBObject(idKey, new BasicDBObject(QueryOperators.IN, expectedById.keySet()));
+        DBObject fields = new BasicDBObject(idKey, ONE);
+        fields.put(KEY_CHANGE_TOKEN, ONE);
+        Set<String> matched = new HashSet<>();
+        try (DBCursor cursor = coll.find(query, fields)) {
+            for (DBObject ob : cursor) {
+                String id = (String) ob.get(idKey);
+                DBObject expected = expectedById.get(id);
+                if (expected == null || expected.get(KEY_CHANGE_TOKEN).equals(ob.get(KEY_CHANGE_TOKEN))) {
+                    matched.add(id);
+                }
+            }
+        }
+        return expectedById.keySet().stream().filter(id -> !matched.contains(id)).sorted().collect(
+                Collectors.toList());
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         DBObject query = new BasicDBObject(idKey, new BasicDBObject(QueryOperators.IN, ids));
@@ -749,6 +832,31 @@ public class MongoDBRepository extends DBSRepositoryBase {
         return new Lock(owner, created);
     }
 
+    @Override
+    public Map<String, Lock> getLocks(Collection<String> ids) {
+        DBObject query = new BasicDBObject(idKey, new BasicDBObject(QueryOperators.IN, ids));
+        DBObject fields = new BasicDBObject(LOCK_FIELDS.toMap());
+        fields.put(idKey, ONE);
+        if (log.isTraceEnabled()) {
+            logQuery(query, fields);
+        }
+        Map<String, Lock> locks = new HashMap<>();
+        try (DBCursor cursor = coll.find(query, fields)) {
+            for (DBObject ob : cursor) {
+                String id = (String) ob.get(idKey);
+                String owner = (String) ob.get(KEY_LOCK_OWNER);
+                if (owner == null) {
+                    // not locked
+                    locks.put(id, null);
+                } else {
+                    Calendar created = (Calendar) converter.scalarToSerializable(ob.get(KEY_LOCK_CREATED));
+                    locks.put(id, new Lock(owner, created));
+                }
+            }
+        }
+        return locks;
+    }
+
     @Override
     public Lock setLock(String id, Lock lock) {
         DBObject query = new BasicDBObject(idKey, id);
@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.mongodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.dbs.DBSIdGenerator;
+import org.nuxeo.ecm.core.storage.dbs.DBSSequenceIdGenerator;
+import org.nuxeo.ecm.core.storage.dbs.DBSTimeOrderedIdGenerator;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+
+/**
+ * Compares the insert throughput and the id index size on MongoDB of random UUIDs, time-ordered UUIDs and sequence ids
+ * allocated one by one (the default block size of 1) or by blocks.
+ * <p>
+ * Only runs when benchmarks are enabled ({@code -Dnuxeo.test.benchmark=true}) and when testing against MongoDB
+ * ({@code -Dnuxeo.test.core=mongodb}). The number of documents can be changed
+ * with the {@code nuxeo.test.mongodb.idgen.docs} system property.
+ */
+public class TestMongoDBIdGeneratorBenchmark {
+
+    private static final Log log = LogFactory.getLog(TestMongoDBIdGeneratorBenchmark.class);
+
+    protected static final int NDOCS = Integer.getInteger("nuxeo.test.mongodb.idgen.docs", 50000).intValue();
+
+    protected static final int BATCH_SIZE = 500;
+
+    protected static final String KEY_ID = "ecm:id";
+
+    protected MongoClient client;
+
+    protected DB db;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(Boolean.getBoolean("nuxeo.test.benchmark"));
+        assumeTrue("mongodb".equals(System.getProperty("nuxeo.test.core")));
+        MongoDBRepositoryDescriptor descriptor = new MongoDBRepositoryDescriptor();
+        descriptor.server = System.getProperty("nuxeo.test.mongodb.server", "localhost:27017");
+        descriptor.dbname = System.getProperty("nuxeo.test.mongodb.dbname", "unittests");
+        client = MongoDBRepository.newMongoClient(descriptor);
+        db = client.getDB(descriptor.dbname);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testInsertThroughputAndIndexSize() throws Exception {
+        DBCollection counters = db.getCollection("idgenbench_counters");
+        counters.drop();
+        counters.insert(new BasicDBObject("_id", KEY_ID).append("seq", Long.valueOf(0)));
+        DBSSequenceIdGenerator.BlockAllocator allocator = size -> {
+            DBObject counter = counters.findAndModify(new BasicDBObject("_id", KEY_ID), null, null, false,
+                    new BasicDBObject("$inc", new BasicDBObject("seq", Long.valueOf(size))), true, false);
+            return ((Long) counter.get("seq")).longValue();
+        };
+
+        run("random", () -> UUID.randomUUID().toString());
+        run("timeuuid", new DBSTimeOrderedIdGenerator());
+        DBSSequenceIdGenerator sequence1 = new DBSSequenceIdGenerator("bench1", 1, allocator);
+        DBSSequenceIdGenerator sequence1000 = new DBSSequenceIdGenerator("bench1000", 1000, allocator);
+        try {
+            run("sequence-block1", sequence1);
+            run("sequence-block1000", sequence1000);
+        } finally {
+            sequence1.close();
+            sequence1000.close();
+            counters.drop();
+        }
+    }
+
+    protected void run(String name, DBSIdGenerator generator) {
+        DBCollection coll = db.getCollection("idgenbench_" + name);
+        coll.drop();
+        coll.createIndex(new BasicDBObject(KEY_ID, Integer.valueOf(1)), new BasicDBObject("unique", Boolean.TRUE));
+        try {
+            long t0 = System.nanoTime();
+            List<DBObject> batch = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < NDOCS; i++) {
+                batch.add(new BasicDBObject(KEY_ID, generator.generateNewId()).append("dc:title", "doc" + i));
+                if (batch.size() == BATCH_SIZE) {
+                    coll.insert(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                coll.insert(batch);
+            }
+            long elapsed = System.nanoTime() - t0;
+            assertEquals(NDOCS, coll.count());
+            CommandResult stats = coll.getStats();
+            Object indexSize = ((DBObject) stats.get("indexSizes")).get(KEY_ID + "_1");
+            log.info(String.format("%s: %d docs, %.0f inserts/s, %s index size %s bytes", name, NDOCS,
+                    NDOCS * 1e9 / elapsed, KEY_ID, indexSize));
+        } finally {
+            coll.drop();
+        }
+    }
+
+}
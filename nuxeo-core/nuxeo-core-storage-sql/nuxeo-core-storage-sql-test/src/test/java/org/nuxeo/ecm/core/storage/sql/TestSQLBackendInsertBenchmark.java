@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Calendar;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapperConnector;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCRowMapper;
+
+/**
+ * Compares the throughput of the row insertion paths of {@link JDBCRowMapper}: JDBC batches of single-row
+ * {@code INSERT}s, and multi-row {@code INSERT}s when the dialect supports them.
+ * <p>
+ * Only runs when benchmarks are enabled with {@code -Dnuxeo.test.benchmark=true}. The number of documents can be
+ * changed with the {@code nuxeo.test.vcs.insert.docs} system property.
+ */
+public class TestSQLBackendInsertBenchmark extends SQLBackendTestCase {
+
+    private static final Log log = LogFactory.getLog(TestSQLBackendInsertBenchmark.class);
+
+    protected static final int NDOCS = Integer.getInteger("nuxeo.test.vcs.insert.docs", 2000).intValue();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        deployContrib("org.nuxeo.ecm.core.storage.sql.test.tests", "OSGI-INF/test-backend-core-types-contrib.xml");
+    }
+
+    protected static JDBCRowMapper getJDBCRowMapper(Session session) {
+        return (JDBCRowMapper) JDBCMapperConnector.unwrap(
+                ((SoftRefCachingMapper) ((SessionImpl) session).getMapper()).mapper);
+    }
+
+    @Test
+    public void testInsertThroughput() throws Exception {
+        assumeTrue(Boolean.getBoolean("nuxeo.test.benchmark"));
+        // warm up both paths
+        insertDocuments("warmup-batch", 100, false);
+        insertDocuments("warmup-multi", 100, true);
+
+        double batchRate = insertDocuments("batch", NDOCS, false);
+        double multiRate = insertDocuments("multi", NDOCS, true);
+        log.info(String.format("Inserted %d documents: batched %.0f rows/s, multi-row %.0f rows/s (x%.2f)", NDOCS,
+                batchRate, multiRate, multiRate / batchRate));
+    }
+
+    /**
+     * Creates documents in one save and returns the number of rows written per second.
+     */
+    protected double insertDocuments(String name, int ndocs, boolean multiRowInsert) throws Exception {
+        Session session = repository.getConnection();
+        try {
+            JDBCRowMapper mapper = getJDBCRowMapper(session);
+            boolean supported = mapper.multiRowInsert;
+            mapper.multiRowInsert = multiRowInsert && supported;
+            Node root = session.getRootNode();
+            Node folder = session.addChildNode(root, name, null, "TestDoc", false);
+            session.save();
+            Calendar cal = Calendar.getInstance();
+            for (int i = 0; i < ndocs; i++) {
+                Node node = session.addChildNode(folder, "doc" + i, null, "TestDoc", false);
+                node.setSimpleProperty("tst:title", "title " + i);
+                node.setSimpleProperty("tst:count", Long.valueOf(i));
+                node.setSimpleProperty("tst:created", cal);
+            }
+            // hierarchy + testschema rows
+            int nrows = ndocs * 2;
+            long t0 = System.nanoTime();
+            session.save();
+            long elapsed = System.nanoTime() - t0;
+            mapper.multiRowInsert = supported;
+
+            assertEquals(ndocs, session.getChildren(folder, null, false).size());
+            return nrows * 1e9 / Math.max(elapsed, 1);
+        } finally {
+            session.close();
+        }
+    }
+
+}
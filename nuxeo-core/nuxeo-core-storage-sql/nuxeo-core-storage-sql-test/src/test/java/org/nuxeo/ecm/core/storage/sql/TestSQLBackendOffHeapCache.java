@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import javax.transaction.xa.XAResource;
+
+import org.junit.Test;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+/**
+ * Checks that the {@link OffHeapCachingRowMapper} shared cache never exposes uncommitted rows to other sessions.
+ */
+public class TestSQLBackendOffHeapCache extends SQLBackendTestCase {
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        deployContrib("org.nuxeo.ecm.core.storage.sql.test.tests", "OSGI-INF/test-backend-core-types-contrib.xml");
+    }
+
+    @Override
+    protected RepositoryDescriptor newDescriptor(String name, long clusteringDelay) {
+        RepositoryDescriptor descriptor = super.newDescriptor(name, clusteringDelay);
+        descriptor.cachingMapperClass = OffHeapCachingMapper.class;
+        descriptor.cachingMapperProperties.put(OffHeapCachingRowMapper.MAX_SIZE_PROP, "4M");
+        descriptor.cachingMapperProperties.put(OffHeapCachingRowMapper.SEGMENTS_PROP, "2");
+        return descriptor;
+    }
+
+    /**
+     * Forces the next reads of the session to go to its mapper.
+     */
+    protected static void clearContext(Session session) {
+        ((SessionImpl) session).context.pristine.clear();
+    }
+
+    protected static String getTitle(Session session) {
+        clearContext(session);
+        return session.getNodeByPath("/foo", null).getSimpleProperty("tst:title").getString();
+    }
+
+    @Test
+    public void testRollbackNotVisibleToOtherSessions() throws Exception {
+        assumeTrue(DatabaseHelper.DATABASE.supportsXA());
+
+        Session session1 = repository.getConnection();
+        assertTrue(((SessionImpl) session1).getMapper() instanceof OffHeapCachingMapper);
+        Node foo = session1.addChildNode(session1.getRootNode(), "foo", null, "TestDoc", false);
+        foo.setSimpleProperty("tst:title", "old");
+        session1.save();
+
+        // the other session caches the committed value
+        Session session2 = repository.getConnection();
+        assertEquals("old", getTitle(session2));
+
+        XAResource xaresource = ((SessionImpl) session1).getXAResource();
+        TransactionHelper.startTransaction();
+        try {
+            TransactionHelper.lookupTransactionManager().getTransaction().enlistResource(xaresource);
+            foo = session1.getNodeByPath("/foo", null);
+            foo.setSimpleProperty("tst:title", "new");
+            session1.save();
+            // reads its own uncommitted write, which must not go to the shared cache
+            assertEquals("new", getTitle(session1));
+            assertEquals("old", getTitle(session2));
+            TransactionHelper.setTransactionRollbackOnly();
+        } finally {
+            TransactionHelper.commitOrRollbackTransaction();
+        }
+
+        assertEquals("old", getTitle(session1));
+        assertEquals("old", getTitle(session2));
+        assertEquals("old", getTitle(repository.getConnection()));
+    }
+
+    @Test
+    public void testCommitVisibleToOtherSessions() throws Exception {
+        assumeTrue(DatabaseHelper.DATABASE.supportsXA());
+
+        Session session1 = repository.getConnection();
+        Node foo = session1.addChildNode(session1.getRootNode(), "foo", null, "TestDoc", false);
+        foo.setSimpleProperty("tst:title", "old");
+        session1.save();
+
+        Session session2 = repository.getConnection();
+        assertEquals("old", getTitle(session2));
+
+        XAResource xaresource = ((SessionImpl) session1).getXAResource();
+        TransactionHelper.startTransaction();
+        try {
+            TransactionHelper.lookupTransactionManager().getTransaction().enlistResource(xaresource);
+            foo = session1.getNodeByPath("/foo", null);
+            foo.setSimpleProperty("tst:title", "new");
+            session1.save();
+            assertEquals("new", getTitle(session1));
+            assertEquals("old", getTitle(session2));
+        } finally {
+            TransactionHelper.commitOrRollbackTransaction();
+        }
+
+        // the committed value replaces what was cached
+        assertEquals("new", getTitle(session1));
+        assertEquals("new", getTitle(repository.getConnection()));
+    }
+
+}
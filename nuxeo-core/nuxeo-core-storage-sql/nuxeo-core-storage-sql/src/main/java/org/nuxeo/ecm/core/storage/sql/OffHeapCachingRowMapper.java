@@ -0,0 +1,571 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.utils.SizeUtils;
+import org.nuxeo.ecm.core.storage.sql.ACLRow.ACLRowPositionComparator;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * A {@link RowMapper} that uses an {@link OffHeapRowCache} shared by all the sessions of a repository.
+ * <p>
+ * Rows are kept serialized outside of the Java heap, in a cache bounded in bytes, to reduce GC pressure on large
+ * repositories.
+ * <p>
+ * As the cache is shared and not transactional, rows written by the current transaction are kept out of it until the
+ * transaction ends: they are removed from the cache at write time, never put back while the transaction is in progress,
+ * and read from the underlying {@link RowMapper} by this session. They are removed from the cache again when the
+ * invalidations are sent at post-commit time, or when the transaction is rolled back. Invalidations received from other
+ * repositories in the cluster are applied as well.
+ * <p>
+ * The following caching mapper properties are supported:
+ * <ul>
+ * <li>{@code maxSize}: the maximum size of the cache, for instance {@code 512M} (default {@code 256M}),</li>
+ * <li>{@code segments}: the number of independently-locked segments (default {@code 16}),</li>
+ * <li>{@code directory}: if specified, the segments are memory-mapped files in this directory instead of direct
+ * buffers.</li>
+ * </ul>
+ *
+ * @since 9.3
+ */
+public class OffHeapCachingRowMapper implements RowMapper {
+
+    private static final Log log = LogFactory.getLog(OffHeapCachingRowMapper.class);
+
+    private static final String ABSENT = "__ABSENT__\0\0\0";
+
+    public static final String MAX_SIZE_PROP = "maxSize";
+
+    public static final String SEGMENTS_PROP = "segments";
+
+    public static final String DIRECTORY_PROP = "directory";
+
+    public static final String DEFAULT_MAX_SIZE = "256M";
+
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /**
+     * The caches, shared by all mappers of a given repository.
+     */
+    protected static final Map<String, OffHeapRowCache> caches = new ConcurrentHashMap<>();
+
+    protected OffHeapRowCache cache;
+
+    private Model model;
+
+    /**
+     * The {@link RowMapper} to which operations that cannot be processed from the cache are delegated.
+     */
+    private RowMapper rowMapper;
+
+    /**
+     * The local invalidations due to writes through this mapper that should be propagated to other sessions at
+     * post-commit time.
+     */
+    private final Invalidations localInvalidations;
+
+    /**
+     * The rows written by the current transaction, which must not go into the shared cache before commit.
+     * <p>
+     * Unlike {@link #localInvalidations}, this is never collapsed into an "invalidate all" marker.
+     */
+    protected final Set<RowId> transactionRows = new HashSet<>();
+
+    /**
+     * The queue of invalidations received from other session or from the cluster invalidator, to process at
+     * pre-transaction time.
+     */
+    private final InvalidationsQueue invalidationsQueue;
+
+    /**
+     * The propagator of invalidations to other mappers.
+     */
+    private InvalidationsPropagator invalidationsPropagator;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected Timer cacheGetTimer;
+
+    // sor means system of record (database access)
+    protected Counter sorRows;
+
+    protected Timer sorGetTimer;
+
+    public OffHeapCachingRowMapper() {
+        localInvalidations = new Invalidations();
+        invalidationsQueue = new InvalidationsQueue("mapper-" + this);
+    }
+
+    public void initialize(String repositoryName, Model model, RowMapper rowMapper,
+            InvalidationsPropagator invalidationsPropagator, Map<String, String> properties) {
+        this.model = model;
+        this.rowMapper = rowMapper;
+        this.invalidationsPropagator = invalidationsPropagator;
+        invalidationsPropagator.addQueue(invalidationsQueue);
+        cache = caches.computeIfAbsent(repositoryName, k -> createCache(k, properties));
+        setMetrics(repositoryName);
+    }
+
+    protected static OffHeapRowCache createCache(String repositoryName, Map<String, String> properties) {
+        String maxSizeStr = properties.getOrDefault(MAX_SIZE_PROP, DEFAULT_MAX_SIZE);
+        long maxSize = SizeUtils.parseSizeInBytes(maxSizeStr);
+        String segmentsStr = properties.get(SEGMENTS_PROP);
+        int segments = segmentsStr == null ? DEFAULT_SEGMENTS : Integer.parseInt(segmentsStr);
+        String directory = properties.get(DIRECTORY_PROP);
+        File dir = directory == null ? null : new File(directory, repositoryName);
+        log.info("Creating off-heap VCS cache for repository: " + repositoryName + ", maxSize: " + maxSizeStr
+                + ", segments: " + segments + (dir == null ? "" : ", directory: " + dir));
+        return new OffHeapRowCache(maxSize, segments, dir);
+    }
+
+    protected void setMetrics(String repositoryName) {
+        cacheGetTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "off-heap", "get"));
+        sorRows = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap",
+                "sor", "rows"));
+        sorGetTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "off-heap", "sor", "get"));
+        OffHeapRowCache c = cache;
+        registerGauge(repositoryName, "hits", c::getHits);
+        registerGauge(repositoryName, "misses", c::getMisses);
+        registerGauge(repositoryName, "evictions", c::getEvictions);
+        registerGauge(repositoryName, "rejections", c::getRejections);
+        registerGauge(repositoryName, "cache-size", c::getSize);
+        registerGauge(repositoryName, "cache-bytes", c::getUsedBytes);
+    }
+
+    protected void registerGauge(String repositoryName, String name, Gauge<Long> gauge) {
+        String gaugeName = MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "off-heap", name);
+        if (!registry.getGauges().containsKey(gaugeName)) {
+            try {
+                registry.register(gaugeName, gauge);
+            } catch (IllegalArgumentException e) {
+                // concurrent registration, already registered
+            }
+        }
+    }
+
+    public void close() {
+        invalidationsPropagator.removeQueue(invalidationsQueue);
+    }
+
+    @Override
+    public Serializable generateNewId() {
+        return rowMapper.generateNewId();
+    }
+
+    /*
+     * ----- Cache -----
+     */
+
+    protected static boolean isAbsent(Row row) {
+        return row.tableName == ABSENT; // == is ok
+    }
+
+    protected void cachePut(Row row) {
+        if (transactionRows.contains(row)) {
+            // uncommitted state, must not be visible to other sessions
+            return;
+        }
+        // for ACL collections, make sure the order is correct
+        // (without the cache, the query to get a list of collection does an
+        // ORDER BY pos, so users of the cache must get the same behavior)
+        if (row.isCollection() && row.values.length > 0 && row.values[0] instanceof ACLRow) {
+            row = row.clone();
+            row.values = sortACLRows((ACLRow[]) row.values);
+        }
+        cache.put(row);
+    }
+
+    protected ACLRow[] sortACLRows(ACLRow[] acls) {
+        List<ACLRow> list = new ArrayList<ACLRow>(Arrays.asList(acls));
+        Collections.sort(list, ACLRowPositionComparator.INSTANCE);
+        ACLRow[] res = new ACLRow[acls.length];
+        return list.toArray(res);
+    }
+
+    protected void cachePutAbsent(RowId rowId) {
+        if (transactionRows.contains(rowId)) {
+            // uncommitted state, must not be visible to other sessions
+            return;
+        }
+        cache.putAbsent(rowId);
+    }
+
+    protected void cachePutAbsentIfNull(RowId rowId, Row row) {
+        if (row != null) {
+            cachePut(row);
+        } else {
+            cachePutAbsent(rowId);
+        }
+    }
+
+    protected void cachePutAbsentIfRowId(RowId rowId) {
+        if (rowId instanceof Row) {
+            cachePut((Row) rowId);
+        } else {
+            cachePutAbsent(rowId);
+        }
+    }
+
+    protected Row cacheGet(RowId rowId) {
+        if (transactionRows.contains(rowId)) {
+            // the cache may hold the committed state, but this session must see its own writes
+            return null;
+        }
+        final Timer.Context context = cacheGetTimer.time();
+        try {
+            // rows are deserialized so are already fresh copies
+            return cache.get(rowId, new Row(ABSENT, (Serializable) null));
+        } finally {
+            context.stop();
+        }
+    }
+
+    protected void cacheRemove(RowId rowId) {
+        cache.remove(rowId);
+    }
+
+    /**
+     * Removes a row written by the current transaction from the cache, and keeps it out of the cache until the end of
+     * the transaction.
+     */
+    protected void cacheRemoveTransactionRow(RowId rowId) {
+        cacheRemove(rowId);
+        transactionRows.add(new RowId(rowId));
+    }
+
+    /**
+     * Removes from the cache the rows written by the current transaction, which ended.
+     */
+    protected void purgeTransactionRows() {
+        for (RowId rowId : transactionRows) {
+            cacheRemove(rowId);
+        }
+        transactionRows.clear();
+    }
+
+    /*
+     * ----- Invalidations / Cache Management -----
+     */
+
+    @Override
+    public Invalidations receiveInvalidations() {
+        // invalidations from the underlying mapper (cluster)
+        // already propagated to our invalidations queue
+        Invalidations remoteInvals = rowMapper.receiveInvalidations();
+
+        Invalidations ret = invalidationsQueue.getInvalidations();
+
+        if (remoteInvals != null) {
+            if (remoteInvals.all) {
+                cache.clear();
+            } else {
+                // only handle remote invalidations, local ones are applied by the sending mapper
+                if (remoteInvals.modified != null) {
+                    for (RowId rowId : remoteInvals.modified) {
+                        cacheRemove(rowId);
+                    }
+                }
+                if (remoteInvals.deleted != null) {
+                    for (RowId rowId : remoteInvals.deleted) {
+                        cacheRemove(rowId);
+                    }
+                }
+            }
+        }
+
+        return ret.isEmpty() ? null : ret;
+    }
+
+    // propagate invalidations
+    @Override
+    public void sendInvalidations(Invalidations invalidations) {
+        // the transaction is over, its rows can be cached again
+        // remove what other sessions may have cached between our write and the commit
+        purgeTransactionRows();
+
+        // add local invalidations
+        if (!localInvalidations.isEmpty()) {
+            if (invalidations == null) {
+                invalidations = new Invalidations();
+            }
+            invalidations.add(localInvalidations);
+            localInvalidations.clear();
+        }
+
+        if (invalidations != null && !invalidations.isEmpty()) {
+            // remove from the shared cache rows that may have been read by other sessions
+            // between our write and the commit
+            if (invalidations.all) {
+                cache.clear();
+            } else {
+                if (invalidations.modified != null) {
+                    for (RowId rowId : invalidations.modified) {
+                        cacheRemove(rowId);
+                    }
+                }
+                if (invalidations.deleted != null) {
+                    for (RowId rowId : invalidations.deleted) {
+                        cacheRemove(rowId);
+                    }
+                }
+            }
+
+            // send to underlying mapper
+            rowMapper.sendInvalidations(invalidations);
+
+            // queue to other mappers' caches
+            invalidationsPropagator.propagateInvalidations(invalidations, invalidationsQueue);
+        }
+    }
+
+    @Override
+    public void clearCache() {
+        // the shared cache only holds committed state, just make sure our own writes are not in it
+        purgeTransactionRows();
+        localInvalidations.clear();
+        rowMapper.clearCache();
+    }
+
+    @Override
+    public long getCacheSize() {
+        // the off-heap cache is reported by the cache-size gauge
+        return 0;
+    }
+
+    @Override
+    public void rollback(Xid xid) throws XAException {
+        try {
+            rowMapper.rollback(xid);
+        } finally {
+            // rows written in the transaction were kept out of the cache, make sure none is left
+            purgeTransactionRows();
+            localInvalidations.clear();
+        }
+    }
+
+    /*
+     * ----- Batch -----
+     */
+
+    /*
+     * Use those from the cache if available, read from the mapper for the rest.
+     */
+    @Override
+    public List<? extends RowId> read(Collection<RowId> rowIds, boolean cacheOnly) {
+        List<RowId> res = new ArrayList<RowId>(rowIds.size());
+        // find which are in cache, and which not
+        List<RowId> todo = new LinkedList<RowId>();
+        for (RowId rowId : rowIds) {
+            Row row = cacheGet(rowId);
+            if (row == null) {
+                if (cacheOnly) {
+                    res.add(new RowId(rowId));
+                } else {
+                    todo.add(rowId);
+                }
+            } else if (isAbsent(row)) {
+                res.add(new RowId(rowId));
+            } else {
+                res.add(row);
+            }
+        }
+        if (!todo.isEmpty()) {
+            final Timer.Context context = sorGetTimer.time();
+            try {
+                // ask missing ones to underlying row mapper
+                List<? extends RowId> fetched = rowMapper.read(todo, cacheOnly);
+                // add them to the cache
+                for (RowId rowId : fetched) {
+                    cachePutAbsentIfRowId(rowId);
+                }
+                // merge results
+                res.addAll(fetched);
+                sorRows.inc(fetched.size());
+            } finally {
+                context.stop();
+            }
+        }
+        return res;
+    }
+
+    /*
+     * Remove from the cache then pass all the writes to the mapper.
+     */
+    @Override
+    public void write(RowBatch batch) {
+        // we avoid gathering invalidations for a write-only table: fulltext
+        for (Row row : batch.creates) {
+            cacheRemoveTransactionRow(row);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(row.tableName)) {
+                // we need to send modified invalidations for created
+                // fragments because other session's ABSENT fragments have
+                // to be invalidated
+                localInvalidations.addModified(new RowId(row));
+            }
+        }
+        for (RowUpdate rowu : batch.updates) {
+            cacheRemoveTransactionRow(rowu.row);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowu.row.tableName)) {
+                localInvalidations.addModified(new RowId(rowu.row));
+            }
+        }
+        for (RowId rowId : batch.deletes) {
+            if (rowId instanceof Row) {
+                throw new AssertionError();
+            }
+            cacheRemoveTransactionRow(rowId);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowId.tableName)) {
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        for (RowId rowId : batch.deletesDependent) {
+            if (rowId instanceof Row) {
+                throw new AssertionError();
+            }
+            cacheRemoveTransactionRow(rowId);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowId.tableName)) {
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+
+        // propagate to underlying mapper
+        rowMapper.write(batch);
+    }
+
+    /*
+     * ----- Read -----
+     */
+
+    @Override
+    public Row readSimpleRow(RowId rowId) {
+        Row row = cacheGet(rowId);
+        if (row == null) {
+            row = rowMapper.readSimpleRow(rowId);
+            cachePutAbsentIfNull(rowId, row);
+            return row;
+        } else if (isAbsent(row)) {
+            return null;
+        } else {
+            return row;
+        }
+    }
+
+    @Override
+    public Map<String, String> getBinaryFulltext(RowId rowId) {
+        return rowMapper.getBinaryFulltext(rowId);
+    }
+
+    @Override
+    public Serializable[] readCollectionRowArray(RowId rowId) {
+        Row row = cacheGet(rowId);
+        if (row == null) {
+            Serializable[] array = rowMapper.readCollectionRowArray(rowId);
+            assert array != null;
+            row = new Row(rowId.tableName, rowId.id, array);
+            cachePut(row);
+            return row.values;
+        } else if (isAbsent(row)) {
+            return null;
+        } else {
+            return row.values;
+        }
+    }
+
+    @Override
+    public List<Row> readSelectionRows(SelectionType selType, Serializable selId, Serializable filter,
+            Serializable criterion, boolean limitToOne) {
+        List<Row> rows = rowMapper.readSelectionRows(selType, selId, filter, criterion, limitToOne);
+        for (Row row : rows) {
+            cachePut(row);
+        }
+        return rows;
+    }
+
+    @Override
+    public Set<Serializable> readSelectionsIds(SelectionType selType, List<Serializable> values) {
+        return rowMapper.readSelectionsIds(selType, values);
+    }
+
+    /*
+     * ----- Copy -----
+     */
+
+    @Override
+    public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow) {
+        CopyResult result = rowMapper.copy(source, destParentId, destName, overwriteRow);
+        Invalidations invalidations = result.invalidations;
+        if (invalidations.modified != null) {
+            for (RowId rowId : invalidations.modified) {
+                cacheRemoveTransactionRow(rowId);
+                localInvalidations.addModified(new RowId(rowId));
+            }
+        }
+        if (invalidations.deleted != null) {
+            for (RowId rowId : invalidations.deleted) {
+                cacheRemoveTransactionRow(rowId);
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<NodeInfo> getDescendantsInfo(Serializable rootId) {
+        return rowMapper.getDescendantsInfo(rootId);
+    }
+
+    @Override
+    public void remove(Serializable rootId, List<NodeInfo> nodeInfos) {
+        rowMapper.remove(rootId, nodeInfos);
+        for (NodeInfo info : nodeInfos) {
+            for (String fragmentName : model.getTypeFragments(new IdWithTypes(info.id, info.primaryType, null))) {
+                RowId rowId = new RowId(fragmentName, info.id);
+                cacheRemoveTransactionRow(rowId);
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+    }
+
+}
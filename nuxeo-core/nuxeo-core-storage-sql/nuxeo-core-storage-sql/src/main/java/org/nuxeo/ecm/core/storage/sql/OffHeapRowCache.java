@@ -0,0 +1,690 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * A cache of {@link Row}s stored in serialized form outside of the Java heap.
+ * <p>
+ * The cache is split into segments, each one owning a fixed-size direct (or memory-mapped, if a directory is
+ * provided) buffer split into two rings: new entries are appended at the tail and the oldest entries are evicted at the
+ * head when space is needed. Only the small per-segment index lives on the heap.
+ * <p>
+ * Admission follows the W-TinyLFU policy: new entries always enter a small window ring; entries evicted from the window
+ * are only admitted to the main ring if their estimated access frequency is not lower than that of the entry they would
+ * evict. Frequencies are tracked in a lock-free count-min sketch that is periodically aged, so that reads only contend
+ * on their own segment.
+ * <p>
+ * Rows are stored in a compact encoding of their table name, id, keys and values. Values of the usual column types
+ * (strings, numbers, booleans, calendars and their arrays) are written directly, other values fall back to Java
+ * serialization.
+ * <p>
+ * The cache also records "absent" entries, used to remember that a row does not exist in the database.
+ *
+ * @since 9.3
+ */
+public class OffHeapRowCache {
+
+    protected static final byte FLAG_ABSENT = 0;
+
+    protected static final byte FLAG_PRESENT = 1;
+
+    protected static final byte TYPE_NULL = 0;
+
+    protected static final byte TYPE_STRING = 1;
+
+    protected static final byte TYPE_LONG = 2;
+
+    protected static final byte TYPE_INTEGER = 3;
+
+    protected static final byte TYPE_BOOLEAN = 4;
+
+    protected static final byte TYPE_DOUBLE = 5;
+
+    protected static final byte TYPE_CALENDAR = 6;
+
+    protected static final byte TYPE_OPAQUE = 7;
+
+    protected static final byte TYPE_STRING_ARRAY = 8;
+
+    protected static final byte TYPE_LONG_ARRAY = 9;
+
+    protected static final byte TYPE_SERIALIZED = 127;
+
+    protected final Segment[] segments;
+
+    protected final FrequencySketch sketch;
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    protected final AtomicLong misses = new AtomicLong();
+
+    protected final AtomicLong evictions = new AtomicLong();
+
+    protected final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * Constructs an off-heap cache.
+     *
+     * @param maxSize the maximum size in bytes used by the cache
+     * @param nbSegments the number of segments, each one with its own lock
+     * @param dir the directory in which to memory-map the segments, or {@code null} for direct buffers
+     */
+    public OffHeapRowCache(long maxSize, int nbSegments, File dir) {
+        if (nbSegments <= 0) {
+            throw new IllegalArgumentException("Invalid number of segments: " + nbSegments);
+        }
+        long segmentSize = maxSize / nbSegments;
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        segments = new Segment[nbSegments];
+        for (int i = 0; i < nbSegments; i++) {
+            segments[i] = new Segment(allocate((int) segmentSize, dir, i));
+        }
+        // assume average row size around 256 bytes to size the sketch
+        sketch = new FrequencySketch((int) Math.min(maxSize / 256, 1 << 24));
+    }
+
+    protected static ByteBuffer allocate(int size, File dir, int i) {
+        if (dir == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        dir.mkdirs();
+        File file = new File(dir, "segment-" + i);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            file.deleteOnExit();
+            return channel.map(MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot map cache segment: " + file, e);
+        }
+    }
+
+    protected Segment segmentFor(RowId rowId) {
+        int h = rowId.hashCode();
+        h ^= h >>> 16;
+        return segments[(h & Integer.MAX_VALUE) % segments.length];
+    }
+
+    /**
+     * Gets a row from the cache.
+     *
+     * @param rowId the row id
+     * @param absent the row to return if the row is known to be absent
+     * @return the row, {@code absent} if it's known to be absent, or {@code null} if not in the cache
+     */
+    public Row get(RowId rowId, Row absent) {
+        sketch.increment(rowId);
+        byte[] bytes = segmentFor(rowId).get(rowId);
+        if (bytes == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        if (bytes[0] == FLAG_ABSENT) {
+            return absent;
+        }
+        return deserialize(bytes);
+    }
+
+    /**
+     * Puts a row in the cache. The row may not be admitted if the cache is full of more frequently used rows.
+     */
+    public void put(Row row) {
+        put(new RowId(row), serialize(row));
+    }
+
+    /**
+     * Records a row as absent.
+     */
+    public void putAbsent(RowId rowId) {
+        put(new RowId(rowId), new byte[] { FLAG_ABSENT });
+    }
+
+    protected void put(RowId rowId, byte[] bytes) {
+        segmentFor(rowId).put(rowId, bytes);
+    }
+
+    public void remove(RowId rowId) {
+        segmentFor(rowId).remove(rowId);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Gets the number of entries in the cache.
+     */
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of bytes used by the cache entries.
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.getUsedBytes();
+        }
+        return used;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    protected static byte[] serialize(Row row) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeByte(FLAG_PRESENT);
+            out.writeUTF(row.tableName);
+            writeValue(out, row.id);
+            if (row.isCollection()) {
+                out.writeInt(-1);
+                writeValue(out, row.values);
+            } else {
+                out.writeInt(row.size);
+                for (int i = 0; i < row.size; i++) {
+                    out.writeUTF(row.keys[i]);
+                    writeValue(out, row.values[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    protected static Row deserialize(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+            String tableName = in.readUTF();
+            Serializable id = readValue(in);
+            int size = in.readInt();
+            if (size < 0) {
+                return new Row(tableName, id, (Serializable[]) readValue(in));
+            }
+            Row row = new Row(tableName, id);
+            for (int i = 0; i < size; i++) {
+                row.putNew(in.readUTF(), readValue(in));
+            }
+            return row;
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    protected static void writeValue(DataOutputStream out, Serializable value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean(((Boolean) value).booleanValue());
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value.getClass() == GregorianCalendar.class) {
+            GregorianCalendar cal = (GregorianCalendar) value;
+            out.writeByte(TYPE_CALENDAR);
+            out.writeLong(cal.getTimeInMillis());
+            out.writeUTF(cal.getTimeZone().getID());
+        } else if (value == Row.OPAQUE) {
+            out.writeByte(TYPE_OPAQUE);
+        } else if (value.getClass() == String[].class) {
+            String[] array = (String[]) value;
+            out.writeByte(TYPE_STRING_ARRAY);
+            out.writeInt(array.length);
+            for (String string : array) {
+                out.writeBoolean(string != null);
+                if (string != null) {
+                    writeString(out, string);
+                }
+            }
+        } else if (value.getClass() == Long[].class) {
+            Long[] array = (Long[]) value;
+            out.writeByte(TYPE_LONG_ARRAY);
+            out.writeInt(array.length);
+            for (Long l : array) {
+                out.writeBoolean(l != null);
+                if (l != null) {
+                    out.writeLong(l.longValue());
+                }
+            }
+        } else {
+            // rare types, keep them exact
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(value);
+            }
+            out.writeByte(TYPE_SERIALIZED);
+            out.writeInt(baos.size());
+            baos.writeTo(out);
+        }
+    }
+
+    protected static Serializable readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return readString(in);
+        case TYPE_LONG:
+            return Long.valueOf(in.readLong());
+        case TYPE_INTEGER:
+            return Integer.valueOf(in.readInt());
+        case TYPE_BOOLEAN:
+            return Boolean.valueOf(in.readBoolean());
+        case TYPE_DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case TYPE_CALENDAR:
+            long time = in.readLong();
+            GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone(in.readUTF()));
+            cal.setTimeInMillis(time);
+            return cal;
+        case TYPE_OPAQUE:
+            return Row.OPAQUE;
+        case TYPE_STRING_ARRAY:
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readBoolean() ? readString(in) : null;
+            }
+            return strings;
+        case TYPE_LONG_ARRAY:
+            Long[] longs = new Long[in.readInt()];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = in.readBoolean() ? Long.valueOf(in.readLong()) : null;
+            }
+            return longs;
+        case TYPE_SERIALIZED:
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (Serializable) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        default:
+            throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    protected static void writeString(DataOutputStream out, String string) throws IOException {
+        // not writeUTF, which is limited to 64 KB (fulltext)
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An entry location in a ring.
+     */
+    protected static class Slot {
+
+        protected final Ring ring;
+
+        protected final RowId rowId;
+
+        protected final int offset;
+
+        protected final int length;
+
+        protected boolean live = true;
+
+        protected Slot(Ring ring, RowId rowId, int offset, int length) {
+            this.ring = ring;
+            this.rowId = rowId;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        protected int end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * A region of a segment buffer where entries are appended at the tail and evicted at the head.
+     */
+    protected static class Ring {
+
+        protected final ByteBuffer buffer;
+
+        protected final int capacity;
+
+        /** Slots in ring order, oldest first. Dead slots are kept until their space is reclaimed. */
+        protected final ArrayDeque<Slot> slots = new ArrayDeque<>();
+
+        protected Ring(ByteBuffer buffer) {
+            this.buffer = buffer;
+            capacity = buffer.capacity();
+        }
+
+        /**
+         * Finds the offset at which to write an entry of the given length, or -1 if an eviction is needed first.
+         */
+        protected int findSpace(int length) {
+            if (slots.isEmpty()) {
+                return 0;
+            }
+            int head = slots.peekFirst().offset;
+            Slot last = slots.peekLast();
+            int tail = last.end();
+            if (last.offset >= head) {
+                // not wrapped: free space is after the tail and before the head
+                if (tail + length <= capacity) {
+                    return tail;
+                }
+                if (length <= head) {
+                    return 0;
+                }
+            } else {
+                // wrapped: free space is between the tail and the head
+                if (tail + length <= head) {
+                    return tail;
+                }
+            }
+            return -1;
+        }
+
+        protected Slot write(RowId rowId, byte[] bytes, int offset) {
+            ByteBuffer bb = buffer.duplicate();
+            bb.position(offset);
+            bb.put(bytes);
+            Slot slot = new Slot(this, rowId, offset, bytes.length);
+            slots.addLast(slot);
+            return slot;
+        }
+
+        protected byte[] read(Slot slot) {
+            byte[] bytes = new byte[slot.length];
+            ByteBuffer bb = buffer.duplicate();
+            bb.position(slot.offset);
+            bb.get(bytes);
+            return bytes;
+        }
+
+        /** Reclaims dead slots at the head. */
+        protected void trim() {
+            while (!slots.isEmpty() && !slots.peekFirst().live) {
+                slots.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * A segment of the cache. New entries go to a small admission window; entries evicted from the window are only
+     * admitted to the main ring if they are used more frequently than the main ring's next victim.
+     */
+    protected class Segment {
+
+        protected final Ring window;
+
+        protected final Ring main;
+
+        protected final Map<RowId, Slot> index = new HashMap<>();
+
+        protected int usedBytes;
+
+        protected Segment(ByteBuffer buffer) {
+            int capacity = buffer.capacity();
+            int windowCapacity = Math.max(capacity / 100, Math.min(capacity / 4, 64 * 1024));
+            buffer.limit(windowCapacity);
+            window = new Ring(buffer.slice());
+            buffer.limit(capacity).position(windowCapacity);
+            main = new Ring(buffer.slice());
+        }
+
+        protected synchronized byte[] get(RowId rowId) {
+            Slot slot = index.get(rowId);
+            if (slot == null) {
+                return null;
+            }
+            return slot.ring.read(slot);
+        }
+
+        protected synchronized void put(RowId rowId, byte[] bytes) {
+            removeSlot(index.remove(rowId));
+            if (bytes.length > window.capacity) {
+                // too big for the window, compete directly for the main ring
+                admit(rowId, bytes);
+                return;
+            }
+            int offset;
+            while ((offset = window.findSpace(bytes.length)) < 0) {
+                Slot candidate = window.slots.removeFirst();
+                if (candidate.live) {
+                    index.remove(candidate.rowId);
+                    usedBytes -= candidate.length;
+                    admit(candidate.rowId, window.read(candidate));
+                }
+            }
+            add(window, rowId, bytes, offset);
+        }
+
+        /**
+         * Adds an entry to the main ring if the admission policy allows it.
+         */
+        protected void admit(RowId rowId, byte[] bytes) {
+            if (bytes.length > main.capacity) {
+                rejections.incrementAndGet();
+                return;
+            }
+            int offset;
+            while ((offset = main.findSpace(bytes.length)) < 0) {
+                Slot victim = main.slots.peekFirst();
+                if (victim.live && sketch.frequency(rowId) < sketch.frequency(victim.rowId)) {
+                    // TinyLFU admission: don't evict something more useful
+                    rejections.incrementAndGet();
+                    return;
+                }
+                main.slots.removeFirst();
+                if (victim.live) {
+                    index.remove(victim.rowId);
+                    usedBytes -= victim.length;
+                    evictions.incrementAndGet();
+                }
+            }
+            add(main, rowId, bytes, offset);
+        }
+
+        protected void add(Ring ring, RowId rowId, byte[] bytes, int offset) {
+            index.put(rowId, ring.write(rowId, bytes, offset));
+            usedBytes += bytes.length;
+        }
+
+        protected synchronized void remove(RowId rowId) {
+            removeSlot(index.remove(rowId));
+        }
+
+        protected void removeSlot(Slot slot) {
+            if (slot == null) {
+                return;
+            }
+            slot.live = false;
+            usedBytes -= slot.length;
+            slot.ring.trim();
+        }
+
+        protected synchronized void clear() {
+            index.clear();
+            window.slots.clear();
+            main.slots.clear();
+            usedBytes = 0;
+        }
+
+        protected synchronized int getSize() {
+            return index.size();
+        }
+
+        protected synchronized int getUsedBytes() {
+            return usedBytes;
+        }
+    }
+
+    /**
+     * A count-min sketch with 4-bit counters, aged by halving all counters after a number of increments.
+     * <p>
+     * Counters are updated with CAS operations instead of a lock, concurrent readers don't block each other. Aging
+     * races with increments, which only makes the estimates a little more approximate.
+     */
+    protected static class FrequencySketch {
+
+        protected static final int[] SEEDS = { 0x97cb3127, 0xb0f76c8d, 0x7e3e8f1b, 0x2c3e85a5 };
+
+        protected final AtomicLongArray table;
+
+        protected final int mask;
+
+        protected final int sampleSize;
+
+        protected final AtomicInteger additions = new AtomicInteger();
+
+        protected FrequencySketch(int maxEntries) {
+            int size = Integer.highestOneBit(Math.max(maxEntries, 64) - 1) << 1;
+            // 16 counters of 4 bits per long
+            table = new AtomicLongArray(Math.max(size >>> 4, 1));
+            mask = table.length() - 1;
+            sampleSize = 10 * size;
+        }
+
+        protected int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * (long) SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        protected int counterOf(int hash, int i) {
+            // which of the 16 counters of the long
+            return ((hash >>> (i << 3)) & 0xF);
+        }
+
+        protected int frequency(Serializable key) {
+            int hash = spread(key.hashCode());
+            int freq = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int shift = counterOf(hash, i) << 2;
+                int count = (int) ((table.get(indexOf(hash, i)) >>> shift) & 0xFL);
+                freq = Math.min(freq, count);
+            }
+            return freq;
+        }
+
+        protected void increment(Serializable key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), counterOf(hash, i) << 2);
+            }
+            if (added && additions.incrementAndGet() == sampleSize) {
+                reset();
+            }
+        }
+
+        /** Increments a counter unless it is saturated. */
+        protected boolean incrementAt(int index, int shift) {
+            long mask = 0xFL << shift;
+            for (;;) {
+                long value = table.get(index);
+                if ((value & mask) == mask) {
+                    return false;
+                }
+                if (table.compareAndSet(index, value, value + (1L << shift))) {
+                    return true;
+                }
+            }
+        }
+
+        /** Halves all counters. Only called by the thread reaching the sample size. */
+        protected void reset() {
+            for (int i = 0; i < table.length(); i++) {
+                long value;
+                do {
+                    value = table.get(i);
+                } while (!table.compareAndSet(i, value, (value >>> 1) & 0x7777777777777777L));
+            }
+            additions.addAndGet(-sampleSize / 2);
+        }
+
+        protected static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+
+}
@@ -19,6 +19,7 @@
 package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -95,6 +96,14 @@ public interface Session extends Connection {
      */
     List<Node> getNodesByIds(List<Serializable> ids);
 
+    /**
+     * Fetches in bulk the ancestors of the given nodes, with their prefetched fragments (including ACLs).
+     *
+     * @param ids the ids
+     * @since 9.3
+     */
+    void prefetchAncestors(Collection<Serializable> ids);
+
     /**
      * Gets a node given its absolute path, or given an existing node and a relative path.
      *
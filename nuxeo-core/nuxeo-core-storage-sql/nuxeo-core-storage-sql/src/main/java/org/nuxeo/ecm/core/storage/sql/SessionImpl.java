@@ -766,6 +766,17 @@ public class SessionImpl implements Session, XAResource {
         return getNodesByIds(ids, true);
     }
 
+    @Override
+    public void prefetchAncestors(Collection<Serializable> ids) {
+        checkLive();
+        Set<Serializable> ancestorIds = new HashSet<>(mapper.getAncestorsIds(ids));
+        ancestorIds.removeAll(ids);
+        if (!ancestorIds.isEmpty()) {
+            // the nodes are not kept, but their fragments stay in the context
+            getNodesByIds(new ArrayList<>(ancestorIds), true);
+        }
+    }
+
     @Override
     public Node getParentNode(Node node) {
         checkLive();
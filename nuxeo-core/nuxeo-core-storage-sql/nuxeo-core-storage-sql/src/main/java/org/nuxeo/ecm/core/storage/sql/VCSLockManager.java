@@ -22,8 +22,12 @@ import java.io.Serializable;
 import java.sql.BatchUpdateException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -166,6 +170,49 @@ public class VCSLockManager implements LockManager {
         }
     }
 
+    @Override
+    public Map<String, Lock> getLocks(Collection<String> ids) {
+        serializationLock.lock();
+        try {
+            Map<String, Lock> locks = new HashMap<>();
+            Map<Serializable, String> idsToFetch = new HashMap<>();
+            for (String id : ids) {
+                Lock lock;
+                if (caching && (lock = lockCache.get(id)) != null) {
+                    locks.put(id, lock == NULL_LOCK ? null : lock);
+                } else {
+                    idsToFetch.put(idFromString(id), id);
+                }
+            }
+            if (idsToFetch.isEmpty()) {
+                return locks;
+            }
+            List<RowId> rowIds = new ArrayList<>(idsToFetch.size());
+            for (Serializable id : idsToFetch.keySet()) {
+                rowIds.add(new RowId(Model.LOCK_TABLE_NAME, id));
+            }
+            // no transaction needed, single operation
+            for (RowId rowId : getMapper().read(rowIds, false)) {
+                String id = idsToFetch.get(rowId.id);
+                Lock lock;
+                if (rowId instanceof Row) {
+                    Row row = (Row) rowId;
+                    lock = new Lock((String) row.get(Model.LOCK_OWNER_KEY), (Calendar) row.get(Model.LOCK_CREATED_KEY));
+                } else {
+                    // absent row
+                    lock = null;
+                }
+                if (caching) {
+                    lockCache.put(id, lock == null ? NULL_LOCK : lock);
+                }
+                locks.put(id, lock);
+            }
+            return locks;
+        } finally {
+            serializationLock.unlock();
+        }
+    }
+
     @Override
     public Lock setLock(String id, Lock lock) {
         // We don't call addSuppressed() on an existing exception
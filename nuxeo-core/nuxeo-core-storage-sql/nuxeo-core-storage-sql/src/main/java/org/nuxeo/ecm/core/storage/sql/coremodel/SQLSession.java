@@ -482,6 +482,29 @@ public class SQLSession implements Session {
         return node == null ? null : newDocument(node);
     }
 
+    @Override
+    public List<Document> getDocumentsByUUIDs(List<String> uuids) {
+        List<Serializable> ids = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            ids.add(idFromString(uuid));
+        }
+        return getDocumentsById(ids);
+    }
+
+    @Override
+    public void prefetchAncestors(List<Document> docs) {
+        Set<Serializable> ids = new HashSet<>();
+        for (Document doc : docs) {
+            Document base = doc.isVersion() ? doc.getSourceDocument() : doc;
+            if (base != null) {
+                ids.add(((SQLDocument) base).getNode().getId());
+            }
+        }
+        if (!ids.isEmpty()) {
+            session.prefetchAncestors(ids);
+        }
+    }
+
     // called by SQLQueryResult iterator
     protected List<Document> getDocumentsById(List<Serializable> ids) {
         List<Document> docs = new ArrayList<>(ids.size());
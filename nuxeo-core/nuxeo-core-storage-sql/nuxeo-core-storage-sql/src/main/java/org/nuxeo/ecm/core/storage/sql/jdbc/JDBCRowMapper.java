@@ -41,6 +41,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -76,11 +77,32 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     public static final int UPDATE_BATCH_SIZE = 100; // also insert/delete
 
+    /**
+     * Maximum number of rows inserted in a single statement or JDBC batch, whatever the table width.
+     *
+     * @since 9.3
+     */
+    public static final int MAX_INSERT_BATCH_SIZE = 1000;
+
     public static final int DEBUG_MAX_TREE = 50;
 
     /** Property to determine whether collection appends delete all then re-insert, or are optimized for append. */
     public static final String COLLECTION_DELETE_BEFORE_APPEND_PROP = "org.nuxeo.vcs.list-delete-before-append";
 
+    /**
+     * Property to disable the use of multi-row {@code INSERT} statements when the dialect supports them.
+     *
+     * @since 9.3
+     */
+    public static final String MULTI_ROW_INSERT_PROP = "org.nuxeo.vcs.multi-row-insert";
+
+    /**
+     * Property overriding the dialect's estimated maximum size in bytes of the values of a multi-row {@code INSERT}.
+     *
+     * @since 9.3
+     */
+    public static final String MULTI_ROW_INSERT_MAX_SIZE_PROP = "org.nuxeo.vcs.multi-row-insert.max-size";
+
     /**
      * Cluster invalidator, or {@code null} if this mapper does not participate in invalidation propagation (cluster
      * invalidator, lock manager).
@@ -95,6 +117,11 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     private final CollectionIO scalarCollectionIO;
 
+    // public for benchmarks
+    public boolean multiRowInsert;
+
+    protected final long multiRowInsertMaxSize;
+
     public JDBCRowMapper(Model model, SQLInfo sqlInfo, ClusterInvalidator clusterInvalidator,
             InvalidationsPropagator invalidationsPropagator) {
         super(model, sqlInfo);
@@ -104,6 +131,11 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         collectionDeleteBeforeAppend = configurationService.isBooleanPropertyTrue(COLLECTION_DELETE_BEFORE_APPEND_PROP);
         aclCollectionIO = new ACLCollectionIO(collectionDeleteBeforeAppend);
         scalarCollectionIO = new ScalarCollectionIO(collectionDeleteBeforeAppend);
+        multiRowInsert = dialect.supportsMultiRowInsert()
+                && !configurationService.isBooleanPropertyFalse(MULTI_ROW_INSERT_PROP);
+        String maxSize = configurationService.getProperty(MULTI_ROW_INSERT_MAX_SIZE_PROP);
+        multiRowInsertMaxSize = StringUtils.isBlank(maxSize) ? dialect.getMaximumStatementSize()
+                : Long.parseLong(maxSize.trim());
     }
 
     @Override
@@ -513,6 +545,19 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Gets the number of rows to insert in a single statement or JDBC batch, given the number of columns of the table.
+     * <p>
+     * Narrow tables can use large batches, while wide tables are bounded by the dialect's limit on the number of
+     * parameters in a statement.
+     *
+     * @since 9.3
+     */
+    protected int getInsertBatchSize(int ncols) {
+        int size = dialect.getMaximumParametersPerStatement() / Math.max(ncols, 1);
+        return Math.max(1, Math.min(size, MAX_INSERT_BATCH_SIZE));
+    }
+
     /**
      * Inserts multiple rows, all for the same table.
      */
@@ -524,9 +569,14 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (sql == null) {
             throw new NuxeoException("Unknown table: " + tableName);
         }
+        List<Column> columns = sqlInfo.getInsertColumns(tableName);
+        int batchSize = getInsertBatchSize(columns.size());
+        if (multiRowInsert && rows.size() > 1 && !columns.isEmpty()) {
+            insertSimpleRowsMultiValues(tableName, rows, columns, batchSize);
+            return;
+        }
         boolean batched = supportsBatchUpdates && rows.size() > 1;
         String loggedSql = batched ? sql + " -- BATCHED" : sql;
-        List<Column> columns = sqlInfo.getInsertColumns(tableName);
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             int batch = 0;
             for (Iterator<Row> rowIt = rows.iterator(); rowIt.hasNext();) {
@@ -541,7 +591,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                 if (batched) {
                     ps.addBatch();
                     batch++;
-                    if (batch % UPDATE_BATCH_SIZE == 0 || !rowIt.hasNext()) {
+                    if (batch % batchSize == 0 || !rowIt.hasNext()) {
                         ps.executeBatch();
                         countExecute();
                     }
@@ -563,6 +613,119 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Inserts multiple rows, all for the same table, using {@code INSERT ... VALUES (...), (...)} statements of up to
+     * {@code batchSize} rows, and whose values are estimated to fit in the dialect's maximum statement size.
+     *
+     * @since 9.3
+     */
+    protected void insertSimpleRowsMultiValues(String tableName, List<Row> rows, List<Column> columns,
+            int batchSize) {
+        if (!(rows instanceof RandomAccess)) {
+            rows = new ArrayList<>(rows);
+        }
+        List<String> keys = columns.stream().map(Column::getKey).collect(Collectors.toList());
+        List<Integer> chunks = getInsertChunks(rows, keys, batchSize, multiRowInsertMaxSize);
+        String sql = null;
+        try {
+            int start = 0;
+            int c = 0;
+            while (c < chunks.size()) {
+                int n = chunks.get(c).intValue();
+                sql = sqlInfo.getMultiRowInsertSql(tableName, n);
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    // consecutive chunks of the same size reuse the same statement
+                    do {
+                        executeMultiRowInsert(ps, columns, rows.subList(start, start + n));
+                        start += n;
+                        c++;
+                    } while (c < chunks.size() && chunks.get(c).intValue() == n);
+                }
+            }
+        } catch (SQLException e) {
+            checkConcurrentUpdate(e);
+            throw new NuxeoException("Could not insert: " + sql, e);
+        }
+    }
+
+    /**
+     * Splits rows into chunks of at most {@code batchSize} rows, whose estimated size is at most {@code maxSize}
+     * bytes. A row larger than {@code maxSize} gets its own chunk.
+     *
+     * @return the number of rows of each chunk
+     * @since 9.3
+     */
+    protected static List<Integer> getInsertChunks(List<Row> rows, List<String> keys, int batchSize, long maxSize) {
+        List<Integer> chunks = new ArrayList<>();
+        int n = 0;
+        long size = 0;
+        for (Row row : rows) {
+            long rowSize = estimateSize(row, keys);
+            if (n > 0 && (n == batchSize || size + rowSize > maxSize)) {
+                chunks.add(Integer.valueOf(n));
+                n = 0;
+                size = 0;
+            }
+            n++;
+            size += rowSize;
+        }
+        if (n > 0) {
+            chunks.add(Integer.valueOf(n));
+        }
+        return chunks;
+    }
+
+    /**
+     * Estimates the size in bytes of the values of a row, as sent to the database.
+     */
+    protected static long estimateSize(Row row, List<String> keys) {
+        // separators and parameter placeholders
+        long size = 2 + 2 * keys.size();
+        for (String key : keys) {
+            size += estimateSize(row.get(key));
+        }
+        return size;
+    }
+
+    protected static long estimateSize(Serializable value) {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof String) {
+            // UTF-8 and escaping, quotes
+            return 3L * ((String) value).length() + 2;
+        } else if (value instanceof Object[]) {
+            long size = 2;
+            for (Object v : (Object[]) value) {
+                size += estimateSize((Serializable) v) + 1;
+            }
+            return size;
+        } else if (value instanceof byte[]) {
+            // hex encoded
+            return 2L * ((byte[]) value).length + 3;
+        } else {
+            // numbers, dates, booleans
+            return 32;
+        }
+    }
+
+    protected void executeMultiRowInsert(PreparedStatement ps, List<Column> columns, List<Row> rows)
+            throws SQLException {
+        if (logger.isLogEnabled()) {
+            String loggedSql = sqlInfo.getInsertSql(rows.get(0).tableName) + " -- MULTI-ROW " + rows.size();
+            for (Row row : rows) {
+                logger.logSQL(loggedSql, columns, row);
+            }
+        }
+        int i = 1;
+        for (Row row : rows) {
+            for (Column column : columns) {
+                column.setToPreparedStatement(ps, i++, row.get(column.getKey()));
+            }
+        }
+        ps.execute();
+        countExecute();
+    }
+
     /**
      * Updates multiple collection rows, all for the same table.
      */
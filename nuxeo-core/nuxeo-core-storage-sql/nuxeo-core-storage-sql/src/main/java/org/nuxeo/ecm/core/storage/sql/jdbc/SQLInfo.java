@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.nuxeo.common.utils.StringUtils;
@@ -91,6 +92,10 @@ public class SQLInfo {
 
     private final Map<String, List<Column>> insertColumnsMap;
 
+    private final Map<String, Insert> insertMap;
+
+    private final Map<String, String> multiRowInsertSqlMap; // statement, keyed by table name and number of rows
+
     private final Map<String, String> deleteSqlMap; // statement
 
     private Map<SelectionType, SQLInfoSelection> selections;
@@ -161,6 +166,8 @@ public class SQLInfo {
 
         insertSqlMap = new HashMap<>();
         insertColumnsMap = new HashMap<>();
+        insertMap = new HashMap<>();
+        multiRowInsertSqlMap = new ConcurrentHashMap<>();
 
         deleteSqlMap = new HashMap<>();
 
@@ -280,6 +287,26 @@ public class SQLInfo {
         return insertColumnsMap.get(tableName);
     }
 
+    /**
+     * Returns the SQL {@code INSERT} to add several rows in one statement. The columns are those of
+     * {@link #getInsertColumns}, repeated for each row.
+     *
+     * @param tableName the table name
+     * @param nrows the number of rows
+     * @return the SQL {@code INSERT} statement
+     * @since 9.3
+     */
+    public String getMultiRowInsertSql(String tableName, int nrows) {
+        if (nrows == 1) {
+            return getInsertSql(tableName);
+        }
+        Insert insert = insertMap.get(tableName);
+        if (insert == null) {
+            return null;
+        }
+        return multiRowInsertSqlMap.computeIfAbsent(tableName + '/' + nrows, k -> insert.getStatement(nrows));
+    }
+
     // -----
 
     /**
@@ -1023,6 +1050,9 @@ public class SQLInfo {
             }
             insertSqlMap.put(tableName, insert.getStatement());
             insertColumnsMap.put(tableName, insertColumns);
+            if (!insertColumns.isEmpty()) {
+                insertMap.put(tableName, insert);
+            }
         }
 
         protected void postProcessDelete() {
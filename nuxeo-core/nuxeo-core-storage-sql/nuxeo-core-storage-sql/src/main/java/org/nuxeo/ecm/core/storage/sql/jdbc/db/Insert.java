@@ -71,6 +71,22 @@ public class Insert implements Serializable {
      * @return the SQL insert or copy statement
      */
     public String getStatement() {
+        return getStatement(1);
+    }
+
+    /**
+     * Gets the statement to insert several rows at once.
+     * <p>
+     * Example: {@code INSERT INTO foo (a, b) VALUES (?, ?), (?, ?), (?, ?)}
+     *
+     * @param nrows the number of rows
+     * @return the SQL insert statement
+     * @since 9.3
+     */
+    public String getStatement(int nrows) {
+        if (nrows > 1 && (columns.isEmpty() || insertValues != null)) {
+            throw new IllegalStateException("Cannot insert multiple rows in: " + table.getKey());
+        }
         StringBuilder buf = new StringBuilder(128);
         buf.append("INSERT INTO ");
         buf.append(table.getQuotedName());
@@ -90,9 +106,14 @@ public class Insert implements Serializable {
             buf.append(String.join(", ", columnNames));
             buf.append(") ");
             if (insertValues == null) {
-                buf.append("VALUES (");
-                buf.append(String.join(", ", values));
-                buf.append(')');
+                buf.append("VALUES ");
+                String valuesList = '(' + String.join(", ", values) + ')';
+                for (int i = 0; i < nrows; i++) {
+                    if (i > 0) {
+                        buf.append(", ");
+                    }
+                    buf.append(valuesList);
+                }
             } else {
                 buf.append(insertValues);
             }
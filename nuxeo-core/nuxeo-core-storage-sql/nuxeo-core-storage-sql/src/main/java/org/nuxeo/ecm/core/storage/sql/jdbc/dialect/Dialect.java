@@ -1334,4 +1334,37 @@ public abstract class Dialect {
         return true;
     }
 
+    /**
+     * Does the dialect support inserting several rows in one statement using {@code INSERT ... VALUES (...), (...)}.
+     *
+     * @since 9.3
+     */
+    public boolean supportsMultiRowInsert() {
+        return false;
+    }
+
+    /**
+     * Maximum number of parameters in a single prepared statement.
+     * <p>
+     * Used to compute how many rows can be inserted in one multi-row {@code INSERT}, depending on the table width.
+     * <p>
+     * SQL Server is limited to 2100 parameters.
+     *
+     * @since 9.3
+     */
+    public int getMaximumParametersPerStatement() {
+        return 2000;
+    }
+
+    /**
+     * Estimated maximum size in bytes of the values sent in a single statement.
+     * <p>
+     * Used to bound multi-row {@code INSERT}s of wide rows (fulltext), in addition to the number of parameters.
+     *
+     * @since 9.3
+     */
+    public long getMaximumStatementSize() {
+        return Long.MAX_VALUE;
+    }
+
 }
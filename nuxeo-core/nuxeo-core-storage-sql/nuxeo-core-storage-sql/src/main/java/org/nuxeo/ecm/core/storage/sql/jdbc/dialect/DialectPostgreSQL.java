@@ -1409,4 +1409,15 @@ public class DialectPostgreSQL extends Dialect {
         return String.join(", ", newArgList);
     }
 
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
+
+    @Override
+    public int getMaximumParametersPerStatement() {
+        // the protocol uses a 16-bit parameter count
+        return 32767;
+    }
+
 }
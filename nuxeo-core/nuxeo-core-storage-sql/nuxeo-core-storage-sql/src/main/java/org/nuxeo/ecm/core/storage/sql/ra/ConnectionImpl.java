@@ -19,6 +19,7 @@
 package org.nuxeo.ecm.core.storage.sql.ra;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -188,6 +189,11 @@ public class ConnectionImpl implements Session {
         return getSession().getNodesByIds(ids);
     }
 
+    @Override
+    public void prefetchAncestors(Collection<Serializable> ids) {
+        getSession().prefetchAncestors(ids);
+    }
+
     @Override
     public Node getNodeByPath(String path, Node node) {
         return getSession().getNodeByPath(path, node);
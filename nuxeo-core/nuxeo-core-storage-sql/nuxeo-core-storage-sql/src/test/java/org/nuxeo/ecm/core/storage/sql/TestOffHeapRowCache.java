@@ -0,0 +1,186 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestOffHeapRowCache {
+
+    protected static final Row ABSENT = new Row("__ABSENT__", (Serializable) null);
+
+    protected static Row newRow(String id, String value) {
+        Row row = new Row("hierarchy", id);
+        row.put("name", value);
+        return row;
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        OffHeapRowCache cache = new OffHeapRowCache(1024 * 1024, 4, null);
+        RowId rowId = new RowId("hierarchy", "id1");
+        assertNull(cache.get(rowId, ABSENT));
+        assertEquals(1, cache.getMisses());
+
+        cache.put(newRow("id1", "foo"));
+        Row row = cache.get(rowId, ABSENT);
+        assertNotNull(row);
+        assertEquals("id1", row.id);
+        assertEquals("foo", row.get("name"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getSize());
+        assertTrue(cache.getUsedBytes() > 0);
+
+        // replace
+        cache.put(newRow("id1", "bar"));
+        assertEquals("bar", cache.get(rowId, ABSENT).get("name"));
+        assertEquals(1, cache.getSize());
+
+        cache.remove(rowId);
+        assertNull(cache.get(rowId, ABSENT));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    public void testAbsent() {
+        OffHeapRowCache cache = new OffHeapRowCache(1024 * 1024, 1, null);
+        RowId rowId = new RowId("hierarchy", "id1");
+        cache.putAbsent(rowId);
+        assertSame(ABSENT, cache.get(rowId, ABSENT));
+        cache.clear();
+        assertNull(cache.get(rowId, ABSENT));
+    }
+
+    @Test
+    public void testEvictionBoundsSize() {
+        int max = 16 * 1024;
+        OffHeapRowCache cache = new OffHeapRowCache(max, 1, null);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(newRow("id" + i, "value" + i));
+            assertTrue(cache.getUsedBytes() <= max);
+        }
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.getSize() < 1000);
+        // latest row is still readable after wrapping
+        assertEquals("value999", cache.get(new RowId("hierarchy", "id999"), ABSENT).get("name"));
+    }
+
+    @Test
+    public void testAdmissionKeepsFrequentRows() {
+        int max = 8 * 1024;
+        OffHeapRowCache cache = new OffHeapRowCache(max, 1, null);
+        RowId hot = new RowId("hierarchy", "hot");
+        for (int i = 0; i < 10; i++) {
+            cache.get(hot, ABSENT);
+        }
+        cache.put(newRow("hot", "hot"));
+        // one-hit wonders should not evict the frequently accessed row
+        for (int i = 0; i < 1000; i++) {
+            cache.put(newRow("cold" + i, "cold"));
+        }
+        assertTrue(cache.getRejections() > 0);
+        assertEquals("hot", cache.get(hot, ABSENT).get("name"));
+    }
+
+    @Test
+    public void testEncodingRoundTrip() {
+        OffHeapRowCache cache = new OffHeapRowCache(1024 * 1024, 1, null);
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Paris"));
+        cal.setTimeInMillis(1500000000000L);
+        StringBuilder fulltext = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            fulltext.append("\u00e9t\u00e9 ");
+        }
+        Row row = new Row("hierarchy", "id1");
+        row.put("string", "foo");
+        row.put("fulltext", fulltext.toString());
+        row.put("long", Long.valueOf(123));
+        row.put("integer", Integer.valueOf(4));
+        row.put("boolean", Boolean.TRUE);
+        row.put("double", Double.valueOf(1.5));
+        row.put("date", cal);
+        row.put("opaque", Row.OPAQUE);
+        row.put("null", null);
+        row.put("decimal", new BigDecimal("1.25"));
+        cache.put(row);
+        Row read = cache.get(new RowId("hierarchy", "id1"), ABSENT);
+        assertEquals("id1", read.id);
+        for (String key : new String[] { "string", "fulltext", "long", "integer", "boolean", "double", "date",
+                "decimal" }) {
+            assertEquals(key, row.get(key), read.get(key));
+        }
+        assertSame(Row.OPAQUE, read.get("opaque"));
+        assertNull(read.get("null"));
+
+        // collection rows
+        cache.put(new Row("dc:subjects", "id2", new String[] { "a", null, "b" }));
+        read = cache.get(new RowId("dc:subjects", "id2"), ABSENT);
+        assertTrue(read.isCollection());
+        assertArrayEquals(new String[] { "a", null, "b" }, read.values);
+        cache.put(new Row("longs", "id3", new Long[] { Long.valueOf(1), null }));
+        assertArrayEquals(new Long[] { Long.valueOf(1), null },
+                cache.get(new RowId("longs", "id3"), ABSENT).values);
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        OffHeapRowCache cache = new OffHeapRowCache(1024 * 1024, 8, null);
+        for (int i = 0; i < 100; i++) {
+            cache.put(newRow("id" + i, "value" + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        int n = i % 100;
+                        assertEquals("value" + n, cache.get(new RowId("hierarchy", "id" + n), ABSENT).get("name"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(80000, cache.getHits());
+    }
+
+}
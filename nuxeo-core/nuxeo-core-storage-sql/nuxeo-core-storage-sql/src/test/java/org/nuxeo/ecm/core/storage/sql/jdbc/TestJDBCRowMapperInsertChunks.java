@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.Row;
+
+public class TestJDBCRowMapperInsertChunks {
+
+    protected static final List<String> HIERARCHY_KEYS = Arrays.asList("id", "parentid", "name", "primarytype");
+
+    protected static final List<String> FULLTEXT_KEYS = Arrays.asList("id", "jobid", "simpletext", "binarytext");
+
+    protected static List<Row> hierarchyRows(int n) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Row row = new Row("hierarchy", "id" + i);
+            row.put("parentid", "parent");
+            row.put("name", "doc" + i);
+            row.put("primarytype", "File");
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    protected static List<Row> fulltextRows(int n, int textLength) {
+        String text = StringUtils.repeat("x", textLength);
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Row row = new Row("fulltext", "id" + i);
+            row.put("jobid", "id" + i);
+            row.put("simpletext", text);
+            row.put("binarytext", text);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void testChunksBoundedByBatchSize() {
+        List<Integer> chunks = JDBCRowMapper.getInsertChunks(hierarchyRows(2500), HIERARCHY_KEYS, 1000,
+                Long.MAX_VALUE);
+        assertEquals(Arrays.asList(1000, 1000, 500), chunks);
+    }
+
+    @Test
+    public void testFulltextChunksBoundedBySize() {
+        long maxSize = 512 * 1024;
+        List<Row> rows = fulltextRows(100, 10_000);
+        List<Integer> chunks = JDBCRowMapper.getInsertChunks(rows, FULLTEXT_KEYS, 1000, maxSize);
+        assertTrue(chunks.toString(), chunks.size() > 1);
+        int start = 0;
+        int total = 0;
+        for (Integer chunk : chunks) {
+            long size = 0;
+            for (Row row : rows.subList(start, start + chunk)) {
+                size += JDBCRowMapper.estimateSize(row, FULLTEXT_KEYS);
+            }
+            assertTrue(size <= maxSize);
+            start += chunk;
+            total += chunk;
+        }
+        assertEquals(100, total);
+    }
+
+    @Test
+    public void testOversizedRowGetsItsOwnChunk() {
+        List<Row> rows = fulltextRows(3, 1_000_000);
+        List<Integer> chunks = JDBCRowMapper.getInsertChunks(rows, FULLTEXT_KEYS, 1000, 512 * 1024);
+        assertEquals(Arrays.asList(1, 1, 1), chunks);
+    }
+
+}
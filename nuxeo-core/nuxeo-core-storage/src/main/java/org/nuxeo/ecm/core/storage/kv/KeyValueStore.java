@@ -18,6 +18,12 @@
  */
 package org.nuxeo.ecm.core.storage.kv;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
 /**
  * Key/Value Store.
  * <p>
@@ -57,4 +63,99 @@ public interface KeyValueStore {
      */
     boolean compareAndSet(String key, byte[] expected, byte[] value);
 
+    /**
+     * Sets the value associated to the key, with a time-to-live.
+     * <p>
+     * The default implementation only supports a time-to-live of {@code 0}, stores supporting expiration override it.
+     *
+     * @param key the key
+     * @param value the value, which may be {@code null}
+     * @param ttl the time-to-live in seconds, or {@code 0} for no expiration
+     * @throws UnsupportedOperationException if the store doesn't support expiration
+     * @since 9.3
+     */
+    default void put(String key, byte[] value, long ttl) {
+        if (ttl != 0) {
+            throw new UnsupportedOperationException("Time-to-live not supported by " + getClass().getName());
+        }
+        put(key, value);
+    }
+
+    /**
+     * Sets the time-to-live of an existing key.
+     * <p>
+     * The default implementation only supports a time-to-live of {@code 0}, stores supporting expiration override it.
+     *
+     * @param key the key
+     * @param ttl the time-to-live in seconds, or {@code 0} to remove any expiration
+     * @return {@code true} if the key exists and its time-to-live was set
+     * @throws UnsupportedOperationException if the store doesn't support expiration
+     * @since 9.3
+     */
+    default boolean setTTL(String key, long ttl) {
+        if (ttl != 0) {
+            throw new UnsupportedOperationException("Time-to-live not supported by " + getClass().getName());
+        }
+        return get(key) != null;
+    }
+
+    /**
+     * Atomically adds a delta to the counter associated to the key.
+     * <p>
+     * Counters are stored as the decimal representation of a {@code long}. A missing key is considered to have the
+     * value {@code 0}. The time-to-live of the key, if any, is preserved.
+     * <p>
+     * The default implementation loops on {@link #compareAndSet}, stores with a native counter override it.
+     *
+     * @param key the key
+     * @param delta the delta to add
+     * @return the new value of the counter
+     * @throws NumberFormatException if the existing value is not a counter
+     * @since 9.3
+     */
+    default long addAndGet(String key, long delta) throws NumberFormatException {
+        for (;;) {
+            byte[] bytes = get(key);
+            long value = bytes == null ? 0 : Long.parseLong(new String(bytes, StandardCharsets.UTF_8));
+            long result = value + delta;
+            if (compareAndSet(key, bytes, Long.toString(result).getBytes(StandardCharsets.UTF_8))) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the values associated to several keys.
+     * <p>
+     * The default implementation gets the keys one by one.
+     *
+     * @param keys the keys
+     * @return a map of keys to values, containing only the keys that have a value
+     * @since 9.3
+     */
+    default Map<String, byte[]> get(Collection<String> keys) {
+        Map<String, byte[]> map = new HashMap<>();
+        for (String key : keys) {
+            byte[] value = get(key);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Sets the values associated to several keys.
+     * <p>
+     * The default implementation puts the keys one by one.
+     *
+     * @param values a map of keys to values, where a {@code null} value removes the key
+     * @since 9.3
+     */
+    default void put(Map<String, byte[]> values) {
+        for (Entry<String, byte[]> es : values.entrySet()) {
+            put(es.getKey(), es.getValue());
+        }
+    }
+
 }
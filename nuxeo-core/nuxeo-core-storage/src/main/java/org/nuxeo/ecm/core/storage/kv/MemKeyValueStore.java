@@ -18,35 +18,61 @@
  */
 package org.nuxeo.ecm.core.storage.kv;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 
 /**
  * Memory-based implementation of a Key/Value store.
+ * <p>
+ * Values are kept in a {@link ConcurrentHashMap}; atomic operations are done through its per-key {@code compute}
+ * methods, so there is no global lock. Expired values are removed lazily when accessed, and periodically by a full
+ * scan.
  *
  * @since 9.1
  */
 public class MemKeyValueStore implements KeyValueStoreProvider {
 
-    protected final Map<String, byte[]> map;
+    /** Number of writes after which expired values are purged. */
+    protected static final long PURGE_EXPIRED_WRITES = 10_000;
+
+    protected final ConcurrentMap<String, Value> map;
+
+    protected final AtomicLong writes = new AtomicLong();
+
+    /**
+     * A value with its expiration time.
+     *
+     * @since 9.3
+     */
+    protected static final class Value {
 
-    protected final Lock readLock;
+        public final byte[] bytes;
 
-    protected final Lock writeLock;
+        /** Expiration time in milliseconds, or {@code 0} for no expiration. */
+        public final long expiration;
+
+        public Value(byte[] bytes, long expiration) {
+            this.bytes = bytes;
+            this.expiration = expiration;
+        }
+
+        public boolean isExpired(long now) {
+            return expiration != 0 && expiration <= now;
+        }
+    }
 
     public MemKeyValueStore() {
-        ReadWriteLock rwLock = new ReentrantReadWriteLock();
-        readLock = rwLock.readLock();
-        writeLock = rwLock.writeLock();
-        // We can't use ConcurrentHashMap because compareAndSet needs to compare by value
-        // and ConcurrentHashMap doesn't know how to do that. Instead we use full locking;
-        // this is ok as this class isn't expected to be used in a high write rate scenario.
-        map = new HashMap<>();
+        map = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -59,60 +85,188 @@ public class MemKeyValueStore implements KeyValueStoreProvider {
 
     @Override
     public void clear() {
-        writeLock.lock();
-        try {
-            map.clear();
-        } finally {
-            writeLock.unlock();
-        }
+        map.clear();
     }
 
     protected static byte[] clone(byte[] value) {
         return value == null ? null : value.clone();
     }
 
+    protected static long expiration(long ttl) {
+        return ttl <= 0 ? 0 : System.currentTimeMillis() + ttl * 1000;
+    }
+
+    /**
+     * Gets the non-expired value for the key, or {@code null}.
+     */
+    protected Value getValue(String key) {
+        Value value = map.get(key);
+        if (value != null && value.isExpired(System.currentTimeMillis())) {
+            map.remove(key, value);
+            value = null;
+        }
+        return value;
+    }
+
+    /**
+     * Atomically updates the value for a key, see {@link ConcurrentMap#compute}. All writes go through this method.
+     *
+     * @since 9.3
+     */
+    protected Value compute(String key, BiFunction<String, Value, Value> remappingFunction) {
+        return map.compute(key, remappingFunction);
+    }
+
+    /**
+     * Called for each change, from inside the atomic per-key update, with the new value or {@code null} if the key is
+     * removed.
+     *
+     * @since 9.3
+     */
+    protected void changed(String key, Value value) {
+    }
+
+    /**
+     * Called after each write operation, outside of the atomic per-key update.
+     */
+    protected void afterWrite() {
+        if (writes.incrementAndGet() % PURGE_EXPIRED_WRITES == 0) {
+            purgeExpired();
+        }
+    }
+
+    /**
+     * Removes all the expired values.
+     *
+     * @since 9.3
+     */
+    protected void purgeExpired() {
+        long now = System.currentTimeMillis();
+        map.entrySet().removeIf(en -> en.getValue().isExpired(now));
+    }
+
     @Override
     public void put(String key, byte[] value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public void put(String key, byte[] value, long ttl) {
         Objects.requireNonNull(key);
-        value = clone(value);
-        writeLock.lock();
-        try {
-            map.put(key, value);
-        } finally {
-            writeLock.unlock();
-        }
+        Value v = value == null ? null : new Value(clone(value), expiration(ttl));
+        compute(key, (k, current) -> {
+            changed(key, v);
+            return v;
+        });
+        afterWrite();
+    }
+
+    @Override
+    public void put(Map<String, byte[]> values) {
+        values.forEach(this::put);
     }
 
     @Override
     public byte[] get(String key) {
         Objects.requireNonNull(key);
-        byte[] value;
-        readLock.lock();
-        try {
-            value = map.get(key);
-        } finally {
-            readLock.unlock();
+        Value value = getValue(key);
+        return value == null ? null : clone(value.bytes);
+    }
+
+    @Override
+    public Map<String, byte[]> get(Collection<String> keys) {
+        Map<String, byte[]> result = new HashMap<>();
+        for (String key : keys) {
+            byte[] value = get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
         }
-        return clone(value);
+        return result;
+    }
+
+    @Override
+    public boolean setTTL(String key, long ttl) {
+        Objects.requireNonNull(key);
+        long now = System.currentTimeMillis();
+        boolean[] set = new boolean[1];
+        compute(key, (k, current) -> {
+            if (current == null) {
+                return null;
+            }
+            if (current.isExpired(now)) {
+                changed(key, null);
+                return null;
+            }
+            Value v = new Value(current.bytes, expiration(ttl));
+            changed(key, v);
+            set[0] = true;
+            return v;
+        });
+        afterWrite();
+        return set[0];
     }
 
     @Override
     public boolean compareAndSet(String key, byte[] expected, byte[] value) {
         Objects.requireNonNull(key);
         // clone is not needed if the comparison fails
-        // but we are optimistic and prefer to do the clone outside the lock
-        value = clone(value);
-        writeLock.lock();
-        try {
-            byte[] current = map.get(key);
-            boolean equal = Arrays.equals(expected, current);
-            if (equal) {
-                map.put(key, value);
+        // but we are optimistic and prefer to do the clone outside the atomic update
+        Value v = value == null ? null : new Value(clone(value), 0);
+        long now = System.currentTimeMillis();
+        boolean[] equal = new boolean[1];
+        compute(key, (k, current) -> {
+            if (current != null && current.isExpired(now)) {
+                changed(key, null);
+                current = null;
+            }
+            // compare by value
+            equal[0] = Arrays.equals(expected, current == null ? null : current.bytes);
+            if (equal[0]) {
+                changed(key, v);
+                return v;
+            }
+            return current;
+        });
+        afterWrite();
+        return equal[0];
+    }
+
+    @Override
+    public long addAndGet(String key, long delta) throws NumberFormatException {
+        Objects.requireNonNull(key);
+        long now = System.currentTimeMillis();
+        long[] result = new long[1];
+        compute(key, (k, current) -> {
+            long expiration = 0;
+            long base = 0;
+            if (current != null && !current.isExpired(now)) {
+                base = Long.parseLong(new String(current.bytes, UTF_8));
+                expiration = current.expiration;
+            }
+            result[0] = base + delta;
+            Value v = new Value(Long.toString(result[0]).getBytes(UTF_8), expiration);
+            changed(key, v);
+            return v;
+        });
+        afterWrite();
+        return result[0];
+    }
+
+    /**
+     * Gets a snapshot of the non-expired values.
+     *
+     * @since 9.3
+     */
+    protected Map<String, Value> snapshot() {
+        long now = System.currentTimeMillis();
+        Map<String, Value> snapshot = new HashMap<>();
+        for (Entry<String, Value> en : map.entrySet()) {
+            if (!en.getValue().isExpired(now)) {
+                snapshot.put(en.getKey(), en.getValue());
             }
-            return equal;
-        } finally {
-            writeLock.unlock();
         }
+        return snapshot;
     }
 
 }
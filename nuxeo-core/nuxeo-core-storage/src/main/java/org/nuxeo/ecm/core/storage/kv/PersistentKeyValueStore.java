@@ -0,0 +1,324 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.kv;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Memory-based implementation of a Key/Value store, persisted to disk in an append-only log.
+ * <p>
+ * Every change is appended to the log; the log is replayed (through a memory-mapped read) when the store is
+ * initialized. When the log holds many more records than there are live values, it is compacted by writing the live
+ * values to a new log that atomically replaces the old one.
+ * <p>
+ * Each write logs its change and updates the map while holding the read side of a read/write lock, so writes don't
+ * block each other. Compaction and close take the write side, so that no change can be logged to the old log and be
+ * missing from the compacted one.
+ * <p>
+ * The following configuration properties are available:
+ * <ul>
+ * <li>directory: the directory where the log is stored (required),
+ * <li>compactionMinRecords: the minimum number of records in the log before a compaction is attempted (default
+ * 100000),
+ * <li>sync: whether each write is forced to the storage device (default false).
+ * </ul>
+ *
+ * @since 9.3
+ */
+public class PersistentKeyValueStore extends MemKeyValueStore {
+
+    private static final Log log = LogFactory.getLog(PersistentKeyValueStore.class);
+
+    public static final String DIRECTORY_PROP = "directory";
+
+    public static final String COMPACTION_MIN_RECORDS_PROP = "compactionMinRecords";
+
+    public static final String SYNC_PROP = "sync";
+
+    public static final long DEFAULT_COMPACTION_MIN_RECORDS = 100_000;
+
+    protected static final String LOG_FILE = "kv.log";
+
+    protected static final String COMPACT_FILE = "kv.log.compact";
+
+    /** Value length marking a removed key. */
+    protected static final int REMOVED = -1;
+
+    protected Path logPath;
+
+    protected FileChannel channel;
+
+    protected long compactionMinRecords;
+
+    protected boolean sync;
+
+    /** Number of records in the log, guarded by {@code this}. */
+    protected long records;
+
+    /** Read side held by writes (log and map update), write side by compaction and close. */
+    protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Override
+    public void initialize(Map<String, String> properties) {
+        String directory = properties.get(DIRECTORY_PROP);
+        if (StringUtils.isBlank(directory)) {
+            throw new NuxeoException("Missing property: " + DIRECTORY_PROP);
+        }
+        String min = properties.get(COMPACTION_MIN_RECORDS_PROP);
+        compactionMinRecords = StringUtils.isBlank(min) ? DEFAULT_COMPACTION_MIN_RECORDS : Long.parseLong(min);
+        sync = Boolean.parseBoolean(properties.get(SYNC_PROP));
+        try {
+            Path dir = Paths.get(directory);
+            Files.createDirectories(dir);
+            logPath = dir.resolve(LOG_FILE);
+            Files.deleteIfExists(dir.resolve(COMPACT_FILE));
+            if (Files.exists(logPath)) {
+                replay();
+            }
+            channel = FileChannel.open(logPath, CREATE, WRITE, APPEND);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot open key/value store in: " + directory, e);
+        }
+        log.debug("Initialized with " + map.size() + " values from " + records + " records in: " + logPath);
+    }
+
+    @Override
+    public void close() {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            synchronized (this) {
+                if (channel == null) {
+                    return;
+                }
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new NuxeoException(e);
+                } finally {
+                    channel = null;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        // remove keys one by one so that each removal is logged atomically with the map change
+        for (String key : map.keySet()) {
+            compute(key, (k, current) -> {
+                if (current != null) {
+                    changed(key, null);
+                }
+                return null;
+            });
+        }
+        afterWrite();
+    }
+
+    @Override
+    protected Value compute(String key, BiFunction<String, Value, Value> remappingFunction) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            if (channel == null) {
+                throw new NuxeoException("Key/value store is closed: " + logPath);
+            }
+            return super.compute(key, remappingFunction);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the log and applies its records to the map.
+     */
+    protected void replay() throws IOException {
+        long now = System.currentTimeMillis();
+        try (FileChannel ch = FileChannel.open(logPath, READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Log too big: " + size);
+            }
+            MappedByteBuffer buf = ch.map(MapMode.READ_ONLY, 0, size);
+            int end = 0;
+            try {
+                while (buf.hasRemaining()) {
+                    byte[] keyBytes = new byte[buf.getInt()];
+                    buf.get(keyBytes);
+                    long expiration = buf.getLong();
+                    int length = buf.getInt();
+                    String key = new String(keyBytes, UTF_8);
+                    if (length == REMOVED) {
+                        map.remove(key);
+                    } else {
+                        byte[] bytes = new byte[length];
+                        buf.get(bytes);
+                        Value value = new Value(bytes, expiration);
+                        if (value.isExpired(now)) {
+                            map.remove(key);
+                        } else {
+                            map.put(key, value);
+                        }
+                    }
+                    records++;
+                    end = buf.position();
+                }
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                // incomplete last record after a crash, ignore it
+                log.warn("Ignoring truncated record at offset " + end + " in: " + logPath);
+            }
+            if (end < size) {
+                try (FileChannel wch = FileChannel.open(logPath, WRITE)) {
+                    wch.truncate(end);
+                }
+            }
+        }
+    }
+
+    protected static ByteBuffer encode(String key, Value value) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int length = value == null ? 0 : value.bytes.length;
+        ByteBuffer buf = ByteBuffer.allocate(4 + keyBytes.length + 8 + 4 + length);
+        buf.putInt(keyBytes.length);
+        buf.put(keyBytes);
+        buf.putLong(value == null ? 0 : value.expiration);
+        buf.putInt(value == null ? REMOVED : length);
+        if (value != null) {
+            buf.put(value.bytes);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    @Override
+    protected void changed(String key, Value value) {
+        // called inside the per-key atomic update, so log order matches map order for a given key,
+        // and under the read lock, so compaction cannot run between the log write and the map update
+        ByteBuffer buf = encode(key, value);
+        synchronized (this) {
+            try {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                if (sync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                throw new NuxeoException("Cannot write to key/value store log: " + logPath, e);
+            }
+            records++;
+        }
+    }
+
+    @Override
+    protected void afterWrite() {
+        super.afterWrite();
+        boolean compact;
+        synchronized (this) {
+            compact = records > compactionMinRecords && records > 2L * map.size();
+        }
+        if (compact) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live values.
+     */
+    protected void compact() {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            synchronized (this) {
+                doCompact();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log, called with no write in progress.
+     */
+    protected void doCompact() {
+        if (channel == null) {
+            // closed
+            return;
+        }
+        if (records <= compactionMinRecords || records <= 2L * map.size()) {
+            // already compacted by another thread
+            return;
+        }
+        // we hold the write lock, so every logged change is also in the map and the snapshot is complete
+        Path compactPath = logPath.resolveSibling(COMPACT_FILE);
+        Map<String, Value> snapshot = snapshot();
+        try (FileChannel ch = FileChannel.open(compactPath, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            for (Entry<String, Value> en : snapshot.entrySet()) {
+                ByteBuffer buf = encode(en.getKey(), en.getValue());
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+            }
+            ch.force(true);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot compact key/value store log: " + logPath, e);
+        }
+        try {
+            channel.close();
+            Files.move(compactPath, logPath, ATOMIC_MOVE, REPLACE_EXISTING);
+            channel = FileChannel.open(logPath, CREATE, WRITE, APPEND);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot replace key/value store log: " + logPath, e);
+        }
+        log.debug("Compacted " + records + " records into " + snapshot.size() + " in: " + logPath);
+        records = snapshot.size();
+    }
+
+}
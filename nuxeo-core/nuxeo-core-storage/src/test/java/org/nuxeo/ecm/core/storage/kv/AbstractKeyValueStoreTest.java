@@ -23,6 +23,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -136,4 +141,79 @@ public abstract class AbstractKeyValueStoreTest {
         assertNull(store.get(key));
     }
 
+    @Test
+    public void testTTL() throws Exception {
+        KeyValueStore store = newKeyValueStore();
+        String key = "foo";
+
+        assertFalse(store.setTTL(key, 1));
+        store.put(key, BAR_B, 1);
+        assertEquals(BAR, new String(store.get(key)));
+        Thread.sleep(1500);
+        assertNull(store.get(key));
+
+        // set TTL on existing key, then remove it
+        store.put(key, GEE_B);
+        assertTrue(store.setTTL(key, 1));
+        assertTrue(store.setTTL(key, 0));
+        Thread.sleep(1500);
+        assertEquals(GEE, new String(store.get(key)));
+
+        // put without TTL removes TTL
+        store.put(key, MOO_B, 1);
+        store.put(key, BAR_B);
+        Thread.sleep(1500);
+        assertEquals(BAR, new String(store.get(key)));
+    }
+
+    @Test
+    public void testAddAndGet() {
+        KeyValueStore store = newKeyValueStore();
+        String key = "foo";
+
+        assertEquals(1, store.addAndGet(key, 1));
+        assertEquals(11, store.addAndGet(key, 10));
+        assertEquals(8, store.addAndGet(key, -3));
+        assertEquals("8", new String(store.get(key)));
+
+        store.put(key, "100".getBytes());
+        assertEquals(101, store.addAndGet(key, 1));
+
+        store.put(key, BAR_B);
+        try {
+            store.addAndGet(key, 1);
+            fail();
+        } catch (NumberFormatException e) {
+            // ok
+        }
+        assertEquals(BAR, new String(store.get(key)));
+    }
+
+    @Test
+    public void testMultiGetPut() {
+        KeyValueStore store = newKeyValueStore();
+
+        Map<String, byte[]> values = new HashMap<>();
+        values.put("a", BAR_B);
+        values.put("b", GEE_B);
+        store.put(values);
+        assertEquals(BAR, new String(store.get("a")));
+        assertEquals(GEE, new String(store.get("b")));
+
+        Map<String, byte[]> map = store.get(Arrays.asList("a", "b", "c"));
+        assertEquals(2, map.size());
+        assertEquals(BAR, new String(map.get("a")));
+        assertEquals(GEE, new String(map.get("b")));
+        assertFalse(map.containsKey("c"));
+
+        values = new HashMap<>();
+        values.put("a", null);
+        values.put("c", MOO_B);
+        store.put(values);
+        map = store.get(Arrays.asList("a", "b", "c"));
+        assertEquals(2, map.size());
+        assertEquals(GEE, new String(map.get("b")));
+        assertEquals(MOO, new String(map.get("c")));
+    }
+
 }
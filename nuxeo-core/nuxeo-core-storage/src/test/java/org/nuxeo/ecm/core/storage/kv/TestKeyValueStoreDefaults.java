@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.kv;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Checks the default methods of {@link KeyValueStore} on a store only implementing the 9.1 methods.
+ *
+ * @since 9.3
+ */
+public class TestKeyValueStoreDefaults extends AbstractKeyValueStoreTest {
+
+    /** A store written against the 9.1 API. */
+    protected static class LegacyKeyValueStore implements KeyValueStoreProvider {
+
+        protected final MemKeyValueStore store = new MemKeyValueStore();
+
+        @Override
+        public void initialize(Map<String, String> properties) {
+            store.initialize(properties);
+        }
+
+        @Override
+        public void close() {
+            store.close();
+        }
+
+        @Override
+        public void clear() {
+            store.clear();
+        }
+
+        @Override
+        public void put(String key, byte[] value) {
+            store.put(key, value);
+        }
+
+        @Override
+        public byte[] get(String key) {
+            return store.get(key);
+        }
+
+        @Override
+        public boolean compareAndSet(String key, byte[] expected, byte[] value) {
+            return store.compareAndSet(key, expected, value);
+        }
+    }
+
+    @Override
+    protected KeyValueStore newKeyValueStore() {
+        return new LegacyKeyValueStore();
+    }
+
+    @Override
+    @Test
+    public void testTTL() {
+        KeyValueStore store = newKeyValueStore();
+        String key = "foo";
+        store.put(key, BAR_B, 0);
+        assertTrue(store.setTTL(key, 0));
+        try {
+            store.put(key, BAR_B, 1);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+        try {
+            store.setTTL(key, 1);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+    }
+
+}
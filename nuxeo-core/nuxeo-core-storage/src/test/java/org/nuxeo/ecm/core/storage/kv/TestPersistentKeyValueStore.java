@@ -0,0 +1,156 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.storage.kv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * @since 9.3
+ */
+public class TestPersistentKeyValueStore extends AbstractKeyValueStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected File dir;
+
+    protected List<PersistentKeyValueStore> stores = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder();
+    }
+
+    @After
+    public void tearDown() {
+        stores.forEach(PersistentKeyValueStore::close);
+    }
+
+    @Override
+    protected KeyValueStore newKeyValueStore() {
+        return newKeyValueStore("100");
+    }
+
+    protected PersistentKeyValueStore newKeyValueStore(String compactionMinRecords) {
+        PersistentKeyValueStore store = new PersistentKeyValueStore();
+        Map<String, String> properties = new HashMap<>();
+        properties.put(PersistentKeyValueStore.DIRECTORY_PROP, dir.getPath());
+        properties.put(PersistentKeyValueStore.COMPACTION_MIN_RECORDS_PROP, compactionMinRecords);
+        store.initialize(properties);
+        stores.add(store);
+        return store;
+    }
+
+    @Test
+    public void testReopen() {
+        PersistentKeyValueStore store = newKeyValueStore("100");
+        store.put("a", BAR_B);
+        store.put("b", GEE_B);
+        store.put("c", MOO_B);
+        store.put("b", null);
+        assertEquals(3, store.addAndGet("n", 3));
+        store.close();
+
+        store = newKeyValueStore("100");
+        assertEquals(BAR, new String(store.get("a")));
+        assertNull(store.get("b"));
+        assertEquals(MOO, new String(store.get("c")));
+        assertEquals(4, store.addAndGet("n", 1));
+    }
+
+    @Test
+    public void testCompaction() {
+        PersistentKeyValueStore store = newKeyValueStore("10");
+        for (int i = 0; i < 1000; i++) {
+            store.put("key" + (i % 5), String.valueOf(i).getBytes());
+        }
+        // log has been compacted
+        assertEquals(true, store.records < 100);
+        store.close();
+
+        store = newKeyValueStore("10");
+        for (int i = 0; i < 5; i++) {
+            assertEquals(String.valueOf(995 + i), new String(store.get("key" + i)));
+        }
+    }
+
+    @Test
+    public void testConcurrentCompaction() throws Exception {
+        PersistentKeyValueStore store = newKeyValueStore("10");
+        int nthreads = 8;
+        int nwrites = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < nthreads; t++) {
+                String prefix = "t" + t + "-";
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < nwrites; i++) {
+                        store.put(prefix + (i % 7), String.valueOf(i).getBytes());
+                        store.addAndGet("counter", 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        store.close();
+
+        // every last write survives the compactions that happened concurrently
+        PersistentKeyValueStore reopened = newKeyValueStore("10");
+        for (int t = 0; t < nthreads; t++) {
+            for (int k = 0; k < 7; k++) {
+                // last i such that i % 7 == k
+                int last = (nwrites - 1 - k) / 7 * 7 + k;
+                assertEquals(String.valueOf(last), new String(reopened.get("t" + t + "-" + k)));
+            }
+        }
+        assertEquals(nthreads * nwrites, reopened.addAndGet("counter", 0));
+    }
+
+    @Test(expected = NuxeoException.class)
+    public void testWriteAfterClose() {
+        PersistentKeyValueStore store = newKeyValueStore("100");
+        store.put("a", BAR_B);
+        store.close();
+        store.put("a", GEE_B);
+    }
+
+}
@@ -91,6 +91,7 @@ import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
 import org.nuxeo.ecm.core.api.security.ACE;
 import org.nuxeo.ecm.core.api.security.ACL;
 import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.Access;
 import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
 import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
 import org.nuxeo.ecm.core.blob.BlobManager;
@@ -4393,6 +4394,72 @@ public class TestSQLRepositoryAPI {
         assertEquals("Administrator", lock.getOwner());
     }
 
+    @Test
+    public void testSaveManyUpdatedDocuments() throws Exception {
+        int n = 50;
+        for (int i = 0; i < n; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            session.createDocument(doc);
+        }
+        session.save();
+        // update all of them in a single save
+        for (int i = 0; i < n; i++) {
+            DocumentModel doc = session.getDocument(new PathRef("/doc" + i));
+            doc.setPropertyValue("dc:title", "title" + i);
+            doc.setPropertyValue("dc:subjects", new String[] { "foo" + i, "bar" });
+            session.saveDocument(doc);
+        }
+        session.save();
+        nextTransaction();
+        reopenSession();
+        for (int i = 0; i < n; i++) {
+            DocumentModel doc = session.getDocument(new PathRef("/doc" + i));
+            assertEquals("title" + i, doc.getPropertyValue("dc:title"));
+            assertEquals(Arrays.asList("foo" + i, "bar"),
+                    Arrays.asList((Object[]) doc.getPropertyValue("dc:subjects")));
+        }
+    }
+
+    @Test
+    public void testGetDocumentsBulk() throws Exception {
+        DocumentModel folder = session.createDocumentModel("/", "folder", "Folder");
+        folder = session.createDocument(folder);
+        ACP acp = new ACPImpl();
+        ACL acl = new ACLImpl();
+        acl.add(new ACE("bob", "Read"));
+        acp.addACL(acl);
+        session.setACP(folder.getRef(), acp, true);
+        DocumentModel doc1 = session.createDocumentModel("/folder", "doc1", "File");
+        doc1.setPropertyValue("dc:title", "title1");
+        doc1 = session.createDocument(doc1);
+        DocumentModel doc2 = session.createDocumentModel("/folder", "doc2", "File");
+        doc2 = session.createDocument(doc2);
+        session.save();
+        session.setLock(doc1.getRef());
+
+        DocumentRef[] refs = { doc1.getRef(), new PathRef("/folder/doc2"), folder.getRef() };
+        DocumentModelList docs = session.getDocuments(refs, new String[] { "dublincore" }, true, true);
+        assertEquals(3, docs.size());
+        DocumentModel doc = docs.get(0);
+        assertEquals(doc1.getId(), doc.getId());
+        assertEquals("title1", doc.getPropertyValue("dc:title"));
+        assertNotNull(doc.getLockInfo());
+        assertEquals("Administrator", doc.getLockInfo().getOwner());
+        // inherited ACL
+        assertEquals(Access.GRANT, doc.getACP().getAccess("bob", "Read"));
+        doc = docs.get(1);
+        assertEquals(doc2.getId(), doc.getId());
+        assertNull(doc.getLockInfo());
+        assertEquals(folder.getId(), docs.get(2).getId());
+
+        try {
+            session.getDocuments(new DocumentRef[] { new IdRef("nosuchid") }, null, false, false);
+            fail();
+        } catch (DocumentNotFoundException e) {
+            // ok
+        }
+    }
+
     @Test
     public void testChangeToken() {
         DocumentModel doc = session.createDocumentModel("/", "doc", "File");
@@ -21,6 +21,8 @@ package org.nuxeo.ecm.core.io.download;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
+import java.util.List;
+
 import org.junit.Test;
 import org.nuxeo.ecm.core.io.download.DownloadService.ByteRange;
 
@@ -50,6 +52,34 @@ public class TestDownloadHelper {
         assertEquals(128, byteRange.getLength());
     }
 
+    @Test
+    public void testParseByteRangeLargeFile() throws Exception {
+        long length = 10L * 1024 * 1024 * 1024;
+        ByteRange byteRange = DownloadHelper.parseRange("bytes=8589934592-", length);
+        assertEquals(8589934592L, byteRange.getStart());
+        assertEquals(length - 1, byteRange.getEnd());
+    }
+
+    @Test
+    public void testParseByteRangeEndPastLength() throws Exception {
+        ByteRange byteRange = DownloadHelper.parseRange("bytes=100-99999", 12345);
+        assertEquals(100, byteRange.getStart());
+        assertEquals(12344, byteRange.getEnd());
+    }
+
+    @Test
+    public void testParseMultipleByteRanges() throws Exception {
+        List<ByteRange> byteRanges = DownloadHelper.parseRanges("bytes=0-99, 200-299,-45", 12345);
+        assertEquals(3, byteRanges.size());
+        assertEquals(0, byteRanges.get(0).getStart());
+        assertEquals(99, byteRanges.get(0).getEnd());
+        assertEquals(200, byteRanges.get(1).getStart());
+        assertEquals(299, byteRanges.get(1).getEnd());
+        assertEquals(12300, byteRanges.get(2).getStart());
+        assertEquals(12344, byteRanges.get(2).getEnd());
+        assertNull(DownloadHelper.parseRanges("bytes=0-99,foo", 12345));
+    }
+
     @Test
     public void testParseUnsupportedByteRange() throws Exception {
         assertNull(DownloadHelper.parseRange("blablabla", 12345));
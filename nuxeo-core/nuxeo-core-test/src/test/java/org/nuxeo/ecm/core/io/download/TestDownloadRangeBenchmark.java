@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.io.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.io.download.DownloadService.ByteRange;
+
+/**
+ * Compares the time to first byte of a byte range at the end of a large file, when the bytes before the range are read
+ * and discarded, and when the file is read at the range position.
+ * <p>
+ * Only runs when benchmarks are enabled with {@code -Dnuxeo.test.benchmark=true}, as it writes a large temporary
+ * file. Its size in MB can be changed with the {@code nuxeo.test.download.size} system property.
+ */
+public class TestDownloadRangeBenchmark {
+
+    private static final Log log = LogFactory.getLog(TestDownloadRangeBenchmark.class);
+
+    protected static final long SIZE = Long.getLong("nuxeo.test.download.size", 64).longValue() * 1024 * 1024;
+
+    protected static final int RANGE_LENGTH = 64 * 1024;
+
+    protected File file;
+
+    /** Records the time of the first write. */
+    protected static class FirstByteOutputStream extends OutputStream {
+
+        protected long firstByteTime;
+
+        protected long count;
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (firstByteTime == 0 && len > 0) {
+                firstByteTime = System.nanoTime();
+            }
+            count += len;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(Boolean.getBoolean("nuxeo.test.benchmark"));
+        file = Files.createTempFile("nuxeo-download-", ".bin").toFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] buf = new byte[1024 * 1024];
+            for (long done = 0; done < SIZE; done += buf.length) {
+                raf.write(buf);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRangeTimeToFirstByte() throws Exception {
+        Blob blob = new FileBlob(file);
+        ByteRange byteRange = new ByteRange(SIZE - RANGE_LENGTH, SIZE - 1);
+        DownloadServiceImpl downloadService = new DownloadServiceImpl();
+
+        // warm up the page cache
+        measureSkipping(blob, byteRange);
+
+        long skipping = measureSkipping(blob, byteRange);
+        FirstByteOutputStream out = new FirstByteOutputStream();
+        long t0 = System.nanoTime();
+        downloadService.transferBlobWithByteRange(blob, byteRange, () -> out);
+        long positional = out.firstByteTime - t0;
+        assertEquals(RANGE_LENGTH, out.count);
+
+        log.info(String.format("Range at the end of %d MB: time to first byte %.2f ms reading from start, "
+                + "%.2f ms reading at position", SIZE / 1024 / 1024, skipping / 1e6, positional / 1e6));
+    }
+
+    /** The previous implementation, reading and discarding the bytes before the range. */
+    protected long measureSkipping(Blob blob, ByteRange byteRange) throws IOException {
+        FirstByteOutputStream out = new FirstByteOutputStream();
+        long t0 = System.nanoTime();
+        try (InputStream in = blob.getStream()) {
+            IOUtils.copyLarge(in, out, byteRange.getStart(), byteRange.getLength());
+        }
+        assertEquals(RANGE_LENGTH, out.count);
+        return out.firstByteTime - t0;
+    }
+
+}
@@ -24,9 +24,13 @@ import static java.lang.Boolean.TRUE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
@@ -51,6 +55,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.Blobs;
 import org.nuxeo.ecm.core.api.CoreInstance;
@@ -196,9 +201,142 @@ public class TestDownloadService {
 
         downloadService.downloadBlob(req, resp, null, null, blob, null, "test");
 
-        verify(req, atLeastOnce()).getHeader("If-None-Match");
-        assertEquals(0, out.toByteArray().length);
-        verify(resp).sendError(HttpServletResponse.SC_NOT_MODIFIED);
+        // the content is not hashed, no ETag so no match
+        verify(resp, never()).setHeader(eq("ETag"), anyString());
+        assertEquals(blobValue, out.toString());
+    }
+
+    @Test
+    public void testETagHeaderNoDigestFile() throws Exception {
+        Path file = Files.createTempFile("nuxeo-test-", ".txt");
+        try {
+            Files.write(file, "Hello World".getBytes());
+            Blob blob = new FileBlob(file.toFile());
+            blob.setFilename("myFile.txt");
+            String etag = "W/\"" + Long.toHexString(file.toFile().length()) + '-'
+                    + Long.toHexString(file.toFile().lastModified()) + '"';
+
+            HttpServletRequest req = mock(HttpServletRequest.class);
+            // weak comparison ignores the weakness indicator
+            when(req.getHeader("If-None-Match")).thenReturn(etag.substring(2));
+            when(req.getMethod()).thenReturn("GET");
+            HttpServletResponse resp = mock(HttpServletResponse.class);
+
+            downloadService.downloadBlob(req, resp, null, null, blob, null, "test");
+
+            verify(resp).setHeader("ETag", etag);
+            verify(resp).sendError(HttpServletResponse.SC_NOT_MODIFIED);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testRangeDownload() throws Exception {
+        Path file = Files.createTempFile("nuxeo-test-", ".txt");
+        try {
+            Files.write(file, "0123456789abcdefghij".getBytes());
+            Blob blob = new FileBlob(file.toFile(), "text/plain");
+            blob.setDigest("12345");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HttpServletRequest req = mock(HttpServletRequest.class);
+            when(req.getHeader("Range")).thenReturn("bytes=5-9");
+            when(req.getMethod()).thenReturn("GET");
+            HttpServletResponse resp = mock(HttpServletResponse.class);
+            ServletOutputStream sos = new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                }
+            };
+            when(resp.getOutputStream()).thenReturn(sos);
+
+            downloadService.downloadBlob(req, resp, null, null, blob, null, "test");
+
+            verify(resp).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            verify(resp).setHeader("Content-Range", "bytes 5-9/20");
+            assertEquals("56789", out.toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testMultipleRangesDownload() throws Exception {
+        Blob blob = Blobs.createBlob("0123456789abcdefghij");
+        blob.setDigest("12345");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getHeader("Range")).thenReturn("bytes=0-1,10-12");
+        when(req.getMethod()).thenReturn("GET");
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        ServletOutputStream sos = new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+        };
+        when(resp.getOutputStream()).thenReturn(sos);
+
+        downloadService.downloadBlob(req, resp, null, null, blob, null, "test");
+
+        verify(resp).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        ArgumentCaptor<String> contentType = ArgumentCaptor.forClass(String.class);
+        verify(resp, atLeastOnce()).setContentType(contentType.capture());
+        String multipart = contentType.getValue();
+        assertTrue(multipart, multipart.startsWith("multipart/byteranges; boundary="));
+        String boundary = multipart.substring(multipart.indexOf('=') + 1);
+        String expected = "\r\n--" + boundary + "\r\n" //
+                + "Content-Type: text/plain\r\n" //
+                + "Content-Range: bytes 0-1/20\r\n\r\n" //
+                + "01" //
+                + "\r\n--" + boundary + "\r\n" //
+                + "Content-Type: text/plain\r\n" //
+                + "Content-Range: bytes 10-12/20\r\n\r\n" //
+                + "abc" //
+                + "\r\n--" + boundary + "--\r\n";
+        assertEquals(expected, out.toString());
+        verify(resp).setContentLength(expected.length());
+    }
+
+    @Test
+    public void testMultipleRangesDownloadWithDeferredTransferer() throws Exception {
+        Blob blob = Blobs.createBlob("0123456789abcdefghij");
+        blob.setDigest("12345");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getHeader("Range")).thenReturn("bytes=0-1,10-12");
+        when(req.getMethod()).thenReturn("GET");
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        ServletOutputStream sos = new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+        };
+        when(resp.getOutputStream()).thenReturn(sos);
+
+        // like the restlets, only records the range to write the body later
+        List<ByteRange> transferred = new ArrayList<>();
+        downloadService.downloadBlob(req, resp, null, null, blob, null, "test", null, null, transferred::add);
+
+        assertTrue(transferred.isEmpty());
+        ArgumentCaptor<String> contentType = ArgumentCaptor.forClass(String.class);
+        verify(resp, atLeastOnce()).setContentType(contentType.capture());
+        String boundary = contentType.getValue().substring(contentType.getValue().indexOf('=') + 1);
+        String expected = "\r\n--" + boundary + "\r\n" //
+                + "Content-Type: text/plain\r\n" //
+                + "Content-Range: bytes 0-1/20\r\n\r\n" //
+                + "01" //
+                + "\r\n--" + boundary + "\r\n" //
+                + "Content-Type: text/plain\r\n" //
+                + "Content-Range: bytes 10-12/20\r\n\r\n" //
+                + "abc" //
+                + "\r\n--" + boundary + "--\r\n";
+        assertEquals(expected, out.toString());
     }
 
     @Test
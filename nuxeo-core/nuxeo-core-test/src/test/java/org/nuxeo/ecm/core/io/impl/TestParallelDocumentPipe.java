@@ -0,0 +1,179 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.io.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.io.DocumentReader;
+import org.nuxeo.ecm.core.io.DocumentWriter;
+import org.nuxeo.ecm.core.io.ExportedDocument;
+import org.nuxeo.ecm.core.io.impl.plugins.DocumentModelWriter;
+import org.nuxeo.ecm.core.io.impl.plugins.DocumentTreeReader;
+import org.nuxeo.ecm.core.io.impl.plugins.NuxeoArchiveReader;
+import org.nuxeo.ecm.core.io.impl.plugins.NuxeoArchiveWriter;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@RepositoryConfig(cleanup = Granularity.METHOD)
+public class TestParallelDocumentPipe {
+
+    protected static final int NFOLDERS = 5;
+
+    protected static final int NFILES = 7;
+
+    @Inject
+    protected CoreSession session;
+
+    protected DocumentModel createDocs() {
+        DocumentModel workspace = session.createDocumentModel("/", "ws1", "Workspace");
+        workspace.setPropertyValue("dc:title", "test WS");
+        workspace = session.createDocument(workspace);
+        for (int i = 0; i < NFOLDERS; i++) {
+            DocumentModel folder = session.createDocumentModel(workspace.getPathAsString(), "folder" + i, "Folder");
+            folder.setPropertyValue("dc:title", "folder " + i);
+            folder = session.createDocument(folder);
+            for (int j = 0; j < NFILES; j++) {
+                DocumentModel file = session.createDocumentModel(folder.getPathAsString(), "file" + j, "File");
+                file.setPropertyValue("dc:title", "file " + i + "-" + j);
+                Blob blob = Blobs.createBlob("content " + i + "-" + j);
+                blob.setFilename("file" + j + ".txt");
+                file.setPropertyValue("file:content", (Serializable) blob);
+                session.createDocument(file);
+            }
+        }
+        session.save();
+        return workspace;
+    }
+
+    @Test
+    public void testExportAndReimport() throws Exception {
+        DocumentModel workspace = createDocs();
+        int ndocs = 1 + NFOLDERS + NFOLDERS * NFILES;
+
+        File archive = Framework.createTempFile("core-io-archive", "zip");
+        try {
+            // export with a small page size so that many pages go through the transform workers
+            DocumentReader reader = new DocumentTreeReader(session, workspace);
+            DocumentWriter writer = new NuxeoArchiveWriter(archive);
+            ParallelDocumentPipeImpl pipe = new ParallelDocumentPipeImpl(3, 4, 2);
+            pipe.setReader(reader);
+            pipe.setWriter(writer);
+            pipe.run();
+            writer.close();
+            reader.close();
+
+            assertEquals(ndocs, pipe.getReadCount());
+            assertEquals(ndocs, pipe.getTransformCount());
+            assertEquals(ndocs, pipe.getWriteCount());
+            assertTrue(archive.length() > 0);
+
+            // wipe the repository
+            Framework.getService(EventService.class).waitForAsyncCompletion();
+            session.removeDocument(workspace.getRef());
+            session.save();
+            assertEquals(0, session.getChildren(session.getRootDocument().getRef()).size());
+
+            // reimport, parents must be written before their children
+            reader = new NuxeoArchiveReader(archive);
+            writer = new DocumentModelWriter(session, "/");
+            pipe = new ParallelDocumentPipeImpl(3, 4, 2);
+            pipe.setReadAhead(true);
+            pipe.setReader(reader);
+            pipe.setWriter(writer);
+            pipe.run();
+            writer.close();
+            reader.close();
+
+            assertEquals(ndocs, pipe.getReadCount());
+            assertEquals(ndocs, pipe.getWriteCount());
+        } finally {
+            archive.delete();
+        }
+
+        DocumentModelList children = session.getChildren(session.getRootDocument().getRef());
+        assertEquals(1, children.size());
+        DocumentModel importedWS = children.get(0);
+        assertEquals("test WS", importedWS.getTitle());
+        assertEquals(NFOLDERS, session.getChildren(importedWS.getRef()).size());
+        for (int i = 0; i < NFOLDERS; i++) {
+            DocumentModel folder = session.getChild(importedWS.getRef(), "folder" + i);
+            assertEquals(NFILES, session.getChildren(folder.getRef()).size());
+            DocumentModel file = session.getChild(folder.getRef(), "file0");
+            Blob blob = (Blob) file.getPropertyValue("file:content");
+            assertEquals("file0.txt", blob.getFilename());
+            assertEquals("content " + i + "-0", blob.getString());
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void testReadAheadErrorIsPropagated() throws Exception {
+        File archive = Framework.createTempFile("core-io-archive", "zip");
+        try {
+            DocumentReader reader = new AbstractDocumentReader() {
+                @Override
+                public ExportedDocument read() throws IOException {
+                    throw new NoClassDefFoundError("boom");
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            DocumentWriter writer = new NuxeoArchiveWriter(archive);
+            ParallelDocumentPipeImpl pipe = new ParallelDocumentPipeImpl(3, 4, 2);
+            pipe.setReadAhead(true);
+            pipe.setReader(reader);
+            pipe.setWriter(writer);
+            try {
+                // must not wait forever for the read-ahead thread
+                pipe.run();
+                fail("should have failed");
+            } catch (NoClassDefFoundError e) {
+                assertEquals("boom", e.getMessage());
+            } finally {
+                writer.close();
+            }
+        } finally {
+            archive.delete();
+        }
+    }
+
+}
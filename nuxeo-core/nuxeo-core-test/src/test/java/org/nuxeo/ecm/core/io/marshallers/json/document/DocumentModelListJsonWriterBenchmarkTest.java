@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.core.io.marshallers.json.document;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.reflect.TypeUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.io.marshallers.json.AbstractJsonWriterTest;
+import org.nuxeo.ecm.core.io.marshallers.json.JsonAssert;
+import org.nuxeo.ecm.core.io.marshallers.json.enrichers.Enriched;
+import org.nuxeo.ecm.core.io.registry.Writer;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext.CtxBuilder;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+/**
+ * Measures the serialization of a list of documents with enrichers, and the marshaller resolution it relies on.
+ * <p>
+ * Only runs when benchmarks are enabled with {@code -Dnuxeo.test.benchmark=true}. The number of iterations can be
+ * changed with the {@code nuxeo.test.io.marshalling.iterations} system property.
+ */
+@LocalDeploy("org.nuxeo.ecm.core.io:OSGI-INF/doc-type-contrib.xml")
+public class DocumentModelListJsonWriterBenchmarkTest
+        extends AbstractJsonWriterTest.Local<DocumentModelListJsonWriter, List<DocumentModel>> {
+
+    private static final Log log = LogFactory.getLog(DocumentModelListJsonWriterBenchmarkTest.class);
+
+    protected static final int NDOCS = 200;
+
+    protected static final int ITERATIONS = Integer.getInteger("nuxeo.test.io.marshalling.iterations", 20).intValue();
+
+    @Inject
+    private CoreSession session;
+
+    public DocumentModelListJsonWriterBenchmarkTest() {
+        super(DocumentModelListJsonWriter.class, List.class, TypeUtils.parameterize(List.class, DocumentModel.class));
+    }
+
+    protected List<DocumentModel> createDocuments() {
+        List<DocumentModel> docs = new ArrayList<>(NDOCS);
+        for (int i = 0; i < NDOCS; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "RefDoc");
+            docs.add(session.createDocument(doc));
+        }
+        session.save();
+        return docs;
+    }
+
+    @Test
+    public void testListWithEnrichers() throws Exception {
+        assumeTrue(Boolean.getBoolean("nuxeo.test.benchmark"));
+        List<DocumentModel> docs = createDocuments();
+        RenderingContext ctx = CtxBuilder.session(session).enrichDoc("permissions", "subtypes").get();
+
+        // check the output once, also warms up
+        JsonAssert json = jsonAssert(docs, ctx);
+        json = json.has("entries").length(NDOCS);
+        json.has(0).has("contextParameters").properties(2);
+        for (int i = 0; i < ITERATIONS; i++) {
+            asJson(docs, ctx);
+        }
+
+        long t0 = System.nanoTime();
+        long size = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            size += asJson(docs, ctx).length();
+        }
+        long elapsed = System.nanoTime() - t0;
+        log.info(String.format(
+                "Serialized %d lists of %d documents with enrichers: %.2f ms/list, %.0f docs/s, %d chars", ITERATIONS,
+                NDOCS, elapsed / 1e6 / ITERATIONS, ITERATIONS * NDOCS * 1e9 / Math.max(elapsed, 1), size / ITERATIONS));
+    }
+
+    @Test
+    public void testResolution() throws Exception {
+        assumeTrue(Boolean.getBoolean("nuxeo.test.benchmark"));
+        RenderingContext ctx = CtxBuilder.get();
+        int n = ITERATIONS * NDOCS;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            Writer<DocumentModel> writer = registry.getWriter(ctx, DocumentModel.class, APPLICATION_JSON_TYPE);
+            assertNotNull(writer);
+            registry.getAllWriters(ctx, Enriched.class, TypeUtils.parameterize(Enriched.class, DocumentModel.class),
+                    APPLICATION_JSON_TYPE);
+        }
+        long elapsed = System.nanoTime() - t0;
+        log.info(String.format("Resolved %d writers and enricher sets: %.0f resolutions/s", n,
+                n * 1e9 / Math.max(elapsed, 1)));
+    }
+
+}
@@ -35,6 +35,7 @@ import static org.nuxeo.ecm.core.io.registry.reflect.Priorities.REFERENCE;
 
 import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -169,6 +170,37 @@ public class TestWriterRegistry {
         assertEquals(DefaultNumberWriter.class, writer.getClass());
     }
 
+    @Test
+    public void deregisterAfterResolution() throws Exception {
+        registry.register(DefaultNumberWriter.class);
+        registry.register(HigherPriorityWriter.class);
+        Writer<?> writer = registry.getWriter(ctx, Integer.class, null, APPLICATION_JSON_TYPE);
+        assertEquals(HigherPriorityWriter.class, writer.getClass());
+        registry.deregister(HigherPriorityWriter.class);
+        writer = registry.getWriter(ctx, Integer.class, null, APPLICATION_JSON_TYPE);
+        assertEquals(DefaultNumberWriter.class, writer.getClass());
+        registry.deregister(DefaultNumberWriter.class);
+        writer = registry.getWriter(ctx, Integer.class, null, APPLICATION_JSON_TYPE);
+        assertNull(writer);
+    }
+
+    @Test
+    public void allWritersOrderedByPriority() throws Exception {
+        registry.register(LowerPriorityWriter.class);
+        registry.register(DefaultNumberWriter.class);
+        registry.register(HigherPriorityWriter.class);
+        List<Writer<Integer>> writers = new ArrayList<>(
+                registry.getAllWriters(ctx, Integer.class, null, APPLICATION_JSON_TYPE));
+        assertEquals(3, writers.size());
+        assertEquals(HigherPriorityWriter.class, writers.get(0).getClass());
+        assertEquals(DefaultNumberWriter.class, writers.get(1).getClass());
+        assertEquals(LowerPriorityWriter.class, writers.get(2).getClass());
+        // same result from the cached resolution
+        writers = new ArrayList<>(registry.getAllWriters(ctx, Integer.class, null, APPLICATION_JSON_TYPE));
+        assertEquals(HigherPriorityWriter.class, writers.get(0).getClass());
+        assertEquals(3, writers.size());
+    }
+
     @SuppressWarnings("unused")
     private Map<String, List<Integer>> listIntegerMapProperty = null;
 
@@ -65,6 +65,7 @@ import org.nuxeo.ecm.core.api.event.DocumentEventCategories;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
 import org.nuxeo.ecm.core.api.facet.VersioningDocument;
 import org.nuxeo.ecm.core.api.impl.DocumentModelChildrenIterator;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
 import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.api.impl.FacetFilter;
 import org.nuxeo.ecm.core.api.impl.UserPrincipal;
@@ -954,6 +955,80 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return new DocumentModelListImpl(docs);
     }
 
+    @Override
+    public DocumentModelList getDocuments(DocumentRef[] docRefs, String[] schemas, boolean fetchACP,
+            boolean fetchLock) {
+        Session session = getSession();
+        // fetch the documents referenced by id in bulk
+        List<String> ids = new ArrayList<>(docRefs.length);
+        for (DocumentRef docRef : docRefs) {
+            String id = getId(docRef);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        Map<String, Document> byId = new HashMap<>();
+        for (Document doc : session.getDocumentsByUUIDs(ids)) {
+            byId.put(doc.getUUID(), doc);
+        }
+        List<Document> resolved = new ArrayList<>(docRefs.length);
+        for (DocumentRef docRef : docRefs) {
+            String id = getId(docRef);
+            Document doc = id == null ? resolveReference(docRef) : byId.get(id);
+            if (doc == null) {
+                throw new DocumentNotFoundException(id);
+            }
+            resolved.add(doc);
+        }
+        // permission checks and ACPs need the ancestors
+        session.prefetchAncestors(resolved);
+        List<Document> readable = new ArrayList<>(resolved.size());
+        for (Document doc : resolved) {
+            if (hasPermission(doc, READ)) {
+                readable.add(doc);
+            }
+        }
+        Map<String, Lock> locks = fetchLock ? getLocks(readable) : Collections.emptyMap();
+        List<DocumentModel> docs = new ArrayList<>(readable.size());
+        for (Document doc : readable) {
+            DocumentModelImpl docModel = DocumentModelFactory.createDocumentModel(doc, getSessionId(), schemas);
+            if (fetchACP && hasPermission(doc, READ_SECURITY)) {
+                docModel.prefetchACP(session.getMergedACP(doc));
+            }
+            if (fetchLock) {
+                String id = doc.getUUID();
+                docModel.prefetchLockInfo(locks.containsKey(id) ? locks.get(id) : doc.getLock());
+            }
+            docs.add(docModel);
+        }
+        return new DocumentModelListImpl(docs);
+    }
+
+    protected static String getId(DocumentRef docRef) {
+        switch (docRef.type()) {
+        case DocumentRef.ID:
+            return (String) docRef.reference();
+        case DocumentRef.INSTANCE:
+            return ((DocumentModel) docRef.reference()).getId();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Gets the locks of the given documents in bulk. Proxies are not included, as their lock is the one of their
+     * target.
+     */
+    protected Map<String, Lock> getLocks(List<Document> docs) {
+        List<String> ids = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            if (!doc.isProxy()) {
+                ids.add(doc.getUUID());
+            }
+        }
+        return ids.isEmpty() ? Collections.emptyMap() : getSession().getLockManager().getLocks(ids);
+    }
+
     @Override
     public DocumentModelList getFiles(DocumentRef parent) {
         Document doc = resolveReference(parent);
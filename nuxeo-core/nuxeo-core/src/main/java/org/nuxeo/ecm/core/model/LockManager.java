@@ -18,6 +18,11 @@
  */
 package org.nuxeo.ecm.core.model;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.DocumentNotFoundException;
 import org.nuxeo.ecm.core.api.Lock;
 
 /**
@@ -39,6 +44,28 @@ public interface LockManager {
      */
     Lock getLock(String id);
 
+    /**
+     * Gets the locks on several documents.
+     * <p>
+     * The returned map has an entry for each existing document, whose value is {@code null} when there is no lock.
+     * Implementations should read all the locks in a single round-trip to the underlying storage.
+     *
+     * @param ids the document ids
+     * @return the map of document id to existing lock
+     * @since 9.3
+     */
+    default Map<String, Lock> getLocks(Collection<String> ids) {
+        Map<String, Lock> locks = new HashMap<>();
+        for (String id : ids) {
+            try {
+                locks.put(id, getLock(id));
+            } catch (DocumentNotFoundException e) {
+                // no entry
+            }
+        }
+        return locks;
+    }
+
     /**
      * Sets a lock on a document.
      * <p>
@@ -20,6 +20,7 @@
 package org.nuxeo.ecm.core.model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -124,6 +125,39 @@ public interface Session {
      */
     Document getDocumentByUUID(String uuid) throws DocumentNotFoundException;
 
+    /**
+     * Gets several documents given their IDs.
+     * <p>
+     * Documents that don't exist are skipped. Implementations should read all the documents, and the data they
+     * prefetch, in a constant number of round-trips to the underlying storage.
+     *
+     * @param uuids the document ids
+     * @return the documents
+     * @since 9.3
+     */
+    default List<Document> getDocumentsByUUIDs(List<String> uuids) {
+        List<Document> docs = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            try {
+                docs.add(getDocumentByUUID(uuid));
+            } catch (DocumentNotFoundException e) {
+                // skip
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * Prefetches the ancestors of the given documents, so that the permission checks and the computation of the
+     * merged ACPs of these documents don't need further round-trips to the underlying storage.
+     *
+     * @param docs the documents
+     * @since 9.3
+     */
+    default void prefetchAncestors(List<Document> docs) {
+        // nothing to do by default
+    }
+
     /**
      * Gets the root document in this repository.
      *
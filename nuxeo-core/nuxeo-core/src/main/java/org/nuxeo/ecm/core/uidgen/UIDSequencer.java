@@ -18,6 +18,9 @@
  */
 package org.nuxeo.ecm.core.uidgen;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * UID Sequencer interface defines a method to retrieve next ids based on a given key.
  */
@@ -71,6 +74,22 @@ public interface UIDSequencer {
      */
     long getNextLong(String key);
 
+    /**
+     * Returns a block of incremented UIDs for the given key, allocated at once when the implementation supports it.
+     * <p>
+     * The default implementation calls {@link #getNextLong} for each UID.
+     *
+     * @param size the number of UIDs to allocate
+     * @since 9.3
+     */
+    default List<Long> getNextBlock(String key, int size) {
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(Long.valueOf(getNextLong(key)));
+        }
+        return ids;
+    }
+
     /**
      * Cleanup callback
      *
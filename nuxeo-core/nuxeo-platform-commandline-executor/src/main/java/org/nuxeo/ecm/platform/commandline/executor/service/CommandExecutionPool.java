@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.platform.commandline.executor.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.nuxeo.ecm.platform.commandline.executor.api.CommandException;
+import org.nuxeo.ecm.platform.commandline.executor.api.ExecResult;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * Bounds the number of concurrent executions of a command.
+ * <p>
+ * Executions beyond the limit wait in a fair (FIFO) queue, for at most the configured queue timeout. The time spent
+ * waiting and running is published as {@code nuxeo.commandline.<name>.queue-wait} and
+ * {@code nuxeo.commandline.<name>.run} timers.
+ *
+ * @since 9.3
+ */
+public class CommandExecutionPool {
+
+    protected final String name;
+
+    protected final int maxConcurrency;
+
+    protected final long queueTimeout;
+
+    /** {@code null} if there is no limit */
+    protected final Semaphore permits;
+
+    protected final Timer queueWaitTimer;
+
+    protected final Timer runTimer;
+
+    protected final Counter timeoutCounter;
+
+    /**
+     * Creates a pool.
+     *
+     * @param name the command name
+     * @param maxConcurrency the maximum number of concurrent executions, or a negative value for no limit
+     * @param queueTimeout the maximum time in milliseconds to wait for an execution slot, or 0 or a negative value to
+     *            wait indefinitely
+     */
+    public CommandExecutionPool(String name, int maxConcurrency, long queueTimeout) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.queueTimeout = queueTimeout;
+        permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency, true) : null;
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        queueWaitTimer = registry.timer(MetricRegistry.name("nuxeo", "commandline", name, "queue-wait"));
+        runTimer = registry.timer(MetricRegistry.name("nuxeo", "commandline", name, "run"));
+        timeoutCounter = registry.counter(MetricRegistry.name("nuxeo", "commandline", name, "queue-timeouts"));
+    }
+
+    /**
+     * Runs an execution when a slot is available.
+     *
+     * @param commandLine the command line, used for the error result
+     * @param execution the execution to run
+     * @return the execution result, or an error result if no slot could be obtained in time
+     */
+    public ExecResult execute(String commandLine, Supplier<ExecResult> execution) {
+        if (permits != null) {
+            long t0 = System.nanoTime();
+            boolean acquired;
+            try {
+                if (queueTimeout > 0) {
+                    acquired = permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+                } else {
+                    permits.acquire();
+                    acquired = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new ExecResult(commandLine, e);
+            } finally {
+                queueWaitTimer.update(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+            }
+            if (!acquired) {
+                timeoutCounter.inc();
+                return new ExecResult(commandLine, new CommandException(String.format(
+                        "No execution slot available after %d ms for command: %s (max concurrency: %d)",
+                        Long.valueOf(queueTimeout), name, Integer.valueOf(maxConcurrency))));
+            }
+        }
+        try (Timer.Context context = runTimer.time()) {
+            return execution.get();
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Gets the number of executions currently running.
+     */
+    public int getActiveCount() {
+        return permits == null ? 0 : maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Gets an estimate of the number of executions waiting for a slot.
+     */
+    public int getQueueLength() {
+        return permits == null ? 0 : permits.getQueueLength();
+    }
+
+}
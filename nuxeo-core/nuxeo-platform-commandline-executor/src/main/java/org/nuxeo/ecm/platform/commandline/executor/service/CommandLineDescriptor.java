@@ -39,6 +39,21 @@ public class CommandLineDescriptor implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /** @since 9.3 */
+    public static final String DEFAULT_EXECUTE_MARKER = "-execute";
+
+    /** @since 9.3 */
+    public static final String DEFAULT_READY_MARKER = "{ready}";
+
+    /** @since 9.3 */
+    public static final String DEFAULT_ERROR_PREFIX = "Error:";
+
+    /** @since 9.3 */
+    public static final long DEFAULT_QUEUE_TIMEOUT = 5 * 60 * 1000;
+
+    /** @since 9.3 */
+    public static final long DEFAULT_STAY_OPEN_TIMEOUT = 60 * 1000;
+
     @XNode("@name")
     protected String name;
 
@@ -82,6 +97,64 @@ public class CommandLineDescriptor implements Serializable {
 
     protected String installErrorMessage;
 
+    /**
+     * Maximum number of concurrent executions, 0 for the default (number of processors), negative for no limit.
+     *
+     * @since 9.3
+     */
+    @XNode("maxConcurrency")
+    protected int maxConcurrency;
+
+    /**
+     * Maximum time in milliseconds to wait for a free execution slot, 0 or negative to wait indefinitely.
+     *
+     * @since 9.3
+     */
+    @XNode("queueTimeout")
+    protected long queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+
+    /**
+     * Parameters starting the command as a long-lived worker reading its requests on standard input, if the command
+     * supports it.
+     *
+     * @since 9.3
+     */
+    @XNode("stayOpen@parameterString")
+    protected String stayOpenParameterString;
+
+    /** @since 9.3 */
+    @XNode("stayOpen@executeMarker")
+    protected String stayOpenExecuteMarker = DEFAULT_EXECUTE_MARKER;
+
+    /** @since 9.3 */
+    @XNode("stayOpen@readyMarker")
+    protected String stayOpenReadyMarker = DEFAULT_READY_MARKER;
+
+    /**
+     * Maximum time in milliseconds to wait for the ready marker, after which the worker is killed, 0 or negative to
+     * wait indefinitely.
+     *
+     * @since 9.3
+     */
+    @XNode("stayOpen@timeout")
+    protected long stayOpenTimeout = DEFAULT_STAY_OPEN_TIMEOUT;
+
+    /**
+     * Prefix of the output line giving the exit status of a request, or {@code null} if the worker doesn't print it.
+     *
+     * @since 9.3
+     */
+    @XNode("stayOpen@statusPrefix")
+    protected String stayOpenStatusPrefix;
+
+    /**
+     * Prefix of the output lines reporting an error, used when the worker doesn't print the exit status.
+     *
+     * @since 9.3
+     */
+    @XNode("stayOpen@errorPrefix")
+    protected String stayOpenErrorPrefix = DEFAULT_ERROR_PREFIX;
+
     public String getInstallErrorMessage() {
         return installErrorMessage;
     }
@@ -146,9 +219,68 @@ public class CommandLineDescriptor implements Serializable {
     }
 
     public String getExecutor() {
+        if (isStayOpen()) {
+            return CommandLineExecutorComponent.STAY_OPEN_EXECUTOR;
+        }
         return CommandLineExecutorComponent.DEFAULT_EXECUTOR;
     }
 
+    /**
+     * Gets the maximum number of concurrent executions of this command, or a negative value if there is no limit.
+     *
+     * @since 9.3
+     */
+    public int getMaxConcurrency() {
+        if (maxConcurrency == 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return maxConcurrency;
+    }
+
+    /** @since 9.3 */
+    public long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    /**
+     * Whether this command runs as long-lived workers receiving one request per execution.
+     *
+     * @since 9.3
+     */
+    public boolean isStayOpen() {
+        return stayOpenParameterString != null;
+    }
+
+    /** @since 9.3 */
+    public String getStayOpenParametersString() {
+        return stayOpenParameterString;
+    }
+
+    /** @since 9.3 */
+    public String getStayOpenExecuteMarker() {
+        return stayOpenExecuteMarker;
+    }
+
+    /** @since 9.3 */
+    public String getStayOpenReadyMarker() {
+        return stayOpenReadyMarker;
+    }
+
+    /** @since 9.3 */
+    public long getStayOpenTimeout() {
+        return stayOpenTimeout;
+    }
+
+    /** @since 9.3 */
+    public String getStayOpenStatusPrefix() {
+        return stayOpenStatusPrefix;
+    }
+
+    /** @since 9.3 */
+    public String getStayOpenErrorPrefix() {
+        return stayOpenErrorPrefix;
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,6 +39,7 @@ import org.nuxeo.ecm.platform.commandline.executor.service.cmdtesters.CommandTes
 import org.nuxeo.ecm.platform.commandline.executor.service.cmdtesters.CommandTester;
 import org.nuxeo.ecm.platform.commandline.executor.service.executors.Executor;
 import org.nuxeo.ecm.platform.commandline.executor.service.executors.ShellExecutor;
+import org.nuxeo.ecm.platform.commandline.executor.service.executors.StayOpenExecutor;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
@@ -59,6 +61,9 @@ public class CommandLineExecutorComponent extends DefaultComponent implements Co
 
     public static final String DEFAULT_EXECUTOR = "ShellExecutor";
 
+    /** @since 9.3 */
+    public static final String STAY_OPEN_EXECUTOR = "StayOpenExecutor";
+
     protected static Map<String, CommandLineDescriptor> commandDescriptors = new HashMap<>();
 
     protected static EnvironmentDescriptor env = new EnvironmentDescriptor();
@@ -69,6 +74,9 @@ public class CommandLineExecutorComponent extends DefaultComponent implements Co
 
     protected static Map<String, Executor> executors = new HashMap<>();
 
+    /** @since 9.3 */
+    protected static Map<String, CommandExecutionPool> pools = new ConcurrentHashMap<>();
+
     private static final Log log = LogFactory.getLog(CommandLineExecutorComponent.class);
 
     @Override
@@ -78,14 +86,18 @@ public class CommandLineExecutorComponent extends DefaultComponent implements Co
         testers = new HashMap<>();
         executors = new HashMap<>();
         executors.put(DEFAULT_EXECUTOR, new ShellExecutor());
+        executors.put(STAY_OPEN_EXECUTOR, new StayOpenExecutor());
+        pools = new ConcurrentHashMap<>();
     }
 
     @Override
     public void deactivate(ComponentContext context) {
+        ((StayOpenExecutor) executors.get(STAY_OPEN_EXECUTOR)).shutdown();
         commandDescriptors = null;
         env = null;
         testers = null;
         executors = null;
+        pools = null;
     }
 
     @Override
@@ -112,6 +124,7 @@ public class CommandLineExecutorComponent extends DefaultComponent implements Co
 
             if (!desc.isEnabled()) {
                 commandDescriptors.remove(name);
+                pools.remove(name);
                 log.info("Command configured to not be enabled: " + name);
                 return;
             }
@@ -140,6 +153,7 @@ public class CommandLineExecutorComponent extends DefaultComponent implements Co
             }
             desc.setAvailable(cmdAvailable);
             commandDescriptors.put(name, desc);
+            pools.put(name, new CommandExecutionPool(name, desc.getMaxConcurrency(), desc.getQueueTimeout()));
         } else if (EP_CMDTESTER.equals(extensionPoint)) {
             CommandTesterDescriptor desc = (CommandTesterDescriptor) contribution;
             CommandTester tester;
@@ -170,7 +184,8 @@ public class CommandLineExecutorComponent extends DefaultComponent implements Co
         Executor executor = executors.get(cmdDesc.getExecutor());
         EnvironmentDescriptor environment = new EnvironmentDescriptor().merge(env).merge(
                 envDescriptors.getOrDefault(commandName, envDescriptors.get(cmdDesc.getCommand())));
-        return executor.exec(cmdDesc, params, environment);
+        String commandLine = cmdDesc.getCommand() + " " + cmdDesc.getParametersString();
+        return pools.get(commandName).execute(commandLine, () -> executor.exec(cmdDesc, params, environment));
     }
 
     @Override
@@ -214,6 +229,13 @@ public class CommandLineExecutorComponent extends DefaultComponent implements Co
         return commandDescriptors.get(commandName);
     }
 
+    /**
+     * @since 9.3
+     */
+    public static CommandExecutionPool getCommandExecutionPool(String commandName) {
+        return pools.get(commandName);
+    }
+
     @Override
     public CmdParameters getDefaultCmdParameters() {
         CmdParameters params = new CmdParameters();
@@ -88,22 +88,9 @@ public class ShellExecutor implements Executor {
 
     protected ExecResult exec1(CommandLineDescriptor cmdDesc, CmdParameters params, EnvironmentDescriptor env)
             throws IOException {
-        // split the configured parameters while keeping quoted parts intact
         List<String> list = new ArrayList<>();
         list.add(cmdDesc.getCommand());
-        Matcher m = COMMAND_SPLIT.matcher(cmdDesc.getParametersString());
-        while (m.find()) {
-            String word;
-            if (m.group(1) != null) {
-                word = m.group(1); // double-quoted
-            } else if (m.group(2) != null) {
-                word = m.group(2); // single-quoted
-            } else {
-                word = m.group(); // word
-            }
-            List<String> words = replaceParams(word, params);
-            list.addAll(words);
-        }
+        list.addAll(splitParameters(cmdDesc.getParametersString(), params));
 
         List<Process> processes = new LinkedList<>();
         List<Thread> pipes = new LinkedList<>();
@@ -209,6 +196,30 @@ public class ShellExecutor implements Executor {
         return thread;
     }
 
+    /**
+     * Splits a configured parameter string into words while keeping quoted parts intact, and expands the parameters
+     * in each word.
+     *
+     * @since 9.3
+     */
+    public static List<String> splitParameters(String parametersString, CmdParameters params) {
+        List<String> list = new ArrayList<>();
+        Matcher m = COMMAND_SPLIT.matcher(parametersString);
+        while (m.find()) {
+            String word;
+            if (m.group(1) != null) {
+                word = m.group(1); // double-quoted
+            } else if (m.group(2) != null) {
+                word = m.group(2); // single-quoted
+            } else {
+                word = m.group(); // word
+            }
+            List<String> words = replaceParams(word, params);
+            list.addAll(words);
+        }
+        return list;
+    }
+
     /**
      * Expands parameter strings in a parameter word.
      * <p>
@@ -0,0 +1,263 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.platform.commandline.executor.service.executors;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.platform.commandline.executor.api.CmdParameters;
+import org.nuxeo.ecm.platform.commandline.executor.api.ExecResult;
+import org.nuxeo.ecm.platform.commandline.executor.service.CommandLineDescriptor;
+import org.nuxeo.ecm.platform.commandline.executor.service.EnvironmentDescriptor;
+
+/**
+ * Executor reusing long-lived worker processes for commands that support a server mode, like
+ * {@code exiftool -stay_open True -@ -}.
+ * <p>
+ * A worker is started with the command and its stay-open parameters. For each execution, the expanded parameters are
+ * written one per line on its standard input followed by the execute marker, and its output is read until the ready
+ * marker. Idle workers are kept for reuse, their number is bounded by the command concurrency limit.
+ * <p>
+ * A worker not answering before the stay-open timeout is killed, a new one is started for the next execution. The exit
+ * status of a request is read from the output line starting with the status prefix if any, otherwise the request
+ * fails if an output line starts with the error prefix.
+ *
+ * @since 9.3
+ */
+public class StayOpenExecutor implements Executor {
+
+    private static final Log log = LogFactory.getLog(StayOpenExecutor.class);
+
+    /** Idle workers per command name, most recently used first. */
+    protected final Map<String, Deque<Worker>> idleWorkers = new ConcurrentHashMap<>();
+
+    /** Kills the workers not answering in time. */
+    protected final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Nuxeo-StayOpenExecutor-Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    protected static class Worker {
+
+        protected final Process process;
+
+        protected final BufferedWriter in;
+
+        protected final BufferedReader out;
+
+        protected volatile boolean timedOut;
+
+        protected Worker(Process process) {
+            this.process = process;
+            in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        protected List<String> request(List<String> args, String executeMarker, String readyMarker)
+                throws IOException {
+            for (String arg : args) {
+                if (arg.indexOf('\n') >= 0) {
+                    throw new IOException("Parameter cannot contain a newline: " + arg);
+                }
+                in.write(arg);
+                in.newLine();
+            }
+            in.write(executeMarker);
+            in.newLine();
+            in.flush();
+            List<String> output = new ArrayList<>();
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.trim().equals(readyMarker)) {
+                    return output;
+                }
+                output.add(line);
+            }
+            if (timedOut) {
+                throw new IOException("Worker process killed after timeout");
+            }
+            throw new IOException("Worker process exited");
+        }
+
+        /**
+         * Kills the worker, which makes a pending read return.
+         */
+        protected void kill() {
+            timedOut = true;
+            process.destroyForcibly();
+        }
+
+        protected boolean isAlive() {
+            return process.isAlive();
+        }
+
+        protected void destroy() {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+            process.destroy();
+        }
+    }
+
+    @Deprecated
+    @Override
+    public ExecResult exec(CommandLineDescriptor cmdDesc, CmdParameters params) {
+        return exec(cmdDesc, params, new EnvironmentDescriptor());
+    }
+
+    @Override
+    public ExecResult exec(CommandLineDescriptor cmdDesc, CmdParameters params, EnvironmentDescriptor env) {
+        String commandLine = cmdDesc.getCommand() + " " + cmdDesc.getParametersString();
+        Deque<Worker> idle = idleWorkers.computeIfAbsent(cmdDesc.getName(), k -> new ConcurrentLinkedDeque<>());
+        Worker worker = idle.pollFirst();
+        try {
+            if (worker == null || !worker.isAlive()) {
+                worker = startWorker(cmdDesc, env);
+            }
+            List<String> args = ShellExecutor.splitParameters(cmdDesc.getParametersString(), params);
+            long t0 = System.currentTimeMillis();
+            List<String> output = request(worker, args, cmdDesc);
+            long t1 = System.currentTimeMillis();
+            int returnCode = getReturnCode(output, cmdDesc);
+            idle.offerFirst(worker);
+            return new ExecResult(commandLine, output, t1 - t0, returnCode);
+        } catch (IOException e) {
+            if (worker != null) {
+                worker.destroy();
+            }
+            return new ExecResult(commandLine, e);
+        }
+    }
+
+    /**
+     * Sends a request to a worker, killing it if it doesn't answer before the stay-open timeout.
+     * <p>
+     * The answer and the kill race to settle the request: if the kill wins, even after the answer was read, the
+     * request fails so that the worker being killed is discarded instead of reused.
+     */
+    protected List<String> request(Worker worker, List<String> args, CommandLineDescriptor cmdDesc)
+            throws IOException {
+        long timeout = cmdDesc.getStayOpenTimeout();
+        AtomicBoolean settled = new AtomicBoolean();
+        ScheduledFuture<?> kill = null;
+        if (timeout > 0) {
+            kill = watchdog.schedule(() -> {
+                if (settled.compareAndSet(false, true)) {
+                    worker.kill();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        try {
+            List<String> output = worker.request(args, cmdDesc.getStayOpenExecuteMarker(),
+                    cmdDesc.getStayOpenReadyMarker());
+            if (!settled.compareAndSet(false, true)) {
+                throw new IOException("Worker process killed after timeout");
+            }
+            return output;
+        } finally {
+            // a failed worker is destroyed by the caller, don't kill it later
+            settled.set(true);
+            if (kill != null) {
+                kill.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Gets the exit status of a request from its output, removing the status line.
+     */
+    protected int getReturnCode(List<String> output, CommandLineDescriptor cmdDesc) throws IOException {
+        String statusPrefix = cmdDesc.getStayOpenStatusPrefix();
+        if (statusPrefix != null) {
+            for (int i = output.size() - 1; i >= 0; i--) {
+                String line = output.get(i).trim();
+                if (line.startsWith(statusPrefix)) {
+                    output.remove(i);
+                    try {
+                        return Integer.parseInt(line.substring(statusPrefix.length()).trim());
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid exit status: " + line, e);
+                    }
+                }
+            }
+        }
+        String errorPrefix = cmdDesc.getStayOpenErrorPrefix();
+        if (errorPrefix != null && !errorPrefix.isEmpty()) {
+            for (String line : output) {
+                if (line.startsWith(errorPrefix)) {
+                    return 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    protected Worker startWorker(CommandLineDescriptor cmdDesc, EnvironmentDescriptor env) throws IOException {
+        List<String> command = new ArrayList<>();
+        if (SystemUtils.IS_OS_WINDOWS) {
+            command.add(ShellExecutor.getCommandAbsolutePath(cmdDesc.getCommand()));
+        } else {
+            command.add(cmdDesc.getCommand());
+        }
+        command.addAll(ShellExecutor.splitParameters(cmdDesc.getStayOpenParametersString(), new CmdParameters()));
+        if (log.isDebugEnabled()) {
+            log.debug("Starting worker process: " + String.join(" ", command));
+        }
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.directory(new File(env.getWorkingDirectory()));
+        processBuilder.environment().putAll(env.getParameters());
+        processBuilder.redirectErrorStream(true);
+        return new Worker(processBuilder.start());
+    }
+
+    /**
+     * Stops all the idle worker processes.
+     */
+    public void shutdown() {
+        watchdog.shutdownNow();
+        for (Deque<Worker> idle : idleWorkers.values()) {
+            Worker worker;
+            while ((worker = idle.pollFirst()) != null) {
+                worker.destroy();
+            }
+        }
+        idleWorkers.clear();
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.platform.commandline.executor.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.ecm.platform.commandline.executor.api.ExecResult;
+import org.nuxeo.ecm.platform.commandline.executor.service.CommandExecutionPool;
+
+public class TestCommandExecutionPool {
+
+    protected static ExecResult success() {
+        return new ExecResult("cmd", Collections.emptyList(), 0, 0);
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        CommandExecutionPool pool = new CommandExecutionPool("testlimit", 2, 0);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ExecResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> pool.execute("cmd", () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    return success();
+                })));
+            }
+            for (Future<ExecResult> future : futures) {
+                assertTrue(future.get(10, TimeUnit.SECONDS).isSuccessful());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(String.valueOf(maxRunning.get()), maxRunning.get() <= 2);
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        CommandExecutionPool pool = new CommandExecutionPool("testtimeout", 1, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ExecResult> holder = executor.submit(() -> pool.execute("cmd", () -> {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return success();
+            }));
+            started.await(10, TimeUnit.SECONDS);
+            // the only slot is taken
+            ExecResult result = pool.execute("cmd", TestCommandExecutionPool::success);
+            assertFalse(result.isSuccessful());
+            release.countDown();
+            assertTrue(holder.get(10, TimeUnit.SECONDS).isSuccessful());
+        } finally {
+            executor.shutdownNow();
+        }
+        // slot is free again
+        assertTrue(pool.execute("cmd", TestCommandExecutionPool::success).isSuccessful());
+    }
+
+}
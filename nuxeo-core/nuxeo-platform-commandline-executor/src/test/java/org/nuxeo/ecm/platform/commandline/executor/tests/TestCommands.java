@@ -19,9 +19,11 @@
 package org.nuxeo.ecm.platform.commandline.executor.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
 
 import java.io.File;
 import java.util.Arrays;
@@ -34,6 +36,8 @@ import org.nuxeo.common.Environment;
 import org.nuxeo.ecm.platform.commandline.executor.api.CmdParameters;
 import org.nuxeo.ecm.platform.commandline.executor.api.CommandLineExecutorService;
 import org.nuxeo.ecm.platform.commandline.executor.api.ExecResult;
+import org.nuxeo.ecm.platform.commandline.executor.service.CommandExecutionPool;
+import org.nuxeo.ecm.platform.commandline.executor.service.CommandLineExecutorComponent;
 import org.nuxeo.ecm.platform.commandline.executor.service.executors.ShellExecutor;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.NXRuntimeTestCase;
@@ -119,4 +123,74 @@ public class TestCommands extends NXRuntimeTestCase {
         assertEquals(expected, line);
     }
 
+    @Test
+    public void testCmdStayOpen() throws Exception {
+        assumeFalse("cat is not available", SystemUtils.IS_OS_WINDOWS);
+        CommandLineExecutorService cles = Framework.getLocalService(CommandLineExecutorService.class);
+
+        pushInlineDeployments(
+                "org.nuxeo.ecm.platform.commandline.executor:OSGI-INF/commandline-stayopen-test-contrib.xml");
+        CommandExecutionPool pool = CommandLineExecutorComponent.getCommandExecutionPool("stayopen");
+        assertEquals(2, pool.getMaxConcurrency());
+
+        // the same worker process answers successive requests
+        for (int i = 0; i < 3; i++) {
+            CmdParameters params = cles.getDefaultCmdParameters();
+            params.addNamedParameter("foo", "bar" + i);
+            ExecResult result = cles.execCommand("stayopen", params);
+            assertTrue(result.isSuccessful());
+            assertEquals(Arrays.asList("bar" + i, "a   b"), result.getOutput());
+        }
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void testCmdStayOpenStatus() throws Exception {
+        assumeFalse("cat is not available", SystemUtils.IS_OS_WINDOWS);
+        CommandLineExecutorService cles = Framework.getLocalService(CommandLineExecutorService.class);
+
+        pushInlineDeployments(
+                "org.nuxeo.ecm.platform.commandline.executor:OSGI-INF/commandline-stayopen-test-contrib.xml");
+
+        // error line without status line
+        CmdParameters params = cles.getDefaultCmdParameters();
+        params.addNamedParameter("foo", "Error: bad file");
+        ExecResult result = cles.execCommand("stayopen", params);
+        assertFalse(result.isSuccessful());
+        assertEquals(1, result.getReturnCode());
+
+        // status line, removed from the output
+        params = cles.getDefaultCmdParameters();
+        params.addNamedParameter("foo", "{status}3");
+        result = cles.execCommand("stayopen-status", params);
+        assertFalse(result.isSuccessful());
+        assertEquals(3, result.getReturnCode());
+        assertEquals(Collections.emptyList(), result.getOutput());
+
+        params = cles.getDefaultCmdParameters();
+        params.addNamedParameter("foo", "{status}0");
+        result = cles.execCommand("stayopen-status", params);
+        assertTrue(result.isSuccessful());
+    }
+
+    @Test
+    public void testCmdStayOpenTimeout() throws Exception {
+        assumeFalse("cat is not available", SystemUtils.IS_OS_WINDOWS);
+        CommandLineExecutorService cles = Framework.getLocalService(CommandLineExecutorService.class);
+
+        pushInlineDeployments(
+                "org.nuxeo.ecm.platform.commandline.executor:OSGI-INF/commandline-stayopen-test-contrib.xml");
+
+        // the worker is killed after the timeout, and a new one is started for the next execution
+        for (int i = 0; i < 2; i++) {
+            CmdParameters params = cles.getDefaultCmdParameters();
+            params.addNamedParameter("foo", "bar");
+            long t0 = System.currentTimeMillis();
+            ExecResult result = cles.execCommand("stayopen-hang", params);
+            assertFalse(result.isSuccessful());
+            assertTrue(System.currentTimeMillis() - t0 < 10_000);
+        }
+        assertEquals(0, CommandLineExecutorComponent.getCommandExecutionPool("stayopen-hang").getActiveCount());
+    }
+
 }
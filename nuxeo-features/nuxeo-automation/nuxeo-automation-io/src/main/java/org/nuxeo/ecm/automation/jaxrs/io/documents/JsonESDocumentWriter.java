@@ -45,6 +45,7 @@ import javax.ws.rs.ext.Provider;
 
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.io.SerializedString;
 import org.nuxeo.ecm.automation.core.util.JSONPropertyWriter;
 import org.nuxeo.ecm.automation.jaxrs.io.JsonHelper;
 import org.nuxeo.ecm.core.api.DocumentModel;
@@ -75,6 +76,59 @@ public class JsonESDocumentWriter implements MessageBodyWriter<DocumentModel> {
 
     public static final String DOCUMENT_PROPERTIES_HEADER = "X-NXDocumentProperties";
 
+    // pre-encoded field names, written for every indexed document
+
+    protected static final SerializedString REPOSITORY = new SerializedString("ecm:repository");
+
+    protected static final SerializedString UUID = new SerializedString("ecm:uuid");
+
+    protected static final SerializedString NAME = new SerializedString("ecm:name");
+
+    protected static final SerializedString TITLE = new SerializedString("ecm:title");
+
+    protected static final SerializedString PATH = new SerializedString("ecm:path");
+
+    protected static final SerializedString PATH_DEPTH = new SerializedString("ecm:path@depth");
+
+    protected static final SerializedString PRIMARY_TYPE = new SerializedString("ecm:primaryType");
+
+    protected static final SerializedString PARENT_ID = new SerializedString("ecm:parentId");
+
+    protected static final SerializedString LIFECYCLE_STATE = new SerializedString("ecm:currentLifeCycleState");
+
+    protected static final SerializedString VERSION_LABEL = new SerializedString("ecm:versionLabel");
+
+    protected static final SerializedString IS_CHECKED_IN = new SerializedString("ecm:isCheckedIn");
+
+    protected static final SerializedString IS_PROXY = new SerializedString("ecm:isProxy");
+
+    protected static final SerializedString IS_VERSION = new SerializedString("ecm:isVersion");
+
+    protected static final SerializedString IS_LATEST_VERSION = new SerializedString("ecm:isLatestVersion");
+
+    protected static final SerializedString IS_LATEST_MAJOR_VERSION = new SerializedString(
+            "ecm:isLatestMajorVersion");
+
+    protected static final SerializedString MIXIN_TYPE = new SerializedString("ecm:mixinType");
+
+    protected static final SerializedString TAG = new SerializedString("ecm:tag");
+
+    protected static final SerializedString CHANGE_TOKEN = new SerializedString("ecm:changeToken");
+
+    protected static final SerializedString POS = new SerializedString("ecm:pos");
+
+    protected static final SerializedString ACL = new SerializedString("ecm:acl");
+
+    protected static final int MAX_ENCODED_PATH_LEVEL = 32;
+
+    protected static final SerializedString[] PATH_LEVELS = new SerializedString[MAX_ENCODED_PATH_LEVEL];
+
+    static {
+        for (int i = 1; i < MAX_ENCODED_PATH_LEVEL; i++) {
+            PATH_LEVELS[i] = new SerializedString("ecm:path@level" + i);
+        }
+    }
+
     @Context
     protected HttpHeaders headers;
 
@@ -116,52 +170,60 @@ public class JsonESDocumentWriter implements MessageBodyWriter<DocumentModel> {
      * @since 7.2
      */
     protected void writeSystemProperties(JsonGenerator jg, DocumentModel doc) throws IOException {
-        jg.writeStringField("ecm:repository", doc.getRepositoryName());
-        jg.writeStringField("ecm:uuid", doc.getId());
-        jg.writeStringField("ecm:name", doc.getName());
-        jg.writeStringField("ecm:title", doc.getTitle());
+        writeStringField(jg, REPOSITORY, doc.getRepositoryName());
+        writeStringField(jg, UUID, doc.getId());
+        writeStringField(jg, NAME, doc.getName());
+        writeStringField(jg, TITLE, doc.getTitle());
 
         String pathAsString = doc.getPathAsString();
-        jg.writeStringField("ecm:path", pathAsString);
+        writeStringField(jg, PATH, pathAsString);
         if (StringUtils.isNotBlank(pathAsString)) {
             String[] split = pathAsString.split("/");
             if (split.length > 0) {
                 for (int i = 1; i < split.length; i++) {
-                    jg.writeStringField("ecm:path@level" + i, split[i]);
+                    if (i < MAX_ENCODED_PATH_LEVEL) {
+                        writeStringField(jg, PATH_LEVELS[i], split[i]);
+                    } else {
+                        jg.writeStringField("ecm:path@level" + i, split[i]);
+                    }
                 }
             }
-            jg.writeNumberField("ecm:path@depth", split.length);
+            jg.writeFieldName(PATH_DEPTH);
+            jg.writeNumber(split.length);
         }
 
-        jg.writeStringField("ecm:primaryType", doc.getType());
+        writeStringField(jg, PRIMARY_TYPE, doc.getType());
         DocumentRef parentRef = doc.getParentRef();
         if (parentRef != null) {
-            jg.writeStringField("ecm:parentId", parentRef.toString());
+            writeStringField(jg, PARENT_ID, parentRef.toString());
         }
-        jg.writeStringField("ecm:currentLifeCycleState", doc.getCurrentLifeCycleState());
-        jg.writeStringField("ecm:versionLabel", doc.getVersionLabel());
-        jg.writeBooleanField("ecm:isCheckedIn", !doc.isCheckedOut());
-        jg.writeBooleanField("ecm:isProxy", doc.isProxy());
-        jg.writeBooleanField("ecm:isVersion", doc.isVersion());
-        jg.writeBooleanField("ecm:isLatestVersion", doc.isLatestVersion());
-        jg.writeBooleanField("ecm:isLatestMajorVersion", doc.isLatestMajorVersion());
-        jg.writeArrayFieldStart("ecm:mixinType");
+        writeStringField(jg, LIFECYCLE_STATE, doc.getCurrentLifeCycleState());
+        writeStringField(jg, VERSION_LABEL, doc.getVersionLabel());
+        writeBooleanField(jg, IS_CHECKED_IN, !doc.isCheckedOut());
+        writeBooleanField(jg, IS_PROXY, doc.isProxy());
+        writeBooleanField(jg, IS_VERSION, doc.isVersion());
+        writeBooleanField(jg, IS_LATEST_VERSION, doc.isLatestVersion());
+        writeBooleanField(jg, IS_LATEST_MAJOR_VERSION, doc.isLatestMajorVersion());
+        jg.writeFieldName(MIXIN_TYPE);
+        jg.writeStartArray();
         for (String facet : doc.getFacets()) {
             jg.writeString(facet);
         }
         jg.writeEndArray();
         TagService tagService = Framework.getService(TagService.class);
         if (tagService != null) {
-            jg.writeArrayFieldStart("ecm:tag");
+            jg.writeFieldName(TAG);
+            jg.writeStartArray();
             for (Tag tag : tagService.getDocumentTags(doc.getCoreSession(), doc.getId(), null, true)) {
                 jg.writeString(tag.getLabel());
             }
             jg.writeEndArray();
         }
-        jg.writeStringField("ecm:changeToken", doc.getChangeToken());
+        writeStringField(jg, CHANGE_TOKEN, doc.getChangeToken());
         Long pos = doc.getPos();
         if (pos != null) {
-            jg.writeNumberField("ecm:pos", pos);
+            jg.writeFieldName(POS);
+            jg.writeNumber(pos.longValue());
         }
         // Add a positive ACL only
         SecurityService securityService = Framework.getService(SecurityService.class);
@@ -171,7 +233,8 @@ public class JsonESDocumentWriter implements MessageBodyWriter<DocumentModel> {
         if (acp == null) {
             acp = new ACPImpl();
         }
-        jg.writeArrayFieldStart("ecm:acl");
+        jg.writeFieldName(ACL);
+        jg.writeStartArray();
         outerloop: for (ACL acl : acp.getACLs()) {
             for (ACE ace : acl.getACEs()) {
                 if (ace.isGranted() && ace.isEffective() && browsePermissions.contains(ace.getPermission())) {
@@ -198,6 +261,29 @@ public class JsonESDocumentWriter implements MessageBodyWriter<DocumentModel> {
         }
     }
 
+    /**
+     * Same as {@link JsonGenerator#writeStringField} with a pre-encoded field name.
+     *
+     * @since 9.3
+     */
+    protected static void writeStringField(JsonGenerator jg, SerializedString name, String value) throws IOException {
+        jg.writeFieldName(name);
+        if (value == null) {
+            jg.writeNull();
+        } else {
+            jg.writeString(value);
+        }
+    }
+
+    /**
+     * @since 9.3
+     */
+    protected static void writeBooleanField(JsonGenerator jg, SerializedString name, boolean value)
+            throws IOException {
+        jg.writeFieldName(name);
+        jg.writeBoolean(value);
+    }
+
     /**
      * @since 7.2
      */
@@ -36,13 +36,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
+import org.elasticsearch.action.ListenableActionFuture;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
@@ -100,14 +103,37 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
 
     public static final String MIGRATION_DONE_EVENT = "sqlToElasticsearchMigrationDone";
 
+    /**
+     * Property enabling the storage of entries in monthly partitions, see {@link ESAuditPartitions}.
+     *
+     * @since 9.3
+     */
+    public static final String PARTITIONED_PROP = "audit.elasticsearch.partitioned";
+
     public static final int MIGRATION_DEFAULT_BACTH_SIZE = 1000;
 
+    /**
+     * Maximum number of entries per bulk request, larger lists are sent as several concurrent bulk requests.
+     *
+     * @since 9.3
+     */
+    public static final int BULK_CHUNK_SIZE = 500;
+
+    protected static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     public ESAuditBackend(NXAuditEventsService component, AuditBackendDescriptor config) {
         super(component, config);
     }
 
     protected Client esClient;
 
+    /**
+     * The time partitions, {@code null} when partitioning is disabled.
+     *
+     * @since 9.3
+     */
+    protected ESAuditPartitions partitions;
+
     protected static final Log log = LogFactory.getLog(ESAuditBackend.class);
 
     protected BaseLogEntryProvider provider = new BaseLogEntryProvider() {
@@ -145,6 +171,12 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
         log.info("Activate Elasticsearch backend for Audit");
         ElasticSearchAdmin esa = Framework.getService(ElasticSearchAdmin.class);
         Client client = esa.getClient();
+        if (Boolean.parseBoolean(Framework.getProperty(PARTITIONED_PROP))) {
+            partitions = new ESAuditPartitions(client, getESIndexName());
+            partitions.init();
+        } else {
+            partitions = null;
+        }
         ensureUIDSequencer(client);
         return client;
     }
@@ -202,6 +234,7 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
             esClient.close();
         } finally {
             esClient = null;
+            partitions = null;
         }
     }
 
@@ -209,10 +242,8 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
     public List<LogEntry> getLogEntriesFor(String uuid, String repositoryId) {
         TermQueryBuilder docFilter = QueryBuilders.termQuery("docUUID", uuid);
         TermQueryBuilder repoFilter = QueryBuilders.termQuery("repositoryId", repositoryId);
-        QueryBuilder filter;
-        filter = QueryBuilders.boolQuery().must(docFilter);
-        filter = QueryBuilders.boolQuery().must(repoFilter);
-        return getLogEntries(filter, false);
+        QueryBuilder filter = QueryBuilders.boolQuery().must(docFilter).must(repoFilter);
+        return getLogEntries(filter, false, getDocumentIndices(uuid));
     }
 
     @Override
@@ -228,11 +259,18 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
                 ((BoolQueryBuilder) filter).must(QueryBuilders.termQuery(entry.getColumnName(), entry.getObject()));
             }
         }
-        return getLogEntries(filter, doDefaultSort);
+        return getLogEntries(filter, doDefaultSort, getDocumentIndices(uuid));
     }
 
     protected List<LogEntry> getLogEntries(QueryBuilder filter, boolean doDefaultSort) {
-        SearchRequestBuilder builder = getSearchRequestBuilder(esClient);
+        return getLogEntries(filter, doDefaultSort, getSearchIndices());
+    }
+
+    /**
+     * @since 9.3
+     */
+    protected List<LogEntry> getLogEntries(QueryBuilder filter, boolean doDefaultSort, String... indices) {
+        SearchRequestBuilder builder = getSearchRequestBuilder(esClient, indices);
         if (doDefaultSort) {
             builder.addSort("eventDate", SortOrder.DESC);
         }
@@ -280,13 +318,76 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
     }
 
     protected SearchRequestBuilder getSearchRequestBuilder(Client esClient) {
-        return esClient.prepareSearch(getESIndexName())
+        return getSearchRequestBuilder(esClient, getSearchIndices());
+    }
+
+    /**
+     * @since 9.3
+     */
+    protected SearchRequestBuilder getSearchRequestBuilder(Client esClient, String... indices) {
+        return esClient.prepareSearch(indices)
+                       .setIndicesOptions(IndicesOptions.lenientExpandOpen())
                        .setTypes(ElasticSearchConstants.ENTRY_TYPE)
                        .setSearchType(SearchType.DFS_QUERY_THEN_FETCH);
     }
 
+    /**
+     * Returns the indices holding all the entries.
+     *
+     * @since 9.3
+     */
+    protected String[] getSearchIndices() {
+        if (partitions == null) {
+            return new String[] { getESIndexName() };
+        }
+        return partitions.getAllIndices();
+    }
+
+    /**
+     * Returns the indices holding the entries of a document.
+     *
+     * @since 9.3
+     */
+    protected String[] getDocumentIndices(String uuid) {
+        if (partitions == null) {
+            return new String[] { getESIndexName() };
+        }
+        return partitions.getDocumentIndices(uuid);
+    }
+
+    /**
+     * Drops the partitions holding only entries older than the given date, by deleting their index.
+     *
+     * @return the names of the dropped indices
+     * @since 9.3
+     */
+    public List<String> dropPartitionsBefore(Date date) {
+        if (partitions == null) {
+            throw new NuxeoException("Audit partitioning is not enabled, set " + PARTITIONED_PROP);
+        }
+        return partitions.dropPartitionsBefore(date);
+    }
+
+    /**
+     * @since 9.3
+     */
+    public ESAuditPartitions getPartitions() {
+        return partitions;
+    }
+
     @Override
     public LogEntry getLogEntryByID(long id) {
+        if (partitions != null) {
+            // the partition of an entry is not known from its id
+            SearchResponse response = getSearchRequestBuilder(esClient).setQuery(
+                    QueryBuilders.idsQuery(ElasticSearchConstants.ENTRY_TYPE).addIds(String.valueOf(id)))
+                                                                       .setSize(1)
+                                                                       .get();
+            if (response.getHits().getHits().length == 0) {
+                return null;
+            }
+            return buildLogEntries(response).get(0);
+        }
         GetResponse ret = esClient.prepareGet(getESIndexName(), ElasticSearchConstants.ENTRY_TYPE, String.valueOf(id))
                                   .get();
         if (!ret.isExists()) {
@@ -355,7 +456,10 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
     @Override
     public List<LogEntry> queryLogsByPage(String[] eventIds, Date limit, String[] categories, String path, int pageNb,
             int pageSize) {
-        SearchRequestBuilder builder = getSearchRequestBuilder(esClient);
+        // only search the partitions holding entries older than the limit
+        String[] indices = partitions == null || limit == null ? getSearchIndices()
+                : partitions.getIndices(null, limit);
+        SearchRequestBuilder builder = getSearchRequestBuilder(esClient, indices);
         BoolQueryBuilder filterBuilder = QueryBuilders.boolQuery();
         if (eventIds != null && eventIds.length > 0) {
             if (eventIds.length == 1) {
@@ -416,33 +520,54 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
             return;
         }
 
-        BulkRequestBuilder bulkRequest = esClient.prepareBulk();
-        JsonFactory factory = new JsonFactory();
-
         UIDGeneratorService uidGeneratorService = Framework.getService(UIDGeneratorService.class);
         UIDSequencer seq = uidGeneratorService.getSequencer();
+        // allocate all the ids at once instead of one sequencer round trip per entry
+        List<Long> ids = seq.getNextBlock(SEQ_NAME, entries.size());
 
         try {
-
-            for (LogEntry entry : entries) {
-                entry.setId(seq.getNext(SEQ_NAME));
+            // send the chunks concurrently and only then wait for their responses
+            List<ListenableActionFuture<BulkResponse>> futures = new ArrayList<>();
+            BulkRequestBuilder bulkRequest = null;
+            for (int i = 0; i < entries.size(); i++) {
+                LogEntry entry = entries.get(i);
+                entry.setId(ids.get(i).longValue());
                 if (log.isDebugEnabled()) {
                     log.debug(String.format("Indexing log entry: %s", entry));
                 }
+                if (bulkRequest == null) {
+                    bulkRequest = esClient.prepareBulk();
+                }
                 OutputStream out = new BytesStreamOutput();
-                JsonGenerator jsonGen = factory.createJsonGenerator(out);
+                JsonGenerator jsonGen = JSON_FACTORY.createJsonGenerator(out);
                 XContentBuilder builder = jsonBuilder(out);
                 AuditEntryJSONWriter.asJSON(jsonGen, entry);
-                bulkRequest.add(esClient.prepareIndex(getESIndexName(), ElasticSearchConstants.ENTRY_TYPE,
+                String indexName = partitions == null ? getESIndexName() : partitions.getIndexName(entry);
+                bulkRequest.add(esClient.prepareIndex(indexName, ElasticSearchConstants.ENTRY_TYPE,
                         String.valueOf(entry.getId())).setSource(builder));
+                if (partitions != null) {
+                    IndexRequestBuilder docRequest = partitions.prepareDocumentIndex(entry);
+                    if (docRequest != null) {
+                        bulkRequest.add(docRequest);
+                    }
+                }
+                if (bulkRequest.numberOfActions() >= BULK_CHUNK_SIZE) {
+                    futures.add(bulkRequest.execute());
+                    bulkRequest = null;
+                }
+            }
+            if (bulkRequest != null) {
+                futures.add(bulkRequest.execute());
             }
 
-            BulkResponse bulkResponse = bulkRequest.execute().actionGet();
-            if (bulkResponse.hasFailures()) {
-                for (BulkItemResponse response : bulkResponse.getItems()) {
-                    if (response.isFailed()) {
-                        log.error("Unable to index audit entry " + response.getItemId() + " :"
-                                + response.getFailureMessage());
+            for (ListenableActionFuture<BulkResponse> future : futures) {
+                BulkResponse bulkResponse = future.actionGet();
+                if (bulkResponse.hasFailures()) {
+                    for (BulkItemResponse response : bulkResponse.getItems()) {
+                        if (response.isFailed()) {
+                            log.error("Unable to index audit entry " + response.getItemId() + " :"
+                                    + response.getFailureMessage());
+                        }
                     }
                 }
             }
@@ -454,7 +579,8 @@ public class ESAuditBackend extends AbstractAuditBackend implements AuditBackend
 
     @Override
     public Long getEventsCount(String eventId) {
-        SearchResponse res = esClient.prepareSearch(getESIndexName())
+        SearchResponse res = esClient.prepareSearch(getSearchIndices())
+                                     .setIndicesOptions(IndicesOptions.lenientExpandOpen())
                                      .setTypes(ElasticSearchConstants.ENTRY_TYPE)
                                      .setQuery(QueryBuilders.constantScoreQuery(
                                              QueryBuilders.termQuery("eventId", eventId)))
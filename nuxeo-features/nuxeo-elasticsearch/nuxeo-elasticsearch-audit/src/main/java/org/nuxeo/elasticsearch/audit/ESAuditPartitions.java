@@ -0,0 +1,384 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.elasticsearch.audit;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequestBuilder;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.collect.ImmutableOpenMap;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.elasticsearch.ElasticSearchConstants;
+
+/**
+ * Time partitioning of the Elasticsearch audit: entries are written to one index per month of their event date, named
+ * after the audit index with a {@code -yyyy.MM} suffix, and created on demand from an index template copying the audit
+ * index settings and mapping.
+ * <p>
+ * A small routing index, with one document per document and partition, records the partitions holding the entries of
+ * each document so that its history is only searched in those partitions. Old partitions are dropped by deleting their
+ * index and their routing documents.
+ * <p>
+ * Partitions may be created or dropped by other nodes of the cluster: all the partitions are searched through the
+ * partition index pattern, date ranges are resolved from the partitions currently in the cluster, and searches must
+ * use lenient {@link IndicesOptions} to ignore partitions dropped in the meantime.
+ * <p>
+ * The audit index itself is still searched, it holds the entries written before partitioning was enabled.
+ *
+ * @since 9.3
+ */
+public class ESAuditPartitions {
+
+    private static final Log log = LogFactory.getLog(ESAuditPartitions.class);
+
+    public static final String DOCS_TYPE = "auditDoc";
+
+    protected static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM");
+
+    /** Maximum number of partitions returned for a document, that is years of monthly history. */
+    protected static final int MAX_DOCUMENT_PARTITIONS = 1000;
+
+    protected static final int DELETE_BATCH_SIZE = 1000;
+
+    protected final Client client;
+
+    protected final String baseIndex;
+
+    protected final String docsIndex;
+
+    /** The partitions known by this node, refreshed from the cluster when they are resolved. */
+    protected final NavigableSet<YearMonth> partitions = new ConcurrentSkipListSet<>();
+
+    public ESAuditPartitions(Client client, String baseIndex) {
+        this.client = client;
+        this.baseIndex = baseIndex;
+        docsIndex = baseIndex + "-docs";
+    }
+
+    /**
+     * Registers the index template of the partitions, creates the routing index and loads the existing partitions.
+     */
+    public void init() {
+        try {
+            putTemplate();
+            createDocsIndex();
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot initialize audit partitions of " + baseIndex, e);
+        }
+        refreshPartitions();
+        log.info("Audit partitions of " + baseIndex + ": " + partitions);
+    }
+
+    /**
+     * Reloads the partitions from the indices in the cluster, to see the ones created or dropped by other nodes.
+     */
+    protected void refreshPartitions() {
+        String[] indices = client.admin()
+                                 .indices()
+                                 .prepareGetIndex()
+                                 .addIndices(getPartitionPattern())
+                                 .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                                 .get()
+                                 .getIndices();
+        Set<YearMonth> existing = new HashSet<>();
+        for (String index : indices) {
+            YearMonth partition = parsePartition(index);
+            if (partition != null) {
+                existing.add(partition);
+            }
+        }
+        partitions.addAll(existing);
+        partitions.retainAll(existing);
+    }
+
+    protected void putTemplate() throws IOException {
+        Settings baseSettings = client.admin()
+                                      .indices()
+                                      .prepareGetSettings(baseIndex)
+                                      .get()
+                                      .getIndexToSettings()
+                                      .get(baseIndex);
+        Settings.Builder settings = Settings.settingsBuilder();
+        if (baseSettings != null) {
+            for (Map.Entry<String, String> entry : baseSettings.getAsMap().entrySet()) {
+                String key = entry.getKey();
+                // copy analysis and sizing but not the identity of the audit index
+                if (key.startsWith("index.analysis.") || key.equals("index.number_of_shards")
+                        || key.equals("index.number_of_replicas")) {
+                    settings.put(key, entry.getValue());
+                }
+            }
+        }
+        ImmutableOpenMap<String, MappingMetaData> mappings = client.admin()
+                                                                   .indices()
+                                                                   .prepareGetMappings(baseIndex)
+                                                                   .get()
+                                                                   .getMappings()
+                                                                   .get(baseIndex);
+        MappingMetaData mapping = mappings == null ? null : mappings.get(ElasticSearchConstants.ENTRY_TYPE);
+        PutIndexTemplateRequestBuilder template = client.admin()
+                                                        .indices()
+                                                        .preparePutTemplate(baseIndex + "-partitions")
+                                                        .setTemplate(getPartitionPattern())
+                                                        .setSettings(settings);
+        if (mapping != null) {
+            template.addMapping(ElasticSearchConstants.ENTRY_TYPE, mapping.source().string());
+        }
+        template.get();
+    }
+
+    protected void createDocsIndex() throws IOException {
+        boolean exists = client.admin().indices().prepareExists(docsIndex).get().isExists();
+        if (exists) {
+            return;
+        }
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                                                 .startObject()
+                                                 .startObject("properties");
+        for (String field : new String[] { "docUUID", "repositoryId", "partition" }) {
+            mapping.startObject(field).field("type", "string").field("index", "not_analyzed").endObject();
+        }
+        mapping.endObject().endObject();
+        client.admin().indices().prepareCreate(docsIndex).addMapping(DOCS_TYPE, mapping).get();
+    }
+
+    protected String getPartitionPattern() {
+        return baseIndex + "-2*";
+    }
+
+    protected String getIndexName(YearMonth partition) {
+        return baseIndex + "-" + partition.format(PARTITION_FORMAT);
+    }
+
+    protected YearMonth parsePartition(String index) {
+        if (!index.startsWith(baseIndex + "-")) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(index.substring(baseIndex.length() + 1), PARTITION_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    protected static YearMonth getPartition(Date date) {
+        return YearMonth.from(Instant.ofEpochMilli(date.getTime()).atZone(ZoneOffset.UTC));
+    }
+
+    protected static long getStart(YearMonth partition) {
+        return partition.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Returns the partition an entry belongs to, from its event date.
+     */
+    public YearMonth getPartition(LogEntry entry) {
+        Date date = entry.getEventDate();
+        if (date == null) {
+            date = entry.getLogDate();
+        }
+        return getPartition(date == null ? new Date() : date);
+    }
+
+    /**
+     * Returns the index to write the entry to, registering its partition.
+     */
+    public String getIndexName(LogEntry entry) {
+        YearMonth partition = getPartition(entry);
+        partitions.add(partition);
+        return getIndexName(partition);
+    }
+
+    /**
+     * Returns the request recording that the partition of this entry holds entries of its document, or {@code null}
+     * if the entry is not about a document. The request is idempotent.
+     */
+    public IndexRequestBuilder prepareDocumentIndex(LogEntry entry) throws IOException {
+        String docUUID = entry.getDocUUID();
+        if (docUUID == null) {
+            return null;
+        }
+        String partition = getPartition(entry).format(PARTITION_FORMAT);
+        XContentBuilder source = XContentFactory.jsonBuilder()
+                                                .startObject()
+                                                .field("docUUID", docUUID)
+                                                .field("repositoryId", entry.getRepositoryId())
+                                                .field("partition", partition)
+                                                .endObject();
+        return client.prepareIndex(docsIndex, DOCS_TYPE, docUUID + "/" + partition)
+                     .setRouting(docUUID)
+                     .setSource(source);
+    }
+
+    /**
+     * Returns the indices holding the entries dated between the two bounds, which may be {@code null}.
+     */
+    public String[] getIndices(Date from, Date to) {
+        if (from == null && to == null) {
+            return getAllIndices();
+        }
+        refreshPartitions();
+        Set<String> indices = new LinkedHashSet<>();
+        indices.add(baseIndex);
+        Set<YearMonth> range = partitions;
+        if (from != null && to != null && from.after(to)) {
+            range = Collections.emptySet();
+        } else if (from != null && to != null) {
+            range = partitions.subSet(getPartition(from), true, getPartition(to), true);
+        } else if (from != null) {
+            range = partitions.tailSet(getPartition(from), true);
+        } else {
+            range = partitions.headSet(getPartition(to), true);
+        }
+        for (YearMonth partition : range) {
+            indices.add(getIndexName(partition));
+        }
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    /**
+     * Returns the indices holding the entries of the given document, some may have been dropped since.
+     */
+    public String[] getDocumentIndices(String docUUID) {
+        Set<String> indices = new LinkedHashSet<>();
+        indices.add(baseIndex);
+        SearchResponse response = client.prepareSearch(docsIndex)
+                                        .setTypes(DOCS_TYPE)
+                                        .setRouting(docUUID)
+                                        .setQuery(QueryBuilders.constantScoreQuery(
+                                                QueryBuilders.termQuery("docUUID", docUUID)))
+                                        .setFetchSource("partition", null)
+                                        .setSize(MAX_DOCUMENT_PARTITIONS)
+                                        .get();
+        for (SearchHit hit : response.getHits()) {
+            YearMonth partition = YearMonth.parse((String) hit.getSource().get("partition"), PARTITION_FORMAT);
+            indices.add(getIndexName(partition));
+        }
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    /**
+     * Returns the indices of all the partitions, the ones of the partitions created by other nodes included.
+     */
+    public String[] getAllIndices() {
+        return new String[] { baseIndex, getPartitionPattern() };
+    }
+
+    /**
+     * Drops the partitions whose entries are all older than the given date, by deleting their index and their routing
+     * documents.
+     *
+     * @return the names of the dropped indices
+     */
+    public List<String> dropPartitionsBefore(Date date) {
+        refreshPartitions();
+        List<String> dropped = new ArrayList<>();
+        List<String> droppedPartitions = new ArrayList<>();
+        for (YearMonth partition : partitions) {
+            if (getStart(partition.plusMonths(1)) > date.getTime()) {
+                break;
+            }
+            String index = getIndexName(partition);
+            client.admin().indices().prepareDelete(index).setIndicesOptions(IndicesOptions.lenientExpandOpen()).get();
+            partitions.remove(partition);
+            dropped.add(index);
+            droppedPartitions.add(partition.format(PARTITION_FORMAT));
+        }
+        if (!dropped.isEmpty()) {
+            deleteDocumentPartitions(droppedPartitions);
+            log.info("Dropped audit partitions: " + dropped);
+        }
+        return dropped;
+    }
+
+    /**
+     * Deletes the routing documents of the given partitions.
+     */
+    protected void deleteDocumentPartitions(List<String> droppedPartitions) {
+        TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+        SearchResponse response = client.prepareSearch(docsIndex)
+                                        .setTypes(DOCS_TYPE)
+                                        .setScroll(keepAlive)
+                                        .setSize(DELETE_BATCH_SIZE)
+                                        .setQuery(QueryBuilders.constantScoreQuery(
+                                                QueryBuilders.termsQuery("partition", droppedPartitions)))
+                                        .setFetchSource("docUUID", null)
+                                        .get();
+        try {
+            while (response.getHits().getHits().length > 0) {
+                BulkRequestBuilder bulk = client.prepareBulk();
+                for (SearchHit hit : response.getHits()) {
+                    bulk.add(client.prepareDelete(docsIndex, DOCS_TYPE, hit.getId())
+                                   .setRouting((String) hit.getSource().get("docUUID")));
+                }
+                BulkResponse bulkResponse = bulk.get();
+                if (bulkResponse.hasFailures()) {
+                    log.error("Cannot delete routing documents of dropped audit partitions: "
+                            + bulkResponse.buildFailureMessage());
+                }
+                response = client.prepareSearchScroll(response.getScrollId()).setScroll(keepAlive).get();
+            }
+        } finally {
+            client.prepareClearScroll().addScrollId(response.getScrollId()).get();
+        }
+    }
+
+    /**
+     * Returns the indices of the current partitions, oldest first.
+     */
+    public List<String> getPartitionIndices() {
+        refreshPartitions();
+        List<String> indices = new ArrayList<>();
+        for (YearMonth partition : partitions) {
+            indices.add(getIndexName(partition));
+        }
+        return indices;
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.elasticsearch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.platform.audit.api.AuditLogger;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.service.NXAuditEventsService;
+import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
+import org.nuxeo.elasticsearch.audit.ESAuditBackend;
+import org.nuxeo.elasticsearch.audit.ESAuditPartitions;
+import org.nuxeo.elasticsearch.test.RepositoryElasticSearchFeature;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+@Deploy({ "org.nuxeo.runtime.metrics", "org.nuxeo.ecm.platform.audit.api", "org.nuxeo.ecm.platform.audit",
+        "org.nuxeo.ecm.platform.uidgen.core", "org.nuxeo.elasticsearch.seqgen",
+        "org.nuxeo.elasticsearch.seqgen.test:elasticsearch-seqgen-index-test-contrib.xml",
+        "org.nuxeo.elasticsearch.audit" })
+@RunWith(FeaturesRunner.class)
+@Features({ RepositoryElasticSearchFeature.class })
+@LocalDeploy({ "org.nuxeo.elasticsearch.audit:elasticsearch-test-contrib.xml",
+        "org.nuxeo.elasticsearch.audit:elasticsearch-audit-index-test-contrib.xml",
+        "org.nuxeo.elasticsearch.audit:audit-test-contrib.xml" })
+public class TestPartitionedAuditWithElasticSearch {
+
+    @Inject
+    protected ElasticSearchAdmin esa;
+
+    protected ESAuditBackend backend;
+
+    @Before
+    public void setupPartitions() throws Exception {
+        LogEntryGen.flushAndSync();
+        esa.initIndexes(true);
+        NXAuditEventsService audit = (NXAuditEventsService) Framework.getRuntime()
+                                                                     .getComponent(NXAuditEventsService.NAME);
+        backend = (ESAuditBackend) audit.getBackend();
+        Framework.getProperties().setProperty(ESAuditBackend.PARTITIONED_PROP, "true");
+        backend.onApplicationStarted();
+        assertNotNull(backend.getPartitions());
+        // start from no partition
+        backend.dropPartitionsBefore(new Date(Long.MAX_VALUE));
+    }
+
+    @After
+    public void tearDownPartitions() {
+        backend.dropPartitionsBefore(new Date(Long.MAX_VALUE));
+        Framework.getProperties().remove(ESAuditBackend.PARTITIONED_PROP);
+        backend.onApplicationStarted();
+    }
+
+    protected static LogEntry createEntry(String docId, String eventId, String date) {
+        LogEntry entry = LogEntryGen.doCreateEntry(docId, eventId, "cat");
+        entry.setEventDate(Date.from(Instant.parse(date)));
+        return entry;
+    }
+
+    protected void refresh() {
+        esa.getClient().admin().indices().prepareRefresh().get();
+    }
+
+    @Test
+    public void shouldPartitionEntriesByMonth() throws Exception {
+        List<LogEntry> entries = new ArrayList<>();
+        entries.add(createEntry("mydoc", "evt", "2017-01-15T10:00:00Z"));
+        entries.add(createEntry("mydoc", "evt", "2017-02-15T10:00:00Z"));
+        entries.add(createEntry("mydoc", "evt", "2017-03-15T10:00:00Z"));
+        entries.add(createEntry("otherdoc", "evt", "2017-03-20T10:00:00Z"));
+        Framework.getService(AuditLogger.class).addLogEntries(entries);
+        refresh();
+
+        ESAuditPartitions partitions = backend.getPartitions();
+        String index = esa.getIndexNameForType(ElasticSearchConstants.ENTRY_TYPE);
+        assertEquals(Arrays.asList(index + "-2017.01", index + "-2017.02", index + "-2017.03"),
+                partitions.getPartitionIndices());
+
+        // document history is only searched in the partitions holding its entries
+        assertArrayEquals(new String[] { index, index + "-2017.03" }, partitions.getDocumentIndices("otherdoc"));
+        assertEquals(3, backend.getLogEntriesFor("mydoc", "test").size());
+        assertEquals(1, backend.getLogEntriesFor("otherdoc", "test").size());
+
+        // date limited queries are only run on the partitions before the limit
+        Date limit = Date.from(Instant.parse("2017-02-01T00:00:00Z"));
+        assertArrayEquals(new String[] { index, index + "-2017.01" }, partitions.getIndices(null, limit));
+        List<LogEntry> older = backend.queryLogsByPage(new String[] { "evt" }, limit, null, null, 0, 10);
+        assertEquals(1, older.size());
+
+        assertEquals(4L, backend.getEventsCount("evt").longValue());
+        LogEntry entry = entries.get(1);
+        assertEquals(entry.getId(), backend.getLogEntryByID(entry.getId()).getId());
+
+        // dropping partitions deletes whole indices
+        List<String> dropped = backend.dropPartitionsBefore(Date.from(Instant.parse("2017-03-01T00:00:00Z")));
+        assertEquals(Arrays.asList(index + "-2017.01", index + "-2017.02"), dropped);
+        refresh();
+        assertEquals(1, backend.getLogEntriesFor("mydoc", "test").size());
+        assertEquals(2L, backend.getEventsCount("evt").longValue());
+    }
+
+    @Test
+    public void shouldSeePartitionsCreatedByOtherNodes() throws Exception {
+        String index = esa.getIndexNameForType(ElasticSearchConstants.ENTRY_TYPE);
+        // partitions of a node started before the entries were written
+        ESAuditPartitions otherNode = new ESAuditPartitions(esa.getClient(), index);
+
+        List<LogEntry> entries = new ArrayList<>();
+        entries.add(createEntry("mydoc", "evt", "2017-01-15T10:00:00Z"));
+        entries.add(createEntry("mydoc", "evt", "2017-02-15T10:00:00Z"));
+        Framework.getService(AuditLogger.class).addLogEntries(entries);
+        refresh();
+
+        assertArrayEquals(new String[] { index, index + "-2017.01", index + "-2017.02" },
+                otherNode.getDocumentIndices("mydoc"));
+        assertArrayEquals(new String[] { index, index + "-2017.01" },
+                otherNode.getIndices(null, Date.from(Instant.parse("2017-01-31T00:00:00Z"))));
+        SearchResponse response = esa.getClient()
+                                     .prepareSearch(otherNode.getAllIndices())
+                                     .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                                     .setSize(0)
+                                     .get();
+        assertEquals(2, response.getHits().getTotalHits());
+
+        // dropping from the other node also deletes the routing documents
+        List<String> dropped = otherNode.dropPartitionsBefore(Date.from(Instant.parse("2017-02-01T00:00:00Z")));
+        assertEquals(Arrays.asList(index + "-2017.01"), dropped);
+        refresh();
+        assertEquals(Arrays.asList(index + "-2017.02"), backend.getPartitions().getPartitionIndices());
+        assertArrayEquals(new String[] { index, index + "-2017.02" },
+                backend.getPartitions().getDocumentIndices("mydoc"));
+        response = esa.getClient().prepareSearch(index + "-docs").setSize(0).get();
+        assertEquals(1, response.getHits().getTotalHits());
+        assertEquals(1, backend.getLogEntriesFor("mydoc", "test").size());
+    }
+
+}
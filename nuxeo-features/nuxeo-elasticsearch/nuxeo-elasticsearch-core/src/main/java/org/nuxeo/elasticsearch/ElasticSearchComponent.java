@@ -22,6 +22,7 @@ package org.nuxeo.elasticsearch;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.ES_ENABLED_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_QUEUE_ID;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_ON_STARTUP_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_PARTITIONS_PROPERTY;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -38,6 +39,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.transaction.Transaction;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.elasticsearch.client.Client;
@@ -47,6 +49,8 @@ import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.api.SortInfo;
 import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
+import org.nuxeo.ecm.core.storage.sql.coremodel.SQLRepositoryService;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.elasticsearch.api.ESClientInitializationService;
@@ -206,6 +210,7 @@ public class ElasticSearchComponent extends DefaultComponent
     public void stop(ComponentContext context) {
         try {
             shutdownListenerThreadPool();
+            ScrollingIndexingWorker.removePartitionMetrics();
         } finally {
             try {
                 esa.disconnect();
@@ -423,6 +428,18 @@ public class ElasticSearchComponent extends DefaultComponent
         esi.indexNonRecursive(cmds);
     }
 
+    @Override
+    public void indexSubtree(CoreSession session, IndexingCommand cmd) {
+        if (!isReady()) {
+            stackCommands(Collections.singletonList(cmd));
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Process subtree indexing command: " + cmd);
+        }
+        esi.indexSubtree(session, cmd);
+    }
+
     protected void stackCommands(List<IndexingCommand> cmds) {
         if (log.isDebugEnabled()) {
             log.debug("Delaying indexing commands: Waiting for Index to be initialized."
@@ -504,12 +521,47 @@ public class ElasticSearchComponent extends DefaultComponent
 
     @Override
     public void runReindexingWorker(String repositoryName, String nxql) {
+        int partitions = NumberUtils.toInt(Framework.getProperty(REINDEX_PARTITIONS_PROPERTY), 1);
+        runReindexingWorker(repositoryName, nxql, partitions);
+    }
+
+    @Override
+    public void runReindexingWorker(String repositoryName, String nxql, int partitions) {
         if (nxql == null || nxql.isEmpty()) {
             throw new IllegalArgumentException("Expecting an NXQL query");
         }
-        ScrollingIndexingWorker worker = new ScrollingIndexingWorker(repositoryName, nxql);
         WorkManager wm = Framework.getLocalService(WorkManager.class);
-        wm.schedule(worker);
+        if (partitions > 1 && !hasStringIds(repositoryName)) {
+            log.info("Repository: " + repositoryName + " does not use string ids, re-indexing is not partitioned");
+            partitions = 1;
+        }
+        List<String> queries = ScrollingIndexingWorker.getPartitionQueries(nxql, partitions);
+        if (queries.size() == 1) {
+            wm.schedule(new ScrollingIndexingWorker(repositoryName, nxql));
+            return;
+        }
+        for (int i = 0; i < queries.size(); i++) {
+            wm.schedule(new ScrollingIndexingWorker(repositoryName, queries.get(i), i));
+        }
+    }
+
+    /**
+     * Checks if the ids of a repository are strings, for which {@code ecm:uuid} can be compared to string bounds. VCS
+     * repositories may store them as native uuids or sequence numbers instead, DBS repositories always use strings.
+     *
+     * @since 9.3
+     */
+    protected boolean hasStringIds(String repositoryName) {
+        SQLRepositoryService sqlRepositoryService = Framework.getService(SQLRepositoryService.class);
+        if (sqlRepositoryService == null) {
+            return true;
+        }
+        RepositoryDescriptor descriptor = sqlRepositoryService.getRepositoryDescriptor(repositoryName);
+        if (descriptor == null) {
+            return true;
+        }
+        String idType = descriptor.idType;
+        return idType == null || idType.isEmpty() || "varchar".equalsIgnoreCase(idType);
     }
 
     // ES Search ===============================================================
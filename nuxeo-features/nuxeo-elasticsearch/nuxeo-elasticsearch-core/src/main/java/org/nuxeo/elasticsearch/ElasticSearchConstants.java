@@ -102,6 +102,20 @@ final public class ElasticSearchConstants {
 
     public static final String FETCH_DOC_FROM_ES_PROPERTY = "elasticsearch.fetchDocFromEs";
 
+    /**
+     * Build documents from the _source, loading from the repository only the schemas missing from the _source.
+     *
+     * @since 9.3
+     */
+    public static final String FETCH_DOC_FROM_ES_HYBRID_PROPERTY = "elasticsearch.fetchDocFromEs.hybrid";
+
+    /**
+     * Max number of seconds the index can lag behind the repository for the hybrid fetch, -1 for no bound.
+     *
+     * @since 9.3
+     */
+    public static final String FETCH_DOC_MAX_STALENESS_PROPERTY = "elasticsearch.fetchDocFromEs.maxStaleness";
+
     public static final String REINDEX_BUCKET_READ_PROPERTY = "elasticsearch.reindex.bucketReadSize";
 
     public static final String REINDEX_BUCKET_WRITE_PROPERTY = "elasticsearch.reindex.bucketWriteSize";
@@ -110,6 +124,13 @@ final public class ElasticSearchConstants {
 
     public static final String INDEX_BULK_MAX_SIZE_PROPERTY = "elasticsearch.index.bulkMaxSize";
 
+    /**
+     * Number of id range partitions scrolled in parallel when re-indexing a repository, 1 to use a single scroll.
+     *
+     * @since 9.3
+     */
+    public static final String REINDEX_PARTITIONS_PROPERTY = "elasticsearch.reindex.partitions";
+
     public static final String DISABLE_AUTO_INDEXING = "disableAutoIndexing";
 
     public static final String ES_SYNC_INDEXING_FLAG = "ESSyncIndexing";
@@ -22,6 +22,7 @@ package org.nuxeo.elasticsearch.api;
 
 import java.util.List;
 
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.elasticsearch.commands.IndexingCommand;
 
 /**
@@ -55,6 +56,18 @@ public interface ElasticSearchIndexing {
      */
     void runReindexingWorker(String repositoryName, String nxql);
 
+    /**
+     * Reindex documents matching the NXQL query, splitting the documents into id range partitions that are scrolled
+     * and indexed in parallel. This is done in asynchronous jobs.
+     * <p>
+     * Partitioning expects document ids stored as strings, it works best with uuids. For a VCS repository using native
+     * uuid or sequence ids, a single scroll is used.
+     *
+     * @param partitions the number of partitions, 1 to use a single scroll
+     * @since 9.3
+     */
+    void runReindexingWorker(String repositoryName, String nxql, int partitions);
+
     /**
      * Process the {@link IndexingCommand}.
      * <p>
@@ -75,4 +88,17 @@ public interface ElasticSearchIndexing {
      */
     void indexNonRecursive(List<IndexingCommand> cmds);
 
+    /**
+     * Propagates the path and ACL changes of an already indexed document to all its descendants.
+     * <p>
+     * Descendants are updated in bulk from their indexed source, only the ones with their own ACLs are re-indexed from
+     * the repository.
+     * </p>
+     *
+     * @param session the session used to find descendants with their own ACLs
+     * @param cmd the recursive move or security update command of the root document
+     * @since 9.3
+     */
+    void indexSubtree(CoreSession session, IndexingCommand cmd);
+
 }
@@ -29,6 +29,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +50,8 @@ import org.elasticsearch.common.settings.Settings.Builder;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.schema.types.Schema;
 import org.nuxeo.elasticsearch.api.ESClientInitializationService;
 import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
 import org.nuxeo.elasticsearch.config.ElasticSearchIndexConfig;
@@ -90,6 +93,8 @@ public class ElasticSearchAdminImpl implements ElasticSearchAdmin {
 
     private String[] excludeSourceFields;
 
+    private volatile Set<String> schemasNotInSource;
+
     private boolean embedded = true;
 
     private List<String> repositoryInitialized = new ArrayList<>();
@@ -546,6 +551,38 @@ public class ElasticSearchAdminImpl implements ElasticSearchAdmin {
         return excludeSourceFields;
     }
 
+    /**
+     * Returns the schemas whose fields are not all fetched from the _source, according to the includes and excludes.
+     *
+     * @since 9.3
+     */
+    Set<String> getSchemasNotInSource() {
+        Set<String> schemas = schemasNotInSource;
+        if (schemas == null) {
+            schemas = new HashSet<>();
+            List<String> includes = includeSourceFields == null ? Collections.singletonList(ALL_FIELDS)
+                    : Arrays.asList(includeSourceFields);
+            for (Schema schema : Framework.getService(SchemaManager.class).getSchemas()) {
+                String prefix = schema.getNamespace().prefix;
+                if (prefix == null || prefix.isEmpty()) {
+                    prefix = schema.getName();
+                }
+                boolean included = includes.contains(ALL_FIELDS) || includes.contains(prefix + ":*");
+                boolean excluded = false;
+                if (excludeSourceFields != null) {
+                    for (String exclude : excludeSourceFields) {
+                        excluded |= exclude.startsWith(prefix + ":") || exclude.startsWith("*");
+                    }
+                }
+                if (!included || excluded) {
+                    schemas.add(schema.getName());
+                }
+            }
+            schemasNotInSource = schemas;
+        }
+        return schemas;
+    }
+
     Map<String, String> getRepositoryMap() {
         return repoNames;
     }
@@ -20,31 +20,46 @@
 
 package org.nuxeo.elasticsearch.core;
 
-import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.ACL_FIELD;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.CHILDREN_FIELD;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.DOC_TYPE;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_BULK_MAX_SIZE_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.PATH_FIELD;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
+import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequestBuilder;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.VersionType;
@@ -53,12 +68,17 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
 import org.nuxeo.common.logging.SequenceTracer;
 import org.nuxeo.ecm.automation.jaxrs.io.documents.JsonESDocumentWriter;
 import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
 import org.nuxeo.elasticsearch.commands.IndexingCommand;
 import org.nuxeo.elasticsearch.commands.IndexingCommand.Type;
@@ -82,6 +102,35 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
     // send the bulk indexing command when this size is reached, optimal is 5-10m
     private static final int DEFAULT_MAX_BULK_SIZE = 5 * 1024 * 1024;
 
+    // the adaptive bulk size never goes below this when the cluster pushes back
+    private static final int MIN_BULK_SIZE = 256 * 1024;
+
+    // number of times a bulk rejected by the cluster is retried
+    private static final int MAX_BULK_RETRIES = 5;
+
+    private static final long BULK_RETRY_BACKOFF_MS = 200;
+
+    // number of hits per scroll page and max number of terms per query when walking or deleting a tree
+    private static final int TREE_BATCH_SIZE = 500;
+
+    private static final String NAME_FIELD = "ecm:name";
+
+    private static final String PARENT_ID_FIELD = "ecm:parentId";
+
+    private static final String MIXIN_TYPE_FIELD = "ecm:mixinType";
+
+    private static final String PATH_LEVEL_FIELD = PATH_FIELD + "@level";
+
+    private static final String PATH_DEPTH_FIELD = PATH_FIELD + "@depth";
+
+    // thread-safe, reused to avoid rebuilding its symbol tables for each document, closing a generator must not close
+    // the shared bulk buffer
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().configure(
+            JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private static final String LOCAL_ACL_QUERY = "SELECT ecm:uuid FROM Document WHERE ecm:ancestorId = '%s'"
+            + " AND ecm:acl/*1/principal IS NOT NULL";
+
     private final ElasticSearchAdminImpl esa;
 
     private final Timer deleteTimer;
@@ -94,6 +143,13 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
 
     private JsonESDocumentWriter jsonESDocumentWriter;
 
+    /**
+     * Current bulk size limit, shrinks when the cluster rejects bulk items and grows back to the configured max.
+     *
+     * @since 9.3
+     */
+    private volatile int adaptiveBulkSize;
+
     public ElasticSearchIndexingImpl(ElasticSearchAdminImpl esa) {
         this.esa = esa;
         MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
@@ -122,6 +178,11 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         throw new UnsupportedOperationException("Not implemented");
     }
 
+    @Override
+    public void runReindexingWorker(String repositoryName, String nxql, int partitions) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
     @Override
     public void indexNonRecursive(List<IndexingCommand> cmds) {
         int nbCommands = cmds.size();
@@ -141,21 +202,36 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
     }
 
     void processBulkDeleteCommands(List<IndexingCommand> cmds) {
-        // Can be optimized with a single delete by query
+        // collect the deletions per index, so that they all go in the same bulk requests
+        Map<String, Set<String>> docIdsByIndex = new LinkedHashMap<>();
+        Map<String, Set<String>> recursiveIdsByIndex = new LinkedHashMap<>();
         for (IndexingCommand cmd : cmds) {
-            if (cmd.getType() == Type.DELETE) {
-                try (Context ignored = deleteTimer.time()){
-                    processDeleteCommand(cmd);
-                }
+            if (cmd.getType() != Type.DELETE) {
+                continue;
+            }
+            String indexName = esa.getIndexNameForRepository(cmd.getRepositoryName());
+            Map<String, Set<String>> map = cmd.isRecurse() ? recursiveIdsByIndex : docIdsByIndex;
+            map.computeIfAbsent(indexName, k -> new LinkedHashSet<>()).add(cmd.getTargetDocumentId());
+        }
+        Set<String> indexNames = new LinkedHashSet<>(docIdsByIndex.keySet());
+        indexNames.addAll(recursiveIdsByIndex.keySet());
+        for (String indexName : indexNames) {
+            try (Context ignored = deleteTimer.time()) {
+                Set<String> recursiveIds = recursiveIdsByIndex.getOrDefault(indexName, Collections.emptySet());
+                // we don't want to rely on target documents because they can be already removed
+                Collection<String> paths = getPathsOfDocsFromEs(indexName, recursiveIds).values();
+                bulkDelete(indexName, docIdsByIndex.getOrDefault(indexName, Collections.emptySet()), paths);
             }
         }
     }
 
     void processBulkIndexCommands(List<IndexingCommand> cmds) {
-        BulkRequestBuilder bulkRequest = esa.getClient().prepareBulk();
+        // the sources of a bulk are all written to the same buffer, reused for the next bulk once sent
+        BytesStreamOutput buffer = new BytesStreamOutput();
+        List<IndexRequestBuilder> requests = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
         Set<String> docIds = new HashSet<>(cmds.size());
-        int bulkSize = 0;
-        final int maxBulkSize = getMaxBulkSize();
+        final int maxBulkSize = getAdaptiveBulkSize();
         for (IndexingCommand cmd : cmds) {
             if (cmd.getType() == Type.DELETE || cmd.getType() == Type.UPDATE_DIRECT_CHILDREN) {
                 continue;
@@ -164,36 +240,72 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
                 // do not submit the same doc 2 times
                 continue;
             }
+            int offset = buffer.size();
             try {
-                IndexRequestBuilder idxRequest = buildEsIndexingRequest(cmd);
+                IndexRequestBuilder idxRequest = buildEsIndexingRequest(cmd, buffer);
                 if (idxRequest != null) {
-                    bulkSize += idxRequest.request().source().length();
-                    bulkRequest.add(idxRequest);
+                    requests.add(idxRequest);
+                    offsets.add(Integer.valueOf(offset));
                 }
             } catch (ConcurrentUpdateException e) {
                 throw e; // bubble up, usually until AbstractWork catches it and maybe retries
             } catch (DocumentNotFoundException e) {
                 log.info("Ignore indexing command in bulk, doc does not exists anymore: " + cmd);
+                buffer.seek(offset);
             } catch (IllegalArgumentException e) {
                 log.error("Ignore indexing command in bulk, fail to create request: " + cmd, e);
+                buffer.seek(offset);
             }
-            if (bulkSize > maxBulkSize) {
-                log.warn("Max bulk size reached " + bulkSize + ", sending bulk command");
-                sendBulkCommand(bulkRequest, bulkSize);
-                bulkRequest = esa.getClient().prepareBulk();
-                bulkSize = 0;
+            if (buffer.size() > maxBulkSize) {
+                log.warn("Max bulk size reached " + buffer.size() + ", sending bulk command");
+                sendBulkCommand(buffer, requests, offsets);
             }
         }
+        sendBulkCommand(buffer, requests, offsets);
+    }
+
+    /**
+     * Sends a bulk whose sources are consecutive slices of a buffer, then clears the buffer and requests for reuse.
+     *
+     * @since 9.3
+     */
+    void sendBulkCommand(BytesStreamOutput buffer, List<IndexRequestBuilder> requests, List<Integer> offsets) {
+        int bulkSize = buffer.size();
+        // the buffer does not grow anymore, the slices are stable until it is reset
+        BytesReference bytes = buffer.bytes();
+        BulkRequestBuilder bulkRequest = esa.getClient().prepareBulk();
+        for (int i = 0; i < requests.size(); i++) {
+            int start = offsets.get(i).intValue();
+            int end = i + 1 < requests.size() ? offsets.get(i + 1).intValue() : bulkSize;
+            bulkRequest.add(requests.get(i).setSource(bytes.slice(start, end - start)));
+        }
         sendBulkCommand(bulkRequest, bulkSize);
+        requests.clear();
+        offsets.clear();
+        // keeps the allocated pages
+        buffer.seek(0);
     }
 
     int getMaxBulkSize() {
-        String value = Framework.getProperty(INDEX_BULK_MAX_SIZE_PROPERTY, String.valueOf(DEFAULT_MAX_BULK_SIZE));
-        return Integer.parseInt(value);
+        int size = NumberUtils.toInt(Framework.getProperty(INDEX_BULK_MAX_SIZE_PROPERTY), DEFAULT_MAX_BULK_SIZE);
+        return size > 0 ? size : DEFAULT_MAX_BULK_SIZE;
+    }
+
+    /**
+     * Returns the current bulk size limit, starting from the configured max.
+     *
+     * @since 9.3
+     */
+    int getAdaptiveBulkSize() {
+        int size = adaptiveBulkSize;
+        if (size == 0) {
+            size = adaptiveBulkSize = getMaxBulkSize();
+        }
+        return size;
     }
 
     void sendBulkCommand(BulkRequestBuilder bulkRequest, int bulkSize) {
-        if (bulkRequest.numberOfActions() > 0) {
+        for (int retry = 0; bulkRequest.numberOfActions() > 0; retry++) {
             if (log.isDebugEnabled()) {
                 logDebugMessageTruncated(String.format(
                         "Index %d docs (%d bytes) in bulk request: curl -XPOST 'http://localhost:9200/_bulk' -d '%s'",
@@ -201,27 +313,97 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
                         bulkRequest.request().requests().toString()), MAX_CURL_LINE);
             }
             BulkResponse response = bulkRequest.execute().actionGet();
-            if (response.hasFailures()) {
+            if (!response.hasFailures()) {
+                growBulkSize();
+                return;
+            }
+            List<ActionRequest<?>> rejected = getRejectedRequests(bulkRequest, response);
+            if (rejected.isEmpty() || retry >= MAX_BULK_RETRIES) {
                 logBulkFailure(response);
+                return;
+            }
+            // report the other failures now, only the rejected items are retried
+            logBulkFailure(response, true);
+            // the cluster is overloaded, send smaller bulks and retry the rejected items after a backoff
+            shrinkBulkSize();
+            log.warn(String.format("%d bulk items rejected by the cluster, retry %d, bulk size reduced to %d",
+                    rejected.size(), retry + 1, adaptiveBulkSize));
+            try {
+                Thread.sleep(BULK_RETRY_BACKOFF_MS << retry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException("Interrupted while retrying bulk", e);
+            }
+            bulkRequest = esa.getClient().prepareBulk();
+            for (ActionRequest<?> request : rejected) {
+                bulkRequest.request().add(request);
+            }
+        }
+    }
+
+    /**
+     * Returns the requests whose items were rejected because the cluster is overloaded.
+     *
+     * @since 9.3
+     */
+    List<ActionRequest<?>> getRejectedRequests(BulkRequestBuilder bulkRequest, BulkResponse response) {
+        List<ActionRequest<?>> rejected = new ArrayList<>();
+        BulkRequest request = bulkRequest.request();
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed() && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                ActionRequest<?> rejectedRequest = request.requests().get(item.getItemId());
+                rejected.add(rejectedRequest);
             }
         }
+        return rejected;
+    }
+
+    void shrinkBulkSize() {
+        // never above the configured max, even when it is below the min
+        adaptiveBulkSize = Math.min(getMaxBulkSize(), Math.max(MIN_BULK_SIZE, getAdaptiveBulkSize() / 2));
+    }
+
+    void growBulkSize() {
+        int size = getAdaptiveBulkSize();
+        int max = getMaxBulkSize();
+        if (size < max) {
+            // grow slowly to avoid oscillating
+            adaptiveBulkSize = Math.min(max, size + size / 4);
+        }
     }
 
     void logBulkFailure(BulkResponse response) {
+        logBulkFailure(response, false);
+    }
+
+    /**
+     * Logs the failed items of a bulk response.
+     *
+     * @param skipRejected {@code true} to skip the items rejected because the cluster is overloaded, as they are
+     *            retried
+     * @since 9.3
+     */
+    void logBulkFailure(BulkResponse response, boolean skipRejected) {
         boolean isError = false;
         StringBuilder sb = new StringBuilder();
         sb.append("Ignore indexing of some docs more recent versions has already been indexed");
+        StringBuilder errors = new StringBuilder();
+        errors.append("failure in bulk execution:");
         for (BulkItemResponse item : response.getItems()) {
             if (item.isFailed()) {
-                if (item.getFailure().getStatus() == RestStatus.CONFLICT) {
+                RestStatus status = item.getFailure().getStatus();
+                if (status == RestStatus.CONFLICT) {
                     sb.append("\n  ").append(item.getFailureMessage());
-                } else {
+                } else if (!skipRejected || status != RestStatus.TOO_MANY_REQUESTS) {
                     isError = true;
+                    errors.append("\n[").append(item.getItemId()).append("]: index [").append(item.getIndex());
+                    errors.append("], type [").append(item.getType()).append("], id [").append(item.getId());
+                    errors.append("], message [").append(item.getFailureMessage()).append("]");
                 }
             }
         }
         if (isError) {
-            log.error(response.buildFailureMessage());
+            log.error(errors);
         } else {
             log.debug(sb);
         }
@@ -328,39 +510,262 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
             }
             return;
         }
-        // Refresh index before bulk delete
-        esa.getClient().admin().indices().prepareRefresh(indexName).get();
+        bulkDelete(indexName, Collections.emptySet(), Collections.singleton(docPath));
+    }
+
+    /**
+     * Deletes documents and whole trees from an index using bulk requests.
+     * <p>
+     * All the trees are collected with a single scroll on their root paths.
+     *
+     * @param docIds the ids of the documents to delete
+     * @param paths the paths of the roots of the trees to delete
+     * @since 9.3
+     */
+    void bulkDelete(String indexName, Collection<String> docIds, Collection<String> paths) {
+        BulkRequestBuilder bulkBuilder = esa.getClient().prepareBulk();
+        for (String docId : docIds) {
+            bulkBuilder.add(esa.getClient().prepareDelete(indexName, DOC_TYPE, docId));
+        }
+        if (!paths.isEmpty()) {
+            // Refresh index before bulk delete
+            esa.getClient().admin().indices().prepareRefresh(indexName).get();
+
+            // Run the scroll query
+            QueryBuilder query = QueryBuilders.constantScoreQuery(QueryBuilders.termsQuery(CHILDREN_FIELD, paths));
+            TimeValue keepAlive = TimeValue.timeValueMinutes(1);
+            SearchRequestBuilder request = esa.getClient()
+                                              .prepareSearch(indexName)
+                                              .setTypes(DOC_TYPE)
+                                              .setScroll(keepAlive)
+                                              .setSize(TREE_BATCH_SIZE)
+                                              .setFetchSource(false)
+                                              .setQuery(query);
+            if (log.isDebugEnabled()) {
+                log.debug(String.format(
+                        "Search with scroll request: curl -XGET 'http://localhost:9200/%s/%s/_search?scroll=%s' -d '%s'",
+                        indexName, DOC_TYPE, keepAlive, query.toString()));
+            }
+            for (SearchResponse response = request.execute().actionGet(); //
+            response.getHits().getHits().length > 0; //
+            response = runNextScroll(response, keepAlive)) {
+                for (SearchHit hit : response.getHits().getHits()) {
+                    bulkBuilder.add(esa.getClient().prepareDelete(hit.getIndex(), hit.getType(), hit.getId()));
+                }
+                if (bulkBuilder.numberOfActions() >= TREE_BATCH_SIZE) {
+                    sendBulkDelete(bulkBuilder);
+                    bulkBuilder = esa.getClient().prepareBulk();
+                }
+            }
+        }
+        sendBulkDelete(bulkBuilder);
+    }
+
+    void sendBulkDelete(BulkRequestBuilder bulkBuilder) {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Bulk delete request on %s elements", bulkBuilder.numberOfActions()));
+        }
+        sendBulkCommand(bulkBuilder, 0);
+    }
+
+    /**
+     * Propagates the path and ACL of a document already indexed to all its descendants, using partial updates of their
+     * indexed source instead of re-indexing them from the repository.
+     * <p>
+     * The tree is walked level by level through the {@code ecm:parentId} field. Descendants that have their own ACLs
+     * don't simply inherit the ACL of their parent, they are re-indexed from the repository and their new indexed ACL
+     * is propagated below them.
+     * <p>
+     * Each updated or re-indexed descendant counts as a processed command, like when descendants are re-indexed one by
+     * one.
+     *
+     * @since 9.3
+     */
+    @Override
+    public void indexSubtree(CoreSession session, IndexingCommand cmd) {
+        String indexName = esa.getIndexNameForRepository(cmd.getRepositoryName());
+        String rootId = cmd.getTargetDocumentId();
+        Map<String, Map<String, Object>> frontier = getSourcesOfDocsFromEs(indexName,
+                Collections.singleton(rootId));
+        if (frontier.isEmpty()) {
+            log.info("Cancel subtree indexing because the root is not indexed: " + cmd);
+            return;
+        }
+        Set<String> localAclIds = getDescendantsWithLocalAcl(session, rootId);
+        long count = 0;
+        while (!frontier.isEmpty()) {
+            Map<String, Map<String, Object>> next = new HashMap<>();
+            List<IndexingCommand> reindexCmds = new ArrayList<>();
+            List<String> parentIds = new ArrayList<>(frontier.keySet());
+            for (int i = 0; i < parentIds.size(); i += TREE_BATCH_SIZE) {
+                List<String> batch = parentIds.subList(i, Math.min(i + TREE_BATCH_SIZE, parentIds.size()));
+                count += updateChildren(session, indexName, batch, frontier, localAclIds, next, reindexCmds);
+            }
+            if (!reindexCmds.isEmpty()) {
+                // their indexed source now has the ACL to propagate below them
+                processBulkIndexCommands(reindexCmds);
+                count += reindexCmds.size();
+                Set<String> ids = new HashSet<>();
+                reindexCmds.forEach(c -> ids.add(c.getTargetDocumentId()));
+                getSourcesOfDocsFromEs(indexName, ids).forEach((id, source) -> {
+                    if (isFolderish(source)) {
+                        next.put(id, source);
+                    }
+                });
+            }
+            frontier = next;
+        }
+        esa.totalCommandProcessed.addAndGet((int) count);
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Updated %d descendants of %s", count, rootId));
+        }
+    }
 
-        // Run the scroll query
-        QueryBuilder query = QueryBuilders.constantScoreQuery(QueryBuilders.termQuery(CHILDREN_FIELD, docPath));
+    /**
+     * Updates the children of a batch of already updated parents, and collects the folderish children for the next
+     * level.
+     *
+     * @return the number of updated children
+     */
+    long updateChildren(CoreSession session, String indexName, List<String> parentIds,
+            Map<String, Map<String, Object>> parents, Set<String> localAclIds, Map<String, Map<String, Object>> next,
+            List<IndexingCommand> reindexCmds) {
+        long count = 0;
+        QueryBuilder query = QueryBuilders.constantScoreQuery(QueryBuilders.termsQuery(PARENT_ID_FIELD, parentIds));
         TimeValue keepAlive = TimeValue.timeValueMinutes(1);
         SearchRequestBuilder request = esa.getClient()
                                           .prepareSearch(indexName)
                                           .setTypes(DOC_TYPE)
                                           .setScroll(keepAlive)
-                                          .setSize(100)
-                                          .setFetchSource(false)
+                                          .setSize(TREE_BATCH_SIZE)
+                                          .setFetchSource(new String[] { PARENT_ID_FIELD, NAME_FIELD, PATH_FIELD,
+                                                  MIXIN_TYPE_FIELD }, null)
                                           .setQuery(query);
-        if (log.isDebugEnabled()) {
-            log.debug(String.format(
-                    "Search with scroll request: curl -XGET 'http://localhost:9200/%s/%s/_search?scroll=%s' -d '%s'",
-                    indexName, DOC_TYPE, keepAlive, query.toString()));
-        }
         for (SearchResponse response = request.execute().actionGet(); //
         response.getHits().getHits().length > 0; //
         response = runNextScroll(response, keepAlive)) {
-
-            // Build bulk delete request
             BulkRequestBuilder bulkBuilder = esa.getClient().prepareBulk();
             for (SearchHit hit : response.getHits().getHits()) {
-                bulkBuilder.add(esa.getClient().prepareDelete(hit.getIndex(), hit.getType(), hit.getId()));
+                Map<String, Object> source = hit.getSource();
+                Map<String, Object> parent = parents.get(source.get(PARENT_ID_FIELD));
+                if (parent == null) {
+                    continue;
+                }
+                String id = hit.getId();
+                if (localAclIds.contains(id)) {
+                    DocumentModel doc;
+                    try {
+                        doc = session.getDocument(new IdRef(id));
+                    } catch (DocumentNotFoundException e) {
+                        continue;
+                    }
+                    reindexCmds.add(new IndexingCommand(doc, Type.UPDATE, false, false));
+                    continue;
+                }
+                Map<String, Object> fields = getInheritedFields(parent, source);
+                UpdateRequestBuilder update = esa.getClient().prepareUpdate(indexName, DOC_TYPE, id).setDoc(fields);
+                bulkBuilder.add(update);
+                if (isFolderish(source)) {
+                    next.put(id, fields);
+                }
+                count++;
             }
             if (log.isDebugEnabled()) {
-                log.debug(String.format("Bulk delete request on %s elements", bulkBuilder.numberOfActions()));
+                log.debug(String.format("Bulk update request on %s elements", bulkBuilder.numberOfActions()));
+            }
+            sendBulkCommand(bulkBuilder, 0);
+        }
+        return count;
+    }
+
+    /**
+     * Computes the fields a child inherits from its parent: its path and ACL.
+     */
+    static Map<String, Object> getInheritedFields(Map<String, Object> parent, Map<String, Object> child) {
+        String parentPath = (String) parent.get(PATH_FIELD);
+        String path = (parentPath.endsWith("/") ? parentPath : parentPath + "/") + child.get(NAME_FIELD);
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(PATH_FIELD, path);
+        String[] split = path.split("/");
+        for (int i = 1; i < split.length; i++) {
+            fields.put(PATH_LEVEL_FIELD + i, split[i]);
+        }
+        // clear levels that don't exist anymore
+        String oldPath = (String) child.get(PATH_FIELD);
+        int oldDepth = oldPath == null ? 0 : oldPath.split("/").length;
+        for (int i = split.length; i < oldDepth; i++) {
+            fields.put(PATH_LEVEL_FIELD + i, null);
+        }
+        fields.put(PATH_DEPTH_FIELD, split.length);
+        fields.put(ACL_FIELD, parent.get(ACL_FIELD));
+        return fields;
+    }
+
+    static boolean isFolderish(Map<String, Object> source) {
+        Object mixins = source.get(MIXIN_TYPE_FIELD);
+        return mixins instanceof Collection && ((Collection<?>) mixins).contains("Folderish");
+    }
+
+    /**
+     * Returns the ids of the descendants of a document that have their own ACLs.
+     */
+    Set<String> getDescendantsWithLocalAcl(CoreSession session, String docId) {
+        Set<String> ids = new HashSet<>();
+        try (IterableQueryResult res = session.queryAndFetch(String.format(LOCAL_ACL_QUERY, docId), NXQL.NXQL)) {
+            for (Map<String, Serializable> map : res) {
+                ids.add((String) map.get(NXQL.ECM_UUID));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the path and ACL source fields of indexed documents, documents not found are skipped.
+     */
+    Map<String, Map<String, Object>> getSourcesOfDocsFromEs(String indexName, Set<String> docIds) {
+        Map<String, Map<String, Object>> sources = new HashMap<>();
+        if (docIds.isEmpty()) {
+            return sources;
+        }
+        MultiGetRequestBuilder request = esa.getClient().prepareMultiGet();
+        for (String docId : docIds) {
+            request.add(new MultiGetRequest.Item(indexName, DOC_TYPE, docId).fetchSourceContext(
+                    new FetchSourceContext(new String[] { PATH_FIELD, ACL_FIELD, MIXIN_TYPE_FIELD }, null)));
+        }
+        for (MultiGetItemResponse item : request.execute().actionGet()) {
+            if (!item.isFailed() && item.getResponse().isExists()) {
+                sources.put(item.getId(), item.getResponse().getSource());
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Returns the ecm:path of indexed documents, documents not found are skipped.
+     *
+     * @since 9.3
+     */
+    Map<String, String> getPathsOfDocsFromEs(String indexName, Set<String> docIds) {
+        Map<String, String> paths = new HashMap<>();
+        if (docIds.isEmpty()) {
+            return paths;
+        }
+        MultiGetRequestBuilder request = esa.getClient().prepareMultiGet();
+        for (String docId : docIds) {
+            request.add(new MultiGetRequest.Item(indexName, DOC_TYPE, docId).fields(PATH_FIELD));
+        }
+        for (MultiGetItemResponse item : request.execute().actionGet()) {
+            if (item.isFailed()) {
+                continue;
+            }
+            GetResponse response = item.getResponse();
+            if (response.isExists() && response.getField(PATH_FIELD) != null) {
+                paths.put(item.getId(), response.getField(PATH_FIELD).getValue().toString());
+            } else if (!Framework.isTestModeSet()) {
+                log.warn("Trying to delete a non existing doc: " + item.getId());
             }
-            // Run bulk delete request
-            bulkBuilder.execute().actionGet();
         }
+        return paths;
     }
 
     SearchResponse runNextScroll(SearchResponse response, TimeValue keepAlive) {
@@ -396,19 +801,28 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
      * @throws java.lang.IllegalStateException if the command is not attached to a session
      */
     IndexRequestBuilder buildEsIndexingRequest(IndexingCommand cmd) {
+        BytesStreamOutput out = new BytesStreamOutput();
+        IndexRequestBuilder ret = buildEsIndexingRequest(cmd, out);
+        return ret == null ? null : ret.setSource(out.bytes());
+    }
+
+    /**
+     * Writes the indexed source of the command document at the end of the buffer, and returns the indexing request
+     * without its source, or null if the doc does not exists anymore.
+     *
+     * @throws java.lang.IllegalStateException if the command is not attached to a session
+     * @since 9.3
+     */
+    IndexRequestBuilder buildEsIndexingRequest(IndexingCommand cmd, BytesStreamOutput out) {
         DocumentModel doc = cmd.getTargetDocument();
         if (doc == null) {
             return null;
         }
-        try {
-            JsonFactory factory = new JsonFactory();
-            OutputStream out = new BytesStreamOutput();
-            JsonGenerator jsonGen = factory.createJsonGenerator(out);
+        // closed to recycle its buffers, the target buffer is left open
+        try (JsonGenerator jsonGen = JSON_FACTORY.createJsonGenerator(out)) {
             jsonESDocumentWriter.writeESDocument(jsonGen, doc, cmd.getSchemas(), null);
-            IndexRequestBuilder ret = esa.getClient()
-                                         .prepareIndex(esa.getIndexNameForRepository(cmd.getRepositoryName()), DOC_TYPE,
-                                                 cmd.getTargetDocumentId())
-                                         .setSource(jsonBuilder(out));
+            IndexRequestBuilder ret = esa.getClient().prepareIndex(
+                    esa.getIndexNameForRepository(cmd.getRepositoryName()), DOC_TYPE, cmd.getTargetDocumentId());
             if (useExternalVersion && cmd.getOrder() > 0) {
                 ret.setVersionType(VersionType.EXTERNAL).setVersion(cmd.getOrder());
             }
@@ -174,7 +174,8 @@ public class ElasticSearchServiceImpl implements ElasticSearchService {
             return ret;
         }
         try (Context stopWatch = fetchTimer.time()) {
-            Fetcher fetcher = queryBuilder.getFetcher(response, esa.getRepositoryMap());
+            Fetcher fetcher = queryBuilder.getFetcher(response, esa.getRepositoryMap(),
+                    esa.getSchemasNotInSource());
             ret = fetcher.fetchDocuments();
             logMinDurationFetch(stopWatch.stop(), totalSize);
         }
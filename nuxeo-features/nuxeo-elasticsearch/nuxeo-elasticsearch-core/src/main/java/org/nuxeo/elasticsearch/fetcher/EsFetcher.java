@@ -51,22 +51,30 @@ public class EsFetcher extends Fetcher {
         for (SearchHit hit : getResponse().getHits()) {
             // TODO: this does not work on multi repo
             doc = DocumentModelReaders.fromSource(hit.getSource()).sid(sid).getDocumentModel();
-            // Add highlight if it exists
-            Map<String, HighlightField> esHighlights = hit.highlightFields();
-            if (!esHighlights.isEmpty()) {
-                Map<String, List<String>> fields = new HashMap<>();
-                for (Map.Entry<String, HighlightField> entry : esHighlights.entrySet()) {
-                    String field = entry.getKey();
-                    List<String> list = new ArrayList<>();
-                    for (Text fragment : entry.getValue().getFragments()) {
-                        list.add(fragment.toString());
-                    }
-                    fields.put(field, list);
-                }
-                doc.putContextData(PageProvider.HIGHLIGHT_CTX_DATA, (Serializable) fields);
-            }
+            addHighlights(doc, hit);
             ret.add(doc);
         }
         return ret;
     }
+
+    /**
+     * Adds the highlights of the hit if any.
+     *
+     * @since 9.3
+     */
+    protected void addHighlights(DocumentModel doc, SearchHit hit) {
+        Map<String, HighlightField> esHighlights = hit.highlightFields();
+        if (!esHighlights.isEmpty()) {
+            Map<String, List<String>> fields = new HashMap<>();
+            for (Map.Entry<String, HighlightField> entry : esHighlights.entrySet()) {
+                String field = entry.getKey();
+                List<String> list = new ArrayList<>();
+                for (Text fragment : entry.getValue().getFragments()) {
+                    list.add(fragment.toString());
+                }
+                fields.put(field, list);
+            }
+            doc.putContextData(PageProvider.HIGHLIGHT_CTX_DATA, (Serializable) fields);
+        }
+    }
 }
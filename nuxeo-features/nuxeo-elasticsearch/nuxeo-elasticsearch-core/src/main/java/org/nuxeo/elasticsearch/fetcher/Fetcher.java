@@ -49,6 +49,13 @@ public abstract class Fetcher {
         return response;
     }
 
+    /**
+     * @since 9.3
+     */
+    protected Map<String, String> getRepoNames() {
+        return repoNames;
+    }
+
     protected String getRepoForIndex(String indexName) {
         if (repoNames == null) {
             return null;
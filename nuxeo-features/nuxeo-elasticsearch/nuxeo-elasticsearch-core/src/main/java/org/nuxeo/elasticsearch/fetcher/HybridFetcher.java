@@ -0,0 +1,207 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.elasticsearch.fetcher;
+
+import static org.nuxeo.ecm.core.api.security.SecurityConstants.BROWSE;
+import static org.nuxeo.ecm.core.api.security.SecurityConstants.UNSUPPORTED_ACL;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.ACL_FIELD;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.FETCH_DOC_MAX_STALENESS_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_QUEUE_ID;
+
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.nuxeo.ecm.core.security.SecurityService;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
+import org.nuxeo.elasticsearch.io.DocumentModelReaders;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Builds read-only documents from the _source like {@link EsFetcher}, but the schemas that are not fully present in
+ * the _source are loaded lazily from the repository when first accessed.
+ * <p>
+ * The indexed ACL of each hit is checked against the principals of the session, hits from other repositories included.
+ * If the oldest indexing work not completed yet was scheduled longer ago than the configured staleness bound, the index
+ * may lag behind the repository by as much, and the documents are fetched from the repository instead.
+ *
+ * @since 9.3
+ */
+public class HybridFetcher extends EsFetcher {
+
+    private static final Log log = LogFactory.getLog(HybridFetcher.class);
+
+    private static final String DEFAULT_MAX_STALENESS = "30";
+
+    // how long the oldest pending indexing time found is reused before listing the queue again
+    private static final long OLDEST_PENDING_TTL_MS = 1000;
+
+    // oldest pending indexing time found and when it was found, only non-zero times are reused
+    private static volatile long[] oldestPending = { 0, 0 };
+
+    protected final Set<String> lazySchemas;
+
+    public HybridFetcher(CoreSession session, SearchResponse response, Map<String, String> repoNames,
+            Set<String> lazySchemas) {
+        super(session, response, repoNames);
+        this.lazySchemas = lazySchemas;
+    }
+
+    @Override
+    public DocumentModelListImpl fetchDocuments() {
+        if (!isIndexFresh()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Index is stale, fetching documents from the repository");
+            }
+            return new VcsFetcher(getSession(), getResponse(), getRepoNames()).fetchDocuments();
+        }
+        CoreSession session = getSession();
+        Set<String> principals = getPrincipalsToCheck(session.getPrincipal());
+        DocumentModelListImpl ret = new DocumentModelListImpl(getResponse().getHits().getHits().length);
+        String sid = session.getSessionId();
+        String repositoryName = session.getRepositoryName();
+        // sessions on other repositories, only opened to check the hits whose ACL is not in the index
+        Map<String, CoreSession> otherSessions = new HashMap<>();
+        try {
+            for (SearchHit hit : getResponse().getHits()) {
+                String repo = getRepoForIndex(hit.getIndex());
+                boolean otherRepo = repo != null && !repo.equals(repositoryName);
+                Supplier<CoreSession> hitSession = otherRepo ? () -> otherSessions.computeIfAbsent(repo,
+                        r -> CoreInstance.openCoreSession(r, session.getPrincipal())) : () -> session;
+                if (!canBrowse(hitSession, principals, hit)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Skipping hit not readable according to its ACL: " + hit.getId());
+                    }
+                    continue;
+                }
+                DocumentModel doc;
+                if (otherRepo) {
+                    // no session to load the missing schemas, read all of them from the source
+                    doc = DocumentModelReaders.fromSource(hit.getSource()).getDocumentModel();
+                } else {
+                    doc = DocumentModelReaders.fromSource(hit.getSource())
+                                              .sid(sid)
+                                              .lazySchemas(lazySchemas)
+                                              .getDocumentModel();
+                }
+                addHighlights(doc, hit);
+                ret.add(doc);
+            }
+        } finally {
+            otherSessions.values().forEach(CoreSession::close);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the principals to check, or null if the principal is an administrator.
+     */
+    protected static Set<String> getPrincipalsToCheck(Principal principal) {
+        if (principal == null || (principal instanceof NuxeoPrincipal && ((NuxeoPrincipal) principal).isAdministrator())) {
+            return null;
+        }
+        return new HashSet<>(Arrays.asList(SecurityService.getPrincipalsToCheck(principal)));
+    }
+
+    /**
+     * @param session supplies the session on the repository of the hit, only used if its ACL is not in the index
+     */
+    protected static boolean canBrowse(Supplier<CoreSession> session, Set<String> principals, SearchHit hit) {
+        if (principals == null) {
+            return true;
+        }
+        Object acl = hit.getSource().get(ACL_FIELD);
+        if (acl instanceof Collection && !((Collection<?>) acl).contains(UNSUPPORTED_ACL)) {
+            return !Collections.disjoint((Collection<?>) acl, principals);
+        }
+        // ACL not in the source or not expressible in the index, ask the repository
+        return session.get().hasPermission(new IdRef(hit.getId()), BROWSE);
+    }
+
+    /**
+     * Checks that the oldest indexing work not completed yet was scheduled within the staleness bound, the changes
+     * made before are then in the index.
+     */
+    protected static boolean isIndexFresh() {
+        long maxStaleness = Long.parseLong(Framework.getProperty(FETCH_DOC_MAX_STALENESS_PROPERTY,
+                DEFAULT_MAX_STALENESS));
+        if (maxStaleness < 0) {
+            return true;
+        }
+        if (!Framework.getService(ElasticSearchAdmin.class).isIndexingInProgress()) {
+            return true;
+        }
+        long oldest = getCachedOldestPendingIndexingTime();
+        return oldest == 0 || System.currentTimeMillis() - oldest <= maxStaleness * 1000;
+    }
+
+    /**
+     * Returns the scheduling time of the oldest pending indexing work, reusing for a short while the last one found.
+     * <p>
+     * Listing the queue deserializes all its works with some queuing implementations, so this is not done on each
+     * fetch. A reused time can only be older than the actual one, which may make the index look stale for too long,
+     * never fresh too early.
+     */
+    protected static long getCachedOldestPendingIndexingTime() {
+        long[] cached = oldestPending;
+        long now = System.currentTimeMillis();
+        if (cached[0] != 0 && now - cached[1] < OLDEST_PENDING_TTL_MS) {
+            return cached[0];
+        }
+        long oldest = getOldestPendingIndexingTime(Framework.getService(WorkManager.class));
+        oldestPending = new long[] { oldest, now };
+        return oldest;
+    }
+
+    /**
+     * Returns the scheduling time of the oldest scheduled or running indexing work, or 0 if there is none.
+     */
+    public static long getOldestPendingIndexingTime(WorkManager workManager) {
+        long oldest = 0;
+        // not all the queuing implementations can list all the works at once
+        for (Work.State state : Arrays.asList(Work.State.SCHEDULED, Work.State.RUNNING)) {
+            for (Work work : workManager.listWork(INDEXING_QUEUE_ID, state)) {
+                long time = work.getSchedulingTime();
+                if (time > 0 && (oldest == 0 || time < oldest)) {
+                    oldest = time;
+                }
+            }
+        }
+        return oldest;
+    }
+
+}
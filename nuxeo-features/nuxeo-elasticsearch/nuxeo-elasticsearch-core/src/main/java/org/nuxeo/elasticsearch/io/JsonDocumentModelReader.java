@@ -56,6 +56,8 @@ public class JsonDocumentModelReader {
 
     private String sid;
 
+    private Set<String> lazySchemas = Collections.emptySet();
+
     public JsonDocumentModelReader(String json) {
         byte[] bytes = json.getBytes();
         source = SourceLookup.sourceAsMap(new BytesArray(bytes, 0, bytes.length));
@@ -75,6 +77,16 @@ public class JsonDocumentModelReader {
         return this;
     }
 
+    /**
+     * Schemas that are not read from the source but loaded from the repository when first accessed.
+     *
+     * @since 9.3
+     */
+    public JsonDocumentModelReader lazySchemas(Set<String> lazySchemas) {
+        this.lazySchemas = lazySchemas;
+        return this;
+    }
+
     public DocumentModel getDocumentModel() {
         assert (source != null);
         String type = (String) getProperty("ecm:primaryType");
@@ -102,8 +114,14 @@ public class JsonDocumentModelReader {
                 repositoryName, isProxy);
 
         // preload DataModel to prevent DB access
+        Set<String> lazyPrefixes = new HashSet<>();
         for (String schemaName : doc.getSchemas()) { // all schemas including from facets
             Schema schema = schemaManager.getSchema(schemaName);
+            if (lazySchemas.contains(schemaName)) {
+                String prefix = schema.getNamespace().prefix;
+                lazyPrefixes.add(prefix == null || prefix.isEmpty() ? schemaName : prefix);
+                continue;
+            }
             doc.addDataModel(DocumentModelFactory.createDataModel(null, schema));
         }
 
@@ -123,6 +141,10 @@ public class JsonDocumentModelReader {
                 }
                 continue;
             }
+            if (lazyPrefixes.contains(schema)) {
+                // partial in the source, would trigger the lazy loading
+                continue;
+            }
             // regular property
             try {
                 doc.setPropertyValue(prop, value);
@@ -20,6 +20,7 @@ package org.nuxeo.elasticsearch.query;
 
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.UNSUPPORTED_ACL;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.ACL_FIELD;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.FETCH_DOC_FROM_ES_HYBRID_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.FETCH_DOC_FROM_ES_PROPERTY;
 
 import java.security.Principal;
@@ -52,6 +53,7 @@ import org.nuxeo.elasticsearch.aggregate.AggregateEsBase;
 import org.nuxeo.elasticsearch.api.EsResult;
 import org.nuxeo.elasticsearch.fetcher.EsFetcher;
 import org.nuxeo.elasticsearch.fetcher.Fetcher;
+import org.nuxeo.elasticsearch.fetcher.HybridFetcher;
 import org.nuxeo.elasticsearch.fetcher.VcsFetcher;
 import org.nuxeo.runtime.api.Framework;
 
@@ -84,6 +86,8 @@ public class NxQueryBuilder {
 
     private boolean fetchFromElasticsearch = false;
 
+    private boolean hybridFetch = false;
+
     private boolean searchOnAllRepo = false;
 
     private String[] selectFields = { ElasticSearchConstants.ID_FIELD };
@@ -99,7 +103,9 @@ public class NxQueryBuilder {
     public NxQueryBuilder(CoreSession coreSession) {
         session = coreSession;
         repositories.add(coreSession.getRepositoryName());
-        fetchFromElasticsearch = Boolean.parseBoolean(Framework.getProperty(FETCH_DOC_FROM_ES_PROPERTY, "false"));
+        hybridFetch = Boolean.parseBoolean(Framework.getProperty(FETCH_DOC_FROM_ES_HYBRID_PROPERTY, "false"));
+        fetchFromElasticsearch = hybridFetch
+                || Boolean.parseBoolean(Framework.getProperty(FETCH_DOC_FROM_ES_PROPERTY, "false"));
     }
 
     public static String getAggregateFilterId(Aggregate agg) {
@@ -168,6 +174,18 @@ public class NxQueryBuilder {
         return this;
     }
 
+    /**
+     * Build documents from the Elasticsearch _source, the schemas missing from the _source are loaded from the
+     * repository on first access.
+     *
+     * @since 9.3
+     */
+    public NxQueryBuilder fetchFromElasticsearchHybrid() {
+        fetchFromElasticsearch = true;
+        hybridFetch = true;
+        return this;
+    }
+
     /**
      * Fetch the documents using VCS (database) engine. This is done by default
      */
@@ -427,7 +445,18 @@ public class NxQueryBuilder {
      * @since 6.0
      */
     public Fetcher getFetcher(SearchResponse response, Map<String, String> repoNames) {
+        return getFetcher(response, repoNames, Collections.emptySet());
+    }
+
+    /**
+     * @param lazySchemas the schemas not fully present in the _source, loaded from the repository by a hybrid fetch
+     * @since 9.3
+     */
+    public Fetcher getFetcher(SearchResponse response, Map<String, String> repoNames, Set<String> lazySchemas) {
         if (isFetchFromElasticsearch()) {
+            if (hybridFetch) {
+                return new HybridFetcher(session, response, repoNames, lazySchemas);
+            }
             return new EsFetcher(session, response, repoNames);
         }
         return new VcsFetcher(session, response, repoNames);
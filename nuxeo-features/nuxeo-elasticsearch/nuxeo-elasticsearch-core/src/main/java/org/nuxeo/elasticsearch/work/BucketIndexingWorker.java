@@ -29,15 +29,23 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentLocation;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentNotFoundException;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.schema.types.Schema;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
 import org.nuxeo.elasticsearch.commands.IndexingCommand;
 import org.nuxeo.elasticsearch.commands.IndexingCommand.Type;
 import org.nuxeo.elasticsearch.Timestamp;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import com.codahale.metrics.SharedMetricRegistries;
+
 /**
  * œ Worker to index a bucket of documents
  *
@@ -54,10 +62,21 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
 
     private final int documentCount;
 
+    /** The re-indexing partition number, or -1 if not partitioned. */
+    private final int partition;
+
     public BucketIndexingWorker(String repositoryName, List<String> docIds, boolean warnAtEnd) {
+        this(repositoryName, docIds, warnAtEnd, -1);
+    }
+
+    /**
+     * @since 9.3
+     */
+    public BucketIndexingWorker(String repositoryName, List<String> docIds, boolean warnAtEnd, int partition) {
         setDocuments(repositoryName, docIds);
         documentCount = docIds.size();
         this.warnAtEnd = warnAtEnd;
+        this.partition = partition;
     }
 
     @Override
@@ -75,6 +94,7 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
             ids.add(doc.getIdRef().value);
             if ((ids.size() % bucketSize) == 0) {
                 esi.indexNonRecursive(getIndexingCommands(session, ids));
+                markIndexed(ids.size());
                 ids.clear();
                 TransactionHelper.commitOrRollbackTransaction();
                 TransactionHelper.startTransaction();
@@ -82,6 +102,7 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
         }
         if (!ids.isEmpty()) {
             esi.indexNonRecursive(getIndexingCommands(session, ids));
+            markIndexed(ids.size());
             ids.clear();
         }
         if (warnAtEnd) {
@@ -100,7 +121,40 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
         return ret;
     }
 
+    private void markIndexed(int count) {
+        if (partition >= 0) {
+            SharedMetricRegistries.getOrCreate(MetricsService.class.getName())
+                                  .meter(ScrollingIndexingWorker.getPartitionMetricName(partition, "indexed"))
+                                  .mark(count);
+        }
+    }
+
     private List<DocumentModel> fetchDocuments(CoreSession session, List<String> ids) {
+        // read invalidation
+        session.save();
+        // bulk load with all schemas and ACLs, the JSON writer needs them
+        DocumentRef[] refs = new DocumentRef[ids.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = new IdRef(ids.get(i));
+        }
+        try {
+            return session.getDocuments(refs, getAllSchemas(), true, false);
+        } catch (DocumentNotFoundException e) {
+            // some documents were deleted since the scroll, use a query that skips them
+            return queryDocuments(session, ids);
+        }
+    }
+
+    private static String[] getAllSchemas() {
+        Schema[] schemas = Framework.getService(SchemaManager.class).getSchemas();
+        String[] names = new String[schemas.length];
+        for (int i = 0; i < schemas.length; i++) {
+            names[i] = schemas[i].getName();
+        }
+        return names;
+    }
+
+    private List<DocumentModel> queryDocuments(CoreSession session, List<String> ids) {
         StringBuilder sb = new StringBuilder();
         sb.append("SELECT * FROM Document, Relation WHERE ecm:uuid IN (");
         for (int i = 0; i < ids.size(); i++) {
@@ -110,8 +164,6 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
             }
         }
         sb.append(")");
-        // read invalidation
-        session.save();
         return session.query(sb.toString());
     }
 
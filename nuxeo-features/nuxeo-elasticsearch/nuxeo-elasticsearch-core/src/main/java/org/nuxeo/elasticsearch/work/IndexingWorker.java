@@ -87,7 +87,10 @@ public class IndexingWorker extends AbstractIndexingWorker implements Work {
         } else {
             boolean useChildrenWorker = Boolean.parseBoolean(Framework.getProperty(REINDEX_USING_CHILDREN_TRAVERSAL_PROPERTY,
                     "false"));
-            if (useChildrenWorker) {
+            if (cmd.getType() == Type.UPDATE || cmd.getType() == Type.UPDATE_SECURITY) {
+                // a move or an ACL change, descendants only need their path and ACL updated
+                ret = new SubtreeIndexingWorker(cmd);
+            } else if (useChildrenWorker) {
                 ret = new ChildrenIndexingWorker(cmd);
             } else {
                 ret = new ScrollingIndexingWorker(cmd.getRepositoryName(), String.format(
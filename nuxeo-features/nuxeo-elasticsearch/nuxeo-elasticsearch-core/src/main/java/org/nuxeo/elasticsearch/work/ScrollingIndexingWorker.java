@@ -25,15 +25,26 @@ import org.nuxeo.ecm.core.api.ScrollResult;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_BUCKET_READ_PROPERTY;
 
 /**
  * Worker to reindex a large amount of document
+ * <p>
+ * When re-indexing is split into id range partitions, each partition is scrolled by its own worker and the progress
+ * is exposed through the {@code nuxeo.elasticsearch.reindex.partition-N.scheduled} counter and the
+ * {@code nuxeo.elasticsearch.reindex.partition-N.indexed} meter, which also gives the throughput.
  *
  * @since 7.1
  */
@@ -46,20 +57,109 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
 
     private static final long WARN_DOC_COUNT = 500;
 
+    /** @since 9.3 */
+    public static final int MAX_PARTITIONS = 256;
+
+    private static final Pattern WHERE = Pattern.compile("\\sWHERE\\s", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY = Pattern.compile("\\sORDER\\s+BY\\s", Pattern.CASE_INSENSITIVE);
+
     protected final String nxql;
 
+    /** The partition number, or -1 if not partitioned. */
+    protected final int partition;
+
     protected transient WorkManager workManager;
 
     protected long documentCount = 0;
 
     public ScrollingIndexingWorker(String repositoryName, String nxql) {
+        this(repositoryName, nxql, -1);
+    }
+
+    /**
+     * @param partition the partition number, or -1 if not partitioned
+     * @since 9.3
+     */
+    public ScrollingIndexingWorker(String repositoryName, String nxql, int partition) {
         this.repositoryName = repositoryName;
         this.nxql = nxql;
+        this.partition = partition;
     }
 
     @Override
     public String getTitle() {
-        return "Elasticsearch scrolling indexer: " + nxql + ", processed " + documentCount;
+        String title = "Elasticsearch scrolling indexer: " + nxql + ", processed " + documentCount;
+        return partition < 0 ? title : title + " (partition " + partition + ")";
+    }
+
+    /**
+     * Splits a query into queries on disjoint {@code ecm:uuid} ranges covering all the documents.
+     * <p>
+     * The ranges are bounded by 2-digit hexadecimal prefixes, so they are balanced for uuids. A query that has an
+     * {@code ORDER BY} clause is not split. The bounds are only valid for repositories storing ids as strings, not
+     * for VCS repositories using native uuid or sequence ids.
+     *
+     * @since 9.3
+     */
+    public static List<String> getPartitionQueries(String nxql, int partitions) {
+        if (partitions <= 1 || ORDER_BY.matcher(nxql).find()) {
+            return Collections.singletonList(nxql);
+        }
+        partitions = Math.min(partitions, MAX_PARTITIONS);
+        String select;
+        String where;
+        Matcher m = WHERE.matcher(nxql);
+        if (m.find()) {
+            select = nxql.substring(0, m.start()).trim();
+            where = nxql.substring(m.end()).trim();
+        } else {
+            select = nxql.trim();
+            where = null;
+        }
+        List<String> queries = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            StringBuilder sb = new StringBuilder(select);
+            sb.append(" WHERE ");
+            if (where != null) {
+                sb.append('(').append(where).append(") AND ");
+            }
+            if (i > 0) {
+                sb.append("ecm:uuid >= '").append(getPartitionBound(i, partitions)).append('\'');
+            }
+            if (i > 0 && i < partitions - 1) {
+                sb.append(" AND ");
+            }
+            if (i < partitions - 1) {
+                sb.append("ecm:uuid < '").append(getPartitionBound(i + 1, partitions)).append('\'');
+            }
+            queries.add(sb.toString());
+        }
+        return queries;
+    }
+
+    protected static String getPartitionBound(int i, int partitions) {
+        return String.format("%02x", i * MAX_PARTITIONS / partitions);
+    }
+
+    /**
+     * Gets the name of a re-indexing metric for a partition.
+     *
+     * @since 9.3
+     */
+    public static String getPartitionMetricName(int partition, String name) {
+        return MetricRegistry.name("nuxeo", "elasticsearch", "reindex", "partition-" + partition, name);
+    }
+
+    /**
+     * Removes the re-indexing metrics of all the partitions.
+     *
+     * @since 9.3
+     */
+    public static void removePartitionMetrics() {
+        String prefix = MetricRegistry.name("nuxeo", "elasticsearch", "reindex", "partition-");
+        SharedMetricRegistries.getOrCreate(MetricsService.class.getName())
+                              .removeMatching((name, metric) -> name.startsWith(prefix));
     }
 
     @Override
@@ -77,6 +177,11 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
         try {
             while (ret.hasResults()) {
                 documentCount += ret.getResultIds().size();
+                if (partition >= 0) {
+                    SharedMetricRegistries.getOrCreate(MetricsService.class.getName())
+                                          .counter(getPartitionMetricName(partition, "scheduled"))
+                                          .inc(ret.getResultIds().size());
+                }
                 scheduleBucketWorker(ret.getResultIds(), false);
                 bucketCount += 1;
                 ret = session.scroll(ret.getScrollId());
@@ -104,7 +209,7 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
         if (bucket.isEmpty()) {
             return;
         }
-        BucketIndexingWorker subWorker = new BucketIndexingWorker(repositoryName, bucket, isLast);
+        BucketIndexingWorker subWorker = new BucketIndexingWorker(repositoryName, bucket, isLast, partition);
         getWorkManager().schedule(subWorker);
     }
 
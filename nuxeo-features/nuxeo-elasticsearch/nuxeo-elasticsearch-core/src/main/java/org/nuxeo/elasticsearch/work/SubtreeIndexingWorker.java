@@ -0,0 +1,52 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.elasticsearch.work;
+
+import java.util.List;
+
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
+import org.nuxeo.elasticsearch.commands.IndexingCommand;
+
+/**
+ * Worker propagating the path and ACL of a moved or re-permissioned document to its descendants.
+ *
+ * @since 9.3
+ */
+public class SubtreeIndexingWorker extends AbstractIndexingWorker implements Work {
+
+    private static final long serialVersionUID = 1L;
+
+    public SubtreeIndexingWorker(IndexingCommand cmd) {
+        super(cmd);
+    }
+
+    @Override
+    public String getTitle() {
+        return " ElasticSearch subtree indexing for cmd " + (cmds.isEmpty() ? "null" : cmds.get(0));
+    }
+
+    @Override
+    protected void doIndexingWork(ElasticSearchIndexing esi, List<IndexingCommand> cmds) {
+        for (IndexingCommand cmd : cmds) {
+            esi.indexSubtree(session, cmd);
+        }
+    }
+
+}
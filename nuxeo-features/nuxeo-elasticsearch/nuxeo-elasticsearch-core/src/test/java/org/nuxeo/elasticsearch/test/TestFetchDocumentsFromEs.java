@@ -19,23 +19,41 @@
  */
 package org.nuxeo.elasticsearch.test;
 
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.FETCH_DOC_MAX_STALENESS_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_QUEUE_ID;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreInstance;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
 import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.elasticsearch.ElasticSearchConstants;
 import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
 import org.nuxeo.elasticsearch.api.ElasticSearchService;
 import org.nuxeo.elasticsearch.api.EsResult;
+import org.nuxeo.elasticsearch.fetcher.HybridFetcher;
 import org.nuxeo.elasticsearch.query.NxQueryBuilder;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.runner.Features;
@@ -117,6 +135,131 @@ public class TestFetchDocumentsFromEs {
 
     }
 
+    /**
+     * @since 9.3
+     */
+    @Test
+    public void shouldLoadDocumentFromEsWithHybridFetch() throws Exception {
+        buildAndIndexTree();
+        DocumentModelList docs = ess.query(
+                new NxQueryBuilder(session).nxql("select * from Document").limit(20).fetchFromElasticsearchHybrid());
+        Assert.assertEquals(10, docs.totalSize());
+        Assert.assertEquals(10, docs.size());
+        for (DocumentModel doc : docs) {
+            Assert.assertTrue(doc.isImmutable());
+            Assert.assertTrue(((String) doc.getPropertyValue("dc:title")).startsWith("Folder"));
+        }
+    }
+
+    /**
+     * Fetches all the indexed documents without the ACL filter added by the query builder.
+     */
+    protected DocumentModelList fetchAllHybrid(CoreSession session, Set<String> lazySchemas) {
+        SearchResponse response = esa.getClient()
+                                     .prepareSearch(IDX_NAME)
+                                     .setTypes(TYPE_NAME)
+                                     .setSize(60)
+                                     .execute()
+                                     .actionGet();
+        Map<String, String> repoNames = Collections.singletonMap(IDX_NAME, session.getRepositoryName());
+        return new HybridFetcher(session, response, repoNames, lazySchemas).fetchDocuments();
+    }
+
+    /**
+     * @since 9.3
+     */
+    @Test
+    public void shouldLoadLazySchemasFromRepositoryWithHybridFetch() throws Exception {
+        buildAndIndexTree();
+        DocumentModel folder = session.getDocument(new PathRef("/folder0"));
+        folder.setPropertyValue("dc:title", "Not indexed");
+        folder.putContextData(ElasticSearchConstants.DISABLE_AUTO_INDEXING, Boolean.TRUE);
+        session.saveDocument(folder);
+        session.save();
+
+        SearchResponse response = esa.getClient()
+                                     .prepareSearch(IDX_NAME)
+                                     .setTypes(TYPE_NAME)
+                                     .setQuery(QueryBuilders.idsQuery().addIds(folder.getId()))
+                                     .execute()
+                                     .actionGet();
+        Map<String, String> repoNames = Collections.singletonMap(IDX_NAME, session.getRepositoryName());
+        // read from the _source
+        DocumentModel doc = new HybridFetcher(session, response, repoNames, Collections.emptySet()).fetchDocuments()
+                                                                                                   .get(0);
+        Assert.assertEquals("Folder0", doc.getPropertyValue("dc:title"));
+        // loaded from the repository on first access
+        doc = new HybridFetcher(session, response, repoNames, Collections.singleton("dublincore")).fetchDocuments()
+                                                                                                 .get(0);
+        Assert.assertTrue(doc.isImmutable());
+        Assert.assertEquals("Not indexed", doc.getPropertyValue("dc:title"));
+    }
+
+    /**
+     * @since 9.3
+     */
+    @Test
+    public void shouldFilterHitsOnAclWithHybridFetch() throws Exception {
+        buildAndIndexTree();
+        ACP acp = new ACPImpl();
+        ACL acl = ACPImpl.newACL(ACL.LOCAL_ACL);
+        acl.add(new ACE("toto", SecurityConstants.READ, true));
+        acp.addACL(acl);
+        session.setACP(new PathRef("/folder0/folder1/folder2/folder3/folder4/folder5/folder6/folder7"), acp, true);
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForAsyncIndexing();
+        esa.refresh();
+        TransactionHelper.startTransaction();
+
+        Assert.assertEquals(10, fetchAllHybrid(session, Collections.emptySet()).size());
+        try (CoreSession restrictedSession = CoreInstance.openCoreSession(session.getRepositoryName(),
+                new UserPrincipal("toto", null, false, false))) {
+            // folder7, folder8 and folder9
+            Assert.assertEquals(3, fetchAllHybrid(restrictedSession, Collections.emptySet()).size());
+        }
+    }
+
+    /**
+     * @since 9.3
+     */
+    @Test
+    public void shouldFetchFromRepositoryWhenIndexIsStale() throws Exception {
+        buildAndIndexTree();
+        WorkManager wm = Framework.getLocalService(WorkManager.class);
+        Properties properties = Framework.getProperties();
+        wm.enableProcessing(INDEXING_QUEUE_ID, false);
+        properties.setProperty(FETCH_DOC_MAX_STALENESS_PROPERTY, "0");
+        try {
+            // the indexing of this change stays pending
+            DocumentModel folder = session.getDocument(new PathRef("/folder0"));
+            folder.setPropertyValue("dc:title", "Pending");
+            session.saveDocument(folder);
+            TransactionHelper.commitOrRollbackTransaction();
+            TransactionHelper.startTransaction();
+            Thread.sleep(10);
+
+            DocumentModelList docs = fetchAllHybrid(session, Collections.emptySet());
+            Assert.assertEquals(10, docs.size());
+            for (DocumentModel doc : docs) {
+                Assert.assertFalse(doc.isImmutable());
+            }
+
+            // no staleness bound
+            properties.setProperty(FETCH_DOC_MAX_STALENESS_PROPERTY, "-1");
+            docs = fetchAllHybrid(session, Collections.emptySet());
+            Assert.assertEquals(10, docs.size());
+            for (DocumentModel doc : docs) {
+                Assert.assertTrue(doc.isImmutable());
+            }
+        } finally {
+            properties.remove(FETCH_DOC_MAX_STALENESS_PROPERTY);
+            wm.enableProcessing(INDEXING_QUEUE_ID, true);
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForAsyncIndexing();
+        TransactionHelper.startTransaction();
+    }
+
     @Test
     public void checkNotFetch() throws Exception {
         buildAndIndexTree();
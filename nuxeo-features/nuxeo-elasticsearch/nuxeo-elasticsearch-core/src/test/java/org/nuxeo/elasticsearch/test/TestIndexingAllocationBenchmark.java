@@ -0,0 +1,148 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.elasticsearch.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.action.search.SearchResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
+import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
+import org.nuxeo.elasticsearch.commands.IndexingCommand;
+import org.nuxeo.elasticsearch.commands.IndexingCommand.Type;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+/**
+ * Measures the bytes allocated per document by the indexing service: documents indexed one by one, each with its own
+ * source buffer, compared to bulk indexing where the sources are written to a shared buffer.
+ * <p>
+ * Only runs when benchmarks are enabled with {@code -Dnuxeo.test.benchmark=true}. The number of documents can be
+ * changed with the {@code nuxeo.test.es.alloc.docs} system property.
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ RepositoryElasticSearchFeature.class })
+@LocalDeploy({ "org.nuxeo.elasticsearch.core:disable-listener-contrib.xml",
+        "org.nuxeo.elasticsearch.core:elasticsearch-test-contrib.xml" })
+public class TestIndexingAllocationBenchmark {
+
+    private static final Log log = LogFactory.getLog(TestIndexingAllocationBenchmark.class);
+
+    private static final String IDX_NAME = "nxutest";
+
+    protected static final int NDOCS = Integer.getInteger("nuxeo.test.es.alloc.docs", 200).intValue();
+
+    protected static final int ITERATIONS = 5;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected ElasticSearchIndexing esi;
+
+    @Inject
+    protected ElasticSearchAdmin esa;
+
+    protected com.sun.management.ThreadMXBean threadMXBean;
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("nuxeo.test.benchmark"));
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("Allocation counters not supported",
+                bean instanceof com.sun.management.ThreadMXBean
+                        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    protected long getAllocatedBytes() {
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    protected List<IndexingCommand> createDocuments() {
+        List<IndexingCommand> cmds = new ArrayList<>(NDOCS);
+        for (int i = 0; i < NDOCS; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "file" + i, "File");
+            doc.setPropertyValue("dc:title", "Title " + i);
+            doc.setPropertyValue("dc:description", "Some description of the document number " + i);
+            doc.setPropertyValue("dc:subjects", new String[] { "art", "science" });
+            doc = session.createDocument(doc);
+            cmds.add(new IndexingCommand(doc, Type.INSERT, false, false));
+        }
+        session.save();
+        return cmds;
+    }
+
+    @Test
+    public void testAllocationPerDocument() throws Exception {
+        List<IndexingCommand> cmds = createDocuments();
+        // warm up both paths
+        indexOneByOne(cmds);
+        indexInBulk(cmds);
+
+        long perDocument = Long.MAX_VALUE;
+        long bulk = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            perDocument = Math.min(perDocument, indexOneByOne(cmds));
+            bulk = Math.min(bulk, indexInBulk(cmds));
+        }
+        log.info(String.format("Indexed %d documents: %d bytes/doc allocated when indexed one by one,"
+                + " %d bytes/doc with bulk indexing", NDOCS, perDocument, bulk));
+
+        esa.refresh();
+        SearchResponse response = esa.getClient().prepareSearch(IDX_NAME).setSize(0).execute().actionGet();
+        assertEquals(NDOCS, response.getHits().getTotalHits());
+    }
+
+    /**
+     * Returns the bytes allocated per document when indexing the documents one by one.
+     */
+    protected long indexOneByOne(List<IndexingCommand> cmds) {
+        long before = getAllocatedBytes();
+        for (IndexingCommand cmd : cmds) {
+            esi.indexNonRecursive(cmd);
+        }
+        return (getAllocatedBytes() - before) / cmds.size();
+    }
+
+    /**
+     * Returns the bytes allocated per document when indexing all the documents in bulk.
+     */
+    protected long indexInBulk(List<IndexingCommand> cmds) {
+        long before = getAllocatedBytes();
+        esi.indexNonRecursive(cmds);
+        return (getAllocatedBytes() - before) / cmds.size();
+    }
+
+}
@@ -261,6 +261,140 @@ public class TestTreeIndexing {
 
     }
 
+    @Test
+    public void shouldUpdatePathOfSubTreeMovedToAnotherDepth() throws Exception {
+        buildAndIndexTree();
+        startTransaction();
+        DocumentModel leaf = session.getDocument(
+                new PathRef("/folder0/folder1/folder2/folder3/folder4/folder5/folder6/folder7/folder8/folder9"));
+        session.move(new PathRef("/folder0/folder1/folder2"), new PathRef("/folder0"), null);
+
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForCompletion();
+        if (syncMode) {
+            assertNumberOfCommandProcessed(9);
+        } else {
+            assertNumberOfCommandProcessed(8);
+        }
+
+        startTransaction();
+        // the descendants are partially updated, check the path fields computed from their parent
+        Map<String, Object> source = esa.getClient()
+                                        .prepareGet(IDX_NAME, TYPE_NAME, leaf.getId())
+                                        .execute()
+                                        .actionGet()
+                                        .getSource();
+        Assert.assertEquals("/folder0/folder2/folder3/folder4/folder5/folder6/folder7/folder8/folder9",
+                source.get("ecm:path"));
+        Assert.assertEquals(10, ((Number) source.get("ecm:path@depth")).intValue());
+        Assert.assertEquals("folder2", source.get("ecm:path@level2"));
+        Assert.assertEquals("folder9", source.get("ecm:path@level9"));
+        Assert.assertNull(source.get("ecm:path@level10"));
+
+        SearchResponse searchResponse = esa.getClient()
+                                           .prepareSearch(IDX_NAME)
+                                           .setTypes(TYPE_NAME)
+                                           .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                                           .setQuery(QueryBuilders.prefixQuery("ecm:path", "/folder0/folder2"))
+                                           .execute()
+                                           .actionGet();
+        Assert.assertEquals(8, searchResponse.getHits().getTotalHits());
+        DocumentModelList docs = ess.query(new NxQueryBuilder(session).nxql(
+                "select * from Document where ecm:path STARTSWITH '/folder0/folder2/folder3'"));
+        Assert.assertEquals(6, docs.totalSize());
+    }
+
+    @Test
+    public void shouldKeepLocalAclOfDescendantOnSecurityUpdate() throws Exception {
+        buildAndIndexTree();
+
+        // block inheritance below folder5
+        ACP acp = new ACPImpl();
+        ACL acl = ACPImpl.newACL(ACL.LOCAL_ACL);
+        acl.add(new ACE(SecurityConstants.EVERYONE, SecurityConstants.EVERYTHING, false));
+        acl.add(new ACE("Administrator", SecurityConstants.EVERYTHING, true));
+        acp.addACL(acl);
+        session.setACP(new PathRef("/folder0/folder1/folder2/folder3/folder4/folder5"), acp, true);
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForCompletion();
+
+        startTransaction();
+        CoreSession restrictedSession = getRestrictedSession("toto");
+        try {
+            acp = new ACPImpl();
+            acl = ACPImpl.newACL(ACL.LOCAL_ACL);
+            acl.add(new ACE("toto", SecurityConstants.READ, true));
+            acp.addACL(acl);
+            session.setACP(new PathRef("/folder0/folder1/folder2"), acp, true);
+            TransactionHelper.commitOrRollbackTransaction();
+            waitForCompletion();
+            // folder5 is re-indexed from the repository instead of partially updated, it still counts once
+            if (syncMode) {
+                assertNumberOfCommandProcessed(9);
+            } else {
+                assertNumberOfCommandProcessed(8);
+            }
+
+            startTransaction();
+            // can view folder2, folder3 and folder4, the ACL of folder5 is propagated below it
+            DocumentModelList docs = ess.query(new NxQueryBuilder(restrictedSession).nxql("select * from Document"));
+            Assert.assertEquals(3, docs.totalSize());
+            docs = ess.query(new NxQueryBuilder(session).nxql("select * from Document"));
+            Assert.assertEquals(10, docs.totalSize());
+        } finally {
+            restrictedSession.close();
+        }
+    }
+
+    @Test
+    public void shouldUnIndexSeveralSubTreesInOneBatch() throws Exception {
+        buildAndIndexTree();
+        String root = "/";
+        for (int i = 0; i < 5; i++) {
+            String name = "other" + i;
+            session.createDocument(session.createDocumentModel(root, name, "Folder"));
+            root = root + name + "/";
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForCompletion();
+
+        // the recursive deletes of the same transaction are coalesced in the same bulk requests
+        startTransaction();
+        session.removeDocument(new PathRef("/folder0/folder1/folder2/folder3/folder4"));
+        session.removeDocument(new PathRef("/other0/other1"));
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForCompletion();
+        assertNumberOfCommandProcessed(2);
+
+        startTransaction();
+        SearchResponse searchResponse = esa.getClient()
+                                           .prepareSearch(IDX_NAME)
+                                           .setTypes(TYPE_NAME)
+                                           .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                                           .setFrom(0)
+                                           .setSize(60)
+                                           .execute()
+                                           .actionGet();
+        Assert.assertEquals(5, searchResponse.getHits().getTotalHits());
+
+        // a subtree deleted with one of its ancestors
+        session.removeDocument(new PathRef("/folder0/folder1/folder2"));
+        session.removeDocument(new PathRef("/folder0/folder1"));
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForCompletion();
+
+        startTransaction();
+        searchResponse = esa.getClient()
+                            .prepareSearch(IDX_NAME)
+                            .setTypes(TYPE_NAME)
+                            .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                            .setFrom(0)
+                            .setSize(60)
+                            .execute()
+                            .actionGet();
+        Assert.assertEquals(2, searchResponse.getHits().getTotalHits());
+    }
+
     protected CoreSession getRestrictedSession(String userName) {
         RepositoryManager rm = Framework.getLocalService(RepositoryManager.class);
         Map<String, Serializable> ctx = new HashMap<>();
@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.elasticsearch.test.fetcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_QUEUE_ID;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.State;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.elasticsearch.fetcher.HybridFetcher;
+
+/**
+ * @since 9.3
+ */
+public class TestHybridFetcherOldestPending {
+
+    protected static Work newWork(long schedulingTime) {
+        Work work = mock(Work.class);
+        when(work.getSchedulingTime()).thenReturn(schedulingTime);
+        return work;
+    }
+
+    /**
+     * A work manager whose queuing, like the Redis one, cannot list the works of all states at once.
+     */
+    protected static WorkManager newWorkManager() {
+        WorkManager workManager = mock(WorkManager.class);
+        when(workManager.listWork(eq(INDEXING_QUEUE_ID), (State) isNull())).thenThrow(
+                new IllegalArgumentException("null"));
+        return workManager;
+    }
+
+    @Test
+    public void testOldestAmongScheduledAndRunning() {
+        WorkManager workManager = newWorkManager();
+        when(workManager.listWork(INDEXING_QUEUE_ID, State.SCHEDULED)).thenReturn(
+                Arrays.asList(newWork(3000), newWork(2000)));
+        when(workManager.listWork(INDEXING_QUEUE_ID, State.RUNNING)).thenReturn(
+                Arrays.asList(newWork(0), newWork(1000)));
+        assertEquals(1000, HybridFetcher.getOldestPendingIndexingTime(workManager));
+    }
+
+    @Test
+    public void testNoPendingWork() {
+        WorkManager workManager = newWorkManager();
+        when(workManager.listWork(INDEXING_QUEUE_ID, State.SCHEDULED)).thenReturn(Collections.emptyList());
+        when(workManager.listWork(INDEXING_QUEUE_ID, State.RUNNING)).thenReturn(Collections.emptyList());
+        assertEquals(0, HybridFetcher.getOldestPendingIndexingTime(workManager));
+    }
+
+}
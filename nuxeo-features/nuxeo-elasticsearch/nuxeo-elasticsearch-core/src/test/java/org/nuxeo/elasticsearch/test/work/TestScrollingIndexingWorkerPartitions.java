@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.elasticsearch.test.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.elasticsearch.work.ScrollingIndexingWorker;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+public class TestScrollingIndexingWorkerPartitions {
+
+    @Test
+    public void testNoPartition() {
+        String nxql = "SELECT ecm:uuid FROM Document";
+        assertEquals(nxql, ScrollingIndexingWorker.getPartitionQueries(nxql, 1).get(0));
+        assertEquals(1, ScrollingIndexingWorker.getPartitionQueries(nxql, 0).size());
+    }
+
+    @Test
+    public void testPartitionsWithoutWhere() {
+        List<String> queries = ScrollingIndexingWorker.getPartitionQueries("SELECT ecm:uuid FROM Document", 4);
+        assertEquals(4, queries.size());
+        assertEquals("SELECT ecm:uuid FROM Document WHERE ecm:uuid < '40'", queries.get(0));
+        assertEquals("SELECT ecm:uuid FROM Document WHERE ecm:uuid >= '40' AND ecm:uuid < '80'", queries.get(1));
+        assertEquals("SELECT ecm:uuid FROM Document WHERE ecm:uuid >= 'c0'", queries.get(3));
+    }
+
+    @Test
+    public void testPartitionsWithWhere() {
+        List<String> queries = ScrollingIndexingWorker.getPartitionQueries(
+                "SELECT ecm:uuid FROM Document WHERE ecm:isProxy = 0 OR ecm:isVersion = 1", 2);
+        assertEquals(2, queries.size());
+        assertEquals("SELECT ecm:uuid FROM Document WHERE (ecm:isProxy = 0 OR ecm:isVersion = 1) AND ecm:uuid < '80'",
+                queries.get(0));
+        assertEquals("SELECT ecm:uuid FROM Document WHERE (ecm:isProxy = 0 OR ecm:isVersion = 1) AND ecm:uuid >= '80'",
+                queries.get(1));
+    }
+
+    @Test
+    public void testOrderByNotPartitioned() {
+        String nxql = "SELECT ecm:uuid FROM Document ORDER BY dc:title";
+        assertEquals(1, ScrollingIndexingWorker.getPartitionQueries(nxql, 8).size());
+    }
+
+    @Test
+    public void testMaxPartitions() {
+        List<String> queries = ScrollingIndexingWorker.getPartitionQueries("SELECT * FROM Document", 1000);
+        assertEquals(ScrollingIndexingWorker.MAX_PARTITIONS, queries.size());
+        assertEquals("SELECT * FROM Document WHERE ecm:uuid >= '01' AND ecm:uuid < '02'", queries.get(1));
+    }
+
+    @Test
+    public void testRemovePartitionMetrics() {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        String scheduled = ScrollingIndexingWorker.getPartitionMetricName(3, "scheduled");
+        registry.counter(scheduled).inc();
+        registry.meter(ScrollingIndexingWorker.getPartitionMetricName(3, "indexed")).mark();
+        String other = MetricRegistry.name("nuxeo", "elasticsearch", "service", "index");
+        registry.timer(other);
+
+        ScrollingIndexingWorker.removePartitionMetrics();
+        assertFalse(registry.getNames().contains(scheduled));
+        assertFalse(registry.getNames().contains(ScrollingIndexingWorker.getPartitionMetricName(3, "indexed")));
+        assertTrue(registry.getNames().contains(other));
+    }
+
+}
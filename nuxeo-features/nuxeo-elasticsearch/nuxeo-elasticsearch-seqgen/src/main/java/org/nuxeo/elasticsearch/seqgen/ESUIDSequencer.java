@@ -18,8 +18,13 @@
  */
 package org.nuxeo.elasticsearch.seqgen;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.client.Client;
 import org.nuxeo.ecm.core.api.NuxeoException;
@@ -84,6 +89,32 @@ public class ESUIDSequencer extends AbstractUIDSequencer {
         return res.getVersion();
     }
 
+    /**
+     * Allocates the block in one round trip, with a bulk request of index operations on the sequence document: each one
+     * increments its version.
+     *
+     * @since 9.3
+     */
+    @Override
+    public List<Long> getNextBlock(String sequenceName, int size) {
+        String source = "{ \"ts\" : " + System.currentTimeMillis() + "}";
+        BulkRequestBuilder bulkRequest = esClient.prepareBulk();
+        for (int i = 0; i < size; i++) {
+            bulkRequest.add(esClient.prepareIndex(indexName, ElasticSearchConstants.SEQ_ID_TYPE, sequenceName)
+                                    .setSource(source));
+        }
+        BulkResponse bulkResponse = bulkRequest.execute().actionGet();
+        List<Long> ids = new ArrayList<>(size);
+        for (BulkItemResponse response : bulkResponse.getItems()) {
+            if (response.isFailed()) {
+                throw new NuxeoException("Cannot allocate sequence block for " + sequenceName + ": "
+                        + response.getFailureMessage());
+            }
+            ids.add(Long.valueOf(response.getVersion()));
+        }
+        return ids;
+    }
+
     @Override
     public int getNext(String sequenceName) {
         return (int) getNextLong(sequenceName);
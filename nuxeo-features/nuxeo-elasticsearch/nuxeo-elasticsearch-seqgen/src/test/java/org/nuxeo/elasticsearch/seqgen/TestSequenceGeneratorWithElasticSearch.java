@@ -22,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -63,6 +64,15 @@ public class TestSequenceGeneratorWithElasticSearch {
         assertEquals(2, seq.getNext("myseq2"));
     }
 
+    @Test
+    public void testBlock() throws Exception {
+        UIDSequencer seq = uidGeneratorService.getSequencer();
+
+        assertEquals(1, seq.getNext("myblockseq"));
+        assertEquals(Arrays.asList(2L, 3L, 4L), seq.getNextBlock("myblockseq", 3));
+        assertEquals(5, seq.getNext("myblockseq"));
+    }
+
     @Test
     public void testInitSequence() {
         UIDSequencer seq = uidGeneratorService.getSequencer();
@@ -18,13 +18,14 @@
  */
 package org.nuxeo.ecm.platform.audit.service;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
@@ -40,7 +41,24 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
-
+import com.codahale.metrics.Timer;
+
+/**
+ * Audit bulker buffering log entries in a bounded lock-free ring buffer drained by several consumer threads.
+ * <p>
+ * Producers never take a lock: they claim a slot in the ring and publish the entry with its enqueue time. Consumers
+ * claim entries the same way and write them to the backend by bulks of {@link #getBulkSize()} entries, or less when
+ * {@link #getBulkTimeout()} elapses. When the ring is full producers wait for room. If an offer timeout is configured
+ * they only wait that long, then drop the entry and increment the {@code nuxeo.audit.dropped} counter.
+ * <p>
+ * When a consumer is stopped or interrupted it still writes the entries it has polled and the ones left in the ring.
+ * <p>
+ * There is a single consumer by default, so that entries reach the backend in id order; configuring more consumers
+ * gives up that ordering for write throughput.
+ * <p>
+ * The ring follows the bounded MPMC queue design by Dmitry Vyukov: each slot holds a sequence number telling whether it
+ * is free for the producer of a given position or ready for its consumer.
+ */
 public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
     final Log log = LogFactory.getLog(DefaultAuditBulker.class);
@@ -51,7 +69,7 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
         @Override
         public Integer getValue() {
-            return queue.size();
+            return size();
         }
 
     };
@@ -62,22 +80,82 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
     final Counter drainedCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "drained"));
 
-    int timeout;
+    final Counter droppedCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "dropped"));
+
+    final Timer enqueueTimer = registry.timer(MetricRegistry.name("nuxeo", "audit", "enqueue"));
+
+    final Timer drainLagTimer = registry.timer(MetricRegistry.name("nuxeo", "audit", "drainLag"));
+
+    static final long DROP_WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /** Number of entries dropped since the last warning. */
+    final AtomicLong droppedSinceWarning = new AtomicLong();
+
+    final AtomicLong lastDropWarning = new AtomicLong(System.nanoTime() - DROP_WARNING_INTERVAL_NANOS);
+
+    volatile int timeout;
+
+    volatile int bulksize;
+
+    /** Time a producer waits for room in a full ring before dropping its entry, 0 or less to wait for room. */
+    final long offerTimeoutNanos;
+
+    final int capacity;
+
+    final int mask;
+
+    final AtomicLongArray sequences;
+
+    final LogEntry[] entries;
+
+    final long[] enqueueTimes;
 
-    int bulksize;
+    final AtomicLong head = new AtomicLong();
 
-    Thread thread;
+    final AtomicLong tail = new AtomicLong();
+
+    /** Number of entries published in the ring, used by {@link #await}. */
+    final AtomicLong published = new AtomicLong();
+
+    /** Number of entries handed to the backend (written or failed), used by {@link #await}. */
+    final AtomicLong written = new AtomicLong();
+
+    /** Number of pending {@link #await} calls, consumers flush partial bulks while it is positive. */
+    final AtomicInteger flushRequests = new AtomicInteger();
+
+    final AtomicInteger nextConsumer = new AtomicInteger();
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    final Condition isWritten = lock.newCondition();
+
+    Thread[] threads;
+
+    volatile boolean stopped;
 
     DefaultAuditBulker(AuditBackend backend, AuditBulkerDescriptor config) {
         this.backend = backend;
         timeout = config.timeout;
-        bulksize = config.size;
+        capacity = Integer.highestOneBit(Math.max(config.capacity, config.size) * 2 - 1);
+        bulksize = Math.min(config.size, capacity);
+        offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.offerTimeout);
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        entries = new LogEntry[capacity];
+        enqueueTimes = new long[capacity];
+        threads = new Thread[Math.max(config.consumers, 1)];
     }
 
     @Override
     public void onApplicationStarted() {
-        thread = new Thread(new Consumer(), "Nuxeo-Audit-Bulker");
-        thread.start();
+        stopped = false;
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Consumer(), "Nuxeo-Audit-Bulker-" + i);
+            threads[i].start();
+        }
         ResourcePublisher publisher = Framework.getService(ResourcePublisher.class);
         if (publisher != null) {
             publisher.registerResource("audit-bulker", "audit-bulker", AuditBulkerMBean.class, this);
@@ -93,63 +171,179 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
             publisher.unregisterResource("audit-bulker", "audit-bulker");
         }
         stopped = true;
-        try {
-            thread.interrupt();
-        } finally {
-            thread = null;
+        for (int i = 0; i < threads.length; i++) {
+            try {
+                if (threads[i] != null) {
+                    threads[i].interrupt();
+                }
+            } finally {
+                threads[i] = null;
+            }
         }
     }
 
-    final AtomicInteger size = new AtomicInteger(0);
-
-    final ReentrantLock lock = new ReentrantLock();
-
-    final Condition isEmpty = lock.newCondition();
-
-    final Condition isFilled = lock.newCondition();
-
-    final Queue<LogEntry> queue = new ConcurrentLinkedQueue<>();
-
-    volatile boolean stopped;
-
     @Override
     public void offer(LogEntry entry) {
         if (log.isDebugEnabled()) {
             log.debug("offered " + entry);
         }
-        queue.add(entry);
+        long start = System.nanoTime();
+        boolean offered = tryOffer(entry, start);
+        if (!offered) {
+            long deadline = start + offerTimeoutNanos;
+            wakeUpConsumer();
+            // give up if the consumers are gone or if the producer is interrupted
+            while (!offered && !stopped && !Thread.currentThread().isInterrupted()
+                    && (offerTimeoutNanos <= 0 || System.nanoTime() - deadline < 0)) {
+                LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(100));
+                offered = tryOffer(entry, System.nanoTime());
+            }
+        }
+        long end = System.nanoTime();
+        enqueueTimer.update(end - start, TimeUnit.NANOSECONDS);
+        if (!offered) {
+            dropped(entry);
+            return;
+        }
         queuedCount.inc();
+        if (size() >= bulksize) {
+            wakeUpConsumer();
+        }
+    }
 
-        if (size.incrementAndGet() >= bulksize) {
-            lock.lock();
-            try {
-                isFilled.signalAll();
-            } finally {
-                lock.unlock();
+    /**
+     * Counts a dropped entry, the warning is logged at most every {@link #DROP_WARNING_INTERVAL_NANOS} with the number
+     * of entries dropped since the previous one.
+     */
+    protected void dropped(LogEntry entry) {
+        droppedCount.inc();
+        droppedSinceWarning.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("audit buffer full, dropped " + entry);
+        }
+        long now = System.nanoTime();
+        long last = lastDropWarning.get();
+        if (now - last >= DROP_WARNING_INTERVAL_NANOS && lastDropWarning.compareAndSet(last, now)) {
+            log.warn("Audit buffer full, dropped " + droppedSinceWarning.getAndSet(0)
+                    + " log entries, the last one for event " + entry.getEventId());
+        }
+    }
+
+    /**
+     * Claims the slot at the tail of the ring and publishes the entry in it, returns {@code false} if the ring is full.
+     */
+    protected boolean tryOffer(LogEntry entry, long now) {
+        for (;;) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    entries[index] = entry;
+                    enqueueTimes[index] = now;
+                    // publishes the entry and its time to the consumer of this position
+                    sequences.lazySet(index, pos + 1);
+                    published.incrementAndGet();
+                    return true;
+                }
+            } else if (dif < 0) {
+                return false;
+            }
+            // another producer claimed the slot, retry with the new tail
+        }
+    }
+
+    /**
+     * Claims the entry at the head of the ring and adds it to the batch, returns {@code false} if the ring is empty.
+     */
+    protected boolean poll(List<LogEntry> batch, List<Long> times) {
+        for (;;) {
+            long pos = head.get();
+            int index = (int) (pos & mask);
+            long dif = sequences.get(index) - (pos + 1);
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    batch.add(entries[index]);
+                    times.add(Long.valueOf(enqueueTimes[index]));
+                    entries[index] = null;
+                    // frees the slot for the producer of the next lap
+                    sequences.lazySet(index, pos + capacity);
+                    return true;
+                }
+            } else if (dif < 0) {
+                return false;
+            }
+        }
+    }
+
+    protected int size() {
+        return (int) Math.max(tail.get() - head.get(), 0);
+    }
+
+    protected void wakeUpConsumer() {
+        Thread[] consumers = threads;
+        Thread thread = consumers[(nextConsumer.getAndIncrement() & Integer.MAX_VALUE) % consumers.length];
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    protected void wakeUpConsumers() {
+        for (Thread thread : threads) {
+            if (thread != null) {
+                LockSupport.unpark(thread);
             }
         }
     }
 
     @Override
     public boolean await(long time, TimeUnit unit) throws InterruptedException {
-        lock.lock();
+        long target = published.get();
+        long nanos = unit.toNanos(time);
+        flushRequests.incrementAndGet();
         try {
-            isFilled.signalAll();
-            return isEmpty.await(time, unit);
+            wakeUpConsumers();
+            lock.lock();
+            try {
+                while (written.get() < target) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = isWritten.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
         } finally {
-            lock.unlock();
+            flushRequests.decrementAndGet();
         }
     }
 
-    int drain() {
-        List<LogEntry> entries = new LinkedList<>();
-        while (!queue.isEmpty()) {
-            entries.add(queue.remove());
+    protected void write(List<LogEntry> batch) {
+        backend.addLogEntries(batch);
+    }
+
+    int drain(List<LogEntry> batch, List<Long> times) {
+        int delta = batch.size();
+        try {
+            write(batch);
+            drainedCount.inc(delta);
+            long now = System.nanoTime();
+            for (Long time : times) {
+                drainLagTimer.update(now - time.longValue(), TimeUnit.NANOSECONDS);
+            }
+        } catch (RuntimeException cause) {
+            log.error("Cannot write " + delta + " audit entries", cause);
+        } finally {
+            written.addAndGet(delta);
+            lock.lock();
+            try {
+                isWritten.signalAll();
+            } finally {
+                lock.unlock();
+            }
         }
-        backend.addLogEntries(entries);
-        int delta = entries.size();
-        size.addAndGet(-delta);
-        drainedCount.inc(delta);
         return delta;
     }
 
@@ -158,28 +352,59 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
         @Override
         public void run() {
             log.info("bulk audit logger started");
-            while (!stopped) {
-                lock.lock();
-                try {
-                    isFilled.await(timeout, TimeUnit.MILLISECONDS);
-                    if (queue.isEmpty()) {
+            int size = bulksize;
+            List<LogEntry> batch = new ArrayList<>(size);
+            List<Long> times = new ArrayList<>(size);
+            boolean interrupted = false;
+            while (!stopped && !interrupted) {
+                size = bulksize;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                while (batch.size() < size) {
+                    if (poll(batch, times)) {
                         continue;
                     }
-                    int count = drain();
-                    if (log.isDebugEnabled()) {
-                        log.debug("flushed " + count + " events");
+                    if (stopped || flushRequests.get() > 0) {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
                     }
-                } catch (InterruptedException cause) {
-                    Thread.currentThread().interrupt();
-                    return;
-                } finally {
-                    isEmpty.signalAll();
-                    lock.unlock();
+                    LockSupport.parkNanos(this, remaining);
+                    if (Thread.interrupted()) {
+                        log.info("bulk audit logger interrupted");
+                        interrupted = true;
+                        break;
+                    }
+                }
+                flush(batch, times);
+            }
+            // write the polled entries and the ones left in the ring, they would be lost otherwise
+            size = bulksize;
+            while (poll(batch, times)) {
+                if (batch.size() >= size) {
+                    flush(batch, times);
                 }
             }
+            flush(batch, times);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
             log.info("bulk audit logger stopped");
         }
 
+        protected void flush(List<LogEntry> batch, List<Long> times) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            int count = drain(batch, times);
+            if (log.isDebugEnabled()) {
+                log.debug("flushed " + count + " events");
+            }
+            batch.clear();
+            times.clear();
+        }
+
     }
 
     @Override
@@ -199,12 +424,48 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
     @Override
     public void setBulkSize(int value) {
-        bulksize = value;
+        bulksize = Math.max(Math.min(value, capacity), 1);
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getConsumers() {
+        return threads.length;
+    }
+
+    @Override
+    public long getQueuedCount() {
+        return queuedCount.getCount();
+    }
+
+    @Override
+    public long getDrainedCount() {
+        return drainedCount.getCount();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.getCount();
+    }
+
+    @Override
+    public double getMeanEnqueueLatencyMicros() {
+        return enqueueTimer.getSnapshot().getMean() / 1000;
+    }
+
+    @Override
+    public double getMeanDrainLagMillis() {
+        return drainLagTimer.getSnapshot().getMean() / 1000000;
     }
 
     @Override
     public void resetMetrics() {
         queuedCount.dec(queuedCount.getCount());
         drainedCount.dec(drainedCount.getCount());
+        droppedCount.dec(droppedCount.getCount());
     }
 }
@@ -41,6 +41,14 @@ public class LogEntryProvider implements BaseLogEntryProvider {
 
     private static final Log log = LogFactory.getLog(LogEntryProvider.class);
 
+    /**
+     * Number of entries persisted between two flushes, matches the {@code hibernate.jdbc.batch_size} of the audit
+     * persistence unit.
+     *
+     * @since 9.3
+     */
+    public static final int PERSIST_BATCH_SIZE = 50;
+
     protected final EntityManager em;
 
     private LogEntryProvider(EntityManager em) {
@@ -100,8 +108,14 @@ public class LogEntryProvider implements BaseLogEntryProvider {
     }
 
     public void addLogEntries(List<LogEntry> entries) {
+        int count = 0;
         for (LogEntry entry : entries) {
             doPersist(entry);
+            // send the inserts by JDBC batches and keep the persistence context small
+            if (++count % PERSIST_BATCH_SIZE == 0) {
+                em.flush();
+                em.clear();
+            }
         }
     }
 
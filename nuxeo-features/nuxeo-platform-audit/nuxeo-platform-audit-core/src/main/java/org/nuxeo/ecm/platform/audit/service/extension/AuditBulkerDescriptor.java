@@ -41,6 +41,34 @@ public class AuditBulkerDescriptor implements Serializable {
     @XNode("size")
     public int size = 1000;
 
+    /**
+     * Number of entries the buffer can hold, rounded up to a power of two.
+     *
+     * @since 9.3
+     */
+    @XNode("capacity")
+    public int capacity = 16384;
+
+    /**
+     * Number of threads writing bulks to the backend.
+     * <p>
+     * With more than one thread, bulks are written concurrently and entries with a higher id may become visible in the
+     * backend before entries with a lower id, which readers following the audit by increasing id would skip.
+     *
+     * @since 9.3
+     */
+    @XNode("consumers")
+    public int consumers = 1;
+
+    /**
+     * Time in milliseconds a producer waits for room in a full buffer before dropping its entry, 0 or less to wait
+     * until there is room so that no entry is dropped.
+     *
+     * @since 9.3
+     */
+    @XNode("offerTimeout")
+    public int offerTimeout = 0; // no drop
+
     public AuditBulker newInstance(AuditBackend backend) {
         try {
             Constructor<? extends AuditBulker> declaredConstructor = klass.getDeclaredConstructor(AuditBackend.class, AuditBulkerDescriptor.class);
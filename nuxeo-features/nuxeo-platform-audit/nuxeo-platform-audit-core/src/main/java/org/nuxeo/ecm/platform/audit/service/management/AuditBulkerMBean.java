@@ -23,5 +23,44 @@ public interface AuditBulkerMBean {
 
     void setBulkSize(int value);
 
+    /**
+     * @since 9.3
+     */
+    int getCapacity();
+
+    /**
+     * @since 9.3
+     */
+    int getConsumers();
+
+    /**
+     * @since 9.3
+     */
+    long getQueuedCount();
+
+    /**
+     * @since 9.3
+     */
+    long getDrainedCount();
+
+    /**
+     * Returns the number of log entries dropped because the buffer stayed full for longer than the offer timeout.
+     *
+     * @since 9.3
+     */
+    long getDroppedCount();
+
+    /**
+     * @since 9.3
+     */
+    double getMeanEnqueueLatencyMicros();
+
+    /**
+     * Returns the mean time between the enqueue of a log entry and the end of its write to the backend.
+     *
+     * @since 9.3
+     */
+    double getMeanDrainLagMillis();
+
     void resetMetrics();
 }
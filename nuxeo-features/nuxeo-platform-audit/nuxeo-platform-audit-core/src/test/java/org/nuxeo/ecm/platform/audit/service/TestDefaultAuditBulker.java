@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     agent
+ */
+package org.nuxeo.ecm.platform.audit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+import org.nuxeo.ecm.platform.audit.service.extension.AuditBulkerDescriptor;
+
+public class TestDefaultAuditBulker {
+
+    protected static LogEntry newEntry(int i) {
+        LogEntry entry = new LogEntryImpl();
+        entry.setEventId("event" + i);
+        return entry;
+    }
+
+    /**
+     * Bulker collecting the drained entries instead of writing them to a backend.
+     */
+    protected static DefaultAuditBulker newBulker(Queue<LogEntry> written, int capacity, int consumers,
+            int offerTimeout) {
+        return newBulker(written, capacity, consumers, offerTimeout, 50);
+    }
+
+    protected static DefaultAuditBulker newBulker(Queue<LogEntry> written, int capacity, int consumers,
+            int offerTimeout, int timeout) {
+        AuditBulkerDescriptor config = new AuditBulkerDescriptor();
+        config.size = 10;
+        config.timeout = timeout;
+        config.capacity = capacity;
+        config.consumers = consumers;
+        config.offerTimeout = offerTimeout;
+        return new DefaultAuditBulker(null, config) {
+
+            @Override
+            protected void write(List<LogEntry> batch) {
+                written.addAll(batch);
+            }
+        };
+    }
+
+    protected static void startConsumers(DefaultAuditBulker bulker) {
+        for (int i = 0; i < bulker.threads.length; i++) {
+            bulker.threads[i] = new Thread(bulker.new Consumer(), "test-bulker-" + i);
+            bulker.threads[i].start();
+        }
+    }
+
+    protected static void stopConsumers(DefaultAuditBulker bulker) throws InterruptedException {
+        bulker.stopped = true;
+        for (Thread thread : bulker.threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : bulker.threads) {
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        ConcurrentLinkedQueue<LogEntry> written = new ConcurrentLinkedQueue<>();
+        // dropping is enabled by an offer timeout
+        DefaultAuditBulker bulker = newBulker(written, 16, 1, 1);
+        long dropped = bulker.getDroppedCount();
+        // no consumer yet, the ring fills up
+        for (int i = 0; i < 20; i++) {
+            bulker.offer(newEntry(i));
+        }
+        assertEquals(16, bulker.size());
+        assertEquals(dropped + 4, bulker.getDroppedCount());
+
+        startConsumers(bulker);
+        try {
+            assertTrue(bulker.await(10, TimeUnit.SECONDS));
+            assertEquals(16, written.size());
+            assertEquals(0, bulker.size());
+            // entries are written in order with a single consumer
+            assertEquals("event0", written.peek().getEventId());
+        } finally {
+            stopConsumers(bulker);
+        }
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws Exception {
+        ConcurrentLinkedQueue<LogEntry> written = new ConcurrentLinkedQueue<>();
+        DefaultAuditBulker bulker = newBulker(written, 1 << 16, 3, 0);
+        startConsumers(bulker);
+        try {
+            int nproducers = 4;
+            int nentries = 5000;
+            Thread[] producers = new Thread[nproducers];
+            for (int p = 0; p < nproducers; p++) {
+                producers[p] = new Thread(() -> {
+                    for (int i = 0; i < nentries; i++) {
+                        bulker.offer(newEntry(i));
+                    }
+                });
+                producers[p].start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            assertTrue(bulker.await(10, TimeUnit.SECONDS));
+            assertEquals(nproducers * nentries, written.size());
+        } finally {
+            stopConsumers(bulker);
+        }
+    }
+
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        ConcurrentLinkedQueue<LogEntry> written = new ConcurrentLinkedQueue<>();
+        DefaultAuditBulker bulker = newBulker(written, 16, 1, 0);
+        long dropped = bulker.getDroppedCount();
+        startConsumers(bulker);
+        try {
+            // producers wait for the consumer to make room in the small ring
+            int nproducers = 4;
+            int nentries = 1000;
+            Thread[] producers = new Thread[nproducers];
+            for (int p = 0; p < nproducers; p++) {
+                producers[p] = new Thread(() -> {
+                    for (int i = 0; i < nentries; i++) {
+                        bulker.offer(newEntry(i));
+                    }
+                });
+                producers[p].start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            assertTrue(bulker.await(10, TimeUnit.SECONDS));
+            assertEquals(nproducers * nentries, written.size());
+            assertEquals(dropped, bulker.getDroppedCount());
+        } finally {
+            stopConsumers(bulker);
+        }
+    }
+
+    @Test
+    public void testInterruptFlushesEntries() throws Exception {
+        ConcurrentLinkedQueue<LogEntry> written = new ConcurrentLinkedQueue<>();
+        // a long bulk timeout, the consumer waits for a full bulk
+        DefaultAuditBulker bulker = newBulker(written, 16, 1, 0, 60000);
+        startConsumers(bulker);
+        for (int i = 0; i < 5; i++) {
+            bulker.offer(newEntry(i));
+        }
+        Thread consumer = bulker.threads[0];
+        consumer.interrupt();
+        consumer.join(10000);
+        assertFalse(consumer.isAlive());
+        assertEquals(5, written.size());
+        assertEquals(0, bulker.size());
+    }
+
+}